@@ -0,0 +1,13 @@
+package com.balmerlawrie.balmerrestservice.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Configuration for background work that runs outside the request thread.
+ * Enables scheduled tasks such as the shared queue poller behind /queue/stream.
+ */
+@Configuration
+@EnableScheduling
+public class AsyncConfig {
+}
@@ -1,7 +1,14 @@
 package com.balmerlawrie.balmerrestservice.controller;
 
+import com.balmerlawrie.balmerrestservice.dto.WorkItemQuery;
+import com.balmerlawrie.balmerrestservice.model.QueueResponse;
+import com.balmerlawrie.balmerrestservice.model.WorkList;
 import com.balmerlawrie.balmerrestservice.service.MyQueueService;
+import com.balmerlawrie.balmerrestservice.service.QueueStreamService;
+import com.balmerlawrie.balmerrestservice.util.ETags;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -9,10 +16,15 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springdoc.api.annotations.ParameterObject;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 /**
  * Controller for My Queue and Common Queue work items.
@@ -28,62 +40,92 @@ public class MyQueueController {
     @Autowired
     private MyQueueService myQueueService;
 
+    @Autowired
+    private QueueStreamService queueStreamService;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
     @Operation(summary = "Get My Queue Work Items", description = "Returns all work items assigned directly to the user across all processes. "
             +
-            "Uses WMFetchWorkList with MyQueueFlag=Y.")
+            "Uses WMFetchWorkList with MyQueueFlag=Y. Supports filter, URN search, sort, fields projection and ETag/If-None-Match.")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Work items retrieved successfully"),
-            @ApiResponse(responseCode = "400", description = "Invalid session ID")
+            @ApiResponse(responseCode = "304", description = "Not modified since the ETag in If-None-Match"),
+            @ApiResponse(responseCode = "400", description = "Invalid session ID or query parameters")
     })
     @GetMapping(value = "/myqueue", produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<JsonNode> getMyQueue(
-            @Parameter(description = "Session ID from login", required = true) @RequestHeader("sessionId") long sessionId) {
+    public ResponseEntity<StreamingResponseBody> getMyQueue(
+            @Parameter(description = "Session ID from login", required = true) @RequestHeader("sessionId") long sessionId,
+            @Parameter(description = "ETag from a previous response; 304 if unchanged") @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch,
+            @ParameterObject WorkItemQuery query) {
 
-        JsonNode result = myQueueService.getMyQueueItems(sessionId);
+        String invalid = query.validate();
+        if (invalid != null) {
+            return badRequest(createError(invalid));
+        }
 
-        if (result.path("success").asBoolean(false)) {
-            return ResponseEntity.ok(result);
-        } else {
-            return ResponseEntity.badRequest().body(result);
+        WorkList workList = myQueueService.fetchMyQueue(sessionId);
+        if (!workList.isSuccess()) {
+            return badRequest(createError(workList.getError()));
         }
+
+        // Once the list is out, warm the caches for the items most likely opened next
+        QueueResponse response = myQueueService.buildWorkListResponse(workList, query);
+        return respond(response, ifNoneMatch, () -> myQueueService.prefetchLikelyOpened(response, sessionId));
     }
 
-    @Operation(summary = "Get Common Queue Work Items", description = "Returns all work items from shared/group queues the user has access to.")
+    @Operation(summary = "Get Common Queue Work Items", description = "Returns all work items from shared/group queues the user has access to. "
+            +
+            "Supports filter, URN search, sort, fields projection and ETag/If-None-Match.")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Work items retrieved successfully"),
-            @ApiResponse(responseCode = "400", description = "Invalid session ID")
+            @ApiResponse(responseCode = "304", description = "Not modified since the ETag in If-None-Match"),
+            @ApiResponse(responseCode = "400", description = "Invalid session ID or query parameters")
     })
     @GetMapping(value = "/commonqueue", produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<JsonNode> getCommonQueue(
-            @Parameter(description = "Session ID from login", required = true) @RequestHeader("sessionId") long sessionId) {
+    public ResponseEntity<StreamingResponseBody> getCommonQueue(
+            @Parameter(description = "Session ID from login", required = true) @RequestHeader("sessionId") long sessionId,
+            @Parameter(description = "ETag from a previous response; 304 if unchanged") @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch,
+            @ParameterObject WorkItemQuery query) {
 
-        JsonNode result = myQueueService.getCommonQueueItems(sessionId);
+        String invalid = query.validate();
+        if (invalid != null) {
+            return badRequest(createError(invalid));
+        }
 
-        if (result.path("success").asBoolean(false)) {
-            return ResponseEntity.ok(result);
-        } else {
-            return ResponseEntity.badRequest().body(result);
+        JsonNode queuesResponse = myQueueService.getUserQueues(sessionId);
+
+        if (!queuesResponse.path("success").asBoolean(false)) {
+            return badRequest(queuesResponse);
         }
+
+        return respond(myQueueService.buildCommonQueueResponse(queuesResponse, query, sessionId), ifNoneMatch);
     }
 
     @Operation(summary = "Get All Work Items", description = "Returns ALL work items (My Queue + Common Queue combined). "
             +
-            "This is the main endpoint to display all work assigned to or available for the user.")
+            "This is the main endpoint to display all work assigned to or available for the user. "
+            +
+            "Common queues are fetched concurrently; My Queue items come first, then each common queue's items in queue-list order. "
+            +
+            "Supports filter, URN search, sort, fields projection and ETag/If-None-Match.")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Work items retrieved successfully"),
-            @ApiResponse(responseCode = "400", description = "Invalid session ID")
+            @ApiResponse(responseCode = "304", description = "Not modified since the ETag in If-None-Match"),
+            @ApiResponse(responseCode = "400", description = "Invalid session ID or query parameters")
     })
     @GetMapping(value = "/allworkitems", produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<JsonNode> getAllWorkItems(
-            @Parameter(description = "Session ID from login", required = true) @RequestHeader("sessionId") long sessionId) {
-
-        JsonNode result = myQueueService.getAllWorkItems(sessionId);
+    public ResponseEntity<StreamingResponseBody> getAllWorkItems(
+            @Parameter(description = "Session ID from login", required = true) @RequestHeader("sessionId") long sessionId,
+            @Parameter(description = "ETag from a previous response; 304 if unchanged") @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch,
+            @ParameterObject WorkItemQuery query) {
 
-        if (result.path("success").asBoolean(false)) {
-            return ResponseEntity.ok(result);
-        } else {
-            return ResponseEntity.badRequest().body(result);
+        String invalid = query.validate();
+        if (invalid != null) {
+            return badRequest(createError(invalid));
         }
+
+        return respond(myQueueService.buildAllWorkItemsResponse(sessionId, query), ifNoneMatch);
     }
 
     @Operation(summary = "Get User's Accessible Queues", description = "Returns a list of all queues the user has access to.")
@@ -104,23 +146,116 @@ public class MyQueueController {
         }
     }
 
-    @Operation(summary = "Get Work Items from Specific Queue", description = "Returns work items from a specific queue by ID.")
+    @Operation(summary = "Get Work Items from Specific Queue", description = "Returns work items from a specific queue by ID. "
+            +
+            "Supports filter, URN search, sort, fields projection and ETag/If-None-Match.")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Work items retrieved successfully"),
-            @ApiResponse(responseCode = "400", description = "Invalid session ID or queue ID")
+            @ApiResponse(responseCode = "304", description = "Not modified since the ETag in If-None-Match"),
+            @ApiResponse(responseCode = "400", description = "Invalid session ID, queue ID or query parameters")
     })
     @GetMapping(value = "/{queueId}/items", produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<JsonNode> getQueueWorkItems(
+    public ResponseEntity<StreamingResponseBody> getQueueWorkItems(
             @Parameter(description = "Queue ID", required = true) @PathVariable int queueId,
             @Parameter(description = "Queue name for display", required = false) @RequestParam(defaultValue = "Queue") String queueName,
-            @Parameter(description = "Session ID from login", required = true) @RequestHeader("sessionId") long sessionId) {
+            @Parameter(description = "Session ID from login", required = true) @RequestHeader("sessionId") long sessionId,
+            @Parameter(description = "ETag from a previous response; 304 if unchanged") @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch,
+            @ParameterObject WorkItemQuery query) {
 
-        JsonNode result = myQueueService.getQueueWorkItems(queueId, queueName, sessionId);
+        String invalid = query.validate();
+        if (invalid != null) {
+            return badRequest(createError(invalid));
+        }
 
-        if (result.path("success").asBoolean(false)) {
-            return ResponseEntity.ok(result);
-        } else {
-            return ResponseEntity.badRequest().body(result);
+        return respond(myQueueService.fetchQueue(queueId, queueName, sessionId), query, ifNoneMatch);
+    }
+
+    @Operation(summary = "Stream Queue Changes (SSE)", description = "Opens a Server-Sent Events stream of queue changes. "
+            +
+            "The server polls each distinct queue once per interval for all subscribers and pushes only added, changed and removed work items. "
+            +
+            "Events: 'snapshot' (full queue on first poll or join), 'changes' (added/changed/removed), 'error'. "
+            +
+            "Without queueId the stream covers My Queue plus all common queues. "
+            +
+            "The session must be valid and queueId must be one of its queues, otherwise the stream closes with an 'error' event. "
+            +
+            "sessionId may be passed as a query parameter because browser EventSource cannot set headers.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Event stream opened")
+    })
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamQueueChanges(
+            @Parameter(description = "Session ID from login") @RequestHeader(value = "sessionId", required = false) Long sessionIdHeader,
+            @Parameter(description = "Session ID from login (for EventSource clients)") @RequestParam(value = "sessionId", required = false) Long sessionIdParam,
+            @Parameter(description = "Restrict the stream to a single queue") @RequestParam(required = false) Integer queueId) {
+
+        Long sessionId = sessionIdHeader != null ? sessionIdHeader : sessionIdParam;
+        if (sessionId == null) {
+            return queueStreamService.rejected("Missing sessionId");
         }
+
+        return queueStreamService.subscribe(sessionId, queueId);
+    }
+
+    /**
+     * Responds with a fetched work list with the query applied, or its error with 400.
+     */
+    private ResponseEntity<StreamingResponseBody> respond(WorkList workList, WorkItemQuery query,
+            String ifNoneMatch) {
+        if (!workList.isSuccess()) {
+            return badRequest(createError(workList.getError()));
+        }
+
+        return respond(myQueueService.buildWorkListResponse(workList, query), ifNoneMatch);
+    }
+
+    /**
+     * Responds 304 if the client's ETag still matches, otherwise streams the
+     * response with its ETag. Either way the client must revalidate next time.
+     */
+    private ResponseEntity<StreamingResponseBody> respond(QueueResponse response, String ifNoneMatch) {
+        return respond(response, ifNoneMatch, null);
+    }
+
+    /**
+     * As {@link #respond(QueueResponse, String)}, running afterSend once the
+     * body has been written (or right away for a 304).
+     */
+    private ResponseEntity<StreamingResponseBody> respond(QueueResponse response, String ifNoneMatch,
+            Runnable afterSend) {
+        if (ETags.matches(ifNoneMatch, response.getETag())) {
+            if (afterSend != null) {
+                afterSend.run();
+            }
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(response.getETag())
+                    .cacheControl(CacheControl.noCache().cachePrivate())
+                    .build();
+        }
+
+        return ResponseEntity.ok()
+                .eTag(response.getETag())
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(out -> {
+                    myQueueService.writeResponse(response, out);
+                    if (afterSend != null) {
+                        afterSend.run();
+                    }
+                });
+    }
+
+    private ResponseEntity<StreamingResponseBody> badRequest(JsonNode error) {
+        return ResponseEntity.badRequest()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(out -> myQueueService.writeJson(error, out));
+    }
+
+    private JsonNode createError(String message) {
+        ObjectNode error = mapper.createObjectNode();
+        error.put("success", false);
+        error.put("error", message);
+        return error;
     }
 }
@@ -1,7 +1,13 @@
 package com.balmerlawrie.balmerrestservice.controller;
 
+import com.balmerlawrie.balmerrestservice.dto.PdfNoteBulkRequest;
+import com.balmerlawrie.balmerrestservice.dto.SupportingDocsBatchRequest;
+import com.balmerlawrie.balmerrestservice.model.PdfNoteBulkJob;
+import com.balmerlawrie.balmerrestservice.model.PdfNoteJob;
+import com.balmerlawrie.balmerrestservice.service.MyQueueService;
 import com.balmerlawrie.balmerrestservice.service.NoteSheetService;
-import com.balmerlawrie.balmerrestservice.service.SessionManager;
+import com.balmerlawrie.balmerrestservice.service.PdfNoteBulkService;
+import com.balmerlawrie.balmerrestservice.service.PdfNoteJobService;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
@@ -14,10 +20,16 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.regex.Pattern;
+
 /**
  * Controller for Notesheet document operations.
  */
@@ -30,10 +42,22 @@ public class NoteSheetController {
         private NoteSheetService noteSheetService;
 
         @Autowired
-        private SessionManager sessionManager;
+        private PdfNoteJobService pdfNoteJobService;
+
+        @Autowired
+        private PdfNoteBulkService pdfNoteBulkService;
+
+        @Autowired
+        private MyQueueService myQueueService;
 
         private final ObjectMapper mapper = new ObjectMapper();
 
+        /**
+         * Accepted since values: a date, optionally with minutes, seconds or fractional seconds.
+         */
+        private static final Pattern SINCE_PATTERN = Pattern.compile(
+                        "\\d{4}-\\d{2}-\\d{2}([ T]\\d{2}:\\d{2}(:\\d{2}(\\.\\d+)?)?)?");
+
         @Operation(summary = "Get Original Notesheet", description = "Retrieves the original notesheet document from the work item's attachment folder. "
                         +
                         "Returns the file path where the document is saved temporarily.")
@@ -140,10 +164,13 @@ public class NoteSheetController {
                 return ResponseEntity.ok(result);
         }
 
-        @Operation(summary = "Get Work Item Comments", description = "Retrieves comments history for a work item.")
+        @Operation(summary = "Get Work Item Comments", description = "Retrieves comments history for a work item. "
+                        + "Use 'since' to fetch only comments made after the last sync (pass the previous response's "
+                        + "'latestDateTime') and 'limit'/'offset' to page through long histories. The parsed history "
+                        + "is cached briefly per work item, so paging does not refetch the work item attributes.")
         @ApiResponses(value = {
                         @ApiResponse(responseCode = "200", description = "Request processed successfully.", content = @Content(mediaType = "application/json", examples = {
-                                        @ExampleObject(name = "Comments Found", value = "{\"success\":true,\"count\":2,\"comments\":[{\"userName\":\"keerthi\",\"dateTime\":\"2025-12-12\",\"comments\":\"updated\",\"stage\":\"Initiator\"}]}")
+                                        @ExampleObject(name = "Comments Found", value = "{\"success\":true,\"count\":1,\"total\":2,\"offset\":0,\"hasMore\":true,\"latestDateTime\":\"2025-12-12 14:46:03.0\",\"comments\":[{\"userName\":\"keerthi\",\"dateTime\":\"2025-12-12 14:46:03.0\",\"comments\":\"updated\",\"stage\":\"Initiator\"}]}")
                         })),
                         @ApiResponse(responseCode = "400", description = "Invalid parameters")
         })
@@ -151,14 +178,29 @@ public class NoteSheetController {
         public ResponseEntity<JsonNode> getComments(
                         @RequestParam String workitemId,
                         @RequestParam String processInstanceId,
+                        @Parameter(description = "Only comments after this date-time (yyyy-MM-dd[ HH:mm[:ss[.S]]]), compared at full precision", example = "2025-12-12 14:46:03.0")
+                        @RequestParam(required = false) String since,
+                        @Parameter(description = "Maximum number of comments to return (default: all)", example = "50")
+                        @RequestParam(required = false) Integer limit,
+                        @Parameter(description = "Number of matching comments to skip", example = "0")
+                        @RequestParam(defaultValue = "0") int offset,
                         @RequestHeader("sessionId") long sessionId) {
 
                 if (workitemId == null || workitemId.isEmpty() || processInstanceId == null
                                 || processInstanceId.isEmpty()) {
                         return ResponseEntity.badRequest().body(createError("Missing parameters"));
                 }
+                if (since != null && !since.trim().isEmpty() && !SINCE_PATTERN.matcher(since.trim()).matches()) {
+                        return ResponseEntity.badRequest().body(
+                                        createError("Invalid since, expected yyyy-MM-dd[ HH:mm[:ss[.S]]]: " + since));
+                }
+                if ((limit != null && limit < 1) || offset < 0) {
+                        return ResponseEntity.badRequest().body(
+                                        createError("limit must be at least 1 and offset must not be negative"));
+                }
 
-                JsonNode result = noteSheetService.getComments(processInstanceId, workitemId, sessionId);
+                JsonNode result = noteSheetService.getComments(processInstanceId, workitemId, sessionId,
+                                since != null && !since.trim().isEmpty() ? since : null, limit, offset);
                 return ResponseEntity.ok(result);
         }
 
@@ -188,7 +230,12 @@ public class NoteSheetController {
 
         @Operation(summary = "Create PDF Note", description = "Creates a PDF from the original notesheet with appended comments and updates the notesheet document. "
                         + "Flow: 1) Get original notesheet, 2) Get comments, 3) Get notesheet document ID, 4) Generate PDF with comments, 5) Update notesheet preserving annotations. "
-                        + "Uses service account credentials from configuration for automatic authentication.")
+                        + "Uses service account credentials from configuration for automatic authentication. "
+                        + "The run is skipped (skipped=true, current version returned) when the original notesheet, comments, "
+                        + "supporting documents and templates are unchanged since the notesheet's current version was generated; "
+                        + "force=true regenerates anyway. "
+                        + "With async=true the note is created by a background job: the response is 202 with a jobId "
+                        + "to poll at /notesheet/jobs/{jobId}, or 429 with Retry-After when the job backlog is full.")
         @ApiResponses(value = {
                         @ApiResponse(responseCode = "200", description = "PDF note created successfully", content = @Content(mediaType = "application/json", examples = {
                                         @ExampleObject(name = "Success", value = "{\n"
@@ -196,19 +243,26 @@ public class NoteSheetController {
                                                         + "  \"originalDocIndex\": \"1669\",\n"
                                                         + "  \"notedocumentIndex\": \"1668\",\n"
                                                         + "  \"newVersion\": \"1.5\",\n"
-                                                        + "  \"pdfPath\": \"/tmp/newNoteContent-uuid.pdf\",\n"
-                                                        + "  \"commentsPath\": \"/tmp/comments-uuid.json\",\n"
+                                                        + "  \"skipped\": false,\n"
+                                                        + "  \"fingerprint\": \"3f9a0c1d5e7b2a4c6d8e0f1a2b3c4d5e\",\n"
+                                                        + "  \"pdfSize\": 48213,\n"
                                                         + "  \"annotationsPreserved\": true\n"
                                                         + "}")
                         })),
+                        @ApiResponse(responseCode = "202", description = "Job queued (async=true)", content = @Content(mediaType = "application/json", examples = {
+                                        @ExampleObject(name = "Queued", value = "{\"success\":true,\"jobId\":\"6f1c...\",\"status\":\"queued\",\"processInstanceId\":\"e-Notes-000000000008-process\",\"workitemId\":\"1\",\"submittedAt\":\"2025-06-01T10:00:00Z\",\"stageMs\":{}}")
+                        })),
                         @ApiResponse(responseCode = "400", description = "Invalid parameters"),
-                        @ApiResponse(responseCode = "401", description = "Authentication failed")
+                        @ApiResponse(responseCode = "401", description = "Authentication failed"),
+                        @ApiResponse(responseCode = "429", description = "Job backlog full (async=true), retry after the given seconds")
         })
         @PostMapping(value = "/createpdfnote", produces = MediaType.APPLICATION_JSON_VALUE)
         public ResponseEntity<JsonNode> createPdfNote(
                         @Parameter(description = "Work Item ID", required = true, example = "1") @RequestParam String workitemId,
                         @Parameter(description = "Process Instance ID", required = true, example = "e-Notes-000000000008-process") @RequestParam String processInstanceId,
-                        @Parameter(description = "Optional Session ID from login. If not provided, uses service account.") @RequestHeader(value = "sessionId", required = false) Long providedSessionId) {
+                        @Parameter(description = "Optional Session ID from login. If not provided, uses service account.") @RequestHeader(value = "sessionId", required = false) Long providedSessionId,
+                        @Parameter(description = "Run as a background job and answer 202 with a jobId right away") @RequestParam(defaultValue = "false") boolean async,
+                        @Parameter(description = "Regenerate even if the inputs are unchanged since the last PDF note") @RequestParam(defaultValue = "false") boolean force) {
 
                 if (workitemId == null || workitemId.isEmpty() || processInstanceId == null
                                 || processInstanceId.isEmpty()) {
@@ -216,33 +270,179 @@ public class NoteSheetController {
                                         createError("Missing required parameters: workitemId, processInstanceId"));
                 }
 
-                // Always use a fresh service account session for each request
-                Long sessionId = sessionManager.getFreshServiceSession();
-                if (sessionId == null) {
-                        return ResponseEntity.status(401)
-                                        .body(createError("Failed to establish service session"));
+                if (async) {
+                        try {
+                                PdfNoteJob job = pdfNoteJobService.submit(processInstanceId, workitemId, force);
+                                return ResponseEntity.accepted()
+                                                .location(URI.create("/notesheet/jobs/" + job.getJobId()))
+                                                .body(pdfNoteJobService.toJson(job));
+                        } catch (RejectedExecutionException e) {
+                                return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                                                .header(HttpHeaders.RETRY_AFTER,
+                                                                String.valueOf(pdfNoteJobService.getRetryAfterSeconds()))
+                                                .body(createError("Too many PDF note jobs queued, retry later"));
+                        }
                 }
 
-                JsonNode result = noteSheetService.createPdfNote(processInstanceId, workitemId, sessionId);
-
-                // Check for session expiry and retry once with a fresh session
-                if (!result.path("success").asBoolean(true)) {
-                        String error = result.path("error").asText("").toLowerCase();
-                        String details = result.path("details").asText("").toLowerCase();
-                        if (error.contains("invalid session") || error.contains("401") ||
-                            details.contains("invalid session") || details.contains("401")) {
-                                // Invalidate cached session and retry
-                                sessionManager.invalidateSessionById(sessionId);
-                                sessionId = sessionManager.getServiceSession();
-                                if (sessionId != null) {
-                                        result = noteSheetService.createPdfNote(processInstanceId, workitemId, sessionId);
-                                }
-                        }
+                // Fresh service account session per request, renewed once if it turns out invalid
+                JsonNode result = pdfNoteJobService.createPdfNoteWithServiceSession(processInstanceId, workitemId,
+                                force, stage -> {
+                                });
+                if (PdfNoteJobService.NO_SERVICE_SESSION.equals(result.path("error").asText(null))) {
+                        return ResponseEntity.status(401).body(result);
                 }
 
                 return ResponseEntity.ok(result);
         }
 
+        @Operation(summary = "Get PDF Note Job", description = "Status of a createpdfnote job started with async=true: "
+                        + "queued, running (with the current stage), succeeded or failed, the milliseconds spent in each stage "
+                        + "(original, comments, notesheet, documents, fingerprint, download, render, checkin, annotations) and, once finished, "
+                        + "the createpdfnote result. Finished jobs are kept for notesheet.jobs.retention.ms.")
+        @ApiResponses(value = {
+                        @ApiResponse(responseCode = "200", description = "Job status", content = @Content(mediaType = "application/json", examples = {
+                                        @ExampleObject(name = "Succeeded", value = "{\n"
+                                                        + "  \"success\": true,\n"
+                                                        + "  \"jobId\": \"6f1c...\",\n"
+                                                        + "  \"status\": \"succeeded\",\n"
+                                                        + "  \"queuedMs\": 12,\n"
+                                                        + "  \"stageMs\": {\"original\": 310, \"comments\": 95, \"notesheet\": 40, \"documents\": 120, \"render\": 260, \"checkin\": 880, \"annotations\": 150},\n"
+                                                        + "  \"durationMs\": 1855,\n"
+                                                        + "  \"result\": {\"success\": true, \"newVersion\": \"1.5\"}\n"
+                                                        + "}")
+                        })),
+                        @ApiResponse(responseCode = "404", description = "Unknown job, or its result has expired")
+        })
+        @GetMapping(value = "/jobs/{jobId}", produces = MediaType.APPLICATION_JSON_VALUE)
+        public ResponseEntity<JsonNode> getPdfNoteJob(
+                        @Parameter(description = "Job ID returned by createpdfnote?async=true", required = true) @PathVariable String jobId) {
+
+                PdfNoteJob job = pdfNoteJobService.getJob(jobId);
+                if (job == null) {
+                        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(createError("Job not found: " + jobId));
+                }
+                return ResponseEntity.ok(pdfNoteJobService.toJson(job));
+        }
+
+        @Operation(summary = "Bulk Create PDF Notes", description = "Regenerates the PDF notes of many work items in the background, "
+                        + "e.g. after a template change. Takes either a list of work items or a queueId (optionally narrowed to one "
+                        + "activity) and runs createpdfnote for each with the shared service account session. A queue's items "
+                        + "are listed with the caller's session when the job is submitted. At most "
+                        + "`parallelism` items run at a time (capped by notesheet.bulk.max.parallelism) and item starts are spaced "
+                        + "by notesheet.bulk.min.interval.ms. Answers 202 with a jobId to poll at /notesheet/bulkjobs/{jobId}; "
+                        + "bulk jobs run one at a time and 429 with Retry-After is returned when the backlog is full. "
+                        + "The caller's sessionId must be valid and a queueId must be one of the caller's queues.")
+        @ApiResponses(value = {
+                        @ApiResponse(responseCode = "202", description = "Bulk job queued", content = @Content(mediaType = "application/json", examples = {
+                                        @ExampleObject(name = "Queued", value = "{\"success\":true,\"jobId\":\"9a2e...\",\"status\":\"queued\",\"selector\":\"queue 12\",\"parallelism\":2,\"total\":0,\"completed\":0,\"succeeded\":0,\"failed\":0,\"percent\":0,\"submittedAt\":\"2025-06-01T10:00:00Z\"}")
+                        })),
+                        @ApiResponse(responseCode = "400", description = "Neither or both of items and queueId, or invalid items"),
+                        @ApiResponse(responseCode = "401", description = "Missing or invalid sessionId"),
+                        @ApiResponse(responseCode = "403", description = "queueId is not one of the caller's queues"),
+                        @ApiResponse(responseCode = "502", description = "The queue's work items could not be fetched"),
+                        @ApiResponse(responseCode = "429", description = "Bulk backlog full, retry after the given seconds")
+        })
+        @PostMapping(value = "/bulkcreatepdfnote", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+        public ResponseEntity<JsonNode> bulkCreatePdfNote(
+                        @Parameter(description = "Session ID from login", required = true) @RequestHeader(value = "sessionId", required = false) Long sessionId,
+                        @io.swagger.v3.oas.annotations.parameters.RequestBody(description = "Work items or queue selector, and parallelism", required = true) @RequestBody PdfNoteBulkRequest request) {
+
+                String error = request.validate(pdfNoteBulkService.getMaxItems());
+                if (error != null) {
+                        return ResponseEntity.badRequest().body(createError(error));
+                }
+
+                ResponseEntity<JsonNode> denied = checkQueueAccess(sessionId, request.getQueueId());
+                if (denied != null) {
+                        return denied;
+                }
+
+                // A queue is listed as the caller, so the job covers the items the caller can see
+                List<SupportingDocsBatchRequest.Item> items = request.getItems();
+                if (request.getQueueId() != null) {
+                        items = pdfNoteBulkService.resolveQueue(request.getQueueId(), request.getActivityName(),
+                                        sessionId);
+                        if (items == null) {
+                                return ResponseEntity.status(HttpStatus.BAD_GATEWAY).body(createError(
+                                                "Failed to fetch work items of queue " + request.getQueueId()));
+                        }
+                }
+
+                try {
+                        PdfNoteBulkJob job = pdfNoteBulkService.submit(request, items);
+                        return ResponseEntity.accepted()
+                                        .location(URI.create("/notesheet/bulkjobs/" + job.getJobId()))
+                                        .body(pdfNoteBulkService.toJson(job, false));
+                } catch (RejectedExecutionException e) {
+                        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                                        .header(HttpHeaders.RETRY_AFTER, String.valueOf(pdfNoteBulkService.getRetryAfterSeconds()))
+                                        .body(createError("Too many bulk PDF note jobs queued, retry later"));
+                }
+        }
+
+        @Operation(summary = "Get Bulk PDF Note Job", description = "Progress of a bulkcreatepdfnote job: status (queued, running, "
+                        + "completed, failed), item counts, percent done and the result of every finished item "
+                        + "(processInstanceId, workitemId, success, newVersion or error, durationMs).")
+        @ApiResponses(value = {
+                        @ApiResponse(responseCode = "200", description = "Job progress", content = @Content(mediaType = "application/json", examples = {
+                                        @ExampleObject(name = "Running", value = "{\n"
+                                                        + "  \"success\": true,\n"
+                                                        + "  \"jobId\": \"9a2e...\",\n"
+                                                        + "  \"status\": \"running\",\n"
+                                                        + "  \"total\": 240,\n"
+                                                        + "  \"completed\": 61,\n"
+                                                        + "  \"succeeded\": 60,\n"
+                                                        + "  \"failed\": 1,\n"
+                                                        + "  \"percent\": 25,\n"
+                                                        + "  \"items\": [{\"processInstanceId\": \"e-Notes-000000000008-process\", \"workitemId\": \"1\", \"success\": true, \"newVersion\": \"1.6\", \"durationMs\": 1910}]\n"
+                                                        + "}")
+                        })),
+                        @ApiResponse(responseCode = "401", description = "Missing or invalid sessionId"),
+                        @ApiResponse(responseCode = "403", description = "The job's queue is not one of the caller's queues"),
+                        @ApiResponse(responseCode = "404", description = "Unknown job, or its result has expired")
+        })
+        @GetMapping(value = "/bulkjobs/{jobId}", produces = MediaType.APPLICATION_JSON_VALUE)
+        public ResponseEntity<JsonNode> getBulkPdfNoteJob(
+                        @Parameter(description = "Session ID from login", required = true) @RequestHeader(value = "sessionId", required = false) Long sessionId,
+                        @Parameter(description = "Job ID returned by bulkcreatepdfnote", required = true) @PathVariable String jobId,
+                        @Parameter(description = "Include the results of the finished items") @RequestParam(defaultValue = "true") boolean includeItems) {
+
+                PdfNoteBulkJob job = pdfNoteBulkService.getJob(jobId);
+                if (job == null) {
+                        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(createError("Job not found: " + jobId));
+                }
+
+                ResponseEntity<JsonNode> denied = checkQueueAccess(sessionId, job.getQueueId());
+                if (denied != null) {
+                        return denied;
+                }
+                return ResponseEntity.ok(pdfNoteBulkService.toJson(job, includeItems));
+        }
+
+        /**
+         * Checks that the caller's session is valid and, if a queue is given,
+         * that it is one of the caller's queues. The queue is then listed with
+         * the caller's session; only the bulk items run with the service
+         * account session.
+         *
+         * @return The 401/403 response to send, or null if access is granted
+         */
+        private ResponseEntity<JsonNode> checkQueueAccess(Long sessionId, Integer queueId) {
+                if (sessionId == null) {
+                        return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(createError("Missing sessionId"));
+                }
+                JsonNode queuesResponse = myQueueService.getUserQueues(sessionId);
+                if (!queuesResponse.path("success").asBoolean(false)) {
+                        return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(createError(
+                                        "Invalid session: " + queuesResponse.path("error").asText()));
+                }
+                if (queueId != null && MyQueueService.findQueue(queuesResponse, queueId) == null) {
+                        return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                                        .body(createError("Queue " + queueId + " is not accessible"));
+                }
+                return null;
+        }
+
         @Operation(summary = "Download Document with Annotations", description = "Downloads a document with all annotations burned into the PDF. "
                         + "This renders OmniDocs annotations (hyperlinks, lines, stamps, etc.) directly onto the PDF for offline viewing.")
         @ApiResponses(value = {
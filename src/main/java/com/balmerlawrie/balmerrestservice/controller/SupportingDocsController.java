@@ -1,6 +1,10 @@
 package com.balmerlawrie.balmerrestservice.controller;
 
+import com.balmerlawrie.balmerrestservice.dto.SupportingDocsBatchRequest;
+import com.balmerlawrie.balmerrestservice.model.SupportingDocument;
+import com.balmerlawrie.balmerrestservice.service.DocumentPreviewService;
 import com.balmerlawrie.balmerrestservice.service.SupportingDocsService;
+import com.balmerlawrie.balmerrestservice.util.ETags;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
@@ -12,9 +16,16 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.nio.file.Files;
 
 /**
  * Controller for supporting documents operations.
@@ -28,13 +39,21 @@ public class SupportingDocsController {
     @Autowired
     private SupportingDocsService supportingDocsService;
 
+    @Autowired
+    private DocumentPreviewService documentPreviewService;
+
+    private static final int DEFAULT_PAGE_SIZE = 100;
+
     private final ObjectMapper mapper = new ObjectMapper();
 
     @Operation(
         summary = "List Supporting Documents",
         description = "Retrieves all supporting documents attached to a work item. "
             + "This endpoint fetches the attachment folder associated with the work item "
-            + "and returns a list of all documents in that folder with their metadata."
+            + "and returns a list of all documents in that folder with their metadata. "
+            + "Successful responses carry an ETag; send it back in If-None-Match to get 304 when nothing changed. "
+            + "With pageSize or continuationToken the folder is read one page at a time: the response carries "
+            + "'hasMore' and, while more documents remain, a 'nextToken' to pass as continuationToken."
     )
     @ApiResponses(value = {
         @ApiResponse(
@@ -101,6 +120,10 @@ public class SupportingDocsController {
                 }
             )
         ),
+        @ApiResponse(
+            responseCode = "304",
+            description = "Document list unchanged since the ETag sent in If-None-Match"
+        ),
         @ApiResponse(
             responseCode = "400",
             description = "Invalid or missing parameters",
@@ -149,7 +172,28 @@ public class SupportingDocsController {
                 description = "Session ID from login",
                 required = true
             )
-            @RequestHeader("sessionId") long sessionId) {
+            @RequestHeader("sessionId") long sessionId,
+
+            @Parameter(
+                description = "Documents per page; enables paging (capped by supportingdocs.max.page.size)",
+                example = "100"
+            )
+            @RequestParam(required = false) Integer pageSize,
+
+            @Parameter(
+                description = "nextToken of the previous page"
+            )
+            @RequestParam(required = false) String continuationToken,
+
+            @Parameter(
+                description = "Include the raw OmniDocs response as 'rawResponse' (bypasses the listing cache)"
+            )
+            @RequestParam(defaultValue = "false") boolean debug,
+
+            @Parameter(
+                description = "ETag from a previous response; 304 if the document list is unchanged"
+            )
+            @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
 
         // Validate required parameters
         if (workitemId == null || workitemId.trim().isEmpty()) {
@@ -162,12 +206,244 @@ public class SupportingDocsController {
                     createError("Missing required parameter: processInstanceId"));
         }
 
-        // Call service to get supporting documents
-        JsonNode result = supportingDocsService.getSupportingDocuments(
-                processInstanceId, workitemId, sessionId);
+        if (pageSize != null && pageSize < 1) {
+            return ResponseEntity.badRequest().body(
+                    createError("pageSize must be at least 1"));
+        }
+
+        // Call service to get supporting documents (one page, or the whole folder)
+        JsonNode result;
+        if (pageSize != null || (continuationToken != null && !continuationToken.isEmpty())) {
+            result = supportingDocsService.getSupportingDocumentsPage(processInstanceId, workitemId, sessionId,
+                    pageSize != null ? pageSize : DEFAULT_PAGE_SIZE, continuationToken, debug);
+        } else {
+            result = supportingDocsService.getSupportingDocuments(processInstanceId, workitemId, sessionId, debug);
+        }
+
+        if (!result.path("success").asBoolean(false)) {
+            // Always return 200 OK - check 'success' field for status
+            return ResponseEntity.ok(result);
+        }
+
+        // Unchanged document list: 304 without a body
+        String eTag = supportingDocsService.computeETag(result);
+        if (ETags.matches(ifNoneMatch, eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(eTag)
+                    .cacheControl(CacheControl.noCache().cachePrivate())
+                    .build();
+        }
+
+        return ResponseEntity.ok()
+                .eTag(eTag)
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .body(result);
+    }
+
+    @Operation(
+        summary = "Stream Supporting Documents",
+        description = "Streams all supporting documents of a work item as a single JSON response, for folders "
+            + "too large to list in one call. Pages are read from OmniDocs one after another; the next page is "
+            + "requested while the current one is being sent. The response ends with 'count', 'pages' and "
+            + "'complete'; if a page fails mid-stream, 'complete' is false and 'error' is set."
+    )
+    @ApiResponses(value = {
+        @ApiResponse(
+            responseCode = "200",
+            description = "Document list stream. Check 'success' and 'complete'.",
+            content = @Content(
+                mediaType = "application/json",
+                examples = @ExampleObject(
+                    value = "{\n"
+                        + "  \"success\": true,\n"
+                        + "  \"folderId\": \"1234\",\n"
+                        + "  \"processInstanceId\": \"e-Notes-000000000008-process\",\n"
+                        + "  \"workitemId\": \"1\",\n"
+                        + "  \"documents\": [ ... ],\n"
+                        + "  \"count\": 2500,\n"
+                        + "  \"pages\": 5,\n"
+                        + "  \"complete\": true\n"
+                        + "}"
+                )
+            )
+        ),
+        @ApiResponse(responseCode = "400", description = "Invalid or missing parameters")
+    })
+    @GetMapping(value = "/list/stream", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamSupportingDocuments(
+            @Parameter(description = "Work Item ID", required = true, example = "1")
+            @RequestParam String workitemId,
+
+            @Parameter(description = "Process Instance ID", required = true, example = "e-Notes-000000000008-process")
+            @RequestParam String processInstanceId,
+
+            @Parameter(description = "Session ID from login", required = true)
+            @RequestHeader("sessionId") long sessionId) {
+
+        if (workitemId == null || workitemId.trim().isEmpty()
+                || processInstanceId == null || processInstanceId.trim().isEmpty()) {
+            JsonNode error = createError("Missing required parameter: "
+                    + (workitemId == null || workitemId.trim().isEmpty() ? "workitemId" : "processInstanceId"));
+            return ResponseEntity.badRequest()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(out -> mapper.writeValue(out, error));
+        }
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(out -> supportingDocsService.streamSupportingDocuments(
+                        processInstanceId, workitemId, sessionId, out));
+    }
+
+    @Operation(
+        summary = "List Supporting Documents of Several Work Items",
+        description = "Lists the supporting documents of a batch of work items in one call, e.g. for attachment "
+            + "counts on every row of a queue. Work items are listed concurrently with bounded parallelism and "
+            + "share the folder and listing caches of /supportingdocs/list. Results are returned in request "
+            + "order, each with the fields of a /supportingdocs/list response; with countsOnly the documents "
+            + "are left out."
+    )
+    @ApiResponses(value = {
+        @ApiResponse(
+            responseCode = "200",
+            description = "Batch processed. Each result has its own 'success'; 'failed' counts the failures.",
+            content = @Content(
+                mediaType = "application/json",
+                examples = @ExampleObject(
+                    name = "Counts Only",
+                    value = "{\n"
+                        + "  \"success\": true,\n"
+                        + "  \"results\": [\n"
+                        + "    {\n"
+                        + "      \"processInstanceId\": \"e-Notes-000000000008-process\",\n"
+                        + "      \"workitemId\": \"1\",\n"
+                        + "      \"success\": true,\n"
+                        + "      \"folderId\": \"1234\",\n"
+                        + "      \"count\": 3\n"
+                        + "    },\n"
+                        + "    {\n"
+                        + "      \"processInstanceId\": \"e-Notes-000000000009-process\",\n"
+                        + "      \"workitemId\": \"1\",\n"
+                        + "      \"success\": true,\n"
+                        + "      \"found\": false,\n"
+                        + "      \"message\": \"No AttachmentFolderId found in work item attributes\",\n"
+                        + "      \"count\": 0\n"
+                        + "    }\n"
+                        + "  ],\n"
+                        + "  \"count\": 2,\n"
+                        + "  \"failed\": 0\n"
+                        + "}"
+                )
+            )
+        ),
+        @ApiResponse(responseCode = "400", description = "Empty, oversized or invalid batch")
+    })
+    @PostMapping(value = "/batch", consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<JsonNode> listSupportingDocumentsBatch(
+            @io.swagger.v3.oas.annotations.parameters.RequestBody(
+                description = "Work items and options",
+                required = true
+            )
+            @RequestBody SupportingDocsBatchRequest request,
+
+            @Parameter(description = "Session ID from login", required = true)
+            @RequestHeader("sessionId") long sessionId) {
+
+        String error = request.validate(supportingDocsService.getBatchMaxItems());
+        if (error != null) {
+            return ResponseEntity.badRequest().body(createError(error));
+        }
+
+        return ResponseEntity.ok(supportingDocsService.getSupportingDocumentsBatch(
+                request.getItems(), request.isCountsOnly(), sessionId));
+    }
+
+    @Operation(
+        summary = "Preview Supporting Document",
+        description = "Returns a low-resolution PNG of the first page of a supporting document (PDFs and images), "
+            + "rendered once per document version and cached on the server. The document must be in the "
+            + "attachment folder of the given work item. If rendering takes longer than a few seconds the "
+            + "response is 202 with Retry-After; documents without a preview return 404."
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "First-page preview",
+            content = @Content(mediaType = "image/png")),
+        @ApiResponse(responseCode = "202", description = "Preview is being rendered, retry after the given seconds"),
+        @ApiResponse(responseCode = "304", description = "Preview unchanged since the ETag sent in If-None-Match"),
+        @ApiResponse(responseCode = "404", description = "Document not in the work item's folder, or no preview "
+            + "available for its format"),
+        @ApiResponse(responseCode = "503", description = "Preview renderer busy, retry after the given seconds")
+    })
+    @GetMapping(value = "/preview", produces = { MediaType.IMAGE_PNG_VALUE, MediaType.APPLICATION_JSON_VALUE })
+    public ResponseEntity<?> previewSupportingDocument(
+            @Parameter(description = "Work Item ID", required = true, example = "1")
+            @RequestParam String workitemId,
+
+            @Parameter(description = "Process Instance ID", required = true, example = "e-Notes-000000000008-process")
+            @RequestParam String processInstanceId,
+
+            @Parameter(description = "Document Index from the document list", required = true, example = "1670")
+            @RequestParam String documentIndex,
+
+            @Parameter(description = "Session ID from login", required = true)
+            @RequestHeader("sessionId") long sessionId,
+
+            @Parameter(description = "ETag from a previous response; 304 if the preview is unchanged")
+            @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
+
+        SupportingDocument document = supportingDocsService.findDocument(
+                processInstanceId, workitemId, sessionId, documentIndex);
+        if (document == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(createError("Document " + documentIndex + " not found in the work item's folder"));
+        }
+
+        // Previews are keyed by version, so the version identifies the content
+        String eTag = "\"" + documentIndex + "-" + document.getVersionNo() + "\"";
+        if (ETags.matches(ifNoneMatch, eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(eTag)
+                    .cacheControl(CacheControl.noCache().cachePrivate())
+                    .build();
+        }
+
+        DocumentPreviewService.Preview preview = documentPreviewService.getPreview(
+                documentIndex, document.getVersionNo(), sessionId);
+        switch (preview.getStatus()) {
+            case READY:
+                try {
+                    return ResponseEntity.ok()
+                            .eTag(eTag)
+                            .cacheControl(CacheControl.noCache().cachePrivate())
+                            .contentType(MediaType.IMAGE_PNG)
+                            .body(Files.readAllBytes(preview.getFile()));
+                } catch (IOException e) {
+                    // Evicted from the disk cache in the meantime
+                    return retryLater(HttpStatus.ACCEPTED, "Preview is being rendered");
+                }
+            case PENDING:
+                return retryLater(HttpStatus.ACCEPTED, "Preview is being rendered");
+            case BUSY:
+                return retryLater(HttpStatus.SERVICE_UNAVAILABLE, "Preview renderer busy");
+            case UNSUPPORTED:
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(createError("No preview available for this document type"));
+            default:
+                return ResponseEntity.status(HttpStatus.BAD_GATEWAY)
+                        .body(createError("Failed to render preview"));
+        }
+    }
 
-        // Always return 200 OK - check 'success' field for status
-        return ResponseEntity.ok(result);
+    private ResponseEntity<JsonNode> retryLater(HttpStatus status, String message) {
+        ObjectNode body = mapper.createObjectNode();
+        body.put("success", false);
+        body.put("status", status == HttpStatus.ACCEPTED ? "pending" : "busy");
+        body.put("message", message);
+        return ResponseEntity.status(status)
+                .header(HttpHeaders.RETRY_AFTER, status == HttpStatus.ACCEPTED ? "1" : "5")
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body);
     }
 
     /**
@@ -0,0 +1,110 @@
+package com.balmerlawrie.balmerrestservice.controller;
+
+import com.balmerlawrie.balmerrestservice.service.WorkItemDetailService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.ExampleObject;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Set;
+
+/**
+ * Controller for the aggregated work item detail used by the mobile work item screen.
+ */
+@RestController
+@RequestMapping("/workitem")
+@Tag(name = "Work Item", description = "Aggregated work item detail")
+public class WorkItemDetailController {
+
+    @Autowired
+    private WorkItemDetailService workItemDetailService;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Operation(
+        summary = "Get Work Item Detail",
+        description = "Returns the notesheet, comments, supporting documents and notesheet annotation groups of a "
+            + "work item in one response, replacing separate calls to /notesheet/getnotesheet, "
+            + "/notesheet/getcomments, /supportingdocs/list and /notesheet/getannotations. The work item "
+            + "attributes are fetched once and the OmniDocs calls run concurrently. Each section carries its own "
+            + "'status' (ok, not_found, error, timeout or skipped); 'complete' is false if any section failed."
+    )
+    @ApiResponses(value = {
+        @ApiResponse(
+            responseCode = "200",
+            description = "Request processed. Check 'success', 'found' and each section's 'status'.",
+            content = @Content(
+                mediaType = "application/json",
+                examples = @ExampleObject(
+                    value = "{\n"
+                        + "  \"success\": true,\n"
+                        + "  \"found\": true,\n"
+                        + "  \"processInstanceId\": \"e-Notes-000000000008-process\",\n"
+                        + "  \"workitemId\": \"1\",\n"
+                        + "  \"notesheet\": { \"status\": \"ok\", \"documentIndex\": \"1664\", "
+                        + "\"folderIndex\": \"2325\", \"versionNo\": \"1.0\" },\n"
+                        + "  \"comments\": { \"status\": \"ok\", \"comments\": [ ... ], \"count\": 2 },\n"
+                        + "  \"documents\": { \"status\": \"ok\", \"folderId\": \"1234\", "
+                        + "\"documents\": [ ... ], \"count\": 3 },\n"
+                        + "  \"annotations\": { \"status\": \"error\", \"error\": \"Failed to get annotations\" },\n"
+                        + "  \"complete\": false,\n"
+                        + "  \"elapsedMs\": 412\n"
+                        + "}"
+                )
+            )
+        ),
+        @ApiResponse(responseCode = "400", description = "Invalid or missing parameters")
+    })
+    @GetMapping(value = "/detail", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<JsonNode> getWorkItemDetail(
+            @Parameter(description = "Work Item ID", required = true, example = "1")
+            @RequestParam String workitemId,
+
+            @Parameter(description = "Process Instance ID", required = true, example = "e-Notes-000000000008-process")
+            @RequestParam String processInstanceId,
+
+            @Parameter(description = "Comma-separated sections to include: notesheet, comments, documents, "
+                + "annotations (default: all)", example = "notesheet,documents")
+            @RequestParam(required = false) String sections,
+
+            @Parameter(description = "Session ID from login", required = true)
+            @RequestHeader("sessionId") long sessionId) {
+
+        if (workitemId == null || workitemId.trim().isEmpty()
+                || processInstanceId == null || processInstanceId.trim().isEmpty()) {
+            return ResponseEntity.badRequest().body(
+                    createError("Missing required parameters: workitemId, processInstanceId"));
+        }
+
+        Set<String> requested = WorkItemDetailService.parseSections(sections);
+        if (requested == null) {
+            return ResponseEntity.badRequest().body(
+                    createError("Unknown section in '" + sections + "'. Valid sections: "
+                            + String.join(", ", WorkItemDetailService.SECTIONS)));
+        }
+
+        // Always return 200 OK - check 'success' and section statuses
+        return ResponseEntity.ok(workItemDetailService.getDetail(processInstanceId, workitemId, sessionId,
+                requested));
+    }
+
+    /**
+     * Creates an error response JSON object.
+     */
+    private JsonNode createError(String message) {
+        ObjectNode error = mapper.createObjectNode();
+        error.put("success", false);
+        error.put("error", message);
+        return error;
+    }
+}
@@ -0,0 +1,102 @@
+package com.balmerlawrie.balmerrestservice.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Request DTO for regenerating the PDF notes of many work items: either an
+ * explicit list of work items or every item of a queue.
+ */
+@Schema(description = "Bulk PDF note regeneration request")
+public class PdfNoteBulkRequest {
+
+    @Schema(description = "Work items to regenerate, processed in this order (leave empty when using queueId)")
+    private List<SupportingDocsBatchRequest.Item> items = new ArrayList<>();
+
+    @Schema(description = "Regenerate every work item of this queue instead of a list", example = "12")
+    private Integer queueId;
+
+    @Schema(description = "With queueId: only items at this activity", example = "Approver")
+    private String activityName;
+
+    @Schema(description = "Items processed at the same time (capped by notesheet.bulk.max.parallelism)", example = "2")
+    private Integer parallelism;
+
+    @Schema(description = "Regenerate items whose inputs are unchanged since their last PDF note", example = "false")
+    private boolean force;
+
+    public List<SupportingDocsBatchRequest.Item> getItems() {
+        return items;
+    }
+
+    public void setItems(List<SupportingDocsBatchRequest.Item> items) {
+        this.items = items;
+    }
+
+    public Integer getQueueId() {
+        return queueId;
+    }
+
+    public void setQueueId(Integer queueId) {
+        this.queueId = queueId;
+    }
+
+    public String getActivityName() {
+        return activityName;
+    }
+
+    public void setActivityName(String activityName) {
+        this.activityName = activityName;
+    }
+
+    public Integer getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(Integer parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public boolean isForce() {
+        return force;
+    }
+
+    public void setForce(boolean force) {
+        this.force = force;
+    }
+
+    /**
+     * Validates the request.
+     *
+     * @param maxItems Largest number of listed items accepted
+     * @return An error message, or null if the request is valid
+     */
+    public String validate(int maxItems) {
+        boolean hasItems = items != null && !items.isEmpty();
+        if (hasItems == (queueId != null)) {
+            return "Provide either items or queueId";
+        }
+        if (parallelism != null && parallelism < 1) {
+            return "parallelism must be at least 1";
+        }
+        if (!hasItems) {
+            return null;
+        }
+        if (items.size() > maxItems) {
+            return "At most " + maxItems + " items per request";
+        }
+        for (int i = 0; i < items.size(); i++) {
+            SupportingDocsBatchRequest.Item item = items.get(i);
+            if (item == null || isBlank(item.getProcessInstanceId()) || isBlank(item.getWorkitemId())) {
+                return "items[" + i + "] needs processInstanceId and workitemId";
+            }
+        }
+        return null;
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.trim().isEmpty();
+    }
+}
@@ -0,0 +1,98 @@
+package com.balmerlawrie.balmerrestservice.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Request DTO for listing the supporting documents of several work items at once.
+ */
+@Schema(description = "Batch supporting documents request")
+public class SupportingDocsBatchRequest {
+
+    @Schema(description = "Work items to list documents for, results are returned in the same order")
+    private List<Item> items = new ArrayList<>();
+
+    @Schema(description = "Return only folderId and count per work item, without the documents", example = "true")
+    private boolean countsOnly;
+
+    public List<Item> getItems() {
+        return items;
+    }
+
+    public void setItems(List<Item> items) {
+        this.items = items;
+    }
+
+    public boolean isCountsOnly() {
+        return countsOnly;
+    }
+
+    public void setCountsOnly(boolean countsOnly) {
+        this.countsOnly = countsOnly;
+    }
+
+    /**
+     * Validates the request.
+     *
+     * @param maxItems Largest number of items accepted
+     * @return An error message, or null if the request is valid
+     */
+    public String validate(int maxItems) {
+        if (items == null || items.isEmpty()) {
+            return "items must not be empty";
+        }
+        if (items.size() > maxItems) {
+            return "At most " + maxItems + " items per request";
+        }
+        for (int i = 0; i < items.size(); i++) {
+            Item item = items.get(i);
+            if (item == null || isBlank(item.getProcessInstanceId()) || isBlank(item.getWorkitemId())) {
+                return "items[" + i + "] needs processInstanceId and workitemId";
+            }
+        }
+        return null;
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.trim().isEmpty();
+    }
+
+    /**
+     * One work item of the batch.
+     */
+    @Schema(description = "Work item reference")
+    public static class Item {
+
+        @Schema(description = "Process Instance ID", example = "e-Notes-000000000008-process")
+        private String processInstanceId;
+
+        @Schema(description = "Work item ID", example = "1")
+        private String workitemId;
+
+        public Item() {
+        }
+
+        public Item(String processInstanceId, String workitemId) {
+            this.processInstanceId = processInstanceId;
+            this.workitemId = workitemId;
+        }
+
+        public String getProcessInstanceId() {
+            return processInstanceId;
+        }
+
+        public void setProcessInstanceId(String processInstanceId) {
+            this.processInstanceId = processInstanceId;
+        }
+
+        public String getWorkitemId() {
+            return workitemId;
+        }
+
+        public void setWorkitemId(String workitemId) {
+            this.workitemId = workitemId;
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package com.balmerlawrie.balmerrestservice.dto;
+
+import com.balmerlawrie.balmerrestservice.model.WorkItem;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Query parameters for filtering, searching, sorting and projecting queue work items.
+ *
+ * Filters on the same field accept comma-separated values (any of them matches);
+ * different filters must all match. Text matches ignore case.
+ */
+@Schema(description = "Work item filter, search, sort and projection parameters")
+public class WorkItemQuery {
+
+    @Schema(description = "Process name(s), comma-separated", example = "NoteSheet")
+    private String processName;
+
+    @Schema(description = "Activity name(s), comma-separated", example = "Approver")
+    private String activityName;
+
+    @Schema(description = "Work item state(s), comma-separated", example = "2")
+    private String status;
+
+    @Schema(description = "Name(s) of the user holding the lock, comma-separated")
+    private String lockedBy;
+
+    @Schema(description = "true = only locked items, false = only unlocked items")
+    private Boolean locked;
+
+    @Schema(description = "URN prefix search (case-insensitive)", example = "BLR/2024")
+    private String urn;
+
+    @Schema(description = "Earliest entryDateTime (inclusive), e.g. 2024-01-01 or 2024-01-01 10:00", example = "2024-01-01")
+    private String entryFrom;
+
+    @Schema(description = "Latest entryDateTime (inclusive); a date covers the whole day", example = "2024-01-31")
+    private String entryTo;
+
+    @Schema(description = "Sort field, prefix with '-' for descending. Default: My Queue first, then process name", example = "-entryDateTime")
+    private String sort;
+
+    @Schema(description = "Comma-separated fields to return. Default: all fields", example = "urn,activityName,entryDateTime,lockedBy")
+    private String fields;
+
+    public WorkItemQuery() {
+    }
+
+    /**
+     * Checks the sort and projection fields.
+     *
+     * @return An error message, or null if the query is valid
+     */
+    public String validate() {
+        for (String field : getFieldList()) {
+            if (!WorkItem.FIELDS.contains(field)) {
+                return "Unknown field '" + field + "'. Valid fields: " + String.join(",", WorkItem.FIELDS);
+            }
+        }
+        String sortField = getSortField();
+        if (sortField != null && !WorkItem.FIELDS.contains(sortField)) {
+            return "Unknown sort field '" + sortField + "'. Valid fields: " + String.join(",", WorkItem.FIELDS);
+        }
+        return null;
+    }
+
+    /**
+     * Whether any filter or search criterion is set.
+     */
+    public boolean hasFilters() {
+        return !split(processName).isEmpty()
+                || !split(activityName).isEmpty()
+                || !split(status).isEmpty()
+                || !split(lockedBy).isEmpty()
+                || locked != null
+                || !isBlank(urn)
+                || !isBlank(entryFrom)
+                || !isBlank(entryTo);
+    }
+
+    /**
+     * Whether an explicit sort order was requested.
+     */
+    public boolean hasSort() {
+        return getSortField() != null;
+    }
+
+    /**
+     * Whether the query changes anything about the default response.
+     */
+    public boolean isEmpty() {
+        return !hasFilters() && !hasSort() && getFieldList().isEmpty();
+    }
+
+    /**
+     * Builds the filter for all criteria of the query: exact fields match any
+     * of their values ignoring case, urn is a case-insensitive prefix and
+     * entryFrom/entryTo an inclusive range over entryDateTime (an upper bound
+     * like "2024-01-31" covers that whole day; items without an entry date
+     * never match a range).
+     *
+     * @return The filter, matching every item if no criterion is set
+     */
+    public Predicate<WorkItem> toFilter() {
+        Set<String> processNames = lowerCase(getProcessNames());
+        Set<String> activityNames = lowerCase(getActivityNames());
+        Set<String> statuses = lowerCase(getStatuses());
+        Set<String> lockedByNames = lowerCase(getLockedByNames());
+        Boolean lockedFilter = locked;
+        String urnPrefix = isBlank(urn) ? null : urn.trim().toLowerCase(Locale.ROOT);
+        String from = isBlank(entryFrom) ? null : entryFrom.trim();
+        String to = isBlank(entryTo) ? null : entryTo.trim() + Character.MAX_VALUE;
+
+        return item -> anyOf(processNames, item.getProcessName())
+                && anyOf(activityNames, item.getActivityName())
+                && anyOf(statuses, item.getStatus())
+                && anyOf(lockedByNames, item.getLockedBy())
+                && (lockedFilter == null || lockedFilter == item.isLocked())
+                && (urnPrefix == null || item.getUrn().toLowerCase(Locale.ROOT).startsWith(urnPrefix))
+                && inRange(item.getEntryDateTime(), from, to);
+    }
+
+    /**
+     * Gets the comparator for the requested sort. Ties keep their current order.
+     *
+     * @return The comparator, or null if no sort was requested
+     */
+    public Comparator<WorkItem> getComparator() {
+        String sortField = getSortField();
+        if (sortField == null) {
+            return null;
+        }
+        Comparator<WorkItem> comparator = Comparator.comparing(item -> item.get(sortField),
+                String.CASE_INSENSITIVE_ORDER);
+        return sort.trim().startsWith("-") ? comparator.reversed() : comparator;
+    }
+
+    /**
+     * Gets the projected field names, or all fields if no projection was requested.
+     */
+    public List<String> getProjection() {
+        List<String> list = getFieldList();
+        return list.isEmpty() ? WorkItem.FIELDS : list;
+    }
+
+    public List<String> getProcessNames() {
+        return split(processName);
+    }
+
+    public List<String> getActivityNames() {
+        return split(activityName);
+    }
+
+    public List<String> getStatuses() {
+        return split(status);
+    }
+
+    public List<String> getLockedByNames() {
+        return split(lockedBy);
+    }
+
+    // --- Bound request parameters ---
+
+    public String getProcessName() {
+        return processName;
+    }
+
+    public void setProcessName(String processName) {
+        this.processName = processName;
+    }
+
+    public String getActivityName() {
+        return activityName;
+    }
+
+    public void setActivityName(String activityName) {
+        this.activityName = activityName;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public String getLockedBy() {
+        return lockedBy;
+    }
+
+    public void setLockedBy(String lockedBy) {
+        this.lockedBy = lockedBy;
+    }
+
+    public Boolean getLocked() {
+        return locked;
+    }
+
+    public void setLocked(Boolean locked) {
+        this.locked = locked;
+    }
+
+    public String getUrn() {
+        return urn;
+    }
+
+    public void setUrn(String urn) {
+        this.urn = urn;
+    }
+
+    public String getEntryFrom() {
+        return entryFrom;
+    }
+
+    public void setEntryFrom(String entryFrom) {
+        this.entryFrom = entryFrom;
+    }
+
+    public String getEntryTo() {
+        return entryTo;
+    }
+
+    public void setEntryTo(String entryTo) {
+        this.entryTo = entryTo;
+    }
+
+    public String getSort() {
+        return sort;
+    }
+
+    public void setSort(String sort) {
+        this.sort = sort;
+    }
+
+    public String getFields() {
+        return fields;
+    }
+
+    public void setFields(String fields) {
+        this.fields = fields;
+    }
+
+    // --- Helper Methods ---
+
+    private String getSortField() {
+        if (isBlank(sort)) {
+            return null;
+        }
+        String field = sort.trim();
+        if (field.startsWith("-") || field.startsWith("+")) {
+            field = field.substring(1).trim();
+        }
+        return field.isEmpty() ? null : field;
+    }
+
+    private List<String> getFieldList() {
+        return split(fields);
+    }
+
+    private static Set<String> lowerCase(List<String> values) {
+        Set<String> result = new HashSet<>();
+        for (String value : values) {
+            result.add(value.toLowerCase(Locale.ROOT));
+        }
+        return result;
+    }
+
+    private static boolean anyOf(Set<String> values, String value) {
+        return values.isEmpty() || values.contains(value.toLowerCase(Locale.ROOT));
+    }
+
+    private static boolean inRange(String value, String from, String to) {
+        if (from == null && to == null) {
+            return true;
+        }
+        return !value.isEmpty()
+                && (from == null || value.compareTo(from) >= 0)
+                && (to == null || value.compareTo(to) <= 0);
+    }
+
+    private static List<String> split(String value) {
+        if (isBlank(value)) {
+            return Collections.emptyList();
+        }
+        List<String> values = new ArrayList<>();
+        for (String part : value.split(",")) {
+            String trimmed = part.trim();
+            if (!trimmed.isEmpty() && !values.contains(trimmed)) {
+                values.add(trimmed);
+            }
+        }
+        return values;
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.trim().isEmpty();
+    }
+}
@@ -0,0 +1,162 @@
+package com.balmerlawrie.balmerrestservice.model;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A bulk createpdfnote run over many work items: its state, progress counts
+ * and the result of every item, in item order.
+ *
+ * Updated by the workers and read by status requests, so the state changes
+ * are synchronized.
+ */
+public class PdfNoteBulkJob {
+
+    public enum Status {
+        QUEUED, RUNNING, COMPLETED, FAILED
+    }
+
+    private final String jobId;
+    private final String selector;
+    private final Integer queueId;
+    private final int parallelism;
+    private final Instant submittedAt;
+
+    private Status status = Status.QUEUED;
+    private Instant startedAt;
+    private Instant finishedAt;
+    private String error;
+    private List<JsonNode> results = Collections.emptyList();
+    private int completed;
+    private int succeeded;
+    private int failed;
+
+    /**
+     * @param selector    What was selected, e.g. "items" or "queue 12"
+     * @param queueId     Queue the items were taken from, or null for listed items
+     * @param parallelism Items processed at the same time
+     */
+    public PdfNoteBulkJob(String jobId, String selector, Integer queueId, int parallelism) {
+        this.jobId = jobId;
+        this.selector = selector;
+        this.queueId = queueId;
+        this.parallelism = parallelism;
+        this.submittedAt = Instant.now();
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public String getSelector() {
+        return selector;
+    }
+
+    public Integer getQueueId() {
+        return queueId;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public Instant getSubmittedAt() {
+        return submittedAt;
+    }
+
+    public synchronized Status getStatus() {
+        return status;
+    }
+
+    public synchronized Instant getStartedAt() {
+        return startedAt;
+    }
+
+    public synchronized Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    public synchronized String getError() {
+        return error;
+    }
+
+    public synchronized int getTotal() {
+        return results.size();
+    }
+
+    public synchronized int getCompleted() {
+        return completed;
+    }
+
+    public synchronized int getSucceeded() {
+        return succeeded;
+    }
+
+    public synchronized int getFailed() {
+        return failed;
+    }
+
+    /**
+     * Item results in item order; null for items not finished yet.
+     */
+    public synchronized List<JsonNode> getResults() {
+        return new ArrayList<>(results);
+    }
+
+    public synchronized boolean isFinished() {
+        return status == Status.COMPLETED || status == Status.FAILED;
+    }
+
+    /**
+     * Marks the job as running over the given number of items.
+     */
+    public synchronized void start(int total) {
+        status = Status.RUNNING;
+        startedAt = Instant.now();
+        results = new ArrayList<>(Collections.nCopies(total, null));
+    }
+
+    /**
+     * Records the result of the item at the given position.
+     */
+    public synchronized void itemFinished(int index, JsonNode result, boolean success) {
+        results.set(index, result);
+        completed++;
+        if (success) {
+            succeeded++;
+        } else {
+            failed++;
+        }
+    }
+
+    /**
+     * Marks the job as done; item failures do not fail the job.
+     */
+    public synchronized void complete() {
+        status = Status.COMPLETED;
+        finishedAt = Instant.now();
+    }
+
+    /**
+     * Marks the job as failed before or while processing its items.
+     */
+    public synchronized void fail(String error) {
+        this.error = error;
+        status = Status.FAILED;
+        finishedAt = Instant.now();
+    }
+
+    @Override
+    public String toString() {
+        return "PdfNoteBulkJob{" +
+                "jobId='" + jobId + '\'' +
+                ", selector='" + selector + '\'' +
+                ", status=" + getStatus() +
+                ", completed=" + getCompleted() + "/" + getTotal() +
+                '}';
+    }
+}
@@ -0,0 +1,133 @@
+package com.balmerlawrie.balmerrestservice.model;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A createpdfnote run in the background: its state, the time spent in each
+ * pipeline stage and, once finished, the createpdfnote result.
+ *
+ * Updated by the worker running the job and read by status requests, so the
+ * state changes are synchronized.
+ */
+public class PdfNoteJob {
+
+    public enum Status {
+        QUEUED, RUNNING, SUCCEEDED, FAILED
+    }
+
+    private final String jobId;
+    private final String processInstanceId;
+    private final String workitemId;
+    private final Instant submittedAt;
+
+    private Status status = Status.QUEUED;
+    private Instant startedAt;
+    private Instant finishedAt;
+    private String currentStage;
+    private long stageStartMillis;
+    private final Map<String, Long> stageMillis = new LinkedHashMap<>();
+    private JsonNode result;
+
+    public PdfNoteJob(String jobId, String processInstanceId, String workitemId) {
+        this.jobId = jobId;
+        this.processInstanceId = processInstanceId;
+        this.workitemId = workitemId;
+        this.submittedAt = Instant.now();
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public String getProcessInstanceId() {
+        return processInstanceId;
+    }
+
+    public String getWorkitemId() {
+        return workitemId;
+    }
+
+    public Instant getSubmittedAt() {
+        return submittedAt;
+    }
+
+    public synchronized Status getStatus() {
+        return status;
+    }
+
+    public synchronized Instant getStartedAt() {
+        return startedAt;
+    }
+
+    public synchronized Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    public synchronized String getCurrentStage() {
+        return currentStage;
+    }
+
+    /**
+     * Milliseconds spent in each completed stage, in pipeline order.
+     */
+    public synchronized Map<String, Long> getStageMillis() {
+        return new LinkedHashMap<>(stageMillis);
+    }
+
+    public synchronized JsonNode getResult() {
+        return result;
+    }
+
+    public synchronized boolean isFinished() {
+        return status == Status.SUCCEEDED || status == Status.FAILED;
+    }
+
+    /**
+     * Marks the job as picked up by a worker.
+     */
+    public synchronized void start() {
+        status = Status.RUNNING;
+        startedAt = Instant.now();
+    }
+
+    /**
+     * Closes the timing of the current stage and starts the given one.
+     */
+    public synchronized void enterStage(String stage) {
+        long now = System.currentTimeMillis();
+        closeStage(now);
+        currentStage = stage;
+        stageStartMillis = now;
+    }
+
+    /**
+     * Records the createpdfnote result; the job succeeded if the result says so.
+     */
+    public synchronized void finish(JsonNode result) {
+        closeStage(System.currentTimeMillis());
+        currentStage = null;
+        this.result = result;
+        status = result != null && result.path("success").asBoolean(false) ? Status.SUCCEEDED : Status.FAILED;
+        finishedAt = Instant.now();
+    }
+
+    private void closeStage(long now) {
+        if (currentStage != null) {
+            stageMillis.merge(currentStage, now - stageStartMillis, Long::sum);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PdfNoteJob{" +
+                "jobId='" + jobId + '\'' +
+                ", processInstanceId='" + processInstanceId + '\'' +
+                ", workitemId='" + workitemId + '\'' +
+                ", status=" + getStatus() +
+                '}';
+    }
+}
@@ -0,0 +1,104 @@
+package com.balmerlawrie.balmerrestservice.model;
+
+import com.balmerlawrie.balmerrestservice.util.ETags;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A complete, ready-to-write queue endpoint response: the selected work items
+ * in output order, the projected fields and the summary counts.
+ *
+ * The ETag is a hash of exactly what {@link #writeTo(JsonGenerator)} writes,
+ * computed from the values rather than the serialized body.
+ */
+public final class QueueResponse {
+
+    private final List<WorkItem> workItems;
+    private final List<String> projection;
+    private final Map<String, Integer> counts;
+    private final String message;
+    private final String eTag;
+
+    /**
+     * @param workItems  The items to write, in output order
+     * @param projection Fields to write per item, or null for all fields
+     * @param counts     Count fields written after the items, in order
+     * @param message    Optional message, may be null
+     */
+    public QueueResponse(List<WorkItem> workItems, List<String> projection, Map<String, Integer> counts,
+            String message) {
+        this.workItems = Collections.unmodifiableList(workItems);
+        this.projection = projection;
+        this.counts = Collections.unmodifiableMap(new LinkedHashMap<>(counts));
+        this.message = message;
+        this.eTag = computeETag();
+    }
+
+    public List<WorkItem> getWorkItems() {
+        return workItems;
+    }
+
+    public Map<String, Integer> getCounts() {
+        return counts;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * Gets the quoted strong ETag of this response.
+     */
+    public String getETag() {
+        return eTag;
+    }
+
+    /**
+     * Writes the response: { success, workItems: [...], counts...[, message] }
+     *
+     * @param gen The generator to write to
+     */
+    public void writeTo(JsonGenerator gen) throws IOException {
+        gen.writeStartObject();
+        gen.writeBooleanField("success", true);
+        gen.writeArrayFieldStart("workItems");
+        for (WorkItem item : workItems) {
+            if (projection == null) {
+                item.writeTo(gen);
+            } else {
+                item.writeTo(gen, projection);
+            }
+        }
+        gen.writeEndArray();
+        for (Map.Entry<String, Integer> count : counts.entrySet()) {
+            gen.writeNumberField(count.getKey(), count.getValue());
+        }
+        if (message != null) {
+            gen.writeStringField("message", message);
+        }
+        gen.writeEndObject();
+    }
+
+    private String computeETag() {
+        List<String> fields = projection != null ? projection : WorkItem.FIELDS;
+        ETags.Builder hash = ETags.builder();
+        for (String field : fields) {
+            hash.add(field);
+        }
+        hash.add(workItems.size());
+        for (WorkItem item : workItems) {
+            for (String field : fields) {
+                hash.add(item.get(field));
+            }
+        }
+        for (Map.Entry<String, Integer> count : counts.entrySet()) {
+            hash.add(count.getKey()).add(count.getValue());
+        }
+        return hash.add(message).build();
+    }
+}
@@ -0,0 +1,216 @@
+package com.balmerlawrie.balmerrestservice.model;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Immutable supporting document as listed by NGOGetDocumentListExt.
+ *
+ * OmniDocs field names vary between versions (DocIndex / DocumentIndex,
+ * DocName / DocumentName, ...); {@link #from(JsonNode)} resolves them once
+ * per document so the rest of the service works with plain fields. JSON is
+ * only produced at the edge via {@link #writeTo(JsonGenerator)} or Jackson
+ * bean serialization.
+ */
+@JsonPropertyOrder({ "documentIndex", "documentName", "documentType", "documentSize", "createdDateTime",
+        "modifiedDateTime", "versionNo", "owner", "comment" })
+public final class SupportingDocument {
+
+    /**
+     * JSON field names in output order.
+     */
+    public static final List<String> FIELDS = Collections.unmodifiableList(Arrays.asList(
+            "documentIndex", "documentName", "documentType", "documentSize", "createdDateTime",
+            "modifiedDateTime", "versionNo", "owner", "comment"));
+
+    private final String documentIndex;
+    private final String documentName;
+    private final String documentType;
+    private final String documentSize;
+    private final String createdDateTime;
+    private final String modifiedDateTime;
+    private final String versionNo;
+    private final String owner;
+    private final String comment;
+
+    public SupportingDocument(String documentIndex, String documentName, String documentType, String documentSize,
+            String createdDateTime, String modifiedDateTime, String versionNo, String owner, String comment) {
+        this.documentIndex = nullToEmpty(documentIndex);
+        this.documentName = nullToEmpty(documentName);
+        this.documentType = nullToEmpty(documentType);
+        this.documentSize = nullToEmpty(documentSize);
+        this.createdDateTime = nullToEmpty(createdDateTime);
+        this.modifiedDateTime = nullToEmpty(modifiedDateTime);
+        this.versionNo = nullToEmpty(versionNo);
+        this.owner = nullToEmpty(owner);
+        this.comment = nullToEmpty(comment);
+    }
+
+    /**
+     * Parses a document node of an NGOGetDocumentListExt response, trying the
+     * known field name variants for each property.
+     *
+     * @param doc The Document node
+     * @return The document; missing properties are empty strings
+     */
+    public static SupportingDocument from(JsonNode doc) {
+        // NGOGetDocumentListExt commonly uses: DocIndex, DocName, DocType, etc.
+        return new SupportingDocument(
+                firstNonEmpty(doc, "DocIndex", "DocumentIndex", "documentIndex", "docIndex", "Index", "DocId"),
+                firstNonEmpty(doc, "DocName", "DocumentName", "Name", "documentName", "name", "FileName",
+                        "DocFileName"),
+                firstNonEmpty(doc, "DocType", "DocumentType", "Type", "documentType", "type", "FileType",
+                        "Extension", "CreatedByAppName"),
+                firstNonEmpty(doc, "DocSize", "DocumentSize", "Size", "documentSize", "size", "FileSize"),
+                firstNonEmpty(doc, "CreatedDatetime", "CreatedDateTime", "CreationDateTime", "createdDateTime",
+                        "CreateDate", "CreatedDate", "CreationDate"),
+                firstNonEmpty(doc, "RevisedDatetime", "ModifiedDateTime", "RevisedDateTime", "modifiedDateTime",
+                        "ModifyDate", "LastModified", "AccessedDatetime"),
+                firstNonEmpty(doc, "VersionNo", "Version", "versionNo", "version", "DocumentVersion",
+                        "LatestVersionNo"),
+                firstNonEmpty(doc, "Owner", "CreatedBy", "owner", "createdBy", "CreatedByName", "OwnerName",
+                        "CreatedByUserName"),
+                firstNonEmpty(doc, "Comment", "Comments", "comment", "comments", "Description", "DocComment"));
+    }
+
+    public String getDocumentIndex() {
+        return documentIndex;
+    }
+
+    public String getDocumentName() {
+        return documentName;
+    }
+
+    public String getDocumentType() {
+        return documentType;
+    }
+
+    public String getDocumentSize() {
+        return documentSize;
+    }
+
+    public String getCreatedDateTime() {
+        return createdDateTime;
+    }
+
+    public String getModifiedDateTime() {
+        return modifiedDateTime;
+    }
+
+    public String getVersionNo() {
+        return versionNo;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public String getComment() {
+        return comment;
+    }
+
+    /**
+     * Gets a field value by its JSON name.
+     *
+     * @param field One of {@link #FIELDS}
+     * @return The field value
+     * @throws IllegalArgumentException if the field is unknown
+     */
+    public String get(String field) {
+        switch (field) {
+            case "documentIndex":
+                return documentIndex;
+            case "documentName":
+                return documentName;
+            case "documentType":
+                return documentType;
+            case "documentSize":
+                return documentSize;
+            case "createdDateTime":
+                return createdDateTime;
+            case "modifiedDateTime":
+                return modifiedDateTime;
+            case "versionNo":
+                return versionNo;
+            case "owner":
+                return owner;
+            case "comment":
+                return comment;
+            default:
+                throw new IllegalArgumentException("Unknown document field: " + field);
+        }
+    }
+
+    /**
+     * Writes this document as a JSON object.
+     *
+     * @param gen The generator to write to
+     */
+    public void writeTo(JsonGenerator gen) throws IOException {
+        gen.writeStartObject();
+        gen.writeStringField("documentIndex", documentIndex);
+        gen.writeStringField("documentName", documentName);
+        gen.writeStringField("documentType", documentType);
+        gen.writeStringField("documentSize", documentSize);
+        gen.writeStringField("createdDateTime", createdDateTime);
+        gen.writeStringField("modifiedDateTime", modifiedDateTime);
+        gen.writeStringField("versionNo", versionNo);
+        gen.writeStringField("owner", owner);
+        gen.writeStringField("comment", comment);
+        gen.writeEndObject();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof SupportingDocument)) {
+            return false;
+        }
+        SupportingDocument other = (SupportingDocument) o;
+        return documentIndex.equals(other.documentIndex)
+                && documentName.equals(other.documentName)
+                && documentType.equals(other.documentType)
+                && documentSize.equals(other.documentSize)
+                && createdDateTime.equals(other.createdDateTime)
+                && modifiedDateTime.equals(other.modifiedDateTime)
+                && versionNo.equals(other.versionNo)
+                && owner.equals(other.owner)
+                && comment.equals(other.comment);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(documentIndex, documentName, versionNo, modifiedDateTime);
+    }
+
+    @Override
+    public String toString() {
+        return "SupportingDocument{" + documentIndex + ", " + documentName + ", v" + versionNo + "}";
+    }
+
+    private static String firstNonEmpty(JsonNode node, String... fieldNames) {
+        for (String fieldName : fieldNames) {
+            JsonNode fieldNode = node.path(fieldName);
+            if (!fieldNode.isMissingNode() && !fieldNode.isNull()) {
+                String value = fieldNode.asText();
+                if (value != null && !value.isEmpty() && !value.equals("null")) {
+                    return value;
+                }
+            }
+        }
+        return "";
+    }
+
+    private static String nullToEmpty(String value) {
+        return value != null ? value : "";
+    }
+}
@@ -0,0 +1,254 @@
+package com.balmerlawrie.balmerrestservice.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Immutable work item as shown in the mobile queue lists.
+ *
+ * The sort keys used by the queue endpoints (My Queue flag and a case-folded
+ * process name) are computed once at construction, so sorting does not
+ * allocate per comparison. JSON is only produced at the edge via
+ * {@link #writeTo(JsonGenerator)} or Jackson bean serialization.
+ */
+@JsonPropertyOrder({ "urn", "activityName", "entryDateTime", "queueName", "status", "lockedBy", "workitemId",
+        "processName", "processInstanceId" })
+public final class WorkItem {
+
+    /**
+     * JSON field names in display order; valid values for projection and sorting.
+     */
+    public static final List<String> FIELDS = Collections.unmodifiableList(Arrays.asList(
+            "urn", "activityName", "entryDateTime", "queueName", "status", "lockedBy", "workitemId",
+            "processName", "processInstanceId"));
+
+    /**
+     * My Queue items first, then by process name ignoring case.
+     * Equivalent to the former comparator built on toLowerCase()/compareToIgnoreCase.
+     */
+    public static final Comparator<WorkItem> DISPLAY_ORDER = (a, b) -> {
+        if (a.myQueue != b.myQueue) {
+            return a.myQueue ? -1 : 1;
+        }
+        return a.processNameKey.compareTo(b.processNameKey);
+    };
+
+    private final String urn;
+    private final String activityName;
+    private final String entryDateTime;
+    private final String queueName;
+    private final String status;
+    private final String lockedBy;
+    private final String workitemId;
+    private final String processName;
+    private final String processInstanceId;
+
+    private final boolean myQueue;
+    private final String processNameKey;
+
+    public WorkItem(String urn, String activityName, String entryDateTime, String queueName, String status,
+            String lockedBy, String workitemId, String processName, String processInstanceId) {
+        this.urn = nullToEmpty(urn);
+        this.activityName = nullToEmpty(activityName);
+        this.entryDateTime = nullToEmpty(entryDateTime);
+        this.queueName = nullToEmpty(queueName);
+        this.status = nullToEmpty(status);
+        this.lockedBy = nullToEmpty(lockedBy);
+        this.workitemId = nullToEmpty(workitemId);
+        this.processName = nullToEmpty(processName);
+        this.processInstanceId = nullToEmpty(processInstanceId);
+
+        this.myQueue = this.queueName.toLowerCase().contains("myqueue");
+        this.processNameKey = foldCase(this.processName);
+    }
+
+    public String getUrn() {
+        return urn;
+    }
+
+    public String getActivityName() {
+        return activityName;
+    }
+
+    public String getEntryDateTime() {
+        return entryDateTime;
+    }
+
+    public String getQueueName() {
+        return queueName;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public String getLockedBy() {
+        return lockedBy;
+    }
+
+    public String getWorkitemId() {
+        return workitemId;
+    }
+
+    public String getProcessName() {
+        return processName;
+    }
+
+    public String getProcessInstanceId() {
+        return processInstanceId;
+    }
+
+    /**
+     * Gets a field value by its JSON name.
+     *
+     * @param field One of {@link #FIELDS}
+     * @return The field value
+     * @throws IllegalArgumentException if the field is unknown
+     */
+    public String get(String field) {
+        switch (field) {
+            case "urn":
+                return urn;
+            case "activityName":
+                return activityName;
+            case "entryDateTime":
+                return entryDateTime;
+            case "queueName":
+                return queueName;
+            case "status":
+                return status;
+            case "lockedBy":
+                return lockedBy;
+            case "workitemId":
+                return workitemId;
+            case "processName":
+                return processName;
+            case "processInstanceId":
+                return processInstanceId;
+            default:
+                throw new IllegalArgumentException("Unknown work item field: " + field);
+        }
+    }
+
+    /**
+     * Whether the item is currently locked by a user.
+     */
+    @JsonIgnore
+    public boolean isLocked() {
+        return !lockedBy.isEmpty();
+    }
+
+    /**
+     * Whether this item belongs to the user's My Queue.
+     */
+    @JsonIgnore
+    public boolean isMyQueue() {
+        return myQueue;
+    }
+
+    /**
+     * Identity key of the work item: processInstanceId#workitemId.
+     */
+    public String key() {
+        return processInstanceId + "#" + workitemId;
+    }
+
+    /**
+     * Writes this item as a JSON object in mobile display order.
+     *
+     * @param gen The generator to write to
+     */
+    public void writeTo(JsonGenerator gen) throws IOException {
+        gen.writeStartObject();
+        gen.writeStringField("urn", urn);
+        gen.writeStringField("activityName", activityName);
+        gen.writeStringField("entryDateTime", entryDateTime);
+        gen.writeStringField("queueName", queueName);
+        gen.writeStringField("status", status);
+        gen.writeStringField("lockedBy", lockedBy);
+        gen.writeStringField("workitemId", workitemId);
+        gen.writeStringField("processName", processName);
+        gen.writeStringField("processInstanceId", processInstanceId);
+        gen.writeEndObject();
+    }
+
+    /**
+     * Writes only the given fields of this item as a JSON object.
+     *
+     * @param gen    The generator to write to
+     * @param fields Field names from {@link #FIELDS}, in output order
+     */
+    public void writeTo(JsonGenerator gen, List<String> fields) throws IOException {
+        gen.writeStartObject();
+        for (String field : fields) {
+            gen.writeStringField(field, get(field));
+        }
+        gen.writeEndObject();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof WorkItem)) {
+            return false;
+        }
+        WorkItem other = (WorkItem) o;
+        return urn.equals(other.urn)
+                && activityName.equals(other.activityName)
+                && entryDateTime.equals(other.entryDateTime)
+                && queueName.equals(other.queueName)
+                && status.equals(other.status)
+                && lockedBy.equals(other.lockedBy)
+                && workitemId.equals(other.workitemId)
+                && processName.equals(other.processName)
+                && processInstanceId.equals(other.processInstanceId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(urn, activityName, entryDateTime, queueName, status, lockedBy, workitemId,
+                processName, processInstanceId);
+    }
+
+    @Override
+    public String toString() {
+        return "WorkItem{" +
+                "urn='" + urn + '\'' +
+                ", workitemId='" + workitemId + '\'' +
+                ", processInstanceId='" + processInstanceId + '\'' +
+                ", queueName='" + queueName + '\'' +
+                '}';
+    }
+
+    private static String nullToEmpty(String value) {
+        return value != null ? value : "";
+    }
+
+    /**
+     * Folds each char the same way String.compareToIgnoreCase does
+     * (upper-case, then lower-case), so plain compareTo on the folded keys
+     * orders exactly like compareToIgnoreCase on the originals.
+     */
+    private static String foldCase(String value) {
+        char[] chars = value.toCharArray();
+        boolean changed = false;
+        for (int i = 0; i < chars.length; i++) {
+            char folded = Character.toLowerCase(Character.toUpperCase(chars[i]));
+            if (folded != chars[i]) {
+                chars[i] = folded;
+                changed = true;
+            }
+        }
+        return changed ? new String(chars) : value;
+    }
+}
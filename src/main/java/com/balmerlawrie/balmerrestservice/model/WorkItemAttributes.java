@@ -0,0 +1,272 @@
+package com.balmerlawrie.balmerrestservice.model;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Immutable, case-insensitive view of a WMFetchWorkItemAttributes response.
+ *
+ * The response is walked once: every attribute's value becomes an entry of
+ * a name → value map, and object- or array-valued attributes (such as
+ * Q_Eoffice_Commentshistory) are also kept as rows of name → value maps; a
+ * single object, e.g. a comment history of one entry whose fields are all
+ * text, is one row. Lookups ignore case, so callers no longer probe
+ * "notesheet" / "Notesheet" / "NOTESHEET" or the "" / "content" forms.
+ *
+ * Values are taken from the node text, then the empty key "" (how the XML
+ * mapper stores element text next to XML attributes), then "content".
+ * Both the object format and the Name/Value array format are understood.
+ * Error and not-found responses have no attributes.
+ */
+public final class WorkItemAttributes {
+
+    private static final WorkItemAttributes EMPTY = new WorkItemAttributes(null);
+
+    private final JsonNode response;
+    private final Map<String, String> values;
+    private final Map<String, List<Map<String, String>>> complexValues;
+    private final Set<String> objectValued;
+
+    private WorkItemAttributes(JsonNode response) {
+        this.response = response;
+        Map<String, String> parsedValues = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        Map<String, List<Map<String, String>>> parsedComplex = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        Set<String> parsedObjects = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+        JsonNode attributes = response != null ? findAttributes(response) : null;
+        if (attributes != null) {
+            parse(attributes, parsedValues, parsedComplex, parsedObjects);
+        }
+
+        this.values = Collections.unmodifiableMap(parsedValues);
+        this.complexValues = Collections.unmodifiableMap(parsedComplex);
+        this.objectValued = Collections.unmodifiableSet(parsedObjects);
+    }
+
+    /**
+     * Indexes a WMFetchWorkItemAttributes response (wrapped or unwrapped).
+     *
+     * @param response The parsed response, may be null
+     * @return The attribute index
+     */
+    public static WorkItemAttributes from(JsonNode response) {
+        return response != null ? new WorkItemAttributes(response) : EMPTY;
+    }
+
+    /**
+     * Gets the response this index was built from.
+     *
+     * @return The raw response node, or null for an empty index
+     */
+    public JsonNode getResponse() {
+        return response;
+    }
+
+    /**
+     * Whether the response holds attributes rather than an error
+     * (success=false, error) or not-found (found=false) result.
+     */
+    public boolean isSuccessful() {
+        return response != null && !response.has("error") && response.path("found").asBoolean(true);
+    }
+
+    /**
+     * Gets the error message of an error response.
+     *
+     * @return The error, or null if the response is not an error
+     */
+    public String getError() {
+        if (response == null) {
+            return "Unknown error";
+        }
+        return response.has("error") ? response.path("error").asText() : null;
+    }
+
+    /**
+     * Gets the message of a not-found response.
+     */
+    public String getMessage() {
+        return response != null ? response.path("message").asText("") : "";
+    }
+
+    /**
+     * Whether no attribute values were found.
+     */
+    public boolean isEmpty() {
+        return values.isEmpty() && complexValues.isEmpty();
+    }
+
+    /**
+     * Gets an attribute value, ignoring the case of the name.
+     *
+     * @param name Attribute name
+     * @return The non-empty value, or null if absent or empty
+     */
+    public String get(String name) {
+        return values.get(name);
+    }
+
+    /**
+     * Gets the value of the first of the given attributes that has one.
+     *
+     * @param names Attribute names in order of preference
+     * @return The first non-empty value, or null
+     */
+    public String getFirst(String... names) {
+        for (String name : names) {
+            String value = values.get(name);
+            if (value != null) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the rows of an array- or object-valued attribute. A single object
+     * yields one row. Row lookups ignore case as well.
+     *
+     * @param name Attribute name, e.g. Q_Eoffice_Commentshistory
+     * @return The rows, empty if absent
+     */
+    public List<Map<String, String>> getRows(String name) {
+        List<Map<String, String>> rows = complexValues.get(name);
+        return rows != null ? rows : Collections.emptyList();
+    }
+
+    /**
+     * Whether an attribute holds a single object rather than an array (or a
+     * simple value). Its {@link #getRows} then has exactly one row.
+     *
+     * @param name Attribute name, ignoring case
+     */
+    public boolean isObject(String name) {
+        return objectValued.contains(name);
+    }
+
+    /**
+     * Gets all simple attribute values.
+     */
+    public Map<String, String> asMap() {
+        return values;
+    }
+
+    // --- Parsing ---
+
+    /**
+     * Finds the attributes of a WMFetchWorkItemAttributes payload. Without an
+     * Attributes node the output itself holds them, but only for a successful
+     * response: the fields of an error or not-found envelope (success, error,
+     * found, message) are not attributes.
+     *
+     * @return The attributes node, or null if the response has none
+     */
+    private JsonNode findAttributes(JsonNode response) {
+        JsonNode output = response.path("WMFetchWorkItemAttributes_Output");
+        if (output.isMissingNode()) {
+            output = response;
+        }
+        JsonNode attrs = output.path("Attributes");
+        if (!attrs.isMissingNode()) {
+            return attrs;
+        }
+        return isSuccessful() ? output : null;
+    }
+
+    private static void parse(JsonNode attrs, Map<String, String> values,
+            Map<String, List<Map<String, String>>> complexValues, Set<String> objectValued) {
+        if (attrs.isArray()) {
+            // Name/Value array format
+            for (JsonNode attr : attrs) {
+                String name = attr.path("Name").asText("");
+                if (!name.isEmpty()) {
+                    putIfPresent(values, name, valueOf(attr.path("Value")));
+                }
+            }
+            return;
+        }
+
+        Iterator<Map.Entry<String, JsonNode>> fields = attrs.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            String name = field.getKey();
+            JsonNode node = field.getValue();
+
+            if (node.isArray()) {
+                List<Map<String, String>> rows = new ArrayList<>();
+                for (JsonNode element : node) {
+                    rows.add(toRow(element));
+                }
+                complexValues.put(name, Collections.unmodifiableList(rows));
+                continue;
+            }
+            if (node.isObject()) {
+                // A single object is one row, whether its fields are child
+                // attributes or just text; it may also carry a text value
+                complexValues.put(name, Collections.singletonList(toRow(node)));
+                objectValued.add(name);
+            }
+            if (!isComplex(node)) {
+                putIfPresent(values, name, valueOf(node));
+            }
+        }
+    }
+
+    /**
+     * An attribute is complex if it is an array or has child attributes
+     * (object-valued fields) rather than just XML attributes and text; only
+     * other attributes have a simple value.
+     */
+    private static boolean isComplex(JsonNode node) {
+        if (node.isArray()) {
+            return true;
+        }
+        if (node.isObject()) {
+            for (JsonNode child : node) {
+                if (child.isContainerNode()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static Map<String, String> toRow(JsonNode element) {
+        Map<String, String> row = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        Iterator<Map.Entry<String, JsonNode>> fields = element.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            putIfPresent(row, field.getKey(), valueOf(field.getValue()));
+        }
+        return Collections.unmodifiableMap(row);
+    }
+
+    private static String valueOf(JsonNode node) {
+        if (node.isValueNode()) {
+            return nonEmpty(node.asText());
+        }
+        String value = nonEmpty(node.path("").asText(""));
+        if (value == null) {
+            value = nonEmpty(node.path("content").asText(""));
+        }
+        return value;
+    }
+
+    private static String nonEmpty(String value) {
+        return value == null || value.isEmpty() || "null".equals(value) ? null : value;
+    }
+
+    private static void putIfPresent(Map<String, String> map, String name, String value) {
+        if (value != null) {
+            map.putIfAbsent(name, value);
+        }
+    }
+}
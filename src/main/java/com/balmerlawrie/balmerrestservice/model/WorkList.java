@@ -0,0 +1,63 @@
+package com.balmerlawrie.balmerrestservice.model;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Result of a single WMFetchWorkList call: the parsed, sorted work items of
+ * one queue, or the error that prevented fetching them.
+ */
+public class WorkList {
+
+    private final boolean success;
+    private final String error;
+    private final List<WorkItem> workItems;
+    private final int totalCount;
+    private final int retrievedCount;
+
+    public WorkList(List<WorkItem> workItems, int totalCount, int retrievedCount) {
+        this.success = true;
+        this.error = null;
+        this.workItems = Collections.unmodifiableList(workItems);
+        this.totalCount = totalCount;
+        this.retrievedCount = retrievedCount;
+    }
+
+    private WorkList(String error) {
+        this.success = false;
+        this.error = error;
+        this.workItems = Collections.emptyList();
+        this.totalCount = 0;
+        this.retrievedCount = 0;
+    }
+
+    /**
+     * Creates a failed work list.
+     *
+     * @param error The error message
+     * @return A work list with no items and success=false
+     */
+    public static WorkList failed(String error) {
+        return new WorkList(error);
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public List<WorkItem> getWorkItems() {
+        return workItems;
+    }
+
+    public int getTotalCount() {
+        return totalCount;
+    }
+
+    public int getRetrievedCount() {
+        return retrievedCount;
+    }
+}
@@ -0,0 +1,90 @@
+package com.balmerlawrie.balmerrestservice.service;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+/**
+ * Downloads document content from OmniDocs using the getDocumentStreamJSON API.
+ * Shared by the notesheet, preview and document operations.
+ */
+@Service
+public class DocumentDownloadService extends BaseIbpsService {
+
+    @Value("${omnigetdocument.api.url}")
+    private String getDocumentUrl;
+
+    /**
+     * Downloads the latest version of a document.
+     *
+     * @param documentIndex Document Index
+     * @param sessionId     Session ID for authentication
+     * @return The document content, or null on error or empty content
+     */
+    public byte[] downloadDocument(String documentIndex, long sessionId) {
+        return downloadDocument(documentIndex, null, sessionId);
+    }
+
+    /**
+     * Downloads a version of a document.
+     * Uses sessionId as userDBId for authentication (per reference project
+     * pattern).
+     *
+     * @param documentIndex Document Index
+     * @param versionNo     Version to download, or null/empty for the latest version
+     * @param sessionId     Session ID for authentication
+     * @return The document content, or null on error or empty content
+     */
+    public byte[] downloadDocument(String documentIndex, String versionNo, long sessionId) {
+        try {
+            // Build NGOGetDocumentBDO payload (matches reference project pattern)
+            ObjectNode ngoGetDocumentBDO = jsonMapper.createObjectNode();
+            ngoGetDocumentBDO.put("cabinetName", cabinetName);
+            ngoGetDocumentBDO.put("docIndex", documentIndex);
+            ngoGetDocumentBDO.put("versionNo", versionNo != null ? versionNo : "");  // Empty string = get latest version
+            // Use sessionId as userDBId for authentication
+            ngoGetDocumentBDO.put("userDBId", String.valueOf(sessionId));
+            ngoGetDocumentBDO.put("userName", "");
+            ngoGetDocumentBDO.put("userPassword", "");
+            ngoGetDocumentBDO.put("authToken", "");
+            ngoGetDocumentBDO.put("authTokenType", "");
+            ngoGetDocumentBDO.put("locale", "en_US");
+            ngoGetDocumentBDO.put("oAuth", "N");
+            ngoGetDocumentBDO.put("sessionValid", "");
+
+            ObjectNode payload = jsonMapper.createObjectNode();
+            payload.set("NGOGetDocumentBDO", ngoGetDocumentBDO);
+
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.APPLICATION_JSON);
+            HttpEntity<String> request = new HttpEntity<>(payload.toString(), headers);
+
+            log.info("Calling OmniDocs getDocumentStreamJSON: docIndex={}, versionNo={}, url={}",
+                    documentIndex, versionNo, getDocumentUrl);
+            if (log.isDebugEnabled()) {
+                log.debug("Payload: {}", payload.toString());
+            }
+
+            ResponseEntity<byte[]> response = restTemplate.exchange(getDocumentUrl, HttpMethod.POST, request,
+                    byte[].class);
+
+            byte[] content = response.getBody();
+            if (content != null && content.length > 0) {
+                log.info("Downloaded document: {} bytes", content.length);
+                return content;
+            }
+
+            log.warn("No document content in response");
+            return null;
+
+        } catch (Exception e) {
+            log.error("Error downloading document: {}", e.getMessage(), e);
+            return null;
+        }
+    }
+}
@@ -8,6 +8,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
 import org.springframework.util.LinkedMultiValueMap;
@@ -45,12 +46,18 @@ public class DocumentOpsService {
     @Value("${omnidocs.default.siteId:1}")
     private String defaultSiteId;
 
+    @Value("${notesheet.debug.artifacts:false}")
+    private boolean debugArtifacts;
+
     @Autowired
     private RestTemplate restTemplate;
 
     @Autowired
     private NoteSheetService noteSheetService;
 
+    @Autowired
+    private SupportingDocsService supportingDocsService;
+
     private final ObjectMapper jsonMapper = new ObjectMapper();
 
     /**
@@ -77,21 +84,52 @@ public class DocumentOpsService {
      */
     public JsonNode checkoutCheckinWithAnnotations(String documentIndex, String contentPath, long sessionId,
             boolean filterViewHyperlinks) {
+        File file = new File(contentPath);
+        if (!file.exists()) {
+            ObjectNode result = jsonMapper.createObjectNode();
+            result.put("success", false);
+            result.put("error", "Content file not found: " + contentPath);
+            return result;
+        }
+        return checkoutCheckinWithAnnotations(documentIndex, new FileSystemResource(file), sessionId,
+                filterViewHyperlinks);
+    }
+
+    /**
+     * Performs checkout, checkin with new content, and restores annotations.
+     * The content is streamed from the resource, so it can be an in-memory
+     * buffer; the annotations are kept in memory between backup and restore
+     * (written to ./tmp/annotations only when notesheet.debug.artifacts is on).
+     *
+     * @param documentIndex         Document to update
+     * @param content               New content; its filename is sent with the upload
+     * @param sessionId             Session ID for authentication
+     * @param filterViewHyperlinks  If true, removes existing View hyperlink annotations before restore
+     * @return JSON result with status
+     */
+    public JsonNode checkoutCheckinWithAnnotations(String documentIndex, Resource content, long sessionId,
+            boolean filterViewHyperlinks) {
         log.info("Starting checkoutCheckinWithAnnotations for documentIndex: {}, filterViewHyperlinks: {}",
                 documentIndex, filterViewHyperlinks);
 
         try {
-            // Step 1: Get annotations and save temporarily
+            // Step 1: Get annotations and keep them for the restore
             log.info("Step 1: Backing up annotations...");
             JsonNode annotationsResult = noteSheetService.getAnnotations(documentIndex, sessionId);
             JsonNode annotations = annotationsResult.path("annotations");
 
+            boolean annotationsBackedUp = false;
             String annotationBackupPath = null;
             JsonNode filteredAnnotations = annotations;
 
             if (!annotations.isMissingNode() && annotations.size() > 0) {
-                annotationBackupPath = saveAnnotationsToTemp(documentIndex, annotations);
-                log.info("Annotations backed up to: {}", annotationBackupPath);
+                annotationsBackedUp = true;
+                if (debugArtifacts) {
+                    annotationBackupPath = saveAnnotationsToTemp(documentIndex, annotations);
+                    log.info("Annotations backed up to: {}", annotationBackupPath);
+                } else {
+                    log.info("Annotations backed up in memory");
+                }
 
                 // Filter out View hyperlink annotations if requested
                 if (filterViewHyperlinks) {
@@ -121,18 +159,19 @@ public class DocumentOpsService {
                 siteId = defaultSiteId;
 
             // Step 4: Checkin with new content
-            log.info("Step 4: Checking in with new content from: {}", contentPath);
-            JsonNode checkinResult = checkinDocument(documentIndex, contentPath, volumeId, siteId, sessionId);
+            log.info("Step 4: Checking in with new content from: {}", content.getDescription());
+            JsonNode checkinResult = checkinDocument(documentIndex, content, volumeId, siteId, sessionId);
             if (!checkinResult.path("success").asBoolean(false)) {
                 return checkinResult;
             }
 
             String newVersion = checkinResult.path("newVersion").asText();
+            supportingDocsService.onDocumentCheckedIn(documentIndex);
 
             // Step 5: Restore annotations (using filtered annotations if applicable)
             log.info("Step 5: Restoring annotations...");
             JsonNode restoreResult = null;
-            if (annotationBackupPath != null && !filteredAnnotations.isMissingNode() && filteredAnnotations.size() > 0) {
+            if (annotationsBackedUp && !filteredAnnotations.isMissingNode() && filteredAnnotations.size() > 0) {
                 restoreResult = noteSheetService.setAnnotations(documentIndex, filteredAnnotations, sessionId);
                 log.info("Annotations restored.");
             }
@@ -142,7 +181,7 @@ public class DocumentOpsService {
             result.put("success", true);
             result.put("documentIndex", documentIndex);
             result.put("newVersion", newVersion);
-            result.put("annotationsBackedUp", annotationBackupPath != null);
+            result.put("annotationsBackedUp", annotationsBackedUp);
             result.put("annotationsRestored", restoreResult != null);
             result.put("viewHyperlinksFiltered", filterViewHyperlinks);
             if (annotationBackupPath != null) {
@@ -347,7 +386,7 @@ public class DocumentOpsService {
     }
 
     /**
-     * Saves annotations to a temporary file.
+     * Saves annotations to a temporary file (debug artifact).
      */
     private String saveAnnotationsToTemp(String documentIndex, JsonNode annotations) throws Exception {
         Path tempDir = Paths.get("./tmp/annotations");
@@ -548,17 +587,9 @@ public class DocumentOpsService {
     /**
      * Checks in a document with new content using multipart form.
      */
-    private JsonNode checkinDocument(String documentIndex, String contentPath, String volumeId, String siteId,
+    private JsonNode checkinDocument(String documentIndex, Resource content, String volumeId, String siteId,
             long sessionId) {
         try {
-            File file = new File(contentPath);
-            if (!file.exists()) {
-                ObjectNode result = jsonMapper.createObjectNode();
-                result.put("success", false);
-                result.put("error", "Content file not found: " + contentPath);
-                return result;
-            }
-
             // Build NGOCheckInDocumentBDO
             ObjectNode checkInBDO = jsonMapper.createObjectNode();
             checkInBDO.put("cabinetName", cabinetName);
@@ -574,7 +605,7 @@ public class DocumentOpsService {
             // Build multipart request
             MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
             body.add("NGOCheckInDocumentBDO", checkInBDO.toString());
-            body.add("file", new FileSystemResource(file));
+            body.add("file", content);
 
             HttpHeaders headers = new HttpHeaders();
             headers.setContentType(MediaType.MULTIPART_FORM_DATA);
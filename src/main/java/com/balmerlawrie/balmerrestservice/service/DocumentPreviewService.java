@@ -0,0 +1,418 @@
+package com.balmerlawrie.balmerrestservice.service;
+
+import com.balmerlawrie.balmerrestservice.model.SupportingDocument;
+import com.balmerlawrie.balmerrestservice.util.BoundedExecutors;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Low-resolution first-page previews of supporting documents.
+ *
+ * PDFs are rendered with PDFBox (first page only), images are scaled down;
+ * other formats have no preview. Previews are PNG files in a disk cache keyed
+ * by document index and version, so a document version is downloaded and
+ * rendered once. Formats without a preview leave a marker file so they are
+ * not downloaded again.
+ *
+ * Rendering runs on a small bounded pool of low-priority threads; concurrent
+ * requests for the same preview share one render. Listings can optionally
+ * pre-warm the previews of their first documents.
+ */
+@Service
+public class DocumentPreviewService {
+
+    private static final Logger log = LoggerFactory.getLogger(DocumentPreviewService.class);
+
+    @Value("${preview.cache.directory:${java.io.tmpdir}/previews}")
+    private String cacheDirectory;
+
+    @Value("${preview.dpi:36}")
+    private float dpi;
+
+    @Value("${preview.max.width:360}")
+    private int maxWidth;
+
+    @Value("${preview.image.max.pixels:200000000}")
+    private long maxImagePixels;
+
+    @Value("${preview.threads:2}")
+    private int threads;
+
+    @Value("${preview.queue.capacity:100}")
+    private int queueCapacity;
+
+    @Value("${preview.wait.ms:3000}")
+    private long waitMillis;
+
+    @Value("${preview.cache.max.files:5000}")
+    private int maxFiles;
+
+    @Value("${preview.prewarm.enabled:false}")
+    private boolean prewarmEnabled;
+
+    @Value("${preview.prewarm.max.documents:20}")
+    private int prewarmMaxDocuments;
+
+    @Autowired
+    private DocumentDownloadService documentDownloadService;
+
+    private Path cacheDir;
+
+    /**
+     * Pool rendering previews. When it is saturated requests are answered
+     * with {@link Status#BUSY} and pre-warming is skipped.
+     */
+    private ThreadPoolExecutor previewExecutor;
+
+    private final Map<String, CompletableFuture<Path>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicInteger writesSinceTrim = new AtomicInteger();
+
+    @PostConstruct
+    void init() throws IOException {
+        cacheDir = Paths.get(cacheDirectory);
+        Files.createDirectories(cacheDir);
+        previewExecutor = BoundedExecutors.newFixedPool("preview", threads, queueCapacity,
+                new ThreadPoolExecutor.AbortPolicy(), Thread.NORM_PRIORITY - 1);
+    }
+
+    @PreDestroy
+    void shutdownExecutor() {
+        previewExecutor.shutdownNow();
+    }
+
+    /**
+     * Gets the preview of a document version, rendering it if needed. Waits
+     * up to preview.wait.ms for a render before answering {@link Status#PENDING}.
+     *
+     * @param documentIndex Document Index
+     * @param versionNo     Document version (part of the cache key)
+     * @param sessionId     Session ID used to download the document
+     * @return The preview status and, when ready, the PNG file
+     */
+    public Preview getPreview(String documentIndex, String versionNo, long sessionId) {
+        String key = cacheKey(documentIndex, versionNo);
+        Path png = cacheDir.resolve(key + ".png");
+        if (Files.exists(png)) {
+            touch(png);
+            return new Preview(Status.READY, png);
+        }
+        if (Files.exists(cacheDir.resolve(key + ".none"))) {
+            return new Preview(Status.UNSUPPORTED, null);
+        }
+
+        CompletableFuture<Path> render;
+        try {
+            render = submit(key, documentIndex, versionNo, sessionId);
+        } catch (RejectedExecutionException e) {
+            log.warn("Preview pool saturated, rejecting preview of document {}", documentIndex);
+            return new Preview(Status.BUSY, null);
+        }
+
+        try {
+            Path result = render.get(waitMillis, TimeUnit.MILLISECONDS);
+            return result != null ? new Preview(Status.READY, result) : new Preview(Status.UNSUPPORTED, null);
+        } catch (TimeoutException e) {
+            return new Preview(Status.PENDING, null);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new Preview(Status.PENDING, null);
+        } catch (ExecutionException e) {
+            log.error("Failed to render preview of document {}: {}", documentIndex, e.getCause().getMessage());
+            return new Preview(Status.FAILED, null);
+        }
+    }
+
+    /**
+     * Queues previews of the first documents of a listing that are not cached
+     * yet, if pre-warming is enabled. Never blocks: stops once the pool's
+     * queue is half full.
+     *
+     * @param documents The listed documents
+     * @param sessionId Session ID used to download the documents
+     */
+    public void prewarm(List<SupportingDocument> documents, long sessionId) {
+        if (!prewarmEnabled) {
+            return;
+        }
+
+        int queued = 0;
+        for (SupportingDocument doc : documents) {
+            if (queued >= prewarmMaxDocuments
+                    || previewExecutor.getQueue().remainingCapacity() < queueCapacity / 2) {
+                break;
+            }
+            if (doc.getDocumentIndex().isEmpty() || doc.getDocumentName().toLowerCase().startsWith("notesheet")) {
+                continue;
+            }
+
+            String key = cacheKey(doc.getDocumentIndex(), doc.getVersionNo());
+            if (Files.exists(cacheDir.resolve(key + ".png")) || Files.exists(cacheDir.resolve(key + ".none"))) {
+                continue;
+            }
+            try {
+                submit(key, doc.getDocumentIndex(), doc.getVersionNo(), sessionId);
+                queued++;
+            } catch (RejectedExecutionException e) {
+                break;
+            }
+        }
+        if (queued > 0) {
+            log.debug("Queued {} preview renders for pre-warming", queued);
+        }
+    }
+
+    // --- Helper Methods ---
+
+    private CompletableFuture<Path> submit(String key, String documentIndex, String versionNo, long sessionId) {
+        CompletableFuture<Path> created = new CompletableFuture<>();
+        CompletableFuture<Path> existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            return existing;
+        }
+
+        try {
+            previewExecutor.execute(() -> {
+                try {
+                    created.complete(render(key, documentIndex, versionNo, sessionId));
+                } catch (Exception | Error e) {
+                    created.completeExceptionally(e);
+                } finally {
+                    inFlight.remove(key, created);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(key, created);
+            created.completeExceptionally(e);
+            throw e;
+        }
+        return created;
+    }
+
+    /**
+     * Downloads and renders a preview into the cache.
+     *
+     * @return The PNG file, or null if the document has no preview
+     */
+    private Path render(String key, String documentIndex, String versionNo, long sessionId) throws IOException {
+        byte[] content = documentDownloadService.downloadDocument(documentIndex, versionNo, sessionId);
+        if (content == null) {
+            // Not cached as unsupported: the download may succeed next time
+            throw new IOException("Failed to download document " + documentIndex);
+        }
+
+        long start = System.currentTimeMillis();
+        BufferedImage image = isPdf(content) ? renderFirstPage(documentIndex, content) : readImage(documentIndex, content);
+        if (image == null) {
+            Files.write(cacheDir.resolve(key + ".none"), new byte[0]);
+            log.debug("No preview for document {} ({} bytes)", documentIndex, content.length);
+            return null;
+        }
+
+        Path png = cacheDir.resolve(key + ".png");
+        Path tmp = Files.createTempFile(cacheDir, key, ".tmp");
+        try {
+            ImageIO.write(scaleToWidth(image), "png", tmp.toFile());
+            Files.move(tmp, png, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+
+        log.info("Rendered preview of document {} v{} in {} ms", documentIndex, versionNo,
+                System.currentTimeMillis() - start);
+        if (writesSinceTrim.incrementAndGet() >= 50) {
+            writesSinceTrim.set(0);
+            trimCache();
+        }
+        return png;
+    }
+
+    private BufferedImage renderFirstPage(String documentIndex, byte[] content) {
+        try (PDDocument pdf = PDDocument.load(content)) {
+            if (pdf.getNumberOfPages() == 0) {
+                return null;
+            }
+            return new PDFRenderer(pdf).renderImageWithDPI(0, dpi, ImageType.RGB);
+        } catch (IOException e) {
+            // Encrypted or damaged PDF: no preview
+            log.warn("Cannot render preview of document {}: {}", documentIndex, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Decodes an image at about the preview width: the dimensions are read
+     * from the header first and the image is decoded subsampled, so a large
+     * scan never gets a full-resolution raster. Images above
+     * preview.image.max.pixels get no preview.
+     */
+    private BufferedImage readImage(String documentIndex, byte[] content) {
+        try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(content))) {
+            Iterator<ImageReader> readers = in != null ? ImageIO.getImageReaders(in) : null;
+            if (readers == null || !readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((long) width * height > maxImagePixels) {
+                    log.warn("Image document {} is {}x{}, too large for a preview", documentIndex, width, height);
+                    return null;
+                }
+                ImageReadParam param = reader.getDefaultReadParam();
+                int step = Math.max(1, width / maxWidth);
+                param.setSourceSubsampling(step, step, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException | RuntimeException e) {
+            // Unreadable or damaged image: no preview
+            return null;
+        }
+    }
+
+    private BufferedImage scaleToWidth(BufferedImage image) {
+        if (image.getWidth() <= maxWidth) {
+            return image;
+        }
+        int height = Math.max(1, Math.round(image.getHeight() * (maxWidth / (float) image.getWidth())));
+        BufferedImage scaled = new BufferedImage(maxWidth, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = scaled.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(image, 0, 0, maxWidth, height, null);
+        } finally {
+            g.dispose();
+        }
+        return scaled;
+    }
+
+    /**
+     * Deletes the least recently used previews once the cache holds more
+     * than preview.cache.max.files files, down to 90% of the limit.
+     */
+    private void trimCache() {
+        try (Stream<Path> files = Files.list(cacheDir)) {
+            List<Path> cached = files.filter(f -> !f.getFileName().toString().endsWith(".tmp"))
+                    .collect(Collectors.toList());
+            if (cached.size() <= maxFiles) {
+                return;
+            }
+            cached.sort(Comparator.comparingLong(DocumentPreviewService::lastModified));
+            int toDelete = cached.size() - maxFiles * 9 / 10;
+            for (int i = 0; i < toDelete; i++) {
+                Files.deleteIfExists(cached.get(i));
+            }
+            log.info("Trimmed preview cache: deleted {} files", toDelete);
+        } catch (IOException e) {
+            log.warn("Failed to trim preview cache: {}", e.getMessage());
+        }
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0L;
+        }
+    }
+
+    private static void touch(Path file) {
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // Only affects eviction order
+        }
+    }
+
+    private static boolean isPdf(byte[] content) {
+        return content.length > 4 && content[0] == 0x25 && content[1] == 0x50 && content[2] == 0x44
+                && content[3] == 0x46;
+    }
+
+    private static String cacheKey(String documentIndex, String versionNo) {
+        String version = versionNo == null || versionNo.isEmpty() ? "latest" : versionNo;
+        return sanitize(documentIndex) + "_v" + sanitize(version);
+    }
+
+    private static String sanitize(String value) {
+        return value.replaceAll("[^0-9A-Za-z.-]", "_");
+    }
+
+    /**
+     * Outcome of a preview request.
+     */
+    public enum Status {
+        /** The preview file is ready */
+        READY,
+        /** Rendering is still in progress; ask again shortly */
+        PENDING,
+        /** The document format has no preview */
+        UNSUPPORTED,
+        /** The preview pool is saturated; ask again later */
+        BUSY,
+        /** Downloading or rendering failed */
+        FAILED
+    }
+
+    /**
+     * A preview status and, when ready, the cached PNG file.
+     */
+    public static final class Preview {
+        private final Status status;
+        private final Path file;
+
+        Preview(Status status, Path file) {
+            this.status = status;
+            this.file = file;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public Path getFile() {
+            return file;
+        }
+    }
+}
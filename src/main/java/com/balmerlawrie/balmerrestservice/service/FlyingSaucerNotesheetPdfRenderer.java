@@ -0,0 +1,68 @@
+package com.balmerlawrie.balmerrestservice.service;
+
+import com.balmerlawrie.balmerrestservice.util.ITextRendererPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.w3c.dom.Document;
+
+import javax.annotation.PostConstruct;
+import java.io.OutputStream;
+
+/**
+ * Notesheet PDFs with Flying Saucer on iText 2.1.7, using renderers reused
+ * from an {@link ITextRendererPool}. The default backend; the View link
+ * positions of createpdfnote are calibrated against its layout.
+ */
+@Service
+@ConditionalOnProperty(name = "notesheet.pdf.renderer", havingValue = "flyingsaucer", matchIfMissing = true)
+public class FlyingSaucerNotesheetPdfRenderer implements NotesheetPdfRenderer {
+
+    private static final Logger log = LoggerFactory.getLogger(FlyingSaucerNotesheetPdfRenderer.class);
+
+    @Value("${notesheet.renderer.pool.size:4}")
+    private int poolSize;
+
+    @Value("${notesheet.renderer.fonts.directory:}")
+    private String fontsDirectory;
+
+    private ITextRendererPool rendererPool;
+
+    public FlyingSaucerNotesheetPdfRenderer() {
+    }
+
+    /**
+     * Creates a ready renderer outside the Spring context (benchmarks).
+     *
+     * @param poolSize       Renderers kept between PDFs; 0 creates one per PDF
+     * @param fontsDirectory Directory of fonts to register, or null for none
+     */
+    FlyingSaucerNotesheetPdfRenderer(int poolSize, String fontsDirectory) {
+        this.poolSize = poolSize;
+        this.fontsDirectory = fontsDirectory;
+        initPool();
+    }
+
+    @PostConstruct
+    void initPool() {
+        rendererPool = new ITextRendererPool(poolSize, fontsDirectory);
+    }
+
+    @Override
+    public void render(Document xhtml, OutputStream out) throws Exception {
+        rendererPool.render(renderer -> {
+            renderer.setDocument(xhtml, null);
+            renderer.layout();
+            log.debug("Flying Saucer dotsPerPoint: {}", renderer.getDotsPerPoint());
+            renderer.createPDF(out);
+            return null;
+        });
+    }
+
+    @Override
+    public String getName() {
+        return "flyingsaucer";
+    }
+}
@@ -1,10 +1,17 @@
 package com.balmerlawrie.balmerrestservice.service;
 
+import com.balmerlawrie.balmerrestservice.dto.WorkItemQuery;
+import com.balmerlawrie.balmerrestservice.model.QueueResponse;
+import com.balmerlawrie.balmerrestservice.model.WorkItem;
+import com.balmerlawrie.balmerrestservice.model.WorkList;
+import com.balmerlawrie.balmerrestservice.util.BoundedExecutors;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
@@ -13,9 +20,20 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.function.Predicate;
 
 /**
  * Service for fetching My Queue and Common Queue work items.
@@ -37,19 +55,42 @@ public class MyQueueService extends BaseIbpsService {
     @Value("${ibps.fetchWorkList.url}")
     private String fetchWorkListUrl;
 
+    @Value("${queue.fetch.parallelism:4}")
+    private int queueFetchParallelism;
+
+    @Autowired
+    private WorkItemPrefetchService workItemPrefetchService;
+
+    /**
+     * Pool for fetching common queues concurrently. When it is saturated the
+     * request thread fetches the queue itself.
+     */
+    private ExecutorService queueFetchExecutor;
+
+    @PostConstruct
+    void initExecutor() {
+        queueFetchExecutor = BoundedExecutors.newFixedPool("queue-fetch", queueFetchParallelism, 100,
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @PreDestroy
+    void shutdownExecutor() {
+        queueFetchExecutor.shutdownNow();
+    }
+
     /**
      * Fetches all work items in the user's My Queue.
      * Uses WMFetchWorkList with MyQueueFlag=Y.
      *
      * @param sessionId The user's session ID
-     * @return JSON with work items list
+     * @return The sorted My Queue work list
      */
-    public JsonNode getMyQueueItems(long sessionId) {
+    public WorkList fetchMyQueue(long sessionId) {
         log.info("Fetching My Queue items for session: {}", sessionId);
 
         String engineName = getEngineName();
         if (engineName == null) {
-            return createErrorResponse("Failed to retrieve engine name");
+            return WorkList.failed("Failed to retrieve engine name");
         }
 
         String url = String.format(fetchMyQueueUrl, engineName);
@@ -60,7 +101,7 @@ public class MyQueueService extends BaseIbpsService {
             return parseWorkListResponse(response, "myQueue");
         } catch (Exception e) {
             log.error("Failed to fetch My Queue items: {}", e.getMessage());
-            return createErrorResponse("Failed to fetch My Queue items: " + e.getMessage());
+            return WorkList.failed("Failed to fetch My Queue items: " + e.getMessage());
         }
     }
 
@@ -92,75 +133,36 @@ public class MyQueueService extends BaseIbpsService {
     }
 
     /**
-     * Fetches work items from Common Queues (shared/group queues).
+     * Finds a queue in a {@link #getUserQueues} response, e.g. to check that
+     * the user may access it.
      *
-     * @param sessionId The user's session ID
-     * @return JSON with common queue work items
+     * @param queuesResponse A successful getUserQueues response
+     * @param queueId        The queue ID
+     * @return The queue entry, or null if the user has no such queue
      */
-    public JsonNode getCommonQueueItems(long sessionId) {
-        log.info("Fetching Common Queue items for session: {}", sessionId);
-
-        // First get user's queues
-        JsonNode queuesResponse = getUserQueues(sessionId);
-        if (!queuesResponse.path("success").asBoolean(false)) {
-            return queuesResponse;
-        }
-
-        JsonNode queues = queuesResponse.path("queues");
-        if (!queues.isArray() || queues.isEmpty()) {
-            ObjectNode result = jsonMapper.createObjectNode();
-            result.put("success", true);
-            result.set("workItems", jsonMapper.createArrayNode());
-            result.put("totalCount", 0);
-            result.put("message", "No queues found for user");
-            return result;
-        }
-
-        // Fetch work items from each queue
-        List<JsonNode> allWorkItems = new ArrayList<>();
-        for (JsonNode queue : queues) {
-            int queueId = queue.path("queueId").asInt(0);
-            String queueName = queue.path("queueName").asText("");
-
-            if (queueId > 0) {
-                JsonNode workItems = getQueueWorkItems(queueId, queueName, sessionId);
-                if (workItems.path("success").asBoolean(false)) {
-                    JsonNode items = workItems.path("workItems");
-                    if (items.isArray()) {
-                        for (JsonNode item : items) {
-                            allWorkItems.add(item);
-                        }
-                    }
-                }
+    public static JsonNode findQueue(JsonNode queuesResponse, int queueId) {
+        for (JsonNode queue : queuesResponse.path("queues")) {
+            if (queue.path("queueId").asInt(0) == queueId) {
+                return queue;
             }
         }
-
-        // Build response
-        ObjectNode result = jsonMapper.createObjectNode();
-        result.put("success", true);
-        ArrayNode workItemsArray = jsonMapper.createArrayNode();
-        allWorkItems.forEach(workItemsArray::add);
-        result.set("workItems", workItemsArray);
-        result.put("totalCount", allWorkItems.size());
-
-        log.info("Retrieved {} Common Queue items", allWorkItems.size());
-        return result;
+        return null;
     }
 
     /**
      * Fetches work items from a specific queue.
      *
      * @param queueId   The queue ID
-     * @param queueName The queue name (for response)
+     * @param queueName The queue name (used when items carry none)
      * @param sessionId The user's session ID
-     * @return JSON with work items
+     * @return The sorted work list of the queue
      */
-    public JsonNode getQueueWorkItems(int queueId, String queueName, long sessionId) {
+    public WorkList fetchQueue(int queueId, String queueName, long sessionId) {
         log.debug("Fetching work items from queue: {} ({})", queueName, queueId);
 
         String engineName = getEngineName();
         if (engineName == null) {
-            return createErrorResponse("Failed to retrieve engine name");
+            return WorkList.failed("Failed to retrieve engine name");
         }
 
         String url = String.format(fetchWorkListUrl, engineName, queueId);
@@ -171,57 +173,125 @@ public class MyQueueService extends BaseIbpsService {
             return parseWorkListResponse(response, queueName);
         } catch (Exception e) {
             log.error("Failed to fetch work items from queue {}: {}", queueId, e.getMessage());
-            return createErrorResponse("Failed to fetch work items: " + e.getMessage());
+            return WorkList.failed("Failed to fetch work items: " + e.getMessage());
         }
     }
 
+    // --- Responses ---
+
     /**
-     * Fetches ALL work items (My Queue + Common Queues combined).
+     * Builds the response for a single work list.
+     * Output: { success, workItems: [...], totalCount, retrievedCount[, matchedCount] }
      *
-     * @param sessionId The user's session ID
-     * @return JSON with all work items
+     * @param workList A successfully fetched work list
+     * @param query    Filter, sort and projection to apply
+     * @return The response, ready to validate and write
      */
-    public JsonNode getAllWorkItems(long sessionId) {
-        log.info("Fetching all work items (My Queue + Common Queue) for session: {}", sessionId);
+    public QueueResponse buildWorkListResponse(WorkList workList, WorkItemQuery query) {
+        List<WorkItem> items = select(workList, query);
+
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        counts.put("totalCount", workList.getTotalCount());
+        counts.put("retrievedCount", workList.getRetrievedCount());
+        if (query.hasFilters()) {
+            counts.put("matchedCount", items.size());
+        }
+        return createResponse(items, query, counts, null);
+    }
 
-        List<JsonNode> allWorkItems = new ArrayList<>();
+    /**
+     * Builds the response with the work items of all common queues. Queues are
+     * fetched concurrently; items are kept in queue-list order.
+     * Output: { success, workItems: [...], totalCount[, message] }
+     *
+     * @param queuesResponse Successful response of {@link #getUserQueues(long)}
+     * @param query          Filter, sort and projection to apply
+     * @param sessionId      The user's session ID
+     * @return The response, ready to validate and write
+     */
+    public QueueResponse buildCommonQueueResponse(JsonNode queuesResponse, WorkItemQuery query, long sessionId) {
+        log.info("Fetching Common Queue items for session: {}", sessionId);
 
-        // Get My Queue items
-        JsonNode myQueueResponse = getMyQueueItems(sessionId);
-        if (myQueueResponse.path("success").asBoolean(false)) {
-            JsonNode items = myQueueResponse.path("workItems");
-            if (items.isArray()) {
-                for (JsonNode item : items) {
-                    allWorkItems.add(item);
-                }
-            }
+        List<WorkItem> items = new ArrayList<>();
+        for (WorkList workList : fetchCommonQueues(queuesResponse.path("queues"), sessionId)) {
+            items.addAll(select(workList, query));
         }
+        log.info("Retrieved {} Common Queue items", items.size());
+
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        counts.put("totalCount", items.size());
+        String message = items.isEmpty() && queuesResponse.path("queues").isEmpty()
+                ? "No queues found for user"
+                : null;
+        return createResponse(items, query, counts, message);
+    }
 
-        // Get Common Queue items
-        JsonNode commonQueueResponse = getCommonQueueItems(sessionId);
-        if (commonQueueResponse.path("success").asBoolean(false)) {
-            JsonNode items = commonQueueResponse.path("workItems");
-            if (items.isArray()) {
-                for (JsonNode item : items) {
-                    allWorkItems.add(item);
-                }
+    /**
+     * Builds the response with ALL work items (My Queue + Common Queues
+     * combined). My Queue items come first, then the common queues in
+     * queue-list order.
+     * Output: { success, workItems: [...], myQueueCount, commonQueueCount, totalCount }
+     *
+     * @param sessionId The user's session ID
+     * @param query     Filter, sort and projection to apply
+     * @return The response, ready to validate and write
+     */
+    public QueueResponse buildAllWorkItemsResponse(long sessionId, WorkItemQuery query) {
+        log.info("Fetching all work items (My Queue + Common Queue) for session: {}", sessionId);
+
+        WorkList myQueue = fetchMyQueue(sessionId);
+        List<WorkItem> items = new ArrayList<>(myQueue.isSuccess() ? select(myQueue, query) : Collections.emptyList());
+        int myQueueMatched = items.size();
+
+        JsonNode queuesResponse = getUserQueues(sessionId);
+        if (queuesResponse.path("success").asBoolean(false)) {
+            for (WorkList workList : fetchCommonQueues(queuesResponse.path("queues"), sessionId)) {
+                items.addAll(select(workList, query));
             }
         }
+        log.info("Retrieved {} total work items", items.size());
 
-        // Build combined response
-        ObjectNode result = jsonMapper.createObjectNode();
-        result.put("success", true);
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        counts.put("myQueueCount", query.hasFilters() ? myQueueMatched : myQueue.getTotalCount());
+        counts.put("commonQueueCount", items.size() - myQueueMatched);
+        counts.put("totalCount", items.size());
+        return createResponse(items, query, counts, null);
+    }
 
-        ArrayNode workItemsArray = jsonMapper.createArrayNode();
-        allWorkItems.forEach(workItemsArray::add);
-        result.set("workItems", workItemsArray);
+    /**
+     * Writes a queue response as JSON, item by item, without building a tree.
+     *
+     * @param response The response to write
+     * @param out      The response stream
+     */
+    public void writeResponse(QueueResponse response, OutputStream out) throws IOException {
+        try (JsonGenerator gen = createGenerator(out)) {
+            response.writeTo(gen);
+        }
+    }
 
-        result.put("myQueueCount", myQueueResponse.path("totalCount").asInt(0));
-        result.put("commonQueueCount", commonQueueResponse.path("totalCount").asInt(0));
-        result.put("totalCount", allWorkItems.size());
+    /**
+     * Prefetch stage of a My Queue response: once the list has been sent,
+     * warms the caches for the first unlocked items in the order the client
+     * received them (opt-in, see {@link WorkItemPrefetchService}).
+     *
+     * @param response  The response that was sent
+     * @param sessionId The user's session ID
+     */
+    public void prefetchLikelyOpened(QueueResponse response, long sessionId) {
+        workItemPrefetchService.prefetch(response.getWorkItems(), sessionId);
+    }
 
-        log.info("Retrieved {} total work items", allWorkItems.size());
-        return result;
+    /**
+     * Writes an arbitrary JSON node (e.g. an error response) to the stream.
+     *
+     * @param node The node to write
+     * @param out  The response stream
+     */
+    public void writeJson(JsonNode node, OutputStream out) throws IOException {
+        try (JsonGenerator gen = createGenerator(out)) {
+            gen.writeTree(node);
+        }
     }
 
     // --- Helper Methods ---
@@ -273,12 +343,88 @@ public class MyQueueService extends BaseIbpsService {
                 "</WMFetchWorkList_Input>";
     }
 
-    private JsonNode parseWorkListResponse(JsonNode response, String queueName) {
-        ObjectNode result = jsonMapper.createObjectNode();
+    /**
+     * Fetches all common queues concurrently. Results are returned in
+     * queue-list order (not completion order), so the combined list and its
+     * ETag are stable between polls. Failed queues are logged and skipped.
+     */
+    private List<WorkList> fetchCommonQueues(JsonNode queues, long sessionId) {
+        if (!queues.isArray() || queues.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<Future<WorkList>> futures = new ArrayList<>();
+        for (JsonNode queue : queues) {
+            int queueId = queue.path("queueId").asInt(0);
+            String queueName = queue.path("queueName").asText("");
+            if (queueId > 0) {
+                futures.add(queueFetchExecutor.submit(() -> fetchQueue(queueId, queueName, sessionId)));
+            }
+        }
 
+        List<WorkList> workLists = new ArrayList<>(futures.size());
+        for (Future<WorkList> future : futures) {
+            try {
+                WorkList workList = future.get();
+                if (workList.isSuccess()) {
+                    workLists.add(workList);
+                } else {
+                    log.error("Failed to fetch common queue: {}", workList.getError());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.forEach(f -> f.cancel(true));
+                break;
+            } catch (ExecutionException e) {
+                log.error("Failed to fetch common queue: {}", e.getCause().getMessage());
+            }
+        }
+        return workLists;
+    }
+
+    /**
+     * Selects the items matching the query's filters in one pass over the
+     * freshly fetched list (sorting is left to {@link #createResponse}).
+     */
+    private List<WorkItem> select(WorkList workList, WorkItemQuery query) {
+        if (!query.hasFilters()) {
+            return workList.getWorkItems();
+        }
+        Predicate<WorkItem> filter = query.toFilter();
+        List<WorkItem> matches = new ArrayList<>();
+        for (WorkItem item : workList.getWorkItems()) {
+            if (filter.test(item)) {
+                matches.add(item);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Applies the query's sort across all selected items and its projection.
+     */
+    private QueueResponse createResponse(List<WorkItem> items, WorkItemQuery query, Map<String, Integer> counts,
+            String message) {
+        if (query.hasSort()) {
+            items = new ArrayList<>(items);
+            items.sort(query.getComparator());
+        }
+        List<String> projection = query.isEmpty() ? null : query.getProjection();
+        return new QueueResponse(items, projection, counts, message);
+    }
+
+    private JsonGenerator createGenerator(OutputStream out) throws IOException {
+        // The servlet container owns the response stream; don't let Jackson close it
+        return jsonMapper.getFactory().createGenerator(out)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+
+    private WorkList parseWorkListResponse(JsonNode response, String queueName) {
         // Log the actual response structure for debugging
-        log.debug("Raw response structure: {}",
-                response.toString().substring(0, Math.min(500, response.toString().length())));
+        if (log.isDebugEnabled()) {
+            String raw = response.toString();
+            log.debug("Raw response structure: {}", raw.substring(0, Math.min(500, raw.length())));
+        }
 
         // Check if response is wrapped in WMFetchWorkList_Output
         JsonNode actualResponse = response;
@@ -288,14 +434,10 @@ public class MyQueueService extends BaseIbpsService {
 
         String mainCode = actualResponse.path("Exception").path("MainCode").asText("1");
         if (!"0".equals(mainCode)) {
-            result.put("success", false);
-            result.put("error", "API returned error code: " + mainCode);
-            return result;
+            return WorkList.failed("API returned error code: " + mainCode);
         }
 
-        result.put("success", true);
-
-        ArrayNode workItems = jsonMapper.createArrayNode();
+        List<WorkItem> workItems = new ArrayList<>();
         // XmlMapper creates "Instruments" wrapper, with "Instrument" array inside
         JsonNode instruments = actualResponse.path("Instruments").path("Instrument");
 
@@ -308,12 +450,12 @@ public class MyQueueService extends BaseIbpsService {
 
         if (instruments.isArray()) {
             for (JsonNode item : instruments) {
-                workItems.add(createWorkItemNode(item, queueName));
+                workItems.add(createWorkItem(item, queueName));
             }
         } else if (instruments.isObject() && !instruments.isEmpty()) {
             // Single item case
-            workItems.add(createWorkItemNode(instruments, queueName));
-        } else {
+            workItems.add(createWorkItem(instruments, queueName));
+        } else if (log.isDebugEnabled()) {
             // Try alternative paths - Jackson XmlMapper might use different naming
             log.debug("Trying alternative paths. Response keys: {}",
                     response.fieldNames().hasNext() ? response : "empty");
@@ -324,69 +466,31 @@ public class MyQueueService extends BaseIbpsService {
             });
         }
 
-        // Sort work items: My Queue first, then by process name
-        ArrayNode sortedWorkItems = sortWorkItems(workItems);
-
-        result.set("workItems", sortedWorkItems);
-        result.put("totalCount", actualResponse.path("TotalCount").asInt(sortedWorkItems.size()));
-        result.put("retrievedCount", actualResponse.path("RetrievedCount").asInt(sortedWorkItems.size()));
+        // Sort work items: My Queue first, then by process name (stable)
+        workItems.sort(WorkItem.DISPLAY_ORDER);
 
-        return result;
+        return new WorkList(workItems,
+                actualResponse.path("TotalCount").asInt(workItems.size()),
+                actualResponse.path("RetrievedCount").asInt(workItems.size()));
     }
 
     /**
-     * Creates a work item node with fields required for mobile display.
+     * Creates a work item with fields required for mobile display.
      * Fields ordered as: urn, activityName, entryDateTime, queueName, status,
-     * lockedBy, workitemId
-     */
-    private ObjectNode createWorkItemNode(JsonNode item, String defaultQueueName) {
-        ObjectNode workItem = jsonMapper.createObjectNode();
-
-        // Mobile display fields in the required order
-        workItem.put("urn", item.path("URN").asText());
-        workItem.put("activityName", item.path("ActivityName").asText());
-        workItem.put("entryDateTime", item.path("EntryDateTime").asText());
-        workItem.put("queueName", item.path("QueueName").asText(defaultQueueName));
-        workItem.put("status", item.path("WorkitemState").asText());
-        workItem.put("lockedBy", item.path("LockedByName").asText());
-        workItem.put("workitemId", item.path("WorkItemId").asText());
-
-        // Additional fields for sorting/processing (not shown in mobile but useful)
-        workItem.put("processName", item.path("RouteName").asText());
-        workItem.put("processInstanceId", item.path("ProcessInstanceId").asText());
-
-        return workItem;
-    }
-
-    /**
-     * Sorts work items: My Queue items first, then by process name.
+     * lockedBy, workitemId, plus processName and processInstanceId for
+     * sorting/processing.
      */
-    private ArrayNode sortWorkItems(ArrayNode workItems) {
-        List<JsonNode> itemList = new ArrayList<>();
-        workItems.forEach(itemList::add);
-
-        itemList.sort((a, b) -> {
-            String queueA = a.path("queueName").asText("");
-            String queueB = b.path("queueName").asText("");
-
-            // My Queue items first
-            boolean isMyQueueA = queueA.toLowerCase().contains("myqueue");
-            boolean isMyQueueB = queueB.toLowerCase().contains("myqueue");
-
-            if (isMyQueueA && !isMyQueueB)
-                return -1;
-            if (!isMyQueueA && isMyQueueB)
-                return 1;
-
-            // Then sort by process name
-            String processA = a.path("processName").asText("");
-            String processB = b.path("processName").asText("");
-            return processA.compareToIgnoreCase(processB);
-        });
-
-        ArrayNode sorted = jsonMapper.createArrayNode();
-        itemList.forEach(sorted::add);
-        return sorted;
+    private WorkItem createWorkItem(JsonNode item, String defaultQueueName) {
+        return new WorkItem(
+                item.path("URN").asText(),
+                item.path("ActivityName").asText(),
+                item.path("EntryDateTime").asText(),
+                item.path("QueueName").asText(defaultQueueName),
+                item.path("WorkitemState").asText(),
+                item.path("LockedByName").asText(),
+                item.path("WorkItemId").asText(),
+                item.path("RouteName").asText(),
+                item.path("ProcessInstanceId").asText());
     }
 
     private JsonNode parseQueueListResponse(JsonNode response) {
@@ -1,13 +1,19 @@
 package com.balmerlawrie.balmerrestservice.service;
 
+import com.balmerlawrie.balmerrestservice.model.SupportingDocument;
+import com.balmerlawrie.balmerrestservice.model.WorkItemAttributes;
+import com.balmerlawrie.balmerrestservice.util.CompiledTemplate;
+import com.balmerlawrie.balmerrestservice.util.ThresholdOutputStream;
+import com.balmerlawrie.balmerrestservice.util.TtlCache;
+import com.balmerlawrie.balmerrestservice.util.XhtmlNormalizer;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.URLEncoder;
@@ -16,7 +22,9 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 /**
@@ -26,8 +34,13 @@ import java.util.UUID;
 @Service
 public class NoteSheetService extends BaseIbpsService {
 
-    @Value("${ibps.fetchAttributes.url}")
-    private String fetchAttributesUrlTemplate;
+    /**
+     * Style sheet of the generated notesheet PDF.
+     */
+    static final String NOTESHEET_CSS =
+            "body { font-family: Arial, sans-serif; font-size: 12px; margin: 20px; }\n"
+            + "table { border-collapse: collapse; width: 100%; }\n"
+            + "td, th { border: 1px solid #333; padding: 8px; }\n";
 
     @Value("${omnidocs.api.url}")
     private String omniDocsApiUrl;
@@ -44,18 +57,40 @@ public class NoteSheetService extends BaseIbpsService {
     @Value("${ibps.getWorkItem.url}")
     private String getWorkItemUrlTemplate;
 
-    @Value("${omnigetdocument.api.url}")
-    private String getDocumentUrl;
-
     @Value("${notesheet.document.class:Notesheet Original}")
     private String noteSheetDocumentClass;
 
     @Value("${notesheet.temp.directory:${java.io.tmpdir}/notesheets}")
     private String tempDirectory;
 
+    @Value("${notesheet.debug.artifacts:false}")
+    private boolean debugArtifacts;
+
+    @Value("${notesheet.pdf.memory.threshold.bytes:16777216}")
+    private int pdfMemoryThreshold;
+
+    @Value("${notesheet.body.cache.appendix.first.row.y:150}")
+    private int appendixFirstRowY;
+
     @Value("${docs.viewer.base.url:}")
     private String docsViewerBaseUrl;
 
+    @Value("${notesheet.comments.cache.ttl.ms:15000}")
+    private long commentsCacheTtlMillis;
+
+    @Value("${notesheet.comments.cache.max.entries:500}")
+    private int commentsCacheMaxEntries;
+
+    /**
+     * Parsed comments history per work item and session.
+     */
+    private TtlCache<String, CommentHistory> commentHistories;
+
+    @PostConstruct
+    void initCommentsCache() {
+        commentHistories = new TtlCache<>(commentsCacheTtlMillis, commentsCacheMaxEntries);
+    }
+
     /**
      * Main method to retrieve the original notesheet document.
      * Uses the notesheet_original work item attribute which contains:
@@ -70,54 +105,24 @@ public class NoteSheetService extends BaseIbpsService {
         log.info("Getting original notesheet for processInstanceId: {}, workitemId: {}", processInstanceId, workitemId);
 
         try {
-            // Step 1: Get work item attributes
-            JsonNode attributes = fetchWorkItemAttributes(processInstanceId, workitemId, sessionId);
-            if (attributes == null || attributes.has("error")) {
-                return createNotFoundResponse("Failed to fetch work item attributes");
-            }
-
-            // Step 2: Extract notesheet_original attribute (format:
-            // FolderIndex#VersionNo#DocumentIndex)
-            String notesheetValue = extractNotesheetOriginal(attributes);
-            if (notesheetValue == null || notesheetValue.isEmpty()) {
-                return createNotFoundResponse("No notesheet_original attribute found in work item");
-            }
-
-            log.info("Found notesheet_original attribute: {}", notesheetValue);
-
-            // Step 3: Parse the notesheet value
-            String[] parts = notesheetValue.split("#");
-            if (parts.length < 3) {
-                return createNotFoundResponse("Invalid notesheet_original format: " + notesheetValue);
-            }
-
-            String folderIndex = parts[0];
-            String versionNo = parts[1];
-            String documentIndex = parts[2];
-
-            log.info("Parsed notesheet: folderIndex={}, versionNo={}, documentIndex={}", folderIndex, versionNo,
-                    documentIndex);
-
-            // Step 4: Download the document using documentIndex
-            byte[] documentContent = downloadDocument(documentIndex, sessionId);
-            if (documentContent == null || documentContent.length == 0) {
-                return createNotFoundResponse("Failed to download document content");
+            OriginalNotesheet original = loadOriginalNotesheet(processInstanceId, workitemId, sessionId);
+            if (original.failure != null) {
+                return original.failure;
             }
 
             // Step 5: Save to temp file
-            String documentName = "notesheet_original_" + processInstanceId;
-            String filePath = saveToTempFile(documentContent, documentName);
+            String filePath = saveToTempFile(original.content, original.documentName);
 
             // Build success response
             ObjectNode response = jsonMapper.createObjectNode();
             response.put("success", true);
             response.put("found", true);
             response.put("filePath", filePath);
-            response.put("documentName", documentName);
-            response.put("documentIndex", documentIndex);
-            response.put("folderIndex", folderIndex);
-            response.put("versionNo", versionNo);
-            response.put("fileSize", documentContent.length);
+            response.put("documentName", original.documentName);
+            response.put("documentIndex", original.documentIndex);
+            response.put("folderIndex", original.folderIndex);
+            response.put("versionNo", original.versionNo);
+            response.put("fileSize", original.content.length);
 
             log.info("Successfully retrieved notesheet to: {}", filePath);
             return response;
@@ -128,6 +133,87 @@ public class NoteSheetService extends BaseIbpsService {
         }
     }
 
+    /**
+     * Resolves the notesheet_original attribute and downloads the document
+     * content into memory, without writing it anywhere.
+     *
+     * @return The content and its identifiers, or a not-found response in failure
+     */
+    private OriginalNotesheet loadOriginalNotesheet(String processInstanceId, String workitemId, long sessionId)
+            throws Exception {
+        OriginalNotesheet original = resolveOriginalNotesheet(processInstanceId, workitemId, sessionId);
+        if (original.failure != null) {
+            return original;
+        }
+        return downloadOriginalNotesheet(original, sessionId);
+    }
+
+    /**
+     * Resolves the notesheet_original attribute into the document's
+     * identifiers, without downloading it.
+     *
+     * @return The identifiers, or a not-found response in failure
+     */
+    private OriginalNotesheet resolveOriginalNotesheet(String processInstanceId, String workitemId, long sessionId) {
+        // Step 1: Get work item attributes
+        WorkItemAttributes attributes = workItemAttributesService.getAttributes(
+                processInstanceId, workitemId, sessionId);
+        if (attributes.getError() != null) {
+            return OriginalNotesheet.failed(createNotFoundResponse("Failed to fetch work item attributes"));
+        }
+
+        // Step 2: Extract notesheet_original attribute (format:
+        // FolderIndex#VersionNo#DocumentIndex)
+        String notesheetValue = extractNotesheetOriginal(attributes);
+        if (notesheetValue == null || notesheetValue.isEmpty()) {
+            return OriginalNotesheet.failed(
+                    createNotFoundResponse("No notesheet_original attribute found in work item"));
+        }
+
+        log.info("Found notesheet_original attribute: {}", notesheetValue);
+
+        // Step 3: Parse the notesheet value
+        String[] parts = notesheetValue.split("#");
+        if (parts.length < 3) {
+            return OriginalNotesheet.failed(
+                    createNotFoundResponse("Invalid notesheet_original format: " + notesheetValue));
+        }
+
+        OriginalNotesheet original = new OriginalNotesheet();
+        original.attributeValue = notesheetValue;
+        original.folderIndex = parts[0];
+        original.versionNo = parts[1];
+        original.documentIndex = parts[2];
+        original.documentName = "notesheet_original_" + processInstanceId;
+
+        log.info("Parsed notesheet: folderIndex={}, versionNo={}, documentIndex={}", original.folderIndex,
+                original.versionNo, original.documentIndex);
+        return original;
+    }
+
+    /**
+     * Loads the content of a resolved original notesheet into memory, from the
+     * content cache or by downloading the referenced version.
+     *
+     * @return The notesheet with its content, or a not-found response in failure
+     */
+    private OriginalNotesheet downloadOriginalNotesheet(OriginalNotesheet original, long sessionId) {
+        // Step 4: Download the referenced version of the document, once per version
+        original.content = notesheetContentCache.get(original.documentIndex, original.versionNo);
+        if (original.content != null) {
+            log.info("Original notesheet {} v{} served from the content cache", original.documentIndex,
+                    original.versionNo);
+            return original;
+        }
+        original.content = documentDownloadService.downloadDocument(original.documentIndex, original.versionNo,
+                sessionId);
+        if (original.content == null || original.content.length == 0) {
+            return OriginalNotesheet.failed(createNotFoundResponse("Failed to download document content"));
+        }
+        notesheetContentCache.put(original.documentIndex, original.versionNo, original.content);
+        return original;
+    }
+
     /**
      * Retrieves the notesheet document ID from work item attributes.
      * Parses the 'notesheet' attribute which contains: FolderIndex#DocumentIndex
@@ -142,8 +228,9 @@ public class NoteSheetService extends BaseIbpsService {
 
         try {
             // Step 1: Get work item attributes
-            JsonNode attributes = fetchWorkItemAttributes(processInstanceId, workitemId, sessionId);
-            if (attributes == null || attributes.has("error")) {
+            WorkItemAttributes attributes = workItemAttributesService.getAttributes(
+                    processInstanceId, workitemId, sessionId);
+            if (attributes.getError() != null) {
                 return createNotFoundResponse("Failed to fetch work item attributes");
             }
 
@@ -189,91 +276,24 @@ public class NoteSheetService extends BaseIbpsService {
      * Extracts the 'notesheet' attribute value from work item attributes.
      * The attribute contains: FolderIndex#DocumentIndex
      */
-    private String extractNotesheetAttribute(JsonNode attributes) {
-        // Navigate through the response structure
-        JsonNode output = attributes.path("WMFetchWorkItemAttributes_Output");
-        if (output.isMissingNode()) {
-            output = attributes;
-        }
-
-        JsonNode attrs = output.path("Attributes");
-        if (attrs.isMissingNode()) {
-            attrs = output;
-        }
-
-        // Look for 'notesheet' attribute (various case variants)
-        for (String key : new String[] { "notesheet", "Notesheet", "NOTESHEET" }) {
-            JsonNode node = attrs.path(key);
-            if (!node.isMissingNode()) {
-                String value = node.asText();
-                if (value != null && !value.isEmpty() && !value.equals("null")) {
-                    return value;
-                }
-                // Try empty key (iBPS JSON format)
-                value = node.path("").asText();
-                if (value != null && !value.isEmpty()) {
-                    return value;
-                }
-            }
+    private String extractNotesheetAttribute(WorkItemAttributes attributes) {
+        String value = attributes.get("notesheet");
+        if (value == null) {
+            log.warn("notesheet attribute not found in response");
         }
-
-        log.warn("notesheet attribute not found in response");
-        return null;
+        return value;
     }
 
     /**
      * Extracts the notesheet_original attribute value from work item attributes.
      * The attribute contains: FolderIndex#VersionNo#DocumentIndex
      */
-    private String extractNotesheetOriginal(JsonNode attributes) {
-        // Navigate through the response structure
-        JsonNode output = attributes.path("WMFetchWorkItemAttributes_Output");
-        if (output.isMissingNode()) {
-            output = attributes;
-        }
-
-        JsonNode attrs = output.path("Attributes");
-        if (attrs.isMissingNode()) {
-            attrs = output;
-        }
-
-        // Look for notesheet_original attribute
-        JsonNode notesheetAttr = attrs.path("notesheet_original");
-        if (!notesheetAttr.isMissingNode()) {
-            // Value can be directly in the node text or in a "content" or "" key
-            String value = notesheetAttr.asText();
-            if (value != null && !value.isEmpty() && !value.equals("null")) {
-                return value;
-            }
-            // Try empty key (iBPS JSON format)
-            value = notesheetAttr.path("").asText();
-            if (value != null && !value.isEmpty()) {
-                return value;
-            }
-            // Try "content" key
-            value = notesheetAttr.path("content").asText();
-            if (value != null && !value.isEmpty()) {
-                return value;
-            }
-        }
-
-        // Also try lowercase/uppercase variants
-        for (String key : new String[] { "notesheet_original", "NoteSheet_Original", "NOTESHEET_ORIGINAL" }) {
-            JsonNode node = attrs.path(key);
-            if (!node.isMissingNode()) {
-                String value = node.asText();
-                if (value != null && !value.isEmpty() && !value.equals("null")) {
-                    return value;
-                }
-                value = node.path("").asText();
-                if (value != null && !value.isEmpty()) {
-                    return value;
-                }
-            }
+    private String extractNotesheetOriginal(WorkItemAttributes attributes) {
+        String value = attributes.get("notesheet_original");
+        if (value == null) {
+            log.warn("notesheet_original attribute not found in response");
         }
-
-        log.warn("notesheet_original attribute not found in response");
-        return null;
+        return value;
     }
 
     /**
@@ -282,7 +302,8 @@ public class NoteSheetService extends BaseIbpsService {
      * 
      * @param documentIndex Document Index
      * @param sessionId     Session ID for authentication
-     * @return JSON response with annotations and file path
+     * @return JSON response with annotations (and the file path of the dump when
+     *         notesheet.debug.artifacts is on)
      */
     public JsonNode getAnnotations(String documentIndex, long sessionId) {
         log.info("Getting annotations for documentIndex: {}", documentIndex);
@@ -336,26 +357,28 @@ public class NoteSheetService extends BaseIbpsService {
             JsonNode annotations = output.path("AnnotationGroups");
             log.info("Retrieved annotations count/status: {}", annotations.size());
 
-            // Step 4: Save to temp file
-            String fileName = "annotations_" + documentIndex + ".json";
-            Path tempDir = Paths.get(tempDirectory.replace("notesheets", "annotations")); // Use distinct folder
-            if (!Files.exists(tempDir)) {
-                Files.createDirectories(tempDir);
-            }
-
-            String uniqueFileName = UUID.randomUUID().toString() + "_" + fileName;
-            Path filePath = tempDir.resolve(uniqueFileName);
-
-            try (FileOutputStream fos = new FileOutputStream(filePath.toFile())) {
-                fos.write(output.toPrettyString().getBytes());
-            }
-
-            // Step 5: Build success response
+            // Step 4: Build success response
             ObjectNode result = jsonMapper.createObjectNode();
             result.put("success", true);
             result.put("found", true);
             result.put("documentIndex", documentIndex);
-            result.put("filePath", filePath.toAbsolutePath().toString());
+
+            // Step 5: Save to temp file (debug artifact only)
+            if (debugArtifacts) {
+                String fileName = "annotations_" + documentIndex + ".json";
+                Path tempDir = Paths.get(tempDirectory.replace("notesheets", "annotations")); // Use distinct folder
+                if (!Files.exists(tempDir)) {
+                    Files.createDirectories(tempDir);
+                }
+
+                String uniqueFileName = UUID.randomUUID().toString() + "_" + fileName;
+                Path filePath = tempDir.resolve(uniqueFileName);
+
+                try (FileOutputStream fos = new FileOutputStream(filePath.toFile())) {
+                    fos.write(output.toPrettyString().getBytes());
+                }
+                result.put("filePath", filePath.toAbsolutePath().toString());
+            }
             result.set("annotations", annotations);
 
             return result;
@@ -377,8 +400,7 @@ public class NoteSheetService extends BaseIbpsService {
      */
     public JsonNode setAnnotations(String documentIndex, JsonNode annotations, long sessionId) {
         log.info("Setting annotations for documentIndex: {}", documentIndex);
-        ObjectMapper mapper = new ObjectMapper();
-        ObjectNode result = mapper.createObjectNode();
+        ObjectNode result = jsonMapper.createObjectNode();
         ArrayNode results = result.putArray("results");
 
         try {
@@ -413,14 +435,14 @@ public class NoteSheetService extends BaseIbpsService {
                     String buffer = g.path("AnnotationBuffer").asText("");
 
                     // Build Input
-                    ObjectNode annotationGroup = mapper.createObjectNode();
+                    ObjectNode annotationGroup = jsonMapper.createObjectNode();
                     annotationGroup.put("AnnotationType", annotType);
                     annotationGroup.put("PageNo", pageNo);
                     annotationGroup.put("AnnotGroupName", groupName);
                     annotationGroup.put("AccessType", accessType);
                     annotationGroup.put("AnnotationBuffer", buffer);
 
-                    ObjectNode input = mapper.createObjectNode();
+                    ObjectNode input = jsonMapper.createObjectNode();
                     input.put("Option", "NGOAddAnnotation");
                     input.put("CabinetName", cabinetName);
                     input.put("UserDBId", String.valueOf(sessionId));
@@ -429,15 +451,15 @@ public class NoteSheetService extends BaseIbpsService {
                     input.put("MajorVersion", "N"); // Do not force major version
 
                     // Wrap in NGOExecuteAPIBDO
-                    ObjectNode inputData = mapper.createObjectNode();
+                    ObjectNode inputData = jsonMapper.createObjectNode();
                     inputData.set("NGOAddAnnotation_Input", input);
 
-                    ObjectNode ngoExecuteBDO = mapper.createObjectNode();
+                    ObjectNode ngoExecuteBDO = jsonMapper.createObjectNode();
                     ngoExecuteBDO.set("inputData", inputData);
                     ngoExecuteBDO.put("base64Encoded", "N");
                     ngoExecuteBDO.put("locale", "en_US");
 
-                    ObjectNode payload = mapper.createObjectNode();
+                    ObjectNode payload = jsonMapper.createObjectNode();
                     payload.set("NGOExecuteAPIBDO", ngoExecuteBDO);
 
                     HttpHeaders headers = new HttpHeaders();
@@ -452,7 +474,7 @@ public class NoteSheetService extends BaseIbpsService {
                     JsonNode output = responseJson.path("NGOExecuteAPIResponseBDO").path("outputData")
                             .path("NGOAddAnnotation_Output");
 
-                    ObjectNode groupResult = mapper.createObjectNode();
+                    ObjectNode groupResult = jsonMapper.createObjectNode();
                     groupResult.put("groupName", groupName);
 
                     int status = output.path("Status").asInt();
@@ -469,7 +491,7 @@ public class NoteSheetService extends BaseIbpsService {
 
                 } catch (Exception e) {
                     log.error("Failed to add annotation group {}: {}", groupName, e.getMessage());
-                    ObjectNode groupResult = mapper.createObjectNode();
+                    ObjectNode groupResult = jsonMapper.createObjectNode();
                     groupResult.put("groupName", groupName);
                     groupResult.put("status", "Exception");
                     groupResult.put("error", e.getMessage());
@@ -488,76 +510,169 @@ public class NoteSheetService extends BaseIbpsService {
     }
 
     /**
-     * Retrieves comments for a work item.
+     * Retrieves the full comments history of a work item.
      * Extracts 'Q_Eoffice_Commentshistory' from attributes.
      */
     public JsonNode getComments(String processInstanceId, String workitemId, long sessionId) {
-        log.info("Getting comments for work item: {} / {}", processInstanceId, workitemId);
-
-        // Fetch attributes
-        JsonNode attributesResponse = fetchWorkItemAttributes(processInstanceId, workitemId, sessionId);
-
-        // Navigate to attributes
-        JsonNode output = attributesResponse.path("WMFetchWorkItemAttributes_Output");
-        if (output.isMissingNode())
-            output = attributesResponse; // Handle unwrapped
+        return getComments(processInstanceId, workitemId, sessionId, null, null, 0);
+    }
 
-        JsonNode attributes = output.path("Attributes");
-        if (attributes.isMissingNode()) {
+    /**
+     * Retrieves one page of the comments history of a work item, optionally
+     * only the comments made after a point in time.
+     *
+     * The parsed history is cached per work item and session
+     * (notesheet.comments.cache.ttl.ms), so paging through it or polling for
+     * new comments does not refetch the attributes. Clients syncing
+     * incrementally pass the returned latestDateTime as the next since.
+     *
+     * @param processInstanceId Process instance ID
+     * @param workitemId        Work item ID
+     * @param sessionId         Session ID for authentication
+     * @param since             Only comments with a later dateTime
+     *                          (yyyy-MM-dd[ HH:mm[:ss[.S]]]), or null for all
+     * @param limit             Maximum number of comments, or null for all
+     * @param offset            Number of matching comments to skip
+     * @return JSON response with the comments page, total (matching comments),
+     *         count, offset, hasMore and latestDateTime
+     */
+    public JsonNode getComments(String processInstanceId, String workitemId, long sessionId,
+            String since, Integer limit, int offset) {
+        log.info("Getting comments for work item: {} / {} (since={}, limit={}, offset={})",
+                processInstanceId, workitemId, since, limit, offset);
+
+        CommentHistory history = commentHistories.get(processInstanceId + "|" + workitemId + "|" + sessionId,
+                k -> loadCommentHistory(processInstanceId, workitemId, sessionId), h -> h.comments != null);
+        if (history.comments == null) {
             return createErrorResponse("No attributes found", "Failed to fetch work item attributes");
         }
 
-        ObjectMapper mapper = new ObjectMapper();
-        ObjectNode result = mapper.createObjectNode();
-        ArrayNode commentsList = result.putArray("comments");
-
-        // internal helper to find attribute (recursive or case-insensitive)
-        JsonNode historyAttr = attributes.path("Q_Eoffice_Commentshistory");
-
-        // If it's an array (Complex Array in iBPS)
-        if (historyAttr.isArray()) {
-            for (JsonNode item : historyAttr) {
-                ObjectNode comment = mapper.createObjectNode();
-
-                // Extract useful fields
-                comment.put("userName", getValue(item, "username"));
-                comment.put("userId", getValue(item, "userid"));
-                comment.put("dateTime", getValue(item, "datetime")); // 2025-12-12 14:46:03.0
-                comment.put("comments", getValue(item, "comments"));
-                comment.put("stage", getValue(item, "stagename"));
-                commentsList.add(comment);
+        List<ObjectNode> matching = history.comments;
+        if (since != null) {
+            String after = normalizeCommentDateTime(since);
+            matching = new ArrayList<>();
+            for (int i = 0; i < history.comments.size(); i++) {
+                if (history.dateTimes.get(i).compareTo(after) > 0) {
+                    matching.add(history.comments.get(i));
+                }
             }
-        } else if (!historyAttr.isMissingNode()) {
-            // Single object?
-            ObjectNode comment = mapper.createObjectNode();
-            comment.put("userName", getValue(historyAttr, "username"));
-            comment.put("userId", getValue(historyAttr, "userid"));
-            comment.put("dateTime", getValue(historyAttr, "datetime"));
-            comment.put("comments", getValue(historyAttr, "comments"));
-            comment.put("stage", getValue(historyAttr, "stagename"));
-            comment.put("status", getValue(historyAttr, "email"));
+        }
+
+        int from = Math.min(offset, matching.size());
+        int to = limit != null ? (int) Math.min((long) from + limit, matching.size()) : matching.size();
+
+        ObjectNode result = jsonMapper.createObjectNode();
+        ArrayNode commentsList = result.putArray("comments");
+        for (ObjectNode comment : matching.subList(from, to)) {
             commentsList.add(comment);
         }
 
         result.put("success", true);
         result.put("count", commentsList.size());
+        result.put("total", matching.size());
+        result.put("offset", from);
+        result.put("hasMore", to < matching.size());
+        result.put("latestDateTime", history.latestDateTime);
 
         return result;
     }
 
-    private String getValue(JsonNode parent, String key) {
-        if (parent.has(key)) {
-            // iBPS attributes often have text in the node itself or empty key ""
-            JsonNode node = parent.get(key);
-            if (node.has(""))
-                return node.get("").asText();
-            // If it's just text
-            if (node.isTextual())
-                return node.asText();
-            // If it is object but no "" key, try to stringify or return empty
-            return "";
+    /**
+     * Drops the cached comments history of a work item for a session, so the
+     * next request rebuilds it from the attributes.
+     */
+    public void invalidateComments(String processInstanceId, String workitemId, long sessionId) {
+        commentHistories.invalidate(processInstanceId + "|" + workitemId + "|" + sessionId);
+    }
+
+    /**
+     * Parses Q_Eoffice_Commentshistory into comment nodes, once per cache miss.
+     */
+    private CommentHistory loadCommentHistory(String processInstanceId, String workitemId, long sessionId) {
+        WorkItemAttributes attributes = workItemAttributesService.getAttributes(processInstanceId, workitemId,
+                sessionId);
+        if (attributes.getError() != null || !attributes.isSuccessful()) {
+            // Not cached: a failed fetch must not look like a work item without comments
+            return new CommentHistory(null, null, "");
+        }
+
+        // Q_Eoffice_Commentshistory is a complex array; a single entry comes back as one object
+        List<Map<String, String>> rows = attributes.getRows("Q_Eoffice_Commentshistory");
+        boolean singleObject = attributes.isObject("Q_Eoffice_Commentshistory");
+        List<ObjectNode> comments = new ArrayList<>(rows.size());
+        List<String> dateTimes = new ArrayList<>(rows.size());
+        String latest = "";
+        String latestNormalized = "";
+        for (Map<String, String> item : rows) {
+            ObjectNode comment = jsonMapper.createObjectNode();
+
+            // Extract useful fields
+            String dateTime = item.getOrDefault("datetime", ""); // 2025-12-12 14:46:03.0
+            comment.put("userName", item.getOrDefault("username", ""));
+            comment.put("userId", item.getOrDefault("userid", ""));
+            comment.put("dateTime", dateTime);
+            comment.put("comments", item.getOrDefault("comments", ""));
+            comment.put("stage", item.getOrDefault("stagename", ""));
+            if (singleObject) {
+                comment.put("status", item.getOrDefault("email", ""));
+            }
+            comments.add(comment);
+
+            String normalized = normalizeCommentDateTime(dateTime);
+            dateTimes.add(normalized);
+            if (normalized.compareTo(latestNormalized) > 0) {
+                latest = dateTime;
+                latestNormalized = normalized;
+            }
+        }
+        return new CommentHistory(Collections.unmodifiableList(comments), dateTimes, latest);
+    }
+
+    /**
+     * Brings a comment dateTime (2025-12-12 14:46:03.0) or a since value
+     * (2025-12-12T14:46:03, 2025-12-12 14:46) to a form that compares
+     * chronologically as a string, at full precision: missing time fields
+     * count as zero and fractional seconds are padded to nanoseconds, so a
+     * comment later in the same second as since still counts as after it.
+     */
+    static String normalizeCommentDateTime(String dateTime) {
+        String value = dateTime.trim().replace('T', ' ');
+        if (value.length() < 10) {
+            return value;
+        }
+        StringBuilder normalized = new StringBuilder(29).append(value, 0, Math.min(value.length(), 19));
+        if (normalized.length() < 19) {
+            normalized.append("0000-00-00 00:00:00", normalized.length(), 19);
+        }
+        normalized.append('.');
+        int fractionDigits = 0;
+        if (value.length() > 20 && value.charAt(19) == '.') {
+            for (int i = 20; i < value.length() && fractionDigits < 9 && Character.isDigit(value.charAt(i)); i++) {
+                normalized.append(value.charAt(i));
+                fractionDigits++;
+            }
+        }
+        for (; fractionDigits < 9; fractionDigits++) {
+            normalized.append('0');
+        }
+        return normalized.toString();
+    }
+
+    /**
+     * Parsed comments history of one work item. The comment nodes are shared
+     * between responses and must not be modified. comments is null if the
+     * attributes could not be fetched.
+     */
+    private static final class CommentHistory {
+        final List<ObjectNode> comments;
+        final List<String> dateTimes;
+        final String latestDateTime;
+
+        CommentHistory(List<ObjectNode> comments, List<String> dateTimes, String latestDateTime) {
+            this.comments = comments;
+            this.dateTimes = dateTimes;
+            this.latestDateTime = latestDateTime;
         }
-        return "";
     }
 
     /**
@@ -565,14 +680,13 @@ public class NoteSheetService extends BaseIbpsService {
      * Aggregates WMFetchWorkItemAttributes and WMGetWorkItem.
      */
     public String dumpWorkItemDetails(String processInstanceId, String workitemId, long sessionId) {
-        ObjectMapper mapper = new ObjectMapper();
-        ObjectNode debugData = mapper.createObjectNode();
+        ObjectNode debugData = jsonMapper.createObjectNode();
 
         try {
             // 1. Fetch Attributes
             try {
                 debugData.set("WMFetchWorkItemAttributes",
-                        fetchWorkItemAttributes(processInstanceId, workitemId, sessionId));
+                        workItemAttributesService.getAttributesResponse(processInstanceId, workitemId, sessionId));
             } catch (Exception e) {
                 debugData.put("WMFetchWorkItemAttributes_Error", e.getMessage());
             }
@@ -620,164 +734,16 @@ public class NoteSheetService extends BaseIbpsService {
         }
     }
 
-    /**
-     * Fetches work item attributes from iBPS.
-     */
-    private JsonNode fetchWorkItemAttributes(String processInstanceId, String workitemId, long sessionId) {
-        try {
-            String engineName = getEngineName();
-            int workItemIdInt = Integer.parseInt(workitemId);
-            String url = String.format(fetchAttributesUrlTemplate, engineName, processInstanceId, workItemIdInt);
-
-            // Build XML payload
-            String xmlPayload = buildFetchAttributesPayload(engineName, processInstanceId, workItemIdInt, sessionId);
-
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_XML);
-            headers.setAccept(java.util.Collections.singletonList(MediaType.APPLICATION_XML));
-            headers.set("sessionId", String.valueOf(sessionId)); // Session ID must be in header!
-
-            HttpEntity<String> request = new HttpEntity<>(xmlPayload, headers);
-
-            log.debug("Calling WMFetchWorkItemAttributes: url={}, sessionId={}", url, sessionId);
-            ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.POST, request, String.class);
-
-            JsonNode result = parseXmlToJson(response.getBody());
-
-            // Check for API-level errors
-            JsonNode output = result.path("WMFetchWorkItemAttributes_Output");
-            if (!output.isMissingNode()) {
-                int status = output.path("Status").asInt(0);
-                if (status != 0) {
-                    String errorDesc = output.path("Error").path("Exception").path("Description")
-                            .asText("Unknown error");
-                    log.error("iBPS API error: Status={}, Description={}", status, errorDesc);
-                    return createErrorResponse("iBPS error: " + errorDesc);
-                }
-            }
-
-            log.debug("WMFetchWorkItemAttributes response OK");
-            return result;
-
-        } catch (org.springframework.web.client.HttpServerErrorException e) {
-            // iBPS returns HTTP 500 with JSON or XML error body - parse it
-            String responseBody = e.getResponseBodyAsString();
-            log.warn("iBPS returned HTTP 500, parsing error body: {}",
-                    responseBody.substring(0, Math.min(300, responseBody.length())));
-            try {
-                JsonNode errorJson;
-
-                // Check if response is JSON array (starts with [)
-                if (responseBody.trim().startsWith("[")) {
-                    errorJson = jsonMapper.readTree(responseBody).get(0);
-                } else if (responseBody.trim().startsWith("{")) {
-                    errorJson = jsonMapper.readTree(responseBody);
-                } else {
-                    // XML response - parse it (parseXmlToJson handles <?xml...)
-                    errorJson = parseXmlToJson(responseBody);
-                }
-
-                log.debug("Parsed error response: {}", errorJson);
-
-                // Try to extract error from WMFetchWorkItemAttributes_Output
-                JsonNode output = errorJson.path("WMFetchWorkItemAttributes_Output");
-                if (output.isMissingNode()) {
-                    // Try root level if not wrapped
-                    output = errorJson;
-                }
-
-                int status = output.path("Status").asInt(-1);
-                JsonNode errorNode = output.path("Error").path("Exception");
-                String errorDesc = errorNode.path("Description").asText("");
-                if (errorDesc.isEmpty()) {
-                    errorDesc = errorNode.path("Subject").asText("Unknown iBPS error");
-                }
-
-                log.error("iBPS API error: Status={}, Description={}", status, errorDesc);
-                return createNotFoundResponse("iBPS error (Status " + status + "): " + errorDesc);
-            } catch (Exception parseEx) {
-                log.error("Failed to parse iBPS error response: {}", parseEx.getMessage());
-                return createNotFoundResponse("Error fetching work item: " + e.getStatusCode());
-            }
-        } catch (Exception e) {
-            log.error("Error fetching work item attributes: {}", e.getMessage(), e);
-            return createErrorResponse("Error fetching attributes", e.getMessage());
-        }
-    }
-
-    /**
-     * Builds XML payload for WMFetchWorkItemAttributes API.
-     */
-    private String buildFetchAttributesPayload(String engineName, String processInstanceId, int workitemId,
-            long sessionId) {
-        return String.format(
-                "<?xml version=\"1.0\"?>" +
-                        "<WMFetchWorkItemAttributes_Input>" +
-                        "<Option>WMFetchWorkItemAttributes</Option>" +
-                        "<EngineName>%s</EngineName>" +
-                        "<SessionId>%d</SessionId>" +
-                        "<ProcessInstanceId>%s</ProcessInstanceId>" +
-                        "<WorkItemId>%d</WorkItemId>" +
-                        "</WMFetchWorkItemAttributes_Input>",
-                engineName, sessionId, processInstanceId, workitemId);
-    }
-
     /**
      * Extracts folder index from work item attributes.
      * The folder index is stored in the 'itemindex' attribute.
      */
-    private String extractFolderIndex(JsonNode attributes) {
-        // Check if itemtype is 'F' (folder)
-        JsonNode output = attributes.path("WMFetchWorkItemAttributes_Output");
-        if (output.isMissingNode()) {
-            output = attributes;
-        }
-
-        JsonNode attrs = output.path("Attributes");
-        if (!attrs.isMissingNode() && attrs.isObject()) {
-            // Look for itemindex attribute
-            JsonNode itemIndexAttr = attrs.path("itemindex");
-            if (!itemIndexAttr.isMissingNode()) {
-                // Value is in empty key "" in iBPS response structure
-                String folderIndex = itemIndexAttr.path("").asText();
-                if (folderIndex != null && !folderIndex.isEmpty()) {
-                    log.debug("Found itemindex: {}", folderIndex);
-                    return folderIndex;
-                }
-            }
-
-            // Try FolderIndex as fallback
-            JsonNode folderIndexAttr = attrs.path("FolderIndex");
-            if (!folderIndexAttr.isMissingNode()) {
-                String folderIndex = folderIndexAttr.path("").asText();
-                if (folderIndex != null && !folderIndex.isEmpty()) {
-                    return folderIndex;
-                }
-            }
-
-            // Try AttachmentFolderId as fallback
-            JsonNode attachmentAttr = attrs.path("AttachmentFolderId");
-            if (!attachmentAttr.isMissingNode()) {
-                String folderIndex = attachmentAttr.path("").asText();
-                if (folderIndex != null && !folderIndex.isEmpty()) {
-                    return folderIndex;
-                }
-            }
+    private String extractFolderIndex(WorkItemAttributes attributes) {
+        String folderIndex = attributes.getFirst("itemindex", "FolderIndex", "AttachmentFolderId");
+        if (folderIndex == null) {
+            log.warn("Could not find folder index in attributes ({} attributes present)", attributes.asMap().size());
         }
-
-        // Try array format
-        if (attrs.isArray()) {
-            for (JsonNode attr : attrs) {
-                String name = attr.path("Name").asText("");
-                if ("itemindex".equalsIgnoreCase(name) || "FolderIndex".equalsIgnoreCase(name)) {
-                    return attr.path("Value").asText();
-                }
-            }
-        }
-
-        log.warn("Could not find folder index in attributes. Response: {}",
-                attributes.toString().substring(0, Math.min(500, attributes.toString().length())));
-        return null;
+        return folderIndex;
     }
 
     /**
@@ -821,56 +787,6 @@ public class NoteSheetService extends BaseIbpsService {
         }
     }
 
-    /**
-     * Downloads document content from OmniDocs using getDocumentStreamJSON API.
-     * Uses sessionId as userDBId for authentication (per reference project
-     * pattern).
-     */
-    private byte[] downloadDocument(String documentIndex, long sessionId) {
-        try {
-            // Build NGOGetDocumentBDO payload (matches reference project pattern)
-            ObjectNode ngoGetDocumentBDO = jsonMapper.createObjectNode();
-            ngoGetDocumentBDO.put("cabinetName", cabinetName);
-            ngoGetDocumentBDO.put("docIndex", documentIndex);
-            ngoGetDocumentBDO.put("versionNo", "");  // Empty string = get latest version
-            // Use sessionId as userDBId for authentication
-            ngoGetDocumentBDO.put("userDBId", String.valueOf(sessionId));
-            ngoGetDocumentBDO.put("userName", "");
-            ngoGetDocumentBDO.put("userPassword", "");
-            ngoGetDocumentBDO.put("authToken", "");
-            ngoGetDocumentBDO.put("authTokenType", "");
-            ngoGetDocumentBDO.put("locale", "en_US");
-            ngoGetDocumentBDO.put("oAuth", "N");
-            ngoGetDocumentBDO.put("sessionValid", "");
-
-            ObjectNode payload = jsonMapper.createObjectNode();
-            payload.set("NGOGetDocumentBDO", ngoGetDocumentBDO);
-
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            HttpEntity<String> request = new HttpEntity<>(payload.toString(), headers);
-
-            log.info("Calling OmniDocs getDocumentStreamJSON: docIndex={}, url={}", documentIndex, getDocumentUrl);
-            log.debug("Payload: {}", payload.toString());
-
-            ResponseEntity<byte[]> response = restTemplate.exchange(getDocumentUrl, HttpMethod.POST, request,
-                    byte[].class);
-
-            byte[] content = response.getBody();
-            if (content != null && content.length > 0) {
-                log.info("Downloaded document: {} bytes", content.length);
-                return content;
-            }
-
-            log.warn("No document content in response");
-            return null;
-
-        } catch (Exception e) {
-            log.error("Error downloading document: {}", e.getMessage(), e);
-            return null;
-        }
-    }
-
     /**
      * Saves document content to a temp file with unique name.
      */
@@ -911,7 +827,7 @@ public class NoteSheetService extends BaseIbpsService {
 
         try {
             // Step 1: Download the original document
-            byte[] documentContent = downloadDocument(documentIndex, sessionId);
+            byte[] documentContent = documentDownloadService.downloadDocument(documentIndex, sessionId);
             if (documentContent == null || documentContent.length == 0) {
                 log.error("Failed to download document content");
                 return null;
@@ -1166,39 +1082,96 @@ public class NoteSheetService extends BaseIbpsService {
     @org.springframework.beans.factory.annotation.Autowired
     private SupportingDocsService supportingDocsService;
 
+    @org.springframework.beans.factory.annotation.Autowired
+    private WorkItemAttributesService workItemAttributesService;
+
+    @org.springframework.beans.factory.annotation.Autowired
+    private DocumentDownloadService documentDownloadService;
+
+    @org.springframework.beans.factory.annotation.Autowired
+    private NotesheetTemplateService notesheetTemplateService;
+
+    @org.springframework.beans.factory.annotation.Autowired
+    private NotesheetPdfRenderer notesheetPdfRenderer;
+
+    @org.springframework.beans.factory.annotation.Autowired
+    private NotesheetFingerprintService notesheetFingerprintService;
+
+    @org.springframework.beans.factory.annotation.Autowired
+    private NotesheetBodyPdfCache notesheetBodyPdfCache;
+
+    @org.springframework.beans.factory.annotation.Autowired
+    private NotesheetContentCache notesheetContentCache;
+
     /**
      * Creates a PDF note from the original notesheet with appended comments and supporting documents.
      * Flow:
-     * 1. Call getOriginalNotesheet - get originalnotesheetdocindex
-     * 2. Call getComments - save to temp file
+     * 1. Resolve the original notesheet - get originalnotesheetdocindex
+     * 2. Call getComments
      * 3. Call getNotesheet - get notedocumentIndex
      * 4. Call getSupportingDocuments - get list of attached documents
-     * 5. Generate PDF from HTML + documents + comments
-     * 6. Call checkoutCheckinWithAnnotations to update notesheet
+     * 5. Skip the rest if the inputs' fingerprint matches the current notesheet version
+     * 6. Download the original and generate PDF from HTML + documents + comments
+     * 7. Call checkoutCheckinWithAnnotations to update notesheet
+     *
+     * The original content, comments, annotations and the PDF stay in memory;
+     * only a PDF larger than notesheet.pdf.memory.threshold.bytes goes through
+     * a temp file. With notesheet.debug.artifacts on, the comments and the PDF
+     * are also saved under the temp directories and their paths returned.
      */
     public JsonNode createPdfNote(String processInstanceId, String workitemId, long sessionId) {
+        return createPdfNote(processInstanceId, workitemId, sessionId, false);
+    }
+
+    /**
+     * Creates a PDF note as {@link #createPdfNote(String, String, long)} does.
+     *
+     * @param force Regenerate even if the inputs are unchanged since the last run
+     */
+    public JsonNode createPdfNote(String processInstanceId, String workitemId, long sessionId, boolean force) {
+        return createPdfNote(processInstanceId, workitemId, sessionId, force, stage -> {
+        });
+    }
+
+    /**
+     * Creates a PDF note as {@link #createPdfNote(String, String, long)} does,
+     * reporting each stage to the given callback as it starts.
+     *
+     * @param force    Regenerate even if the inputs are unchanged since the last run
+     * @param progress Receives the stages: original, comments, notesheet,
+     *                 documents, fingerprint, download, render, checkin, annotations
+     */
+    public JsonNode createPdfNote(String processInstanceId, String workitemId, long sessionId, boolean force,
+            PdfNoteProgress progress) {
         log.info("Creating PDF note for processInstanceId: {}, workitemId: {}", processInstanceId, workitemId);
         String uniqueId = UUID.randomUUID().toString();
+        ThresholdOutputStream pdf = null;
 
         try {
-            // Step 1: Call getOriginalNotesheet
+            // Step 1: Resolve the original notesheet (downloaded only if the note is regenerated)
+            progress.stage("original");
             log.info("Step 1: Getting original notesheet...");
-            JsonNode originalResult = getOriginalNotesheet(processInstanceId, workitemId, sessionId);
-            if (!originalResult.path("success").asBoolean(false) || !originalResult.path("found").asBoolean(false)) {
+            OriginalNotesheet original = resolveOriginalNotesheet(processInstanceId, workitemId, sessionId);
+            if (original.failure != null) {
                 return createErrorResponse("Failed to get original notesheet",
-                        originalResult.path("message").asText("Not found"));
+                        original.failure.path("message").asText("Not found"));
             }
-            String originalDocIndex = originalResult.path("documentIndex").asText();
-            String htmlFilePath = originalResult.path("filePath").asText();
-            log.info("Original notesheet docIndex: {}, filePath: {}", originalDocIndex, htmlFilePath);
+            String originalDocIndex = original.documentIndex;
+            log.info("Original notesheet docIndex: {}, version: {}", originalDocIndex, original.versionNo);
 
             // Step 2: Call getComments
+            progress.stage("comments");
             log.info("Step 2: Getting comments...");
+            invalidateComments(processInstanceId, workitemId, sessionId); // the PDF must show every comment
             JsonNode commentsResult = getComments(processInstanceId, workitemId, sessionId);
-            String commentsPath = saveCommentsToFile(commentsResult, uniqueId);
-            log.info("Comments saved to: {}", commentsPath);
+            String commentsPath = null;
+            if (debugArtifacts) {
+                commentsPath = saveCommentsToFile(commentsResult, uniqueId);
+                log.info("Comments saved to: {}", commentsPath);
+            }
 
             // Step 3: Call getNotesheet
+            progress.stage("notesheet");
             log.info("Step 3: Getting notesheet document index...");
             JsonNode notesheetResult = getNotesheet(processInstanceId, workitemId, sessionId);
             if (!notesheetResult.path("success").asBoolean(false) || !notesheetResult.path("found").asBoolean(false)) {
@@ -1209,38 +1182,87 @@ public class NoteSheetService extends BaseIbpsService {
             log.info("Notesheet docIndex: {}", notedocumentIndex);
 
             // Step 4: Call getSupportingDocuments
+            progress.stage("documents");
             log.info("Step 4: Getting supporting documents...");
-            JsonNode supportingDocsResult = supportingDocsService.getSupportingDocuments(processInstanceId, workitemId, sessionId);
-            JsonNode documentsArray = supportingDocsResult.path("documents");
-            int docCount = supportingDocsResult.path("count").asInt(0);
-            log.info("Found {} supporting documents", docCount);
+            // Listed fresh: the fingerprint must see documents attached and versions checked in moments ago
+            List<SupportingDocument> documents = supportingDocsService.getDocuments(processInstanceId, workitemId,
+                    sessionId, true);
+            log.info("Found {} supporting documents", documents.size());
 
-            // Step 5: Generate PDF with documents, comments, and track View positions
-            log.info("Step 5: Generating PDF with documents, comments, and position tracking...");
+            // Step 5: Skip the run if nothing changed since the current version was generated
+            progress.stage("fingerprint");
             JsonNode commentsArray = commentsResult.path("comments");
-            PdfGenerationResult pdfResult = generatePdfWithPositions(htmlFilePath, documentsArray, commentsArray, uniqueId);
-            String pdfPath = pdfResult.pdfPath;
+            String fingerprint = notesheetFingerprintService.compute(original.attributeValue, commentsArray, documents);
+            String currentVersion = findVersion(documents, notedocumentIndex, notesheetResult.path("versionNo").asText());
+            if (!force && notesheetFingerprintService.isUnchanged(notedocumentIndex, currentVersion, fingerprint)) {
+                log.info("Step 5: Inputs unchanged since version {} of notesheet {}, skipping regeneration",
+                        currentVersion, notedocumentIndex);
+                ObjectNode skipped = jsonMapper.createObjectNode();
+                skipped.put("success", true);
+                skipped.put("skipped", true);
+                skipped.put("originalDocIndex", originalDocIndex);
+                skipped.put("notedocumentIndex", notedocumentIndex);
+                skipped.put("newVersion", currentVersion);
+                skipped.put("fingerprint", fingerprint);
+                return skipped;
+            }
+
+            // Step 6: Download the original (unless its rendered body is cached) and generate PDF
+            // with documents, comments, and track View positions
+            progress.stage("download");
+            NotesheetBodyPdfCache.BodyPdf cachedBody = notesheetBodyPdfCache.isEnabled()
+                    ? notesheetBodyPdfCache.get(originalDocIndex, original.versionNo) : null;
+            if (cachedBody == null) {
+                original = downloadOriginalNotesheet(original, sessionId);
+                if (original.failure != null) {
+                    return createErrorResponse("Failed to get original notesheet",
+                            original.failure.path("message").asText("Not found"));
+                }
+                log.info("Original notesheet downloaded: {} bytes", original.content.length);
+            } else {
+                log.info("Original notesheet body cached ({} pages), not downloaded", cachedBody.getPageCount());
+            }
+
+            progress.stage("render");
+            log.info("Step 6: Generating PDF with documents, comments, and position tracking...");
+            PdfGenerationResult pdfResult = notesheetBodyPdfCache.isEnabled()
+                    ? generatePdfWithCachedBody(original, cachedBody, documents, commentsArray, uniqueId)
+                    : generatePdfWithPositions(new String(original.content), documents, commentsArray, uniqueId);
+            pdf = pdfResult.pdf;
             List<ViewLinkPosition> viewPositions = pdfResult.viewPositions;
-            log.info("PDF generated at: {} with {} view positions", pdfPath, viewPositions.size());
+            log.info("PDF generated ({} bytes, {}) with {} view positions", pdf.size(),
+                    pdf.isInMemory() ? "in memory" : "spilled to " + pdf.getFile(), viewPositions.size());
+
+            String pdfFileName = "newNoteContent-" + uniqueId + ".pdf";
+            String pdfPath = null;
+            if (debugArtifacts) {
+                Path debugPdf = Paths.get(tempDirectory).resolve(pdfFileName);
+                pdf.copyTo(debugPdf);
+                pdfPath = debugPdf.toAbsolutePath().toString();
+                log.info("PDF saved to: {}", pdfPath);
+            }
 
-            // Step 6: Call checkoutCheckinWithAnnotations (with filtering of existing View hyperlinks)
-            log.info("Step 6: Updating notesheet with new PDF...");
+            // Step 7: Call checkoutCheckinWithAnnotations (with filtering of existing View hyperlinks)
+            progress.stage("checkin");
+            log.info("Step 7: Updating notesheet with new PDF...");
             JsonNode updateResult = documentOpsService.checkoutCheckinWithAnnotations(
-                    notedocumentIndex, pdfPath, sessionId, true);
+                    notedocumentIndex, pdf.toResource(pdfFileName), sessionId, true);
 
             if (!updateResult.path("success").asBoolean(false)) {
                 return createErrorResponse("Failed to update notesheet",
                         updateResult.path("error").asText("Update failed"));
             }
 
-            // Step 7: Add View hyperlink annotations
-            log.info("Step 7: Adding View hyperlink annotations...");
+            // Step 8: Add View hyperlink annotations
+            progress.stage("annotations");
+            log.info("Step 8: Adding View hyperlink annotations...");
             int annotationsAdded = 0;
+            boolean annotationsComplete = true;
             if (!viewPositions.isEmpty()) {
                 String annotBuffer = buildHyperlinkAnnotationBuffer(viewPositions, "ViewLinks", "system");
                 ObjectNode annotGroup = jsonMapper.createObjectNode();
                 annotGroup.put("AnnotationType", "A");  // "A" = Annotation type used by working hyperlinks
-                annotGroup.put("PageNo", "1");  // Will be handled per-page in buffer
+                annotGroup.put("PageNo", String.valueOf(viewPositions.get(0).pageNo));  // Page of the documents table
                 annotGroup.put("AnnotGroupName", "ViewLinks");
                 annotGroup.put("AccessType", "S");  // Shared
                 annotGroup.put("AnnotationBuffer", annotBuffer);
@@ -1250,32 +1272,70 @@ public class NoteSheetService extends BaseIbpsService {
                     annotationsAdded = viewPositions.size();
                     log.info("Successfully added {} View hyperlink annotations", annotationsAdded);
                 } else {
+                    annotationsComplete = false;
                     log.warn("Failed to add View hyperlink annotations: {}", annotResult.path("error").asText());
                 }
             }
 
+            // Remember the inputs of this version; a run missing its View links is not reused
+            String newVersion = updateResult.path("newVersion").asText();
+            if (annotationsComplete) {
+                notesheetFingerprintService.record(notedocumentIndex, newVersion, fingerprint);
+            } else {
+                notesheetFingerprintService.forget(notedocumentIndex);
+            }
+
             // Build success response
             ObjectNode result = jsonMapper.createObjectNode();
             result.put("success", true);
             result.put("originalDocIndex", originalDocIndex);
             result.put("notedocumentIndex", notedocumentIndex);
-            result.put("newVersion", updateResult.path("newVersion").asText());
-            result.put("pdfPath", pdfPath);
-            result.put("commentsPath", commentsPath);
+            result.put("newVersion", newVersion);
+            result.put("skipped", false);
+            result.put("fingerprint", fingerprint);
+            result.put("pdfSize", pdf.size());
+            if (pdfPath != null) {
+                result.put("pdfPath", pdfPath);
+            }
+            if (commentsPath != null) {
+                result.put("commentsPath", commentsPath);
+            }
             result.put("annotationsPreserved", updateResult.path("annotationsRestored").asBoolean(false));
             result.put("viewHyperlinksAdded", annotationsAdded);
 
-            log.info("PDF note created successfully. New version: {}", updateResult.path("newVersion").asText());
+            log.info("PDF note created successfully. New version: {}", newVersion);
             return result;
 
         } catch (Exception e) {
             log.error("Error creating PDF note: {}", e.getMessage(), e);
             return createErrorResponse("Error creating PDF note", e.getMessage());
+        } finally {
+            if (pdf != null) {
+                try {
+                    pdf.discard();
+                } catch (IOException e) {
+                    log.warn("Could not delete spilled PDF {}: {}", pdf.getFile(), e.getMessage());
+                }
+            }
         }
     }
 
     /**
-     * Saves comments JSON to a temp file.
+     * Current version of a document as listed in the work item's folder.
+     *
+     * @param fallback Version to use if the document is not listed
+     */
+    private static String findVersion(List<SupportingDocument> documents, String documentIndex, String fallback) {
+        for (SupportingDocument doc : documents) {
+            if (documentIndex.equals(doc.getDocumentIndex())) {
+                return doc.getVersionNo();
+            }
+        }
+        return fallback;
+    }
+
+    /**
+     * Saves comments JSON to a temp file (debug artifact).
      */
     private String saveCommentsToFile(JsonNode commentsResult, String uniqueId) throws IOException {
         Path tempDir = Paths.get(tempDirectory.replace("notesheets", "comments"));
@@ -1296,92 +1356,190 @@ public class NoteSheetService extends BaseIbpsService {
     /**
      * Generates PDF from original HTML content with supporting documents and appended comments.
      * Also tracks the positions of View elements for hyperlink annotation creation.
+     * The PDF is kept in memory unless it outgrows notesheet.pdf.memory.threshold.bytes;
+     * the caller discards it once uploaded.
      */
-    private PdfGenerationResult generatePdfWithPositions(String htmlFilePath, JsonNode documents, JsonNode comments, String uniqueId) throws Exception {
-        // Read original HTML content
-        String htmlContent = new String(Files.readAllBytes(Paths.get(htmlFilePath)));
-
-        // Load document templates
-        String documentListTemplate = loadTemplate("templates/document_list_template.html");
-        String documentRowTemplate = loadTemplate("templates/document_row_template.html");
-
-        // Render document rows (above comments)
-        RenderDocumentResult docResult = renderDocumentRows(documents, documentRowTemplate, docsViewerBaseUrl);
-        String documentsSection = documentListTemplate.replace("{{DOCUMENT_ROWS}}", docResult.html);
-
-        // Load comment templates
-        String commentTemplate = loadTemplate("templates/comment_template.html");
-        String rowTemplate = loadTemplate("templates/comment_row_template.html");
-
-        // Render comment rows
-        String commentRows = renderCommentRows(comments, rowTemplate);
-        String commentsSection = commentTemplate.replace("{{COMMENTS_ROWS}}", commentRows);
-
-        // Clean up HTML entities and wrap in XHTML document structure
-        // The original content is HTML fragments, we need to wrap in proper XHTML
-        // Documents section comes ABOVE comments section per user requirement
-        String bodyContent = htmlContent + documentsSection + commentsSection;
-
-        // Replace HTML entities that are not valid in XHTML
-        bodyContent = bodyContent.replace("&nbsp;", "&#160;");
-        bodyContent = bodyContent.replace("&amp;", "&#38;");
-        // Fix self-closing tags for XHTML compliance
-        bodyContent = bodyContent.replaceAll("<br>", "<br/>");
-        bodyContent = bodyContent.replaceAll("<hr>", "<hr/>");
-        bodyContent = bodyContent.replaceAll("<img([^>]*)>", "<img$1/>");
-        // Remove HTML comments that contain -- which is invalid in XML
-        bodyContent = bodyContent.replaceAll("<!--.*?-->", "");
-        // Remove any other comment-like patterns that might be problematic
-        bodyContent = bodyContent.replaceAll("<!\\[CDATA\\[.*?\\]\\]>", "");
-
-        // Wrap in proper XHTML document
-        String fullHtml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
-                "<!DOCTYPE html PUBLIC \"-//W3C//DTD XHTML 1.0 Transitional//EN\" " +
-                "\"http://www.w3.org/TR/xhtml1/DTD/xhtml1-transitional.dtd\">\n" +
-                "<html xmlns=\"http://www.w3.org/1999/xhtml\">\n" +
-                "<head>\n" +
-                "  <meta http-equiv=\"Content-Type\" content=\"text/html; charset=UTF-8\"/>\n" +
-                "  <style type=\"text/css\">\n" +
-                "    body { font-family: Arial, sans-serif; font-size: 12px; margin: 20px; }\n" +
-                "    table { border-collapse: collapse; width: 100%; }\n" +
-                "    td, th { border: 1px solid #333; padding: 8px; }\n" +
-                "  </style>\n" +
-                "</head>\n" +
-                "<body>\n" +
-                bodyContent + "\n" +
-                "</body>\n" +
-                "</html>";
-
-        // Convert HTML to PDF using Flying Saucer
-        Path tempDir = Paths.get(tempDirectory);
-        if (!Files.exists(tempDir)) {
-            Files.createDirectories(tempDir);
+    private PdfGenerationResult generatePdfWithPositions(String htmlContent, List<SupportingDocument> documents, JsonNode comments, String uniqueId) throws Exception {
+        // Render the documents section (above comments) and the comments section
+        // into one buffer, straight from the compiled templates
+        StringBuilder body = newPageBuffer(htmlContent.length(), comments);
+        body.append(htmlContent);
+        List<String> docIndices = appendAppendix(body, documents, comments);
+
+        // Create the PDF first
+        ThresholdOutputStream pdf = new ThresholdOutputStream(pdfMemoryThreshold, Paths.get(tempDirectory),
+                "newNoteContent-" + uniqueId + "-");
+        try (ThresholdOutputStream os = pdf) {
+            renderPdf(body, os, "notesheet");
+        } catch (Exception e) {
+            pdf.discard();
+            throw e;
         }
 
-        String pdfFileName = "newNoteContent-" + uniqueId + ".pdf";
-        Path pdfPath = tempDir.resolve(pdfFileName);
+        // Now compute the View link positions for the rendered rows
+        List<ViewLinkPosition> viewPositions = extractViewPositionsFromPdf(docIndices);
 
-        List<ViewLinkPosition> viewPositions = new ArrayList<>();
+        log.info("Extracted {} view link positions from PDF for annotation creation", viewPositions.size());
+        return new PdfGenerationResult(pdf, viewPositions);
+    }
 
-        // Create the PDF first
-        try (java.io.OutputStream os = new FileOutputStream(pdfPath.toFile())) {
-            org.xhtmlrenderer.pdf.ITextRenderer renderer = new org.xhtmlrenderer.pdf.ITextRenderer();
-            renderer.setDocumentFromString(fullHtml);
-            renderer.layout();
+    /**
+     * Generates the same PDF as {@link #generatePdfWithPositions} from the cached
+     * PDF pages of the original body: only the documents and comments appendix is
+     * rendered, on pages of its own, and merged behind the body pages. A body not
+     * cached yet is rendered from the downloaded original and cached, unless it
+     * outgrows notesheet.pdf.memory.threshold.bytes. The rendered parts and the
+     * merge stay within that threshold in memory and spill to temp files beyond it.
+     *
+     * @param cachedBody The cached body, or null to render it from original.content
+     */
+    private PdfGenerationResult generatePdfWithCachedBody(OriginalNotesheet original,
+            NotesheetBodyPdfCache.BodyPdf cachedBody, List<SupportingDocument> documents, JsonNode comments,
+            String uniqueId) throws Exception {
+        StringBuilder appendix = newPageBuffer(0, comments);
+        List<String> docIndices = appendAppendix(appendix, documents, comments);
+
+        ThresholdOutputStream renderedBody = null;
+        ThresholdOutputStream appendixPdf = null;
+        ThresholdOutputStream pdf = new ThresholdOutputStream(pdfMemoryThreshold, Paths.get(tempDirectory),
+                "newNoteContent-" + uniqueId + "-");
+        int bodyPageCount;
+        try {
+            if (cachedBody != null) {
+                bodyPageCount = cachedBody.getPageCount();
+            } else {
+                renderedBody = new ThresholdOutputStream(pdfMemoryThreshold, Paths.get(tempDirectory),
+                        "notesheetBody-" + uniqueId + "-");
+                try (ThresholdOutputStream os = renderedBody) {
+                    renderPdf(new String(original.content), os, "notesheet body");
+                }
+                bodyPageCount = countPages(renderedBody);
+                cacheBody(original, renderedBody, bodyPageCount);
+            }
 
-            // Log renderer info for debugging
-            float dotsPerPoint = renderer.getDotsPerPoint();
-            log.info("Flying Saucer dotsPerPoint: {}", dotsPerPoint);
+            appendixPdf = new ThresholdOutputStream(pdfMemoryThreshold, Paths.get(tempDirectory),
+                    "notesheetAppendix-" + uniqueId + "-");
+            try (ThresholdOutputStream os = appendixPdf) {
+                renderPdf(appendix, os, "notesheet appendix");
+            }
 
-            renderer.createPDF(os);
+            // Body pages first, then the appendix pages
+            try (ThresholdOutputStream os = pdf;
+                    java.io.InputStream bodyIn = cachedBody != null
+                            ? new java.io.ByteArrayInputStream(cachedBody.getPdf())
+                            : renderedBody.toResource("body.pdf").getInputStream();
+                    java.io.InputStream appendixIn = appendixPdf.toResource("appendix.pdf").getInputStream()) {
+                org.apache.pdfbox.multipdf.PDFMergerUtility merger = new org.apache.pdfbox.multipdf.PDFMergerUtility();
+                merger.addSource(bodyIn);
+                merger.addSource(appendixIn);
+                merger.setDestinationStream(os);
+                merger.mergeDocuments(pdfMemoryUsage());
+            }
+        } catch (Exception e) {
+            pdf.discard();
+            throw e;
+        } finally {
+            if (renderedBody != null) {
+                renderedBody.discard();
+            }
+            if (appendixPdf != null) {
+                appendixPdf.discard();
+            }
         }
 
-        // Now extract View positions using PDFBox from the actual rendered PDF
-        // This gives us accurate coordinates that match the actual PDF content
-        viewPositions = extractViewPositionsFromPdf(pdfPath.toAbsolutePath().toString(), docResult.docIndices);
+        // The documents table opens the first appendix page
+        List<ViewLinkPosition> viewPositions = extractViewPositionsFromPdf(docIndices,
+                bodyPageCount + 1, appendixFirstRowY);
 
-        log.info("Extracted {} view link positions from PDF for annotation creation", viewPositions.size());
-        return new PdfGenerationResult(pdfPath.toAbsolutePath().toString(), viewPositions);
+        log.info("Merged {} cached body pages with the appendix, {} view link positions",
+                bodyPageCount, viewPositions.size());
+        return new PdfGenerationResult(pdf, viewPositions);
+    }
+
+    private int countPages(ThresholdOutputStream renderedPdf) throws IOException {
+        try (java.io.InputStream in = renderedPdf.toResource("body.pdf").getInputStream();
+                org.apache.pdfbox.pdmodel.PDDocument document =
+                        org.apache.pdfbox.pdmodel.PDDocument.load(in, pdfMemoryUsage())) {
+            return document.getNumberOfPages();
+        }
+    }
+
+    /**
+     * Caches a freshly rendered body; a body that spilled to disk is not
+     * pulled back into the heap for the cache.
+     */
+    private void cacheBody(OriginalNotesheet original, ThresholdOutputStream renderedBody, int pageCount)
+            throws IOException {
+        if (!renderedBody.isInMemory()) {
+            log.info("Notesheet body {} v{} is {} bytes, above the memory threshold, not cached",
+                    original.documentIndex, original.versionNo, renderedBody.size());
+            return;
+        }
+        byte[] bodyBytes;
+        try (java.io.InputStream in = renderedBody.toResource("body.pdf").getInputStream()) {
+            bodyBytes = in.readAllBytes();
+        }
+        notesheetBodyPdfCache.put(original.documentIndex, original.versionNo,
+                new NotesheetBodyPdfCache.BodyPdf(bodyBytes, pageCount));
+    }
+
+    /**
+     * PDFBox memory setting for the notesheet PDFs: main memory up to
+     * notesheet.pdf.memory.threshold.bytes, temp files in the notesheet
+     * directory beyond it.
+     */
+    private org.apache.pdfbox.io.MemoryUsageSetting pdfMemoryUsage() throws IOException {
+        Path directory = Files.createDirectories(Paths.get(tempDirectory));
+        return org.apache.pdfbox.io.MemoryUsageSetting.setupMixed(pdfMemoryThreshold)
+                .setTempDir(directory.toFile());
+    }
+
+    /**
+     * Buffer for the HTML of a PDF, sized for the given content plus the appendix.
+     */
+    private StringBuilder newPageBuffer(int contentLength, JsonNode comments) {
+        CompiledTemplate commentRow = notesheetTemplateService.get(NotesheetTemplateService.COMMENT_ROW);
+        int commentCount = comments != null ? comments.size() : 0;
+        return new StringBuilder(contentLength + (commentRow.literalLength() + 256) * commentCount + 8192);
+    }
+
+    /**
+     * Appends the supporting documents and comments sections from the compiled templates.
+     *
+     * @return Document indices of the View links, in row order
+     */
+    private List<String> appendAppendix(StringBuilder body, List<SupportingDocument> documents, JsonNode comments) {
+        CompiledTemplate commentRow = notesheetTemplateService.get(NotesheetTemplateService.COMMENT_ROW);
+        List<String> docIndices = new ArrayList<>();
+        notesheetTemplateService.get(NotesheetTemplateService.DOCUMENT_LIST).render(body, (name, out) -> {
+            if (!"DOCUMENT_ROWS".equals(name)) {
+                return false;
+            }
+            docIndices.addAll(renderDocumentRows(documents,
+                    notesheetTemplateService.get(NotesheetTemplateService.DOCUMENT_ROW), out));
+            return true;
+        });
+        notesheetTemplateService.get(NotesheetTemplateService.COMMENT_SECTION).render(body, (name, out) -> {
+            if (!"COMMENTS_ROWS".equals(name)) {
+                return false;
+            }
+            renderCommentRows(comments, commentRow, out);
+            return true;
+        });
+        return docIndices;
+    }
+
+    /**
+     * Renders HTML fragments into a PDF with the active backend.
+     */
+    private void renderPdf(CharSequence html, java.io.OutputStream out, String what) throws Exception {
+        // Normalize the HTML fragments into an XHTML document in one pass and hand the
+        // DOM to the renderer as is (no XHTML string to build and parse again)
+        org.w3c.dom.Document xhtml = XhtmlNormalizer.toDocument(html, NOTESHEET_CSS);
+        long renderStart = System.currentTimeMillis();
+        notesheetPdfRenderer.render(xhtml, out);
+        log.info("Rendered {} PDF with {} in {} ms", what, notesheetPdfRenderer.getName(),
+                System.currentTimeMillis() - renderStart);
     }
 
     /**
@@ -1559,11 +1717,21 @@ public class NoteSheetService extends BaseIbpsService {
      * - OmniDocs X1 = 675 (center of View column)
      * - OmniDocs Y1 = 336 (first data row)
      *
-     * @param pdfPath Path to the PDF file (used for page count)
      * @param docIndices List of document indices for each View link
      * @return List of ViewLinkPosition objects with calculated coordinates
      */
-    private List<ViewLinkPosition> extractViewPositionsFromPdf(String pdfPath, List<String> docIndices) {
+    private List<ViewLinkPosition> extractViewPositionsFromPdf(List<String> docIndices) {
+        return extractViewPositionsFromPdf(docIndices, 1, 336);
+    }
+
+    /**
+     * Calculates the View link positions for a documents table whose first data
+     * row is at the given Y on the given page.
+     *
+     * @param pageNo    Page holding the documents table (1-based)
+     * @param firstRowY OmniDocs Y of the first data row on that page
+     */
+    private List<ViewLinkPosition> extractViewPositionsFromPdf(List<String> docIndices, int pageNo, int firstRowY) {
         List<ViewLinkPosition> positions = new ArrayList<>();
 
         // Fixed layout coordinates (calibrated from manual annotation testing)
@@ -1571,7 +1739,7 @@ public class NoteSheetService extends BaseIbpsService {
         final int VIEW_X1 = 675;           // Left edge of "View" text position
         final int VIEW_WIDTH = 40;         // Width of hyperlink area
         final int VIEW_HEIGHT = 15;        // Height of hyperlink area
-        final int FIRST_ROW_Y = 336;       // Y position of first data row
+        final int FIRST_ROW_Y = firstRowY; // Y position of first data row
         final int ROW_HEIGHT = 30;         // Height between rows (calibrated)
 
         log.info("=== Fixed Position Calculation for View Links ===");
@@ -1584,7 +1752,6 @@ public class NoteSheetService extends BaseIbpsService {
             int y1 = FIRST_ROW_Y + (rowIndex * ROW_HEIGHT);
             int x2 = x1 + VIEW_WIDTH;
             int y2 = y1 + VIEW_HEIGHT;
-            int pageNo = 1;  // Assuming all on page 1 for now
 
             log.info("Row {}: docIndex={}, coords: x1={}, y1={}, x2={}, y2={}",
                     rowIndex, docIndices.get(rowIndex), x1, y1, x2, y2);
@@ -1707,102 +1874,94 @@ public class NoteSheetService extends BaseIbpsService {
     }
 
     /**
-     * Loads HTML template from classpath resources.
+     * Renders comment rows using the row template, appending them to the buffer.
      */
-    private String loadTemplate(String templatePath) throws IOException {
-        try (java.io.InputStream is = getClass().getClassLoader().getResourceAsStream(templatePath)) {
-            if (is == null) {
-                log.warn("Template not found: {}, using default", templatePath);
-                if (templatePath.contains("document_list_template")) {
-                    return "<div style=\"margin-top:20px;\"><table border=\"1\" style=\"width:100%;\"><tr><td colspan=\"3\" style=\"background:#e0e0e0;\"><b>Supporting Documents</b></td></tr><tr style=\"background:#f0f0f0;font-weight:bold;\"><td style=\"width:5%;text-align:center;\">S.No</td><td style=\"width:70%;\">Document Name</td><td style=\"width:25%;\">Document Index</td></tr>{{DOCUMENT_ROWS}}</table></div>";
-                } else if (templatePath.contains("document_row_template")) {
-                    return "<tr><td style=\"text-align:center;\">{{SNO}}</td><td>{{DOCUMENT_NAME}}</td><td>{{DOCUMENT_INDEX}}</td></tr>";
-                } else if (templatePath.contains("comment_template")) {
-                    return "<div style=\"margin-top:20px;\"><table border=\"1\" style=\"width:100%;\"><tr><td colspan=\"3\" style=\"background:#e0e0e0;\"><b>Notesheet Comments</b></td></tr>{{COMMENTS_ROWS}}</table></div>";
-                } else {
-                    return "<tr><td><b>SNo:</b> {{SNO}}</td><td><b>User:</b> {{USER}}</td><td><b>Date:</b> {{DATE}}</td></tr><tr><td colspan=\"3\">{{COMMENT_TEXT}}</td></tr><tr><td><b>Stage:</b> {{STAGE}}</td><td><b>Status:</b> {{STATUS}}</td><td></td></tr>";
-                }
-            }
-            return new String(is.readAllBytes(), java.nio.charset.StandardCharsets.UTF_8);
+    private void renderCommentRows(JsonNode comments, CompiledTemplate rowTemplate, StringBuilder out) {
+        if (comments == null || !comments.isArray()) {
+            return;
         }
-    }
 
-    /**
-     * Renders comment rows using the row template.
-     */
-    private String renderCommentRows(JsonNode comments, String rowTemplate) {
-        StringBuilder rows = new StringBuilder();
         int sno = 1;
-
-        if (comments != null && comments.isArray()) {
-            for (JsonNode comment : comments) {
-                String row = rowTemplate
-                        .replace("{{SNO}}", String.valueOf(sno++))
-                        .replace("{{USER}}", comment.path("userName").asText(""))
-                        .replace("{{DATE}}", comment.path("dateTime").asText(""))
-                        .replace("{{COMMENT_TEXT}}", comment.path("comments").asText(""))
-                        .replace("{{STAGE}}", comment.path("stage").asText(""))
-                        .replace("{{STATUS}}", comment.path("status").asText(""));
-                rows.append(row);
-            }
+        for (JsonNode comment : comments) {
+            int rowNo = sno++;
+            rowTemplate.render(out, (name, buf) -> {
+                switch (name) {
+                    case "SNO":
+                        buf.append(rowNo);
+                        return true;
+                    case "USER":
+                        buf.append(comment.path("userName").asText(""));
+                        return true;
+                    case "DATE":
+                        buf.append(comment.path("dateTime").asText(""));
+                        return true;
+                    case "COMMENT_TEXT":
+                        buf.append(comment.path("comments").asText(""));
+                        return true;
+                    case "STAGE":
+                        buf.append(comment.path("stage").asText(""));
+                        return true;
+                    case "STATUS":
+                        buf.append(comment.path("status").asText(""));
+                        return true;
+                    default:
+                        return false;
+                }
+            });
         }
-
-        return rows.toString();
     }
 
     /**
-     * Renders document rows using the row template.
+     * Renders document rows using the row template, appending them to the buffer.
      * Format: S.NO. | Document Name (hyperlinked) | View
      * Skips documents whose name starts with "notesheet" (case-insensitive).
      *
-     * @param documents JSON array of documents
-     * @param rowTemplate HTML template for each row
-     * @param viewerBaseUrl Base URL for document viewer (e.g., http://host:port/app/docs/viewer)
-     * @return RenderDocumentResult containing rendered HTML and document indices for position tracking
+     * @param documents Supporting documents of the work item
+     * @param rowTemplate Compiled template for each row
+     * @param out Buffer the rows are appended to
+     * @return Document indices of the rendered rows, in row order, for position tracking
      */
-    private RenderDocumentResult renderDocumentRows(JsonNode documents, String rowTemplate, String viewerBaseUrl) {
-        StringBuilder rows = new StringBuilder();
+    private List<String> renderDocumentRows(List<SupportingDocument> documents, CompiledTemplate rowTemplate,
+            StringBuilder out) {
         List<String> docIndices = new ArrayList<>();
-        int sno = 1;
-        int rowIndex = 0;
-
-        if (documents != null && documents.isArray()) {
-            for (JsonNode doc : documents) {
-                String docName = doc.path("documentName").asText("");
-                // Skip documents starting with "notesheet"
-                if (docName.toLowerCase().startsWith("notesheet")) {
-                    continue;
-                }
-                String docIndex = doc.path("documentIndex").asText("");
-
-                String docUrl = buildOmniDocsRedirectUrl(docIndex);
-                String docNameHtml = "<a href=\"" + escapeHtml(docUrl) + "\">" + escapeHtml(docName) + "</a>";
-
-                String row = rowTemplate
-                        .replace("{{SNO}}", String.valueOf(sno++))
-                        .replace("{{DOCUMENT_NAME}}", docNameHtml)
-                        .replace("{{DOCUMENT_INDEX}}", docIndex)
-                        .replace("{{ROW_INDEX}}", String.valueOf(rowIndex));
-                rows.append(row);
-                docIndices.add(docIndex);
-                rowIndex++;
-            }
+        if (documents == null) {
+            return docIndices;
         }
 
-        return new RenderDocumentResult(rows.toString(), docIndices);
-    }
-
-    /**
-     * Result class for renderDocumentRows containing HTML and document indices.
-     */
-    private static class RenderDocumentResult {
-        final String html;
-        final List<String> docIndices;
-
-        RenderDocumentResult(String html, List<String> docIndices) {
-            this.html = html;
-            this.docIndices = docIndices;
+        for (SupportingDocument doc : documents) {
+            String docName = doc.getDocumentName();
+            // Skip documents starting with "notesheet"
+            if (docName.toLowerCase().startsWith("notesheet")) {
+                continue;
+            }
+            String docIndex = doc.getDocumentIndex();
+            int rowIndex = docIndices.size();
+
+            rowTemplate.render(out, (name, buf) -> {
+                switch (name) {
+                    case "SNO":
+                        buf.append(rowIndex + 1);
+                        return true;
+                    case "DOCUMENT_NAME":
+                        buf.append("<a href=\"");
+                        appendEscapedHtml(buf, buildOmniDocsRedirectUrl(docIndex));
+                        buf.append("\">");
+                        appendEscapedHtml(buf, docName);
+                        buf.append("</a>");
+                        return true;
+                    case "DOCUMENT_INDEX":
+                        buf.append(docIndex);
+                        return true;
+                    case "ROW_INDEX":
+                        buf.append(rowIndex);
+                        return true;
+                    default:
+                        return false;
+                }
+            });
+            docIndices.add(docIndex);
         }
+        return docIndices;
     }
 
     /**
@@ -1825,29 +1984,64 @@ public class NoteSheetService extends BaseIbpsService {
         }
     }
 
+    /**
+     * Receives the stage createPdfNote is entering, e.g. to time the stages
+     * of a background job.
+     */
+    @FunctionalInterface
+    public interface PdfNoteProgress {
+        void stage(String name);
+    }
+
     /**
      * Result class for PDF generation with position tracking.
      */
     private static class PdfGenerationResult {
-        final String pdfPath;
+        final ThresholdOutputStream pdf;
         final List<ViewLinkPosition> viewPositions;
 
-        PdfGenerationResult(String pdfPath, List<ViewLinkPosition> viewPositions) {
-            this.pdfPath = pdfPath;
+        PdfGenerationResult(ThresholdOutputStream pdf, List<ViewLinkPosition> viewPositions) {
+            this.pdf = pdf;
             this.viewPositions = viewPositions;
         }
     }
 
     /**
-     * Escapes HTML special characters to prevent XSS and ensure valid XHTML.
+     * Original notesheet content downloaded into memory, or the response
+     * explaining why it could not be loaded.
+     */
+    private static class OriginalNotesheet {
+        JsonNode failure;
+        byte[] content;
+        String attributeValue;
+        String documentName;
+        String documentIndex;
+        String folderIndex;
+        String versionNo;
+
+        static OriginalNotesheet failed(JsonNode failure) {
+            OriginalNotesheet original = new OriginalNotesheet();
+            original.failure = failure;
+            return original;
+        }
+    }
+
+    /**
+     * Escapes HTML special characters to prevent XSS and ensure valid XHTML,
+     * appending the result to the buffer.
      */
-    private String escapeHtml(String text) {
-        if (text == null) return "";
-        return text
-                .replace("&", "&#38;")
-                .replace("<", "&#60;")
-                .replace(">", "&#62;")
-                .replace("\"", "&#34;")
-                .replace("'", "&#39;");
+    private static void appendEscapedHtml(StringBuilder out, String text) {
+        if (text == null) return;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '&': out.append("&#38;"); break;
+                case '<': out.append("&#60;"); break;
+                case '>': out.append("&#62;"); break;
+                case '"': out.append("&#34;"); break;
+                case '\'': out.append("&#39;"); break;
+                default: out.append(c);
+            }
+        }
     }
 }
@@ -0,0 +1,118 @@
+package com.balmerlawrie.balmerrestservice.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Rendered PDF pages of original notesheet bodies, so createpdfnote only has
+ * to render the supporting documents and comments appendix and merge it
+ * behind the cached body.
+ *
+ * A notesheet_original version never changes, so entries are keyed by the
+ * original's document index and version (and the PDF backend that rendered
+ * them) and never go stale. The cache is a least-recently-used map bounded by
+ * notesheet.body.cache.max.entries and notesheet.body.cache.max.bytes.
+ *
+ * Off unless notesheet.body.cache.enabled is set: the appendix then starts on
+ * a page of its own instead of right below the body.
+ */
+@Service
+public class NotesheetBodyPdfCache {
+
+    private static final Logger log = LoggerFactory.getLogger(NotesheetBodyPdfCache.class);
+
+    @Value("${notesheet.body.cache.enabled:false}")
+    private boolean enabled;
+
+    @Value("${notesheet.body.cache.max.entries:64}")
+    private int maxEntries;
+
+    @Value("${notesheet.body.cache.max.bytes:67108864}")
+    private long maxBytes;
+
+    @Autowired
+    private NotesheetPdfRenderer notesheetPdfRenderer;
+
+    /**
+     * Access-ordered, so iteration starts at the least recently used entry.
+     */
+    private final LinkedHashMap<String, BodyPdf> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long totalBytes;
+
+    /**
+     * Whether createpdfnote renders against cached bodies (notesheet.body.cache.enabled).
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Gets the cached body of an original notesheet version.
+     *
+     * @param documentIndex Original notesheet document index
+     * @param versionNo     Original notesheet version
+     * @return The body, or null if not cached
+     */
+    public synchronized BodyPdf get(String documentIndex, String versionNo) {
+        return entries.get(key(documentIndex, versionNo));
+    }
+
+    /**
+     * Caches the rendered body of an original notesheet version, evicting
+     * the least recently used bodies to stay within the limits. A body larger
+     * than notesheet.body.cache.max.bytes on its own is not kept.
+     */
+    public synchronized void put(String documentIndex, String versionNo, BodyPdf body) {
+        if (body.pdf.length > maxBytes) {
+            log.info("Notesheet body {} v{} is {} bytes, larger than the cache, not cached",
+                    documentIndex, versionNo, body.pdf.length);
+            return;
+        }
+        BodyPdf previous = entries.put(key(documentIndex, versionNo), body);
+        if (previous != null) {
+            totalBytes -= previous.pdf.length;
+        }
+        totalBytes += body.pdf.length;
+
+        Iterator<Map.Entry<String, BodyPdf>> eldest = entries.entrySet().iterator();
+        while ((entries.size() > Math.max(1, maxEntries) || totalBytes > maxBytes) && eldest.hasNext()) {
+            Map.Entry<String, BodyPdf> entry = eldest.next();
+            totalBytes -= entry.getValue().pdf.length;
+            eldest.remove();
+            log.debug("Evicted notesheet body {}", entry.getKey());
+        }
+    }
+
+    private String key(String documentIndex, String versionNo) {
+        return documentIndex + "#" + (versionNo == null ? "" : versionNo.trim()) + "#" + notesheetPdfRenderer.getName();
+    }
+
+    /**
+     * A rendered notesheet body and its number of pages.
+     */
+    public static final class BodyPdf {
+        final byte[] pdf;
+        final int pageCount;
+
+        public BodyPdf(byte[] pdf, int pageCount) {
+            this.pdf = pdf;
+            this.pageCount = pageCount;
+        }
+
+        public byte[] getPdf() {
+            return pdf;
+        }
+
+        public int getPageCount() {
+            return pageCount;
+        }
+    }
+}
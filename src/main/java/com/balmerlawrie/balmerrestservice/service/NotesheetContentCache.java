@@ -0,0 +1,321 @@
+package com.balmerlawrie.balmerrestservice.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Disk cache of original notesheet content, so each notesheet_original
+ * version is downloaded from OmniDocs once.
+ *
+ * A document version never changes, so entries are keyed by document index
+ * and version and never go stale. The content is stored content-addressed
+ * (one file per SHA-256 under blobs/, shared by versions with the same bytes)
+ * and checked against its hash when read. An index file maps the keys to
+ * their content and last use; it is loaded at startup and rewritten when
+ * entries are added or removed. The least recently used entries are evicted
+ * once the stored content exceeds notesheet.original.cache.max.bytes.
+ */
+@Service
+public class NotesheetContentCache {
+
+    private static final Logger log = LoggerFactory.getLogger(NotesheetContentCache.class);
+
+    @Value("${notesheet.original.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${notesheet.original.cache.directory:${java.io.tmpdir}/notesheets/originals}")
+    private String cacheDirectory;
+
+    @Value("${notesheet.original.cache.max.bytes:268435456}")
+    private long maxBytes;
+
+    private final ObjectMapper jsonMapper = new ObjectMapper();
+
+    /**
+     * Access-ordered, so iteration starts at the least recently used entry.
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Number of entries referring to each stored content hash.
+     */
+    private final Map<String, Integer> blobReferences = new HashMap<>();
+
+    private long totalBytes;
+
+    private Path cacheDir;
+    private Path blobDir;
+    private Path indexFile;
+
+    @PostConstruct
+    void init() {
+        cacheDir = Paths.get(cacheDirectory);
+        blobDir = cacheDir.resolve("blobs");
+        indexFile = cacheDir.resolve("index.json");
+        if (!enabled) {
+            return;
+        }
+        try {
+            Files.createDirectories(blobDir);
+        } catch (IOException e) {
+            log.warn("Cannot create notesheet content cache {}, caching disabled: {}", cacheDir, e.getMessage());
+            enabled = false;
+            return;
+        }
+        loadIndex();
+    }
+
+    @PreDestroy
+    synchronized void saveOnShutdown() {
+        if (enabled) {
+            // Persists the last-use order collected since the last write
+            saveIndex();
+        }
+    }
+
+    /**
+     * Gets the cached content of a document version.
+     *
+     * @param documentIndex Document index
+     * @param versionNo     Document version
+     * @return The content, or null if not cached (or the stored file is damaged)
+     */
+    public byte[] get(String documentIndex, String versionNo) {
+        if (!enabled || isBlank(versionNo)) {
+            return null;
+        }
+        String key = key(documentIndex, versionNo);
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            entry.lastUsed = System.currentTimeMillis();
+        }
+
+        try {
+            byte[] content = Files.readAllBytes(blobPath(entry.sha256));
+            if (sha256(content).equals(entry.sha256)) {
+                return content;
+            }
+            log.warn("Cached notesheet {} v{} does not match its hash, dropping it", documentIndex, versionNo);
+        } catch (NoSuchFileException e) {
+            log.warn("Cached notesheet {} v{} is missing, dropping it", documentIndex, versionNo);
+        } catch (IOException e) {
+            log.warn("Cannot read cached notesheet {} v{}: {}", documentIndex, versionNo, e.getMessage());
+            return null;
+        }
+        synchronized (this) {
+            if (entries.get(key) == entry) {
+                remove(key, entry);
+                deleteBlob(entry.sha256);
+                saveIndex();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Caches the content of a document version, evicting the least recently
+     * used entries to stay within notesheet.original.cache.max.bytes. Content
+     * larger than the whole cache is not kept.
+     */
+    public void put(String documentIndex, String versionNo, byte[] content) {
+        if (!enabled || isBlank(versionNo) || content == null || content.length == 0 || content.length > maxBytes) {
+            return;
+        }
+        String sha256 = sha256(content);
+        try {
+            Path blob = blobPath(sha256);
+            if (!Files.exists(blob)) {
+                Path tmp = Files.createTempFile(blobDir, sha256, ".tmp");
+                try {
+                    Files.write(tmp, content);
+                    Files.move(tmp, blob, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } finally {
+                    Files.deleteIfExists(tmp);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Cannot cache notesheet {} v{}: {}", documentIndex, versionNo, e.getMessage());
+            return;
+        }
+
+        synchronized (this) {
+            String key = key(documentIndex, versionNo);
+            Entry previous = entries.get(key);
+            if (previous != null) {
+                remove(key, previous);
+            }
+            add(key, new Entry(sha256, content.length, System.currentTimeMillis()));
+            if (previous != null && !previous.sha256.equals(sha256)) {
+                deleteBlob(previous.sha256);
+            }
+            evict();
+            saveIndex();
+        }
+        log.info("Cached original notesheet {} v{} ({} bytes, {} bytes cached)", documentIndex, versionNo,
+                content.length, totalBytes);
+    }
+
+    // --- Helper Methods ---
+
+    private void add(String key, Entry entry) {
+        entries.put(key, entry);
+        if (blobReferences.merge(entry.sha256, 1, Integer::sum) == 1) {
+            totalBytes += entry.size;
+        }
+    }
+
+    private void remove(String key, Entry entry) {
+        entries.remove(key);
+        if (blobReferences.merge(entry.sha256, -1, Integer::sum) <= 0) {
+            blobReferences.remove(entry.sha256);
+            totalBytes -= entry.size;
+        }
+    }
+
+    /**
+     * Removes least recently used entries until the stored content fits.
+     */
+    private void evict() {
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        List<String> orphaned = new ArrayList<>();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            Entry entry = eldest.next().getValue();
+            eldest.remove();
+            if (blobReferences.merge(entry.sha256, -1, Integer::sum) <= 0) {
+                blobReferences.remove(entry.sha256);
+                totalBytes -= entry.size;
+                orphaned.add(entry.sha256);
+            }
+        }
+        orphaned.forEach(this::deleteBlob);
+        if (!orphaned.isEmpty()) {
+            log.info("Evicted {} original notesheets from the content cache", orphaned.size());
+        }
+    }
+
+    private void deleteBlob(String sha256) {
+        if (blobReferences.containsKey(sha256)) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(blobPath(sha256));
+        } catch (IOException e) {
+            log.warn("Cannot delete cached notesheet content {}: {}", sha256, e.getMessage());
+        }
+    }
+
+    private void loadIndex() {
+        if (!Files.exists(indexFile)) {
+            return;
+        }
+        try {
+            JsonNode root = jsonMapper.readTree(indexFile.toFile());
+            List<Map.Entry<String, Entry>> loaded = new ArrayList<>();
+            Iterator<Map.Entry<String, JsonNode>> fields = root.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                JsonNode node = field.getValue();
+                Entry entry = new Entry(node.path("sha256").asText(), node.path("size").asLong(),
+                        node.path("lastUsed").asLong());
+                if (Files.exists(blobPath(entry.sha256))) {
+                    loaded.add(new AbstractMap.SimpleEntry<>(field.getKey(), entry));
+                }
+            }
+            // Re-create the access order from the recorded last use
+            loaded.sort(Comparator.comparingLong(e -> e.getValue().lastUsed));
+            synchronized (this) {
+                loaded.forEach(e -> add(e.getKey(), e.getValue()));
+                evict();
+            }
+            log.info("Loaded {} cached original notesheets ({} bytes) from {}", entries.size(), totalBytes, cacheDir);
+        } catch (IOException e) {
+            log.warn("Cannot read notesheet content cache index {}, starting empty: {}", indexFile, e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the index to a temp file and moves it over the old one, so a
+     * crash never leaves a half-written index.
+     */
+    private void saveIndex() {
+        ObjectNode root = jsonMapper.createObjectNode();
+        entries.forEach((key, entry) -> {
+            ObjectNode node = root.putObject(key);
+            node.put("sha256", entry.sha256);
+            node.put("size", entry.size);
+            node.put("lastUsed", entry.lastUsed);
+        });
+        try {
+            Path tmp = Files.createTempFile(cacheDir, "index", ".tmp");
+            jsonMapper.writeValue(tmp.toFile(), root);
+            Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Cannot save notesheet content cache index {}: {}", indexFile, e.getMessage());
+        }
+    }
+
+    private Path blobPath(String sha256) {
+        return blobDir.resolve(sha256 + ".bin");
+    }
+
+    private static String key(String documentIndex, String versionNo) {
+        return documentIndex + "#" + versionNo.trim();
+    }
+
+    private static String sha256(byte[] content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.trim().isEmpty();
+    }
+
+    private static final class Entry {
+        final String sha256;
+        final long size;
+        long lastUsed;
+
+        Entry(String sha256, long size, long lastUsed) {
+            this.sha256 = sha256;
+            this.size = size;
+            this.lastUsed = lastUsed;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.balmerlawrie.balmerrestservice.service;
+
+import com.balmerlawrie.balmerrestservice.model.SupportingDocument;
+import com.balmerlawrie.balmerrestservice.util.ETags;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Fingerprints of the inputs each generated notesheet PDF was built from,
+ * so createpdfnote can skip a run whose inputs have not changed.
+ *
+ * The fingerprint covers the original notesheet reference (folder, version
+ * and document index from notesheet_original), the comment history, the
+ * listed supporting documents (index, version and name; the notesheet itself
+ * is excluded as it is the output), the section templates, the PDF backend
+ * and the page layout (see {@link NotesheetBodyPdfCache}). It is stored per notesheet document together with the version the
+ * run checked in; a later run is skipped only if the fingerprint matches and
+ * the notesheet is still at that version, so a notesheet changed by anyone
+ * else is always regenerated.
+ *
+ * The store is a small JSON file (notesheet.fingerprint.file) loaded at
+ * startup and rewritten on every update.
+ */
+@Service
+public class NotesheetFingerprintService {
+
+    private static final Logger log = LoggerFactory.getLogger(NotesheetFingerprintService.class);
+
+    @Value("${notesheet.fingerprint.enabled:true}")
+    private boolean enabled;
+
+    @Value("${notesheet.fingerprint.file:${java.io.tmpdir}/notesheets/fingerprints.json}")
+    private String storeFile;
+
+    @Autowired
+    private NotesheetTemplateService notesheetTemplateService;
+
+    @Autowired
+    private NotesheetPdfRenderer notesheetPdfRenderer;
+
+    @Autowired
+    private NotesheetBodyPdfCache notesheetBodyPdfCache;
+
+    private final ObjectMapper jsonMapper = new ObjectMapper();
+
+    private final Map<String, Stored> fingerprints = new ConcurrentHashMap<>();
+
+    private Path storePath;
+
+    @PostConstruct
+    void loadStore() {
+        storePath = Paths.get(storeFile);
+        if (!enabled || !Files.exists(storePath)) {
+            return;
+        }
+        try {
+            JsonNode root = jsonMapper.readTree(storePath.toFile());
+            Iterator<Map.Entry<String, JsonNode>> entries = root.fields();
+            while (entries.hasNext()) {
+                Map.Entry<String, JsonNode> entry = entries.next();
+                fingerprints.put(entry.getKey(), new Stored(entry.getValue().path("fingerprint").asText(),
+                        entry.getValue().path("versionNo").asText()));
+            }
+            log.info("Loaded {} notesheet fingerprints from {}", fingerprints.size(), storePath);
+        } catch (IOException e) {
+            log.warn("Could not read notesheet fingerprints from {}, starting empty: {}", storePath, e.getMessage());
+        }
+    }
+
+    /**
+     * Whether fingerprinting is enabled (notesheet.fingerprint.enabled).
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Computes the fingerprint of a createpdfnote run's inputs.
+     *
+     * @param originalReference The notesheet_original attribute (FolderIndex#VersionNo#DocumentIndex)
+     * @param comments          The comment history as rendered
+     * @param documents         The work item's supporting documents, in listing order
+     * @return Hex fingerprint
+     */
+    public String compute(String originalReference, JsonNode comments, List<SupportingDocument> documents) {
+        ETags.Builder hash = ETags.builder()
+                .add(originalReference)
+                .add(notesheetTemplateService.getVersion())
+                .add(notesheetPdfRenderer.getName());
+        if (notesheetBodyPdfCache.isEnabled()) {
+            // The appendix is laid out on pages of its own
+            hash.add("appendix-pages");
+        }
+        if (comments != null && !comments.isMissingNode()) {
+            hash.add(comments);
+        }
+        hash.add("documents");
+        if (documents != null) {
+            for (SupportingDocument doc : documents) {
+                if (doc.getDocumentName().toLowerCase().startsWith("notesheet")) {
+                    continue;
+                }
+                hash.add(doc.getDocumentIndex()).add(doc.getVersionNo()).add(doc.getDocumentName());
+            }
+        }
+        String etag = hash.build();
+        return etag.substring(1, etag.length() - 1);
+    }
+
+    /**
+     * Checks whether a notesheet was generated from the same inputs and has
+     * not been changed since.
+     *
+     * @param notesheetIndex   Notesheet document index
+     * @param currentVersionNo The notesheet's current version
+     * @param fingerprint      Fingerprint of the current inputs
+     * @return true if the run can be skipped
+     */
+    public boolean isUnchanged(String notesheetIndex, String currentVersionNo, String fingerprint) {
+        Stored stored = fingerprints.get(notesheetIndex);
+        return enabled && stored != null && stored.fingerprint.equals(fingerprint)
+                && currentVersionNo != null && stored.versionNo.equals(currentVersionNo.trim());
+    }
+
+    /**
+     * Records the fingerprint of a run and the version it checked in.
+     */
+    public void record(String notesheetIndex, String versionNo, String fingerprint) {
+        if (!enabled || versionNo == null || versionNo.trim().isEmpty()) {
+            return;
+        }
+        fingerprints.put(notesheetIndex, new Stored(fingerprint, versionNo.trim()));
+        save();
+    }
+
+    /**
+     * Drops the fingerprint of a notesheet, so its next run is not skipped.
+     */
+    public void forget(String notesheetIndex) {
+        if (fingerprints.remove(notesheetIndex) != null) {
+            save();
+        }
+    }
+
+    // --- Helper Methods ---
+
+    /**
+     * Writes the store to a temp file and moves it over the old one, so a
+     * crash never leaves a half-written store.
+     */
+    private synchronized void save() {
+        ObjectNode root = jsonMapper.createObjectNode();
+        fingerprints.forEach((index, stored) -> {
+            ObjectNode entry = root.putObject(index);
+            entry.put("fingerprint", stored.fingerprint);
+            entry.put("versionNo", stored.versionNo);
+        });
+        try {
+            Path dir = storePath.toAbsolutePath().getParent();
+            Files.createDirectories(dir);
+            Path tmp = Files.createTempFile(dir, "fingerprints", ".tmp");
+            jsonMapper.writeValue(tmp.toFile(), root);
+            Files.move(tmp, storePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Could not save notesheet fingerprints to {}: {}", storePath, e.getMessage());
+        }
+    }
+
+    private static final class Stored {
+        final String fingerprint;
+        final String versionNo;
+
+        Stored(String fingerprint, String versionNo) {
+            this.fingerprint = fingerprint;
+            this.versionNo = versionNo;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.balmerlawrie.balmerrestservice.service;
+
+import org.w3c.dom.Document;
+
+import java.io.OutputStream;
+
+/**
+ * Renders the XHTML of a notesheet (as built by
+ * {@link com.balmerlawrie.balmerrestservice.util.XhtmlNormalizer}) into a PDF.
+ *
+ * One implementation is active, selected by notesheet.pdf.renderer:
+ * flyingsaucer (default) or openhtmltopdf. Implementations are thread-safe.
+ */
+public interface NotesheetPdfRenderer {
+
+    /**
+     * Renders a document into a PDF.
+     *
+     * @param xhtml XHTML document in the XHTML namespace; not modified
+     * @param out   Stream the PDF is written to; not closed
+     * @throws Exception If rendering fails
+     */
+    void render(Document xhtml, OutputStream out) throws Exception;
+
+    /**
+     * Name of the rendering backend, for logs.
+     */
+    String getName();
+}
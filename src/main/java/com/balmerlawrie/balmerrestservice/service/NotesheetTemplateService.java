@@ -0,0 +1,139 @@
+package com.balmerlawrie.balmerrestservice.service;
+
+import com.balmerlawrie.balmerrestservice.util.CompiledTemplate;
+import com.balmerlawrie.balmerrestservice.util.ETags;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compiled HTML templates for the sections appended to a generated notesheet
+ * PDF (supporting documents and comments).
+ *
+ * Templates are read from notesheet.templates.location and compiled once at
+ * startup; a template that cannot be read falls back to a built-in default.
+ * With notesheet.templates.reload=true (for development) a template is
+ * recompiled whenever its file changes, so template edits show up without a
+ * restart.
+ */
+@Service
+public class NotesheetTemplateService {
+
+    private static final Logger log = LoggerFactory.getLogger(NotesheetTemplateService.class);
+
+    public static final String DOCUMENT_LIST = "document_list_template.html";
+    public static final String DOCUMENT_ROW = "document_row_template.html";
+    public static final String COMMENT_SECTION = "comment_template.html";
+    public static final String COMMENT_ROW = "comment_row_template.html";
+
+    /**
+     * Built-in templates used when a template resource is missing.
+     */
+    private static final Map<String, String> DEFAULTS = new LinkedHashMap<>();
+
+    static {
+        DEFAULTS.put(DOCUMENT_LIST, "<div style=\"margin-top:20px;\"><table border=\"1\" style=\"width:100%;\"><tr><td colspan=\"3\" style=\"background:#e0e0e0;\"><b>Supporting Documents</b></td></tr><tr style=\"background:#f0f0f0;font-weight:bold;\"><td style=\"width:5%;text-align:center;\">S.No</td><td style=\"width:70%;\">Document Name</td><td style=\"width:25%;\">Document Index</td></tr>{{DOCUMENT_ROWS}}</table></div>");
+        DEFAULTS.put(DOCUMENT_ROW, "<tr><td style=\"text-align:center;\">{{SNO}}</td><td>{{DOCUMENT_NAME}}</td><td>{{DOCUMENT_INDEX}}</td></tr>");
+        DEFAULTS.put(COMMENT_SECTION, "<div style=\"margin-top:20px;\"><table border=\"1\" style=\"width:100%;\"><tr><td colspan=\"3\" style=\"background:#e0e0e0;\"><b>Notesheet Comments</b></td></tr>{{COMMENTS_ROWS}}</table></div>");
+        DEFAULTS.put(COMMENT_ROW, "<tr><td><b>SNo:</b> {{SNO}}</td><td><b>User:</b> {{USER}}</td><td><b>Date:</b> {{DATE}}</td></tr><tr><td colspan=\"3\">{{COMMENT_TEXT}}</td></tr><tr><td><b>Stage:</b> {{STAGE}}</td><td><b>Status:</b> {{STATUS}}</td><td></td></tr>");
+    }
+
+    @Value("${notesheet.templates.location:classpath:templates/}")
+    private String location;
+
+    @Value("${notesheet.templates.reload:false}")
+    private boolean reload;
+
+    @Autowired
+    private ResourceLoader resourceLoader;
+
+    private final Map<String, Loaded> templates = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    void compileTemplates() {
+        for (String name : DEFAULTS.keySet()) {
+            templates.put(name, load(name));
+        }
+    }
+
+    /**
+     * Gets a compiled template.
+     *
+     * @param name One of the template names defined by this class
+     * @return The compiled template, or the built-in default if it could not be read
+     */
+    public CompiledTemplate get(String name) {
+        Loaded loaded = templates.get(name);
+        if (loaded == null) {
+            throw new IllegalArgumentException("Unknown notesheet template: " + name);
+        }
+        if (reload && loaded.lastModified != lastModified(resourceLoader.getResource(location + name))) {
+            loaded = load(name);
+            templates.put(name, loaded);
+            log.info("Reloaded notesheet template {}", name);
+        }
+        return loaded.template;
+    }
+
+    /**
+     * Identifies the current content of all templates: a hash of their
+     * sources that changes whenever a template does (including reloads).
+     *
+     * @return Hex digest of the template sources
+     */
+    public String getVersion() {
+        ETags.Builder hash = ETags.builder();
+        for (String name : DEFAULTS.keySet()) {
+            hash.add(name).add(get(name).getSource());
+        }
+        String etag = hash.build();
+        return etag.substring(1, etag.length() - 1);
+    }
+
+    // --- Helper Methods ---
+
+    private Loaded load(String name) {
+        Resource resource = resourceLoader.getResource(location + name);
+        long lastModified = lastModified(resource);
+        try (InputStream is = resource.getInputStream()) {
+            String source = new String(is.readAllBytes(), StandardCharsets.UTF_8);
+            return new Loaded(CompiledTemplate.compile(source), lastModified);
+        } catch (IOException e) {
+            log.warn("Template not found: {}{}, using default", location, name);
+            return new Loaded(CompiledTemplate.compile(DEFAULTS.get(name)), lastModified);
+        }
+    }
+
+    /**
+     * Last modification time of a template file; -1 if missing or not a file.
+     */
+    private static long lastModified(Resource resource) {
+        try {
+            return resource.exists() ? resource.lastModified() : -1;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private static final class Loaded {
+        final CompiledTemplate template;
+        final long lastModified;
+
+        Loaded(CompiledTemplate template, long lastModified) {
+            this.template = template;
+            this.lastModified = lastModified;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.balmerlawrie.balmerrestservice.service;
+
+import com.openhtmltopdf.extend.FSCacheEx;
+import com.openhtmltopdf.extend.FSCacheValue;
+import com.openhtmltopdf.extend.impl.FSDefaultCacheStore;
+import com.openhtmltopdf.pdfboxout.PdfRendererBuilder;
+import org.apache.fontbox.ttf.TTFParser;
+import org.apache.fontbox.ttf.TrueTypeFont;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.w3c.dom.Document;
+
+import javax.annotation.PostConstruct;
+import java.io.File;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Notesheet PDFs with openhtmltopdf's fast renderer on PDFBox.
+ *
+ * A renderer is built per PDF (openhtmltopdf renderers are single use); the
+ * font metrics cache is shared between them, and fonts in
+ * notesheet.renderer.fonts.directory are registered under the family names
+ * read from the font files once at startup. Layout differs slightly from
+ * Flying Saucer, so the calibrated View link positions may need adjusting
+ * when this backend is used.
+ */
+@Service
+@ConditionalOnProperty(name = "notesheet.pdf.renderer", havingValue = "openhtmltopdf")
+public class OpenHtmlToPdfNotesheetPdfRenderer implements NotesheetPdfRenderer {
+
+    private static final Logger log = LoggerFactory.getLogger(OpenHtmlToPdfNotesheetPdfRenderer.class);
+
+    @Value("${notesheet.renderer.fonts.directory:}")
+    private String fontsDirectory;
+
+    /**
+     * Font metrics shared by all renders.
+     */
+    private final FSCacheEx<String, FSCacheValue> fontMetrics = new FSDefaultCacheStore();
+
+    /**
+     * Font files and their family names.
+     */
+    private final Map<File, String> fonts = new LinkedHashMap<>();
+
+    @PostConstruct
+    void loadFonts() {
+        if (fontsDirectory == null || fontsDirectory.trim().isEmpty()) {
+            return;
+        }
+        File[] files = new File(fontsDirectory.trim()).listFiles();
+        if (files == null) {
+            log.warn("Font directory not found: {}", fontsDirectory);
+            return;
+        }
+        for (File file : files) {
+            if (!file.isFile() || !file.getName().toLowerCase(Locale.ROOT).endsWith(".ttf")) {
+                continue;
+            }
+            try (TrueTypeFont font = new TTFParser().parse(file)) {
+                fonts.put(file, font.getNaming().getFontFamily());
+            } catch (Exception e) {
+                log.warn("Could not read font {}: {}", file, e.getMessage());
+            }
+        }
+        log.info("Registered {} PDF fonts from {}", fonts.size(), fontsDirectory);
+    }
+
+    @Override
+    public void render(Document xhtml, OutputStream out) throws Exception {
+        PdfRendererBuilder builder = new PdfRendererBuilder();
+        builder.useFastMode();
+        builder.useCacheStore(PdfRendererBuilder.CacheStore.PDF_FONT_METRICS, fontMetrics);
+        fonts.forEach(builder::useFont);
+        builder.withW3cDocument(xhtml, null);
+        builder.toStream(out);
+        builder.run();
+    }
+
+    @Override
+    public String getName() {
+        return "openhtmltopdf";
+    }
+}
@@ -0,0 +1,367 @@
+package com.balmerlawrie.balmerrestservice.service;
+
+import com.balmerlawrie.balmerrestservice.dto.PdfNoteBulkRequest;
+import com.balmerlawrie.balmerrestservice.dto.SupportingDocsBatchRequest;
+import com.balmerlawrie.balmerrestservice.model.PdfNoteBulkJob;
+import com.balmerlawrie.balmerrestservice.model.WorkItem;
+import com.balmerlawrie.balmerrestservice.model.WorkList;
+import com.balmerlawrie.balmerrestservice.util.BoundedExecutors;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Regenerates the PDF notes of many work items, e.g. after a template change.
+ *
+ * A bulk job takes a list of work items or every item of a queue and runs
+ * createPdfNote for each with the shared service account session. A queue is
+ * listed with the caller's session when the job is submitted, so the job
+ * covers exactly the items the caller can see. Bulk jobs
+ * run one at a time with a short backlog; within a job at most `parallelism`
+ * items (capped by notesheet.bulk.max.parallelism) are in flight and item
+ * starts are spaced by notesheet.bulk.min.interval.ms, so a large batch does
+ * not flood iBPS and OmniDocs. Progress and per-item results are kept on the
+ * job until notesheet.jobs.retention.ms after it finished.
+ */
+@Service
+public class PdfNoteBulkService {
+
+    private static final Logger log = LoggerFactory.getLogger(PdfNoteBulkService.class);
+
+    @Value("${notesheet.bulk.max.parallelism:4}")
+    private int maxParallelism;
+
+    @Value("${notesheet.bulk.default.parallelism:2}")
+    private int defaultParallelism;
+
+    @Value("${notesheet.bulk.min.interval.ms:250}")
+    private long minIntervalMillis;
+
+    @Value("${notesheet.bulk.queue.capacity:3}")
+    private int queueCapacity;
+
+    @Value("${notesheet.bulk.max.items:1000}")
+    private int maxItems;
+
+    @Value("${notesheet.jobs.retention.ms:3600000}")
+    private long retentionMillis;
+
+    @Value("${notesheet.jobs.retry.after.seconds:30}")
+    private int retryAfterSeconds;
+
+    @Autowired
+    private PdfNoteJobService pdfNoteJobService;
+
+    @Autowired
+    private MyQueueService myQueueService;
+
+    @Autowired
+    private SessionManager sessionManager;
+
+    private final ObjectMapper jsonMapper = new ObjectMapper();
+
+    private final Map<String, PdfNoteBulkJob> jobs = new ConcurrentHashMap<>();
+
+    /**
+     * Runs the bulk jobs themselves, one at a time.
+     */
+    private ThreadPoolExecutor bulkExecutor;
+
+    /**
+     * Runs the items of the current bulk job.
+     */
+    private ThreadPoolExecutor itemExecutor;
+
+    @PostConstruct
+    void initExecutors() {
+        bulkExecutor = BoundedExecutors.newFixedPool("pdfnote-bulk", 1, queueCapacity,
+                new ThreadPoolExecutor.AbortPolicy());
+        itemExecutor = BoundedExecutors.newFixedPool("pdfnote-bulk-item", maxParallelism, maxParallelism,
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    void shutdownExecutors() {
+        bulkExecutor.shutdownNow();
+        itemExecutor.shutdownNow();
+    }
+
+    /**
+     * Largest number of listed items accepted per request.
+     */
+    public int getMaxItems() {
+        return maxItems;
+    }
+
+    /**
+     * Seconds a caller rejected because of a full backlog should wait.
+     */
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    /**
+     * Queues a bulk job for a validated request.
+     *
+     * @param request Listed items or queue selector, and optional parallelism
+     * @param items   The work items to process: the listed items, or the
+     *                queue's items from {@link #resolveQueue}
+     * @return The queued job
+     * @throws RejectedExecutionException If other bulk jobs fill the backlog
+     */
+    public PdfNoteBulkJob submit(PdfNoteBulkRequest request, List<SupportingDocsBatchRequest.Item> items) {
+        purgeExpired();
+
+        int parallelism = Math.min(Math.max(1, maxParallelism),
+                request.getParallelism() != null ? request.getParallelism() : defaultParallelism);
+        String selector = request.getQueueId() != null
+                ? "queue " + request.getQueueId()
+                        + (isBlank(request.getActivityName()) ? "" : " / " + request.getActivityName())
+                : request.getItems().size() + " items";
+        PdfNoteBulkJob job = new PdfNoteBulkJob(UUID.randomUUID().toString(), selector, request.getQueueId(),
+                parallelism);
+
+        List<SupportingDocsBatchRequest.Item> jobItems = new ArrayList<>(items);
+        boolean force = request.isForce();
+
+        jobs.put(job.getJobId(), job);
+        try {
+            bulkExecutor.execute(() -> run(job, jobItems, force));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getJobId());
+            log.warn("Bulk PDF note backlog full, rejecting {}", selector);
+            throw e;
+        }
+        log.info("Queued bulk PDF note job {} for {} with parallelism {}", job.getJobId(), selector, parallelism);
+        return job;
+    }
+
+    /**
+     * Lists the work items of a queue, optionally only those at one activity,
+     * with the caller's session, so a bulk job processes the items the caller
+     * is allowed to see. At most notesheet.bulk.max.items are returned.
+     *
+     * @param queueId      Queue ID, already checked against the caller's queues
+     * @param activityName Only items at this activity, or null for all
+     * @param sessionId    The caller's session ID
+     * @return The items, or null if the queue could not be fetched
+     */
+    public List<SupportingDocsBatchRequest.Item> resolveQueue(int queueId, String activityName, long sessionId) {
+        WorkList workList = myQueueService.fetchQueue(queueId, "", sessionId);
+        if (!workList.isSuccess()) {
+            log.error("Bulk PDF note: failed to fetch queue {}: {}", queueId, workList.getError());
+            return null;
+        }
+
+        List<SupportingDocsBatchRequest.Item> items = new ArrayList<>();
+        for (WorkItem workItem : workList.getWorkItems()) {
+            if (!isBlank(activityName) && !activityName.equalsIgnoreCase(workItem.getActivityName())) {
+                continue;
+            }
+            items.add(new SupportingDocsBatchRequest.Item(workItem.getProcessInstanceId(),
+                    workItem.getWorkitemId()));
+        }
+        if (items.size() > maxItems) {
+            log.warn("Bulk PDF note: queue {} has {} items, processing the first {}", queueId, items.size(),
+                    maxItems);
+            items = new ArrayList<>(items.subList(0, maxItems));
+        }
+        return items;
+    }
+
+    /**
+     * Gets a bulk job by ID.
+     *
+     * @return The job, or null if unknown or its result has expired
+     */
+    public PdfNoteBulkJob getJob(String jobId) {
+        PdfNoteBulkJob job = jobs.get(jobId);
+        if (job != null && isExpired(job, System.currentTimeMillis())) {
+            jobs.remove(jobId, job);
+            return null;
+        }
+        return job;
+    }
+
+    /**
+     * Status response for a bulk job: state, progress counts and, optionally,
+     * the results of the items finished so far.
+     */
+    public JsonNode toJson(PdfNoteBulkJob job, boolean includeItems) {
+        ObjectNode node = jsonMapper.createObjectNode();
+        node.put("success", true);
+        node.put("jobId", job.getJobId());
+        node.put("status", job.getStatus().name().toLowerCase());
+        node.put("selector", job.getSelector());
+        node.put("parallelism", job.getParallelism());
+
+        int total = job.getTotal();
+        int completed = job.getCompleted();
+        node.put("total", total);
+        node.put("completed", completed);
+        node.put("succeeded", job.getSucceeded());
+        node.put("failed", job.getFailed());
+        node.put("percent", total == 0 ? (job.isFinished() ? 100 : 0) : completed * 100 / total);
+
+        node.put("submittedAt", job.getSubmittedAt().toString());
+        Instant startedAt = job.getStartedAt();
+        Instant finishedAt = job.getFinishedAt();
+        if (startedAt != null) {
+            node.put("startedAt", startedAt.toString());
+        }
+        if (finishedAt != null) {
+            node.put("finishedAt", finishedAt.toString());
+            if (startedAt != null) {
+                node.put("durationMs", finishedAt.toEpochMilli() - startedAt.toEpochMilli());
+            }
+        }
+        if (job.getError() != null) {
+            node.put("error", job.getError());
+        }
+        if (includeItems) {
+            ArrayNode items = node.putArray("items");
+            for (JsonNode result : job.getResults()) {
+                if (result != null) {
+                    items.add(result);
+                }
+            }
+        }
+        return node;
+    }
+
+    // --- Helper Methods ---
+
+    private void run(PdfNoteBulkJob job, List<SupportingDocsBatchRequest.Item> listed, boolean force) {
+        // A work item listed twice would be checked out by two workers at once
+        List<SupportingDocsBatchRequest.Item> items = distinct(listed);
+
+        job.start(items.size());
+        log.info("Bulk PDF note job {} started: {} items", job.getJobId(), items.size());
+
+        Semaphore inFlight = new Semaphore(job.getParallelism());
+        long nextStart = 0;
+        try {
+            for (int i = 0; i < items.size(); i++) {
+                inFlight.acquire();
+
+                // Space item starts out so the backends see a steady trickle
+                long wait = nextStart - System.currentTimeMillis();
+                if (wait > 0) {
+                    Thread.sleep(wait);
+                }
+                nextStart = System.currentTimeMillis() + minIntervalMillis;
+
+                int index = i;
+                SupportingDocsBatchRequest.Item item = items.get(i);
+                try {
+                    itemExecutor.execute(() -> {
+                        try {
+                            runItem(job, index, item, force);
+                        } finally {
+                            inFlight.release();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    inFlight.release();
+                    job.itemFinished(index, itemResult(item, false, null, "Item pool rejected the item", 0), false);
+                }
+            }
+
+            // Wait for the items still in flight
+            inFlight.acquire(job.getParallelism());
+            job.complete();
+            log.info("Bulk PDF note job {} completed: {} succeeded, {} failed", job.getJobId(),
+                    job.getSucceeded(), job.getFailed());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.fail("Interrupted after " + job.getCompleted() + " items");
+        }
+    }
+
+    private void runItem(PdfNoteBulkJob job, int index, SupportingDocsBatchRequest.Item item, boolean force) {
+        long start = System.currentTimeMillis();
+        JsonNode result;
+        try {
+            // The cached service account session is shared by all items
+            result = pdfNoteJobService.createPdfNoteWithSession(sessionManager.getServiceSession(),
+                    item.getProcessInstanceId(), item.getWorkitemId(), force, stage -> {
+                    });
+        } catch (RuntimeException e) {
+            log.error("Bulk PDF note for {}/{} failed: {}", item.getProcessInstanceId(), item.getWorkitemId(),
+                    e.getMessage(), e);
+            result = null;
+        }
+
+        long elapsed = System.currentTimeMillis() - start;
+        boolean success = result != null && result.path("success").asBoolean(false);
+        String error = result == null ? "Error creating PDF note"
+                : success ? null : result.path("error").asText("Failed to create PDF note");
+        ObjectNode itemResult = itemResult(item, success,
+                success ? result.path("newVersion").asText() : null, error, elapsed);
+        if (success) {
+            itemResult.put("skipped", result.path("skipped").asBoolean(false));
+        }
+        job.itemFinished(index, itemResult, success);
+    }
+
+    private static List<SupportingDocsBatchRequest.Item> distinct(List<SupportingDocsBatchRequest.Item> items) {
+        Set<String> seen = new HashSet<>();
+        List<SupportingDocsBatchRequest.Item> distinct = new ArrayList<>(items.size());
+        for (SupportingDocsBatchRequest.Item item : items) {
+            if (seen.add(item.getProcessInstanceId() + "|" + item.getWorkitemId())) {
+                distinct.add(item);
+            }
+        }
+        return distinct;
+    }
+
+    private ObjectNode itemResult(SupportingDocsBatchRequest.Item item, boolean success, String newVersion,
+            String error, long durationMs) {
+        ObjectNode node = jsonMapper.createObjectNode();
+        node.put("processInstanceId", item.getProcessInstanceId());
+        node.put("workitemId", item.getWorkitemId());
+        node.put("success", success);
+        if (newVersion != null) {
+            node.put("newVersion", newVersion);
+        }
+        if (error != null) {
+            node.put("error", error);
+        }
+        node.put("durationMs", durationMs);
+        return node;
+    }
+
+    private void purgeExpired() {
+        long now = System.currentTimeMillis();
+        jobs.values().removeIf(job -> isExpired(job, now));
+    }
+
+    private boolean isExpired(PdfNoteBulkJob job, long now) {
+        Instant finishedAt = job.getFinishedAt();
+        return finishedAt != null && now - finishedAt.toEpochMilli() > retentionMillis;
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.trim().isEmpty();
+    }
+}
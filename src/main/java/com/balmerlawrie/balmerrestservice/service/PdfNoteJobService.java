@@ -0,0 +1,266 @@
+package com.balmerlawrie.balmerrestservice.service;
+
+import com.balmerlawrie.balmerrestservice.model.PdfNoteJob;
+import com.balmerlawrie.balmerrestservice.util.BoundedExecutors;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Runs createpdfnote in the background.
+ *
+ * Jobs run on a dedicated fixed pool with a bounded backlog, so a burst of
+ * PDF notes neither holds servlet threads nor grows without limit: when the
+ * backlog is full, {@link #submit} throws {@link RejectedExecutionException}
+ * and the caller is asked to retry later. Each job records the time spent in
+ * every pipeline stage and keeps its result for notesheet.jobs.retention.ms
+ * after it finished.
+ */
+@Service
+public class PdfNoteJobService {
+
+    private static final Logger log = LoggerFactory.getLogger(PdfNoteJobService.class);
+
+    /**
+     * Error of a createpdfnote result when no service account session could be established.
+     */
+    public static final String NO_SERVICE_SESSION = "Failed to establish service session";
+
+    @Value("${notesheet.jobs.threads:2}")
+    private int threads;
+
+    @Value("${notesheet.jobs.queue.capacity:20}")
+    private int queueCapacity;
+
+    @Value("${notesheet.jobs.retention.ms:3600000}")
+    private long retentionMillis;
+
+    @Value("${notesheet.jobs.retry.after.seconds:30}")
+    private int defaultRetryAfterSeconds;
+
+    @Autowired
+    private NoteSheetService noteSheetService;
+
+    @Autowired
+    private SessionManager sessionManager;
+
+    private final ObjectMapper jsonMapper = new ObjectMapper();
+
+    private final Map<String, PdfNoteJob> jobs = new ConcurrentHashMap<>();
+
+    private ThreadPoolExecutor jobExecutor;
+
+    /**
+     * Moving average of job run time, used to estimate Retry-After; 0 until a
+     * job has finished.
+     */
+    private volatile double averageRunMillis;
+
+    @PostConstruct
+    void initExecutor() {
+        jobExecutor = BoundedExecutors.newFixedPool("pdfnote-job", threads, queueCapacity,
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    void shutdownExecutor() {
+        jobExecutor.shutdownNow();
+    }
+
+    /**
+     * Queues a createpdfnote run for a work item.
+     *
+     * @param processInstanceId Process Instance ID
+     * @param workitemId        Work Item ID
+     * @param force             Regenerate even if the inputs are unchanged
+     * @return The queued job
+     * @throws RejectedExecutionException If the backlog is full
+     */
+    public PdfNoteJob submit(String processInstanceId, String workitemId, boolean force) {
+        purgeExpired();
+
+        PdfNoteJob job = new PdfNoteJob(UUID.randomUUID().toString(), processInstanceId, workitemId);
+        jobs.put(job.getJobId(), job);
+        try {
+            jobExecutor.execute(() -> run(job, force));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getJobId());
+            log.warn("PDF note job backlog full ({} queued), rejecting {}/{}",
+                    jobExecutor.getQueue().size(), processInstanceId, workitemId);
+            throw e;
+        }
+        log.info("Queued PDF note job {} for {}/{}", job.getJobId(), processInstanceId, workitemId);
+        return job;
+    }
+
+    /**
+     * Gets a job by ID.
+     *
+     * @return The job, or null if unknown or its result has expired
+     */
+    public PdfNoteJob getJob(String jobId) {
+        PdfNoteJob job = jobs.get(jobId);
+        if (job != null && isExpired(job, System.currentTimeMillis())) {
+            jobs.remove(jobId, job);
+            return null;
+        }
+        return job;
+    }
+
+    /**
+     * Seconds a rejected caller should wait: the time the workers need for
+     * the current backlog at the average job run time, or
+     * notesheet.jobs.retry.after.seconds before any job has finished.
+     */
+    public int getRetryAfterSeconds() {
+        double average = averageRunMillis;
+        if (average <= 0) {
+            return defaultRetryAfterSeconds;
+        }
+        int workers = Math.max(1, jobExecutor.getMaximumPoolSize());
+        double backlogMillis = average * (jobExecutor.getQueue().size() + workers) / workers;
+        return (int) Math.max(1, Math.min(600, Math.ceil(backlogMillis / 1000)));
+    }
+
+    /**
+     * Runs createpdfnote with a fresh service account session, retrying once
+     * with a new session if the first one turns out to be invalid.
+     *
+     * @param processInstanceId Process Instance ID
+     * @param workitemId        Work Item ID
+     * @param force             Regenerate even if the inputs are unchanged
+     * @param progress          Receives the pipeline stages
+     * @return The createpdfnote result; its error is {@link #NO_SERVICE_SESSION}
+     *         if no session could be established
+     */
+    public JsonNode createPdfNoteWithServiceSession(String processInstanceId, String workitemId, boolean force,
+            NoteSheetService.PdfNoteProgress progress) {
+        return createPdfNoteWithSession(sessionManager.getFreshServiceSession(), processInstanceId, workitemId,
+                force, progress);
+    }
+
+    /**
+     * Runs createpdfnote with the given service account session. If the
+     * session turns out to be invalid it is dropped and the run is retried
+     * once with a new one. Every createpdfnote path (sync, async and bulk)
+     * goes through here.
+     *
+     * @param sessionId Service account session, or null if none could be established
+     */
+    JsonNode createPdfNoteWithSession(Long sessionId, String processInstanceId, String workitemId, boolean force,
+            NoteSheetService.PdfNoteProgress progress) {
+        if (sessionId == null) {
+            return createError(NO_SERVICE_SESSION);
+        }
+
+        JsonNode result = noteSheetService.createPdfNote(processInstanceId, workitemId, sessionId, force, progress);
+        if (isSessionError(result)) {
+            sessionManager.invalidateSessionById(sessionId);
+            sessionId = sessionManager.getServiceSession();
+            if (sessionId != null) {
+                result = noteSheetService.createPdfNote(processInstanceId, workitemId, sessionId, force, progress);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Status response for a job: state, current stage, stage timings and,
+     * once finished, the createpdfnote result.
+     */
+    public JsonNode toJson(PdfNoteJob job) {
+        ObjectNode node = jsonMapper.createObjectNode();
+        node.put("success", true);
+        node.put("jobId", job.getJobId());
+        node.put("status", job.getStatus().name().toLowerCase());
+        node.put("processInstanceId", job.getProcessInstanceId());
+        node.put("workitemId", job.getWorkitemId());
+        node.put("submittedAt", job.getSubmittedAt().toString());
+
+        Instant startedAt = job.getStartedAt();
+        Instant finishedAt = job.getFinishedAt();
+        if (startedAt != null) {
+            node.put("startedAt", startedAt.toString());
+            node.put("queuedMs", startedAt.toEpochMilli() - job.getSubmittedAt().toEpochMilli());
+        }
+        if (job.getCurrentStage() != null) {
+            node.put("stage", job.getCurrentStage());
+        }
+        ObjectNode stages = node.putObject("stageMs");
+        job.getStageMillis().forEach(stages::put);
+        if (finishedAt != null) {
+            node.put("finishedAt", finishedAt.toString());
+            if (startedAt != null) {
+                node.put("durationMs", finishedAt.toEpochMilli() - startedAt.toEpochMilli());
+            }
+            node.set("result", job.getResult());
+        }
+        return node;
+    }
+
+    // --- Helper Methods ---
+
+    private void run(PdfNoteJob job, boolean force) {
+        job.start();
+        long start = System.currentTimeMillis();
+        JsonNode result;
+        try {
+            result = createPdfNoteWithServiceSession(job.getProcessInstanceId(), job.getWorkitemId(), force,
+                    job::enterStage);
+        } catch (RuntimeException e) {
+            log.error("PDF note job {} failed: {}", job.getJobId(), e.getMessage(), e);
+            result = createError("Error creating PDF note: " + e.getMessage());
+        }
+        job.finish(result);
+
+        long elapsed = System.currentTimeMillis() - start;
+        double average = averageRunMillis;
+        averageRunMillis = average <= 0 ? elapsed : average * 0.8 + elapsed * 0.2;
+        log.info("PDF note job {} {} in {} ms, stages: {}", job.getJobId(),
+                job.getStatus().name().toLowerCase(), elapsed, job.getStageMillis());
+    }
+
+    /**
+     * Whether a createpdfnote result failed because the session was not valid.
+     */
+    static boolean isSessionError(JsonNode result) {
+        if (result.path("success").asBoolean(true)) {
+            return false;
+        }
+        String error = result.path("error").asText("").toLowerCase();
+        String details = result.path("details").asText("").toLowerCase();
+        return error.contains("invalid session") || error.contains("401")
+                || details.contains("invalid session") || details.contains("401");
+    }
+
+    private void purgeExpired() {
+        long now = System.currentTimeMillis();
+        jobs.values().removeIf(job -> isExpired(job, now));
+    }
+
+    private boolean isExpired(PdfNoteJob job, long now) {
+        Instant finishedAt = job.getFinishedAt();
+        return finishedAt != null && now - finishedAt.toEpochMilli() > retentionMillis;
+    }
+
+    private JsonNode createError(String message) {
+        ObjectNode error = jsonMapper.createObjectNode();
+        error.put("success", false);
+        error.put("error", message);
+        return error;
+    }
+}
@@ -0,0 +1,413 @@
+package com.balmerlawrie.balmerrestservice.service;
+
+import com.balmerlawrie.balmerrestservice.model.WorkItem;
+import com.balmerlawrie.balmerrestservice.model.WorkList;
+import com.balmerlawrie.balmerrestservice.util.BoundedExecutors;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Pushes queue changes to subscribed clients over Server-Sent Events.
+ *
+ * Every distinct queue that has at least one subscriber is a "feed". Feeds are
+ * polled once per schedule tick no matter how many clients listen to them, the
+ * new snapshot is diffed against the previous one by workitem key and only the
+ * added, removed and changed items are pushed. My Queue is per-user, so each
+ * user gets their own My Queue feed; shared queues are polled once for everyone.
+ *
+ * Subscribers are only attached to queues their own session can list, which
+ * also validates the session, and a feed is polled with the session of one of
+ * its subscribers: a subscriber whose session stopped working is dropped and
+ * the next one is used.
+ *
+ * The feeds of a tick are polled concurrently on a bounded pool
+ * (queue.stream.poll.parallelism), so one slow queue does not hold up the
+ * others; a feed whose previous poll is still running is skipped for the tick.
+ *
+ * Connections are held by {@link SseEmitter} (async servlet), not by a thread.
+ */
+@Service
+public class QueueStreamService {
+
+    private static final Logger log = LoggerFactory.getLogger(QueueStreamService.class);
+
+    private static final String MY_QUEUE_FEED_PREFIX = "myqueue:";
+    private static final String QUEUE_FEED_PREFIX = "queue:";
+
+    @Autowired
+    private MyQueueService myQueueService;
+
+    @Value("${queue.stream.timeout.minutes:30}")
+    private long streamTimeoutMinutes;
+
+    @Value("${queue.stream.poll.parallelism:4}")
+    private int pollParallelism;
+
+    private final ObjectMapper jsonMapper = new ObjectMapper();
+
+    /**
+     * Active feeds keyed by feed key (myqueue:{sessionId} or queue:{queueId}).
+     */
+    private final Map<String, QueueFeed> feeds = new ConcurrentHashMap<>();
+
+    /**
+     * Pool polling the feeds of a tick concurrently.
+     */
+    private ThreadPoolExecutor pollExecutor;
+
+    @PostConstruct
+    void initExecutor() {
+        pollExecutor = BoundedExecutors.newFixedPool("queue-stream-poll", pollParallelism, 500,
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    void shutdownExecutor() {
+        pollExecutor.shutdownNow();
+    }
+
+    /**
+     * Opens an SSE stream for the given session.
+     *
+     * If a queue ID is given, only that queue is streamed. Otherwise the stream
+     * covers My Queue plus every common queue the user has access to, i.e. the
+     * same items as /queue/allworkitems. Either way the session's queues are
+     * resolved first: an invalid session, or a queue ID the user has no access
+     * to, is rejected.
+     *
+     * @param sessionId The user's session ID
+     * @param queueId   Optional queue ID to restrict the stream to
+     * @return The emitter bound to the client connection
+     */
+    public SseEmitter subscribe(long sessionId, Integer queueId) {
+        JsonNode queuesResponse = myQueueService.getUserQueues(sessionId);
+        if (!queuesResponse.path("success").asBoolean(false)) {
+            log.warn("Could not resolve queues for stream subscriber (session {}): {}",
+                    sessionId, queuesResponse.path("error").asText());
+            return rejected("Failed to resolve queues for session: " + queuesResponse.path("error").asText());
+        }
+
+        JsonNode requestedQueue = null;
+        if (queueId != null && queueId > 0) {
+            requestedQueue = MyQueueService.findQueue(queuesResponse, queueId);
+            if (requestedQueue == null) {
+                log.warn("Session {} asked to stream queue {} it has no access to", sessionId, queueId);
+                return rejected("Queue " + queueId + " is not accessible");
+            }
+        }
+
+        SseEmitter emitter = new SseEmitter(TimeUnit.MINUTES.toMillis(streamTimeoutMinutes));
+        Subscriber subscriber = new Subscriber(sessionId, emitter);
+
+        emitter.onCompletion(() -> unsubscribe(subscriber));
+        emitter.onTimeout(() -> unsubscribe(subscriber));
+        emitter.onError(e -> unsubscribe(subscriber));
+
+        if (requestedQueue != null) {
+            attach(subscriber, QUEUE_FEED_PREFIX + queueId, queueId, requestedQueue.path("queueName").asText("Queue"));
+        } else {
+            attach(subscriber, MY_QUEUE_FEED_PREFIX + sessionId, 0, "myQueue");
+            for (JsonNode queue : queuesResponse.path("queues")) {
+                int id = queue.path("queueId").asInt(0);
+                if (id > 0) {
+                    attach(subscriber, QUEUE_FEED_PREFIX + id, id, queue.path("queueName").asText(""));
+                }
+            }
+        }
+
+        log.info("Queue stream opened for session {} on {} feed(s); {} feed(s) active",
+                sessionId, subscriber.feedKeys.size(), feeds.size());
+        return emitter;
+    }
+
+    /**
+     * Creates an emitter that reports an error and closes immediately.
+     * Used when a stream request cannot be served (e.g. missing session).
+     *
+     * @param message The error message
+     * @return A completed emitter carrying a single "error" event
+     */
+    public SseEmitter rejected(String message) {
+        SseEmitter emitter = new SseEmitter(0L);
+        ObjectNode error = jsonMapper.createObjectNode();
+        error.put("success", false);
+        error.put("error", message);
+        try {
+            emitter.send(SseEmitter.event().name("error").data(error));
+        } catch (IOException e) {
+            log.debug("Failed to send rejection event: {}", e.getMessage());
+        }
+        emitter.complete();
+        return emitter;
+    }
+
+    /**
+     * Starts a poll of every active feed that is not still being polled from
+     * an earlier tick; each poll pushes the differences to its subscribers.
+     */
+    @Scheduled(fixedDelayString = "${queue.stream.poll.interval.ms:15000}")
+    public void pollFeeds() {
+        if (feeds.isEmpty()) {
+            return;
+        }
+
+        for (QueueFeed feed : new ArrayList<>(feeds.values())) {
+            if (feed.subscribers.isEmpty()) {
+                feeds.computeIfPresent(feed.key, (k, f) -> f.subscribers.isEmpty() ? null : f);
+                continue;
+            }
+            if (!feed.polling.compareAndSet(false, true)) {
+                log.debug("Queue feed {} is still being polled, skipping this tick", feed.key);
+                continue;
+            }
+            try {
+                pollExecutor.execute(() -> {
+                    try {
+                        poll(feed);
+                    } catch (Exception e) {
+                        log.error("Error polling queue feed {}: {}", feed.key, e.getMessage(), e);
+                    } finally {
+                        feed.polling.set(false);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                feed.polling.set(false);
+                log.warn("Queue stream poll pool is full, queue feed {} waits for the next tick", feed.key);
+            }
+        }
+    }
+
+    /**
+     * Gets the number of feeds currently being polled.
+     *
+     * @return The active feed count
+     */
+    public int getActiveFeedCount() {
+        return feeds.size();
+    }
+
+    // --- Helper Methods ---
+
+    private void attach(Subscriber subscriber, String feedKey, int queueId, String queueName) {
+        QueueFeed feed = feeds.compute(feedKey, (k, existing) -> {
+            QueueFeed f = existing != null ? existing : new QueueFeed(k, queueId, queueName);
+            f.subscribers.add(subscriber);
+            return f;
+        });
+        subscriber.feedKeys.add(feedKey);
+
+        // Late joiners get the current state straight away instead of waiting a tick
+        Map<String, WorkItem> snapshot = feed.snapshot;
+        if (snapshot != null) {
+            send(subscriber, "snapshot", buildSnapshotEvent(feed, snapshot));
+        }
+    }
+
+    private void unsubscribe(Subscriber subscriber) {
+        for (String feedKey : subscriber.feedKeys) {
+            feeds.computeIfPresent(feedKey, (k, feed) -> {
+                feed.subscribers.remove(subscriber);
+                return feed.subscribers.isEmpty() ? null : feed;
+            });
+        }
+        log.debug("Queue stream closed for session {}", subscriber.sessionId);
+    }
+
+    private void poll(QueueFeed feed) {
+        // Poll as the first subscriber whose session still works; subscribers
+        // whose session has expired are dropped along the way
+        WorkList workList = null;
+        for (Subscriber pollAs : feed.subscribers) {
+            workList = feed.queueId > 0
+                    ? myQueueService.fetchQueue(feed.queueId, feed.queueName, pollAs.sessionId)
+                    : myQueueService.fetchMyQueue(pollAs.sessionId);
+            if (workList.isSuccess() || !isSessionError(workList.getError())) {
+                break;
+            }
+            log.info("Session {} no longer valid for queue feed {}, dropping its subscriber",
+                    pollAs.sessionId, feed.key);
+            expire(pollAs, workList.getError());
+            workList = null;
+        }
+        if (workList == null) {
+            return;
+        }
+
+        if (!workList.isSuccess()) {
+            ObjectNode error = jsonMapper.createObjectNode();
+            error.put("queueId", feed.queueId);
+            error.put("queueName", feed.queueName);
+            error.put("error", workList.getError());
+            broadcast(feed, "error", error);
+            return;
+        }
+
+        Map<String, WorkItem> current = new LinkedHashMap<>();
+        for (WorkItem item : workList.getWorkItems()) {
+            current.put(item.key(), item);
+        }
+
+        Map<String, WorkItem> previous = feed.snapshot;
+        feed.snapshot = Collections.unmodifiableMap(current);
+
+        if (previous == null) {
+            broadcast(feed, "snapshot", buildSnapshotEvent(feed, current));
+            return;
+        }
+
+        ObjectNode changes = jsonMapper.createObjectNode();
+        changes.put("queueId", feed.queueId);
+        changes.put("queueName", feed.queueName);
+        ArrayNode added = changes.putArray("added");
+        ArrayNode changed = changes.putArray("changed");
+        ArrayNode removed = changes.putArray("removed");
+
+        for (Map.Entry<String, WorkItem> entry : current.entrySet()) {
+            WorkItem before = previous.get(entry.getKey());
+            if (before == null) {
+                added.addPOJO(entry.getValue());
+            } else if (!before.equals(entry.getValue())) {
+                changed.addPOJO(entry.getValue());
+            }
+        }
+        for (String key : previous.keySet()) {
+            if (!current.containsKey(key)) {
+                removed.add(key);
+            }
+        }
+
+        if (added.isEmpty() && changed.isEmpty() && removed.isEmpty()) {
+            heartbeat(feed);
+            return;
+        }
+
+        log.info("Queue feed {}: {} added, {} changed, {} removed -> {} subscriber(s)",
+                feed.key, added.size(), changed.size(), removed.size(), feed.subscribers.size());
+        broadcast(feed, "changes", changes);
+    }
+
+    private ObjectNode buildSnapshotEvent(QueueFeed feed, Map<String, WorkItem> snapshot) {
+        ObjectNode event = jsonMapper.createObjectNode();
+        event.put("queueId", feed.queueId);
+        event.put("queueName", feed.queueName);
+        ArrayNode workItems = event.putArray("workItems");
+        snapshot.values().forEach(workItems::addPOJO);
+        event.put("totalCount", snapshot.size());
+        return event;
+    }
+
+    private void broadcast(QueueFeed feed, String eventName, JsonNode data) {
+        for (Subscriber subscriber : feed.subscribers) {
+            send(subscriber, eventName, data);
+        }
+    }
+
+    private void heartbeat(QueueFeed feed) {
+        for (Subscriber subscriber : feed.subscribers) {
+            try {
+                subscriber.emitter.send(SseEmitter.event().comment("heartbeat"));
+            } catch (Exception e) {
+                drop(subscriber, e);
+            }
+        }
+    }
+
+    private void send(Subscriber subscriber, String eventName, JsonNode data) {
+        try {
+            subscriber.emitter.send(SseEmitter.event().name(eventName).data(data));
+        } catch (Exception e) {
+            drop(subscriber, e);
+        }
+    }
+
+    /**
+     * Closes the stream of a subscriber whose session stopped working, telling it why.
+     */
+    private void expire(Subscriber subscriber, String error) {
+        unsubscribe(subscriber);
+        ObjectNode event = jsonMapper.createObjectNode();
+        event.put("success", false);
+        event.put("error", "Session expired or invalid: " + error);
+        try {
+            subscriber.emitter.send(SseEmitter.event().name("error").data(event));
+            subscriber.emitter.complete();
+        } catch (Exception e) {
+            subscriber.emitter.completeWithError(e);
+        }
+    }
+
+    /**
+     * Whether a fetch failed because the polling session is no longer valid:
+     * an HTTP 401 or invalid-session message, or iBPS main code 11 (invalid
+     * session handle).
+     */
+    private static boolean isSessionError(String error) {
+        String message = error == null ? "" : error.toLowerCase();
+        return message.contains("401") || message.contains("invalid session")
+                || message.endsWith("error code: 11");
+    }
+
+    private void drop(Subscriber subscriber, Exception cause) {
+        log.debug("Dropping queue stream subscriber (session {}): {}", subscriber.sessionId, cause.getMessage());
+        unsubscribe(subscriber);
+        subscriber.emitter.completeWithError(cause);
+    }
+
+    /**
+     * A single queue polled on behalf of all of its subscribers.
+     */
+    private static class QueueFeed {
+        final String key;
+        final int queueId;
+        final String queueName;
+        final Set<Subscriber> subscribers = new CopyOnWriteArraySet<>();
+        final AtomicBoolean polling = new AtomicBoolean();
+        volatile Map<String, WorkItem> snapshot;
+
+        QueueFeed(String key, int queueId, String queueName) {
+            this.key = key;
+            this.queueId = queueId;
+            this.queueName = queueName;
+        }
+    }
+
+    /**
+     * A connected client and the feeds it listens to.
+     */
+    private static class Subscriber {
+        final long sessionId;
+        final SseEmitter emitter;
+        final List<String> feedKeys = new CopyOnWriteArrayList<>();
+
+        Subscriber(long sessionId, SseEmitter emitter) {
+            this.sessionId = sessionId;
+            this.emitter = emitter;
+        }
+    }
+}
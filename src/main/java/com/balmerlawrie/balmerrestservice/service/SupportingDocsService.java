@@ -1,21 +1,131 @@
 package com.balmerlawrie.balmerrestservice.service;
 
+import com.balmerlawrie.balmerrestservice.dto.SupportingDocsBatchRequest;
+import com.balmerlawrie.balmerrestservice.model.SupportingDocument;
+import com.balmerlawrie.balmerrestservice.model.WorkItemAttributes;
+import com.balmerlawrie.balmerrestservice.util.BoundedExecutors;
+import com.balmerlawrie.balmerrestservice.util.ETags;
+import com.balmerlawrie.balmerrestservice.util.TtlCache;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.POJONode;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+
 /**
  * Service for retrieving supporting documents attached to work items.
  * Uses OmniDocs NGOGetFolderContents API to list documents in the attachment folder.
+ * Work item attributes come from the shared {@link WorkItemAttributesService}.
+ *
+ * Attachment folders change rarely, so parsed listings are cached per folder
+ * for a short TTL and dropped when a document in the folder is checked in.
+ * Listings are read from NGOGetDocumentListExt in pages (StartPos /
+ * PreviousRefIndex), so folders are no longer cut off at one call's worth of
+ * documents; very large folders can be paged by the client or streamed.
  */
 @Service
 public class SupportingDocsService extends BaseIbpsService {
 
-    @Value("${ibps.fetchAttributes.url}")
-    private String fetchAttributesUrlTemplate;
+    @Autowired
+    private WorkItemAttributesService workItemAttributesService;
+
+    @Autowired
+    private DocumentPreviewService documentPreviewService;
+
+    @Value("${supportingdocs.folder.cache.ttl.ms:60000}")
+    private long folderCacheTtlMillis;
+
+    @Value("${supportingdocs.folderid.cache.ttl.ms:1800000}")
+    private long folderIdCacheTtlMillis;
+
+    @Value("${supportingdocs.cache.max.entries:1000}")
+    private int cacheMaxEntries;
+
+    /**
+     * Parsed document listings keyed by folder index.
+     */
+    private TtlCache<String, FolderListing> folderListings;
+
+    /**
+     * Attachment folder of each work item, keyed by processInstanceId|workitemId|sessionId.
+     * Per session, so a hit never skips the user's own access to the work item.
+     */
+    private TtlCache<String, String> attachmentFolderIds;
+
+    /**
+     * Folder of every document seen in a listing, so a checkin (which only
+     * knows the document index) can invalidate the right listing.
+     */
+    private final Map<String, String> documentFolders = new ConcurrentHashMap<>();
+
+    @Value("${supportingdocs.fetch.page.size:500}")
+    private int fetchPageSize;
+
+    @Value("${supportingdocs.max.page.size:1000}")
+    private int maxPageSize;
+
+    @Value("${supportingdocs.max.documents:20000}")
+    private int maxDocuments;
+
+    @Value("${supportingdocs.stream.prefetch.threads:4}")
+    private int prefetchThreads;
+
+    @Value("${supportingdocs.batch.parallelism:8}")
+    private int batchParallelism;
+
+    @Value("${supportingdocs.batch.max.items:200}")
+    private int batchMaxItems;
+
+    /**
+     * Pool listing the work items of batch requests concurrently. When it is
+     * saturated the request thread lists the work item itself.
+     */
+    private ExecutorService batchExecutor;
+
+    /**
+     * Pool fetching the next page of a streamed listing while the current one
+     * is written. When it is saturated the request thread fetches the page itself.
+     */
+    private ExecutorService pagePrefetchExecutor;
+
+    @PostConstruct
+    void initCaches() {
+        folderListings = new TtlCache<>(folderCacheTtlMillis, cacheMaxEntries);
+        attachmentFolderIds = new TtlCache<>(folderIdCacheTtlMillis, cacheMaxEntries);
+        pagePrefetchExecutor = BoundedExecutors.newFixedPool("supportingdocs-page", prefetchThreads, 50,
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        batchExecutor = BoundedExecutors.newFixedPool("supportingdocs-batch", batchParallelism, 200,
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @PreDestroy
+    void shutdownExecutor() {
+        pagePrefetchExecutor.shutdownNow();
+        batchExecutor.shutdownNow();
+    }
 
     @Value("${omnidocs.api.url}")
     private String omniDocsApiUrl;
@@ -33,34 +143,47 @@ public class SupportingDocsService extends BaseIbpsService {
      * @return JSON response with list of supporting documents
      */
     public JsonNode getSupportingDocuments(String processInstanceId, String workitemId, long sessionId) {
+        return getSupportingDocuments(processInstanceId, workitemId, sessionId, false);
+    }
+
+    /**
+     * Retrieves the list of supporting documents for a work item.
+     *
+     * With debug the listing is read from OmniDocs bypassing the cache, and
+     * the raw NGOGetDocumentListExt output of the first page is included as
+     * "rawResponse".
+     *
+     * @param processInstanceId Process instance ID
+     * @param workitemId        Work item ID
+     * @param sessionId         Session ID for authentication
+     * @param debug             Whether to include the raw backend response
+     * @return JSON response with list of supporting documents
+     */
+    public JsonNode getSupportingDocuments(String processInstanceId, String workitemId, long sessionId,
+            boolean debug) {
         log.info("Getting supporting documents for processInstanceId: {}, workitemId: {}",
                 processInstanceId, workitemId);
 
         try {
-            // Step 1: Get work item attributes to find the attachment folder
-            JsonNode attributes = fetchWorkItemAttributes(processInstanceId, workitemId, sessionId);
-            if (attributes == null || attributes.has("error")) {
-                return createErrorResponse("Failed to fetch work item attributes",
-                        attributes != null ? attributes.path("error").asText() : "Unknown error");
-            }
-
-            // Step 2: Extract AttachmentFolderId from attributes
-            String attachmentFolderId = extractAttachmentFolderId(attributes);
-            if (attachmentFolderId == null || attachmentFolderId.isEmpty()) {
-                return createNotFoundResponse("No AttachmentFolderId found in work item attributes");
+            // Step 1-2: Find the attachment folder (cached per work item and session)
+            FolderLookup folder = findAttachmentFolder(processInstanceId, workitemId, sessionId);
+            if (folder.errorResponse != null) {
+                return folder.errorResponse;
             }
-
-            log.info("Found AttachmentFolderId: {}", attachmentFolderId);
-
-            // Step 3: Get folder contents from OmniDocs
-            JsonNode folderContents = getFolderContents(attachmentFolderId, sessionId);
-            if (folderContents == null || folderContents.has("error")) {
-                return createErrorResponse("Failed to get folder contents",
-                        folderContents != null ? folderContents.path("error").asText() : "Unknown error");
+            String attachmentFolderId = folder.folderId;
+
+            // Step 3: Get the folder listing from OmniDocs (cached per folder)
+            FolderListing listing = debug
+                    ? loadFolderListing(attachmentFolderId, sessionId, true)
+                    : folderListings.get(attachmentFolderId,
+                            folderIndex -> loadFolderListing(folderIndex, sessionId, false),
+                            FolderListing::isSuccessful);
+            if (!listing.isSuccessful()) {
+                return createErrorResponse("Failed to get folder contents", listing.error);
             }
 
-            // Step 4: Parse and return the document list
-            return buildDocumentListResponse(folderContents, attachmentFolderId, processInstanceId, workitemId);
+            // Step 4: Build the document list response
+            return buildDocumentListResponse(listing, attachmentFolderId, processInstanceId, workitemId);
 
         } catch (Exception e) {
             log.error("Error retrieving supporting documents: {}", e.getMessage(), e);
@@ -69,136 +192,391 @@ public class SupportingDocsService extends BaseIbpsService {
     }
 
     /**
-     * Fetches work item attributes from iBPS.
+     * Gets the largest number of work items accepted per batch request.
      */
-    private JsonNode fetchWorkItemAttributes(String processInstanceId, String workitemId, long sessionId) {
-        try {
-            String engineName = getEngineName();
-            int workItemIdInt = Integer.parseInt(workitemId);
-            String url = String.format(fetchAttributesUrlTemplate, engineName, processInstanceId, workItemIdInt);
+    public int getBatchMaxItems() {
+        return batchMaxItems;
+    }
 
-            // Build XML payload
-            String xmlPayload = buildFetchAttributesPayload(engineName, processInstanceId, workItemIdInt, sessionId);
+    /**
+     * Lists the supporting documents of several work items concurrently, at
+     * most supportingdocs.batch.parallelism at a time. Each work item goes
+     * through {@link #getSupportingDocuments}, so folder ids and listings come
+     * from the same caches, and duplicates in the batch are listed once.
+     *
+     * @param items      Work items, results are returned in the same order
+     * @param countsOnly Whether to return only folderId and count per work item
+     * @param sessionId  Session ID for authentication
+     * @return JSON response with one result per item and success/failure totals
+     */
+    public JsonNode getSupportingDocumentsBatch(List<SupportingDocsBatchRequest.Item> items, boolean countsOnly,
+            long sessionId) {
+        Map<String, Future<JsonNode>> futures = new LinkedHashMap<>();
+        for (SupportingDocsBatchRequest.Item item : items) {
+            String pid = item.getProcessInstanceId();
+            String wid = item.getWorkitemId();
+            futures.computeIfAbsent(pid + "|" + wid,
+                    k -> batchExecutor.submit(() -> getSupportingDocuments(pid, wid, sessionId)));
+        }
 
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_XML);
-            headers.setAccept(java.util.Collections.singletonList(MediaType.APPLICATION_XML));
-            headers.set("sessionId", String.valueOf(sessionId));
-
-            HttpEntity<String> request = new HttpEntity<>(xmlPayload, headers);
-
-            log.debug("Calling WMFetchWorkItemAttributes: url={}, sessionId={}", url, sessionId);
-            ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.POST, request, String.class);
-
-            JsonNode result = parseXmlToJson(response.getBody());
-
-            // Check for API-level errors
-            JsonNode output = result.path("WMFetchWorkItemAttributes_Output");
-            if (!output.isMissingNode()) {
-                int status = output.path("Status").asInt(0);
-                if (status != 0) {
-                    String errorDesc = output.path("Error").path("Exception").path("Description")
-                            .asText("Unknown error");
-                    log.error("iBPS API error: Status={}, Description={}", status, errorDesc);
-                    return createErrorResponse("iBPS error: " + errorDesc);
+        ObjectNode result = jsonMapper.createObjectNode();
+        result.put("success", true);
+        ArrayNode results = result.putArray("results");
+        int failed = 0;
+        for (SupportingDocsBatchRequest.Item item : items) {
+            String pid = item.getProcessInstanceId();
+            String wid = item.getWorkitemId();
+            JsonNode documents;
+            try {
+                documents = futures.get(pid + "|" + wid).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.values().forEach(f -> f.cancel(true));
+                return createErrorResponse("Batch interrupted", e.getMessage());
+            } catch (ExecutionException e) {
+                log.error("Error listing supporting documents of workitem {}: {}", wid, e.getCause().getMessage());
+                documents = createErrorResponse("Error retrieving supporting documents", e.getCause().getMessage());
+            }
+
+            if (!documents.path("success").asBoolean(false)) {
+                failed++;
+            }
+            results.add(buildBatchEntry(pid, wid, documents, countsOnly));
+        }
+
+        result.put("count", results.size());
+        result.put("failed", failed);
+        log.info("Listed supporting documents of {} work items ({} failed)", results.size(), failed);
+        return result;
+    }
+
+    /**
+     * Gets the supporting documents of a work item as typed documents, e.g.
+     * for rendering them into the notesheet.
+     *
+     * @param processInstanceId Process instance ID
+     * @param workitemId        Work item ID
+     * @param sessionId         Session ID for authentication
+     * @return The documents; empty if the folder or listing could not be read
+     */
+    public List<SupportingDocument> getDocuments(String processInstanceId, String workitemId, long sessionId) {
+        return getDocuments(processInstanceId, workitemId, sessionId, false);
+    }
+
+    /**
+     * Gets the supporting documents of a work item as typed documents.
+     *
+     * @param fresh List the folder now instead of using a cached listing (the
+     *              fresh listing replaces the cached one), e.g. when documents
+     *              added moments ago must be seen
+     * @return The documents; empty if the folder or listing could not be read
+     */
+    public List<SupportingDocument> getDocuments(String processInstanceId, String workitemId, long sessionId,
+            boolean fresh) {
+        FolderLookup folder = findAttachmentFolder(processInstanceId, workitemId, sessionId);
+        if (folder.errorResponse != null) {
+            log.warn("No supporting documents for workitem {}: {}", workitemId,
+                    folder.errorResponse.path("error").asText(folder.errorResponse.path("message").asText()));
+            return Collections.emptyList();
+        }
+
+        FolderListing listing;
+        if (fresh) {
+            listing = loadFolderListing(folder.folderId, sessionId, false);
+            if (listing.isSuccessful()) {
+                folderListings.put(folder.folderId, listing);
+            }
+        } else {
+            listing = folderListings.get(folder.folderId,
+                    folderIndex -> loadFolderListing(folderIndex, sessionId, false),
+                    FolderListing::isSuccessful);
+        }
+        if (!listing.isSuccessful()) {
+            log.warn("Failed to list supporting documents of folder {}: {}", folder.folderId, listing.error);
+            return Collections.emptyList();
+        }
+        return listing.documents;
+    }
+
+    /**
+     * Finds a document in the attachment folder of a work item. Resolving the
+     * folder through the work item with the caller's session is what grants
+     * access to the document, e.g. to its cached preview.
+     *
+     * @param processInstanceId Process instance ID
+     * @param workitemId        Work item ID
+     * @param sessionId         Session ID for authentication
+     * @param documentIndex     Document Index
+     * @return The listed document (with its current version), or null if not in the folder
+     */
+    public SupportingDocument findDocument(String processInstanceId, String workitemId, long sessionId,
+            String documentIndex) {
+        for (SupportingDocument doc : getDocuments(processInstanceId, workitemId, sessionId)) {
+            if (doc.getDocumentIndex().equals(documentIndex)) {
+                return doc;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Retrieves one page of the supporting documents of a work item, straight
+     * from OmniDocs (pages are not cached).
+     *
+     * The response carries "hasMore" and, while there are more documents, a
+     * "nextToken" to pass back as continuationToken for the next page. The
+     * token records the StartPos and PreviousRefIndex of the next
+     * NGOGetDocumentListExt call and is only valid for the same folder.
+     *
+     * @param processInstanceId Process instance ID
+     * @param workitemId        Work item ID
+     * @param sessionId         Session ID for authentication
+     * @param pageSize          Documents per page, capped at supportingdocs.max.page.size
+     * @param continuationToken nextToken of the previous page, or null for the first page
+     * @param debug             Whether to include the raw backend response
+     * @return JSON response with one page of supporting documents
+     */
+    public JsonNode getSupportingDocumentsPage(String processInstanceId, String workitemId, long sessionId,
+            int pageSize, String continuationToken, boolean debug) {
+        try {
+            FolderLookup folder = findAttachmentFolder(processInstanceId, workitemId, sessionId);
+            if (folder.errorResponse != null) {
+                return folder.errorResponse;
+            }
+
+            PageCursor cursor = PageCursor.FIRST;
+            if (continuationToken != null && !continuationToken.isEmpty()) {
+                cursor = PageCursor.decode(continuationToken, folder.folderId);
+                if (cursor == null) {
+                    return createErrorResponse("Invalid continuation token",
+                            "The token is malformed or belongs to another folder");
                 }
             }
 
+            int size = Math.max(1, Math.min(pageSize, maxPageSize));
+            DocumentPage page = fetchPage(folder.folderId, sessionId, cursor, size, debug);
+            if (!page.isSuccessful()) {
+                return createErrorResponse("Failed to get folder contents", page.error);
+            }
+
+            ObjectNode result = jsonMapper.createObjectNode();
+            result.put("success", true);
+            result.put("folderId", folder.folderId);
+            result.put("processInstanceId", processInstanceId);
+            result.put("workitemId", workitemId);
+            addDocuments(result.putArray("documents"), page.documents);
+            result.put("count", page.documents.size());
+            result.put("startPos", cursor.startPos);
+            result.put("pageSize", size);
+            result.put("hasMore", page.hasMore());
+            if (page.hasMore()) {
+                result.put("nextToken", page.next.encode(folder.folderId));
+            }
+            if (debug) {
+                result.put("rawResponse", page.rawResponse);
+            }
             return result;
 
-        } catch (org.springframework.web.client.HttpServerErrorException e) {
-            String responseBody = e.getResponseBodyAsString();
-            log.warn("iBPS returned HTTP 500: {}", responseBody.substring(0, Math.min(300, responseBody.length())));
+        } catch (Exception e) {
+            log.error("Error retrieving supporting documents page: {}", e.getMessage(), e);
+            return createErrorResponse("Error retrieving supporting documents", e.getMessage());
+        }
+    }
+
+    /**
+     * Streams all supporting documents of a work item as one JSON response,
+     * page by page, without holding the folder listing in memory. The next
+     * page is requested from OmniDocs while the current one is written, so the
+     * backend round trip overlaps with sending the page to the client.
+     *
+     * The response has the shape of {@link #getSupportingDocuments} without
+     * rawResponse, plus "pages" and "complete"; if a page fails after the
+     * stream started, "complete" is false and "error" is set.
+     *
+     * @param processInstanceId Process instance ID
+     * @param workitemId        Work item ID
+     * @param sessionId         Session ID for authentication
+     * @param out               The response stream
+     */
+    public void streamSupportingDocuments(String processInstanceId, String workitemId, long sessionId,
+            OutputStream out) throws IOException {
+        FolderLookup folder;
+        try {
+            folder = findAttachmentFolder(processInstanceId, workitemId, sessionId);
+        } catch (Exception e) {
+            log.error("Error retrieving supporting documents: {}", e.getMessage(), e);
+            folder = FolderLookup.failed(createErrorResponse("Error retrieving supporting documents", e.getMessage()));
+        }
+
+        try (JsonGenerator gen = jsonMapper.getFactory().createGenerator(out)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)) {
+            if (folder.errorResponse != null) {
+                gen.writeTree(folder.errorResponse);
+                return;
+            }
+
+            String folderId = folder.folderId;
+            gen.writeStartObject();
+            gen.writeBooleanField("success", true);
+            gen.writeStringField("folderId", folderId);
+            gen.writeStringField("processInstanceId", processInstanceId);
+            gen.writeStringField("workitemId", workitemId);
+            gen.writeArrayFieldStart("documents");
+
+            int count = 0;
+            int pages = 0;
+            String error = null;
+            CompletableFuture<DocumentPage> next = prefetchPage(folderId, sessionId, PageCursor.FIRST);
             try {
-                JsonNode errorJson;
-                if (responseBody.trim().startsWith("[")) {
-                    errorJson = jsonMapper.readTree(responseBody).get(0);
-                } else if (responseBody.trim().startsWith("{")) {
-                    errorJson = jsonMapper.readTree(responseBody);
-                } else {
-                    errorJson = parseXmlToJson(responseBody);
+                while (next != null) {
+                    DocumentPage page = next.join();
+                    if (!page.isSuccessful()) {
+                        error = page.error;
+                        break;
+                    }
+                    pages++;
+
+                    // Request the next page before writing this one
+                    next = page.hasMore() && count + page.documents.size() < maxDocuments
+                            ? prefetchPage(folderId, sessionId, page.next)
+                            : null;
+
+                    for (SupportingDocument doc : page.documents) {
+                        doc.writeTo(gen);
+                    }
+                    count += page.documents.size();
+                    gen.flush();
                 }
-
-                JsonNode output = errorJson.path("WMFetchWorkItemAttributes_Output");
-                if (output.isMissingNode()) {
-                    output = errorJson;
+            } catch (CompletionException e) {
+                log.error("Error streaming folder {}: {}", folderId, e.getMessage(), e);
+                error = e.getCause() != null ? e.getCause().getMessage() : e.getMessage();
+            } finally {
+                if (next != null) {
+                    // Client went away or a page failed; drop the prefetched page
+                    next.cancel(false);
                 }
+            }
 
-                String errorDesc = output.path("Error").path("Exception").path("Description")
-                        .asText(output.path("Error").path("Exception").path("Subject").asText("Unknown iBPS error"));
-                return createErrorResponse("iBPS error: " + errorDesc);
-            } catch (Exception parseEx) {
-                log.error("Failed to parse iBPS error response: {}", parseEx.getMessage());
-                return createErrorResponse("Error fetching work item: " + e.getStatusCode());
+            gen.writeEndArray();
+            gen.writeNumberField("count", count);
+            gen.writeNumberField("pages", pages);
+            gen.writeBooleanField("complete", error == null);
+            if (error != null) {
+                gen.writeStringField("error", error);
             }
-        } catch (Exception e) {
-            log.error("Error fetching work item attributes: {}", e.getMessage(), e);
-            return createErrorResponse("Error fetching attributes", e.getMessage());
+            gen.writeEndObject();
+
+            log.info("Streamed {} supporting documents in {} pages for workitem {}", count, pages, workitemId);
         }
     }
 
     /**
-     * Builds XML payload for WMFetchWorkItemAttributes API.
+     * Drops the cached listing of a folder, e.g. after a document was added to it.
+     *
+     * @param folderIndex The folder index
      */
-    private String buildFetchAttributesPayload(String engineName, String processInstanceId, int workitemId,
-            long sessionId) {
-        return String.format(
-                "<?xml version=\"1.0\"?>" +
-                        "<WMFetchWorkItemAttributes_Input>" +
-                        "<Option>WMFetchWorkItemAttributes</Option>" +
-                        "<EngineName>%s</EngineName>" +
-                        "<SessionId>%d</SessionId>" +
-                        "<ProcessInstanceId>%s</ProcessInstanceId>" +
-                        "<WorkItemId>%d</WorkItemId>" +
-                        "</WMFetchWorkItemAttributes_Input>",
-                engineName, sessionId, processInstanceId, workitemId);
+    public void invalidateFolder(String folderIndex) {
+        if (folderIndex != null) {
+            folderListings.invalidate(folderIndex);
+            log.debug("Invalidated cached listing of folder {}", folderIndex);
+        }
     }
 
     /**
-     * Extracts AttachmentFolderId from work item attributes.
+     * Drops the cached listing of the folder holding a document that was just
+     * checked in, so the new version and dates are listed.
+     *
+     * @param documentIndex The checked-in document
      */
-    private String extractAttachmentFolderId(JsonNode attributes) {
-        JsonNode output = attributes.path("WMFetchWorkItemAttributes_Output");
-        if (output.isMissingNode()) {
-            output = attributes;
-        }
-
-        JsonNode attrs = output.path("Attributes");
-        if (attrs.isMissingNode()) {
-            attrs = output;
-        }
-
-        // Try different attribute names for the attachment folder
-        String[] folderAttributeNames = {
-            "AttachmentFolderId", "attachmentfolderid", "ATTACHMENTFOLDERID",
-            "itemindex", "ItemIndex", "ITEMINDEX",
-            "FolderIndex", "folderindex", "FOLDERINDEX"
-        };
-
-        for (String attrName : folderAttributeNames) {
-            JsonNode attrNode = attrs.path(attrName);
-            if (!attrNode.isMissingNode()) {
-                // Value can be directly or in empty key "" (iBPS format)
-                String value = attrNode.asText();
-                if (value != null && !value.isEmpty() && !value.equals("null")) {
-                    return value;
-                }
-                value = attrNode.path("").asText();
-                if (value != null && !value.isEmpty()) {
-                    return value;
+    public void onDocumentCheckedIn(String documentIndex) {
+        invalidateFolder(documentFolders.get(documentIndex));
+    }
+
+    /**
+     * Computes the ETag of a document list response from its canonical
+     * content: every field except the raw backend response, which is debug
+     * output only and may differ between otherwise identical listings.
+     * Documents are hashed field by field like any other JSON content.
+     *
+     * @param documentList Response of {@link #getSupportingDocuments}
+     * @return The quoted strong ETag
+     */
+    public String computeETag(JsonNode documentList) {
+        ETags.Builder hash = ETags.builder();
+        documentList.fields().forEachRemaining(field -> {
+            String name = field.getKey();
+            if ("rawResponse".equals(name)) {
+                return;
+            }
+            hash.add(name);
+            if ("documents".equals(name)) {
+                hash.add(field.getValue().size());
+                for (JsonNode doc : field.getValue()) {
+                    if (doc.isPojo() && ((POJONode) doc).getPojo() instanceof SupportingDocument) {
+                        SupportingDocument document = (SupportingDocument) ((POJONode) doc).getPojo();
+                        for (String docField : SupportingDocument.FIELDS) {
+                            hash.add(document.get(docField));
+                        }
+                    } else {
+                        hash.add(doc);
+                    }
                 }
+            } else {
+                hash.add(field.getValue());
+            }
+        });
+        return hash.build();
+    }
+
+    /**
+     * Finds the attachment folder of a work item, from the per-session cache
+     * or the work item attributes.
+     */
+    private FolderLookup findAttachmentFolder(String processInstanceId, String workitemId, long sessionId) {
+        String folderIdKey = processInstanceId + "|" + workitemId + "|" + sessionId;
+        String attachmentFolderId = attachmentFolderIds.getIfPresent(folderIdKey);
+        if (attachmentFolderId == null) {
+            WorkItemAttributes attributes = workItemAttributesService.getAttributes(
+                    processInstanceId, workitemId, sessionId);
+            if (attributes.getError() != null) {
+                return FolderLookup.failed(
+                        createErrorResponse("Failed to fetch work item attributes", attributes.getError()));
+            }
+            if (!attributes.isSuccessful()) {
+                return FolderLookup.failed(createNotFoundResponse(attributes.getMessage()));
             }
+
+            attachmentFolderId = extractAttachmentFolderId(attributes);
+            if (attachmentFolderId == null || attachmentFolderId.isEmpty()) {
+                return FolderLookup.failed(
+                        createNotFoundResponse("No AttachmentFolderId found in work item attributes"));
+            }
+            attachmentFolderIds.put(folderIdKey, attachmentFolderId);
         }
 
-        log.warn("AttachmentFolderId not found in attributes");
-        return null;
+        log.info("Found AttachmentFolderId: {}", attachmentFolderId);
+        return new FolderLookup(attachmentFolderId);
+    }
+
+    /**
+     * Extracts AttachmentFolderId from work item attributes.
+     */
+    private String extractAttachmentFolderId(WorkItemAttributes attributes) {
+        String folderId = attributes.getFirst("AttachmentFolderId", "itemindex", "FolderIndex");
+        if (folderId == null) {
+            log.warn("AttachmentFolderId not found in attributes");
+        }
+        return folderId;
     }
 
     /**
-     * Gets folder contents from OmniDocs using NGOGetDocumentListExt API.
+     * Gets one page of folder contents from OmniDocs using NGOGetDocumentListExt API.
      * Uses the exact structure from iBPS JavaScript implementation.
+     *
+     * @param cursor   StartPos and PreviousRefIndex (last document index of the previous page)
+     * @param pageSize NoOfRecordsToFetch
      */
-    private JsonNode getFolderContents(String folderIndex, long sessionId) {
+    private JsonNode getFolderContents(String folderIndex, long sessionId, PageCursor cursor, int pageSize) {
         try {
             // Build NGOGetDocumentListExt Input (exact structure from iBPS JS)
             ObjectNode input = jsonMapper.createObjectNode();
@@ -208,12 +586,12 @@ public class SupportingDocsService extends BaseIbpsService {
             input.put("ZipBuffer", "N");
             input.put("FolderIndex", folderIndex);
             input.put("DocumentIndex", "0");
-            input.put("StartPos", "0");
-            input.put("NoOfRecordsToFetch", "1000");
+            input.put("StartPos", String.valueOf(cursor.startPos));
+            input.put("NoOfRecordsToFetch", String.valueOf(pageSize));
             input.put("OrderBy", "5"); // 5 = CreatedDateTime
             input.put("SortOrder", "A"); // Ascending
             input.put("DataAlsoFlag", "N");
-            input.put("PreviousRefIndex", "0");
+            input.put("PreviousRefIndex", cursor.previousRefIndex);
             input.put("RefOrderBy", "2");
             input.put("RefSortOrder", "A");
             input.put("RecursiveFlag", "N");
@@ -235,13 +613,16 @@ public class SupportingDocsService extends BaseIbpsService {
             headers.setContentType(MediaType.APPLICATION_JSON);
             HttpEntity<String> request = new HttpEntity<>(payload.toString(), headers);
 
-            log.info("Calling OmniDocs NGOGetDocumentListExt: folderIndex={}, url={}", folderIndex, omniDocsApiUrl);
-            log.debug("Payload: {}", payload.toString());
+            log.info("Calling OmniDocs NGOGetDocumentListExt: folderIndex={}, startPos={}, url={}",
+                    folderIndex, cursor.startPos, omniDocsApiUrl);
+            if (log.isDebugEnabled()) {
+                log.debug("Payload: {}", payload.toString());
+            }
 
             ResponseEntity<String> response = restTemplate.exchange(omniDocsApiUrl, HttpMethod.POST, request,
                     String.class);
 
-            log.info("OmniDocs response: {}", response.getBody());
+            log.debug("OmniDocs response: {}", response.getBody());
 
             // Parse response
             JsonNode responseJson = parseXmlToJson(response.getBody());
@@ -261,12 +642,10 @@ public class SupportingDocsService extends BaseIbpsService {
                 String error = output.path("Error").asText("Unknown error (Status: " + status + ")");
                 log.error("OmniDocs NGOGetDocumentListExt error: Status={}, Error={}", status, error);
 
-                // Return the full response for debugging
                 ObjectNode errorResponse = jsonMapper.createObjectNode();
                 errorResponse.put("success", false);
                 errorResponse.put("error", error);
                 errorResponse.put("status", status);
-                errorResponse.put("rawResponse", responseJson.toString());
                 return errorResponse;
             }
 
@@ -279,21 +658,58 @@ public class SupportingDocsService extends BaseIbpsService {
     }
 
     /**
-     * Builds the response with parsed document list.
+     * Fetches and parses a whole folder listing, page by page, and remembers
+     * the folder of each document. Stops at supportingdocs.max.documents.
      */
-    private JsonNode buildDocumentListResponse(JsonNode folderContents, String folderId,
-            String processInstanceId, String workitemId) {
+    private FolderListing loadFolderListing(String folderIndex, long sessionId, boolean keepRawResponse) {
+        List<SupportingDocument> documents = new ArrayList<>();
+        String rawResponse = null;
+
+        PageCursor cursor = PageCursor.FIRST;
+        while (cursor != null && documents.size() < maxDocuments) {
+            DocumentPage page = fetchPage(folderIndex, sessionId, cursor, fetchPageSize,
+                    keepRawResponse && rawResponse == null);
+            if (!page.isSuccessful()) {
+                return FolderListing.failed(page.error);
+            }
+            if (rawResponse == null) {
+                rawResponse = page.rawResponse;
+            }
+            documents.addAll(page.documents);
+            cursor = page.next;
+        }
 
-        ObjectNode result = jsonMapper.createObjectNode();
-        result.put("success", true);
-        result.put("folderId", folderId);
-        result.put("processInstanceId", processInstanceId);
-        result.put("workitemId", workitemId);
+        if (cursor != null) {
+            log.warn("Folder {} has more than {} documents; listing truncated", folderIndex, maxDocuments);
+        }
+        documentPreviewService.prewarm(documents, sessionId);
+        return new FolderListing(Collections.unmodifiableList(documents), rawResponse);
+    }
 
-        ArrayNode documents = result.putArray("documents");
+    private CompletableFuture<DocumentPage> prefetchPage(String folderIndex, long sessionId, PageCursor cursor) {
+        return CompletableFuture.supplyAsync(
+                () -> fetchPage(folderIndex, sessionId, cursor, fetchPageSize, false), pagePrefetchExecutor);
+    }
+
+    /**
+     * Fetches and parses one page of a folder listing, and remembers the
+     * folder of each document on it. The backend output is only serialized
+     * back to a string when keepRawResponse is set.
+     */
+    private DocumentPage fetchPage(String folderIndex, long sessionId, PageCursor cursor, int pageSize,
+            boolean keepRawResponse) {
+        JsonNode folderContents = getFolderContents(folderIndex, sessionId, cursor, pageSize);
+        if (folderContents == null || folderContents.has("error")) {
+            return DocumentPage.failed(folderContents != null
+                    ? folderContents.path("error").asText()
+                    : "Unknown error");
+        }
+
+        List<SupportingDocument> documents = new ArrayList<>();
 
-        // Log full response for debugging
-        log.info("Full folder contents response: {}", folderContents.toString());
+        if (log.isDebugEnabled()) {
+            log.debug("Full folder contents response: {}", folderContents.toString());
+        }
 
         // Parse documents from folder contents - try multiple possible paths
         // NGOGetDocumentListExt typically returns Documents > Document array
@@ -311,79 +727,105 @@ public class SupportingDocsService extends BaseIbpsService {
             documentList = folderContents.path("DocumentList");
         }
 
-        log.info("Document list node - Type: {}, isArray: {}, isMissing: {}, size: {}",
+        log.debug("Document list node - Type: {}, isArray: {}, isMissing: {}, size: {}",
                 documentList.getNodeType(), documentList.isArray(), documentList.isMissingNode(),
                 documentList.isArray() ? documentList.size() : (documentList.isMissingNode() ? 0 : 1));
 
         if (documentList.isArray()) {
             for (JsonNode doc : documentList) {
-                log.debug("Parsing document node: {}", doc.toString());
                 documents.add(parseDocumentNode(doc));
             }
         } else if (!documentList.isMissingNode() && !documentList.isNull()) {
             // Single document case
-            log.debug("Parsing single document node: {}", documentList.toString());
             documents.add(parseDocumentNode(documentList));
         }
 
-        result.put("count", documents.size());
+        if (documentFolders.size() > cacheMaxEntries * 100) {
+            documentFolders.clear();
+        }
+        String lastDocumentIndex = null;
+        for (SupportingDocument doc : documents) {
+            String documentIndex = doc.getDocumentIndex();
+            if (!documentIndex.isEmpty()) {
+                documentFolders.put(documentIndex, folderIndex);
+                lastDocumentIndex = documentIndex;
+            }
+        }
+
+        // More pages if the backend reports a larger total, or (without a total) returned a full page
+        int fetched = documents.size();
+        int total = folderContents.path("TotalNoOfRecords").asInt(-1);
+        boolean hasMore = fetched > 0 && lastDocumentIndex != null
+                && (total >= 0 ? cursor.startPos + fetched < total : fetched >= pageSize);
+
+        PageCursor next = hasMore ? new PageCursor(cursor.startPos + fetched, lastDocumentIndex) : null;
+        return new DocumentPage(Collections.unmodifiableList(documents),
+                keepRawResponse ? folderContents.toString() : null, next);
+    }
+
+    /**
+     * Builds the response with parsed document list. The raw backend response
+     * is only present in debug listings.
+     */
+    private JsonNode buildDocumentListResponse(FolderListing listing, String folderId,
+            String processInstanceId, String workitemId) {
 
-        // Always add raw response for debugging during development
-        result.put("rawResponse", folderContents.toString());
+        ObjectNode result = jsonMapper.createObjectNode();
+        result.put("success", true);
+        result.put("folderId", folderId);
+        result.put("processInstanceId", processInstanceId);
+        result.put("workitemId", workitemId);
+        addDocuments(result.putArray("documents"), listing.documents);
+        result.put("count", listing.documents.size());
+        if (listing.rawResponse != null) {
+            result.put("rawResponse", listing.rawResponse);
+        }
 
-        log.info("Found {} supporting documents for workitem {}", documents.size(), workitemId);
+        log.info("Found {} supporting documents for workitem {}", listing.documents.size(), workitemId);
         return result;
     }
 
     /**
-     * Parses a single document node into a standardized format.
+     * Adds documents as POJO nodes: they are serialized straight from the
+     * typed model when the response is written, without an ObjectNode per
+     * document.
      */
-    private ObjectNode parseDocumentNode(JsonNode doc) {
-        ObjectNode docInfo = jsonMapper.createObjectNode();
-
-        // Log all available fields in this document node for debugging
-        StringBuilder fields = new StringBuilder();
-        doc.fieldNames().forEachRemaining(f -> fields.append(f).append(", "));
-        log.info("Document node fields: {}", fields.toString());
-
-        // Try multiple field name variants for each property
-        // NGOGetDocumentListExt commonly uses: DocIndex, DocName, DocType, etc.
-        docInfo.put("documentIndex", getFirstNonEmpty(doc,
-                "DocIndex", "DocumentIndex", "documentIndex", "docIndex", "Index", "DocId"));
-        docInfo.put("documentName", getFirstNonEmpty(doc,
-                "DocName", "DocumentName", "Name", "documentName", "name", "FileName", "DocFileName"));
-        docInfo.put("documentType", getFirstNonEmpty(doc,
-                "DocType", "DocumentType", "Type", "documentType", "type", "FileType", "Extension", "CreatedByAppName"));
-        docInfo.put("documentSize", getFirstNonEmpty(doc,
-                "DocSize", "DocumentSize", "Size", "documentSize", "size", "FileSize"));
-        docInfo.put("createdDateTime", getFirstNonEmpty(doc,
-                "CreatedDatetime", "CreatedDateTime", "CreationDateTime", "createdDateTime", "CreateDate", "CreatedDate", "CreationDate"));
-        docInfo.put("modifiedDateTime", getFirstNonEmpty(doc,
-                "RevisedDatetime", "ModifiedDateTime", "RevisedDateTime", "modifiedDateTime", "ModifyDate", "LastModified", "AccessedDatetime"));
-        docInfo.put("versionNo", getFirstNonEmpty(doc,
-                "VersionNo", "Version", "versionNo", "version", "DocumentVersion", "LatestVersionNo"));
-        docInfo.put("owner", getFirstNonEmpty(doc,
-                "Owner", "CreatedBy", "owner", "createdBy", "CreatedByName", "OwnerName", "CreatedByUserName"));
-        docInfo.put("comment", getFirstNonEmpty(doc,
-                "Comment", "Comments", "comment", "comments", "Description", "DocComment"));
-
-        return docInfo;
+    private static void addDocuments(ArrayNode array, List<SupportingDocument> documents) {
+        for (SupportingDocument doc : documents) {
+            array.addPOJO(doc);
+        }
     }
 
     /**
-     * Returns the first non-empty value from multiple possible field names.
+     * Builds one batch result: the work item and its document list response,
+     * reduced to status, folderId and count with countsOnly.
      */
-    private String getFirstNonEmpty(JsonNode node, String... fieldNames) {
-        for (String fieldName : fieldNames) {
-            JsonNode fieldNode = node.path(fieldName);
-            if (!fieldNode.isMissingNode() && !fieldNode.isNull()) {
-                String value = fieldNode.asText();
-                if (value != null && !value.isEmpty() && !value.equals("null")) {
-                    return value;
-                }
+    private ObjectNode buildBatchEntry(String processInstanceId, String workitemId, JsonNode documents,
+            boolean countsOnly) {
+        ObjectNode entry = jsonMapper.createObjectNode();
+        entry.put("processInstanceId", processInstanceId);
+        entry.put("workitemId", workitemId);
+        documents.fields().forEachRemaining(field -> {
+            String name = field.getKey();
+            if ("processInstanceId".equals(name) || "workitemId".equals(name)
+                    || (countsOnly && "documents".equals(name))) {
+                return;
             }
+            entry.set(name, field.getValue());
+        });
+        return entry;
+    }
+
+    /**
+     * Parses a single document node into the typed model.
+     */
+    private SupportingDocument parseDocumentNode(JsonNode doc) {
+        if (log.isTraceEnabled()) {
+            StringBuilder fields = new StringBuilder();
+            doc.fieldNames().forEachRemaining(f -> fields.append(f).append(", "));
+            log.trace("Document node fields: {}", fields);
         }
-        return "";
+        return SupportingDocument.from(doc);
     }
 
     /**
@@ -398,4 +840,131 @@ public class SupportingDocsService extends BaseIbpsService {
         response.put("count", 0);
         return response;
     }
+
+    /**
+     * A parsed folder listing, or the error that prevented fetching it.
+     */
+    private static final class FolderListing {
+        final List<SupportingDocument> documents;
+        final String rawResponse;
+        final String error;
+
+        FolderListing(List<SupportingDocument> documents, String rawResponse) {
+            this.documents = documents;
+            this.rawResponse = rawResponse;
+            this.error = null;
+        }
+
+        private FolderListing(String error) {
+            this.documents = null;
+            this.rawResponse = null;
+            this.error = error;
+        }
+
+        static FolderListing failed(String error) {
+            return new FolderListing(error);
+        }
+
+        boolean isSuccessful() {
+            return error == null;
+        }
+    }
+
+    /**
+     * A page of a folder listing with the cursor of the following page, or
+     * the error that prevented fetching it.
+     */
+    private static final class DocumentPage {
+        final List<SupportingDocument> documents;
+        final String rawResponse;
+        final PageCursor next;
+        final String error;
+
+        DocumentPage(List<SupportingDocument> documents, String rawResponse, PageCursor next) {
+            this.documents = documents;
+            this.rawResponse = rawResponse;
+            this.next = next;
+            this.error = null;
+        }
+
+        private DocumentPage(String error) {
+            this.documents = null;
+            this.rawResponse = null;
+            this.next = null;
+            this.error = error;
+        }
+
+        static DocumentPage failed(String error) {
+            return new DocumentPage(error);
+        }
+
+        boolean isSuccessful() {
+            return error == null;
+        }
+
+        boolean hasMore() {
+            return next != null;
+        }
+    }
+
+    /**
+     * Position of a page in NGOGetDocumentListExt terms. Encoded as an opaque
+     * continuation token bound to the folder it was issued for.
+     */
+    static final class PageCursor {
+        static final PageCursor FIRST = new PageCursor(0, "0");
+
+        final int startPos;
+        final String previousRefIndex;
+
+        PageCursor(int startPos, String previousRefIndex) {
+            this.startPos = startPos;
+            this.previousRefIndex = previousRefIndex;
+        }
+
+        String encode(String folderIndex) {
+            String token = folderIndex + ":" + startPos + ":" + previousRefIndex;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(token.getBytes(StandardCharsets.UTF_8));
+        }
+
+        /**
+         * @return The cursor, or null if the token is malformed or for another folder
+         */
+        static PageCursor decode(String token, String folderIndex) {
+            try {
+                String[] parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8)
+                        .split(":", -1);
+                if (parts.length != 3 || !parts[0].equals(folderIndex) || !parts[2].matches("\\d+")) {
+                    return null;
+                }
+                int startPos = Integer.parseInt(parts[1]);
+                return startPos >= 0 ? new PageCursor(startPos, parts[2]) : null;
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * The attachment folder of a work item, or the response to return when it
+     * could not be found.
+     */
+    private static final class FolderLookup {
+        final String folderId;
+        final JsonNode errorResponse;
+
+        FolderLookup(String folderId) {
+            this.folderId = folderId;
+            this.errorResponse = null;
+        }
+
+        private FolderLookup(JsonNode errorResponse) {
+            this.folderId = null;
+            this.errorResponse = errorResponse;
+        }
+
+        static FolderLookup failed(JsonNode errorResponse) {
+            return new FolderLookup(errorResponse);
+        }
+    }
 }
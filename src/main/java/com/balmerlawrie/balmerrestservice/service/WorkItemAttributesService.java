@@ -0,0 +1,231 @@
+package com.balmerlawrie.balmerrestservice.service;
+
+import com.balmerlawrie.balmerrestservice.model.WorkItemAttributes;
+import com.balmerlawrie.balmerrestservice.util.TtlCache;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpServerErrorException;
+
+import javax.annotation.PostConstruct;
+import java.util.Collections;
+
+/**
+ * Shared fetcher for WMFetchWorkItemAttributes.
+ *
+ * The notesheet, comments and supporting document endpoints all start from the
+ * same work item attributes, and one createpdfnote call used to fetch them four
+ * times. Responses are cached for a few seconds, keyed by process instance,
+ * work item and session, so the steps of one request (and close-together
+ * requests from the same user) share a single iBPS round trip. Error responses
+ * are never cached.
+ *
+ * Responses are parsed once into an immutable {@link WorkItemAttributes}
+ * index; the raw response nodes are shared and must not be modified.
+ *
+ * Attributes fetched ahead of time by {@link #prefetch} are held a little
+ * longer (workitem.attributes.prefetch.ttl.ms) and handed out once, to the
+ * first request that misses the regular cache.
+ */
+@Service
+public class WorkItemAttributesService extends BaseIbpsService {
+
+    @Value("${ibps.fetchAttributes.url}")
+    private String fetchAttributesUrlTemplate;
+
+    @Value("${workitem.attributes.cache.ttl.ms:5000}")
+    private long cacheTtlMillis;
+
+    @Value("${workitem.attributes.cache.max.entries:500}")
+    private int cacheMaxEntries;
+
+    @Value("${workitem.attributes.prefetch.ttl.ms:30000}")
+    private long prefetchTtlMillis;
+
+    private TtlCache<String, WorkItemAttributes> cache;
+
+    private TtlCache<String, WorkItemAttributes> prefetched;
+
+    @PostConstruct
+    void initCache() {
+        cache = new TtlCache<>(cacheTtlMillis, cacheMaxEntries);
+        prefetched = new TtlCache<>(prefetchTtlMillis, cacheMaxEntries);
+    }
+
+    /**
+     * Gets the indexed work item attributes, from the short-lived cache if present.
+     * The response is parsed into the index once per fetch.
+     *
+     * @param processInstanceId Process instance ID
+     * @param workitemId        Work item ID
+     * @param sessionId         Session ID for authentication
+     * @return The attribute index; check {@link WorkItemAttributes#isSuccessful()}
+     */
+    public WorkItemAttributes getAttributes(String processInstanceId, String workitemId, long sessionId) {
+        String key = processInstanceId + "|" + workitemId + "|" + sessionId;
+        return cache.get(key, k -> {
+            WorkItemAttributes ahead = prefetched.getIfPresent(k);
+            if (ahead != null) {
+                prefetched.invalidate(k);
+                return ahead;
+            }
+            return WorkItemAttributes.from(fetchWorkItemAttributes(processInstanceId, workitemId, sessionId));
+        }, WorkItemAttributes::isSuccessful);
+    }
+
+    /**
+     * Fetches the attributes of a work item ahead of a likely request and
+     * holds them for the first request that misses the regular cache.
+     *
+     * @return Whether attributes were fetched successfully
+     */
+    public boolean prefetch(String processInstanceId, String workitemId, long sessionId) {
+        WorkItemAttributes attributes = getAttributes(processInstanceId, workitemId, sessionId);
+        if (!attributes.isSuccessful()) {
+            return false;
+        }
+        prefetched.put(processInstanceId + "|" + workitemId + "|" + sessionId, attributes);
+        return true;
+    }
+
+    /**
+     * Gets the raw WMFetchWorkItemAttributes response (e.g. for debug dumps).
+     *
+     * @return The parsed response, an error response (success=false, error) or
+     *         a not-found response (found=false, message)
+     */
+    public JsonNode getAttributesResponse(String processInstanceId, String workitemId, long sessionId) {
+        return getAttributes(processInstanceId, workitemId, sessionId).getResponse();
+    }
+
+    /**
+     * Drops the cached attributes of a work item for a session, e.g. after the
+     * work item was changed.
+     */
+    public void invalidate(String processInstanceId, String workitemId, long sessionId) {
+        String key = processInstanceId + "|" + workitemId + "|" + sessionId;
+        cache.invalidate(key);
+        prefetched.invalidate(key);
+    }
+
+    // --- Helper Methods ---
+
+    /**
+     * Fetches work item attributes from iBPS.
+     */
+    private JsonNode fetchWorkItemAttributes(String processInstanceId, String workitemId, long sessionId) {
+        try {
+            String engineName = getEngineName();
+            int workItemIdInt = Integer.parseInt(workitemId);
+            String url = String.format(fetchAttributesUrlTemplate, engineName, processInstanceId, workItemIdInt);
+
+            // Build XML payload
+            String xmlPayload = buildFetchAttributesPayload(engineName, processInstanceId, workItemIdInt, sessionId);
+
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.APPLICATION_XML);
+            headers.setAccept(Collections.singletonList(MediaType.APPLICATION_XML));
+            headers.set("sessionId", String.valueOf(sessionId)); // Session ID must be in header!
+
+            HttpEntity<String> request = new HttpEntity<>(xmlPayload, headers);
+
+            log.debug("Calling WMFetchWorkItemAttributes: url={}, sessionId={}", url, sessionId);
+            ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.POST, request, String.class);
+
+            JsonNode result = parseXmlToJson(response.getBody());
+
+            // Check for API-level errors
+            JsonNode output = result.path("WMFetchWorkItemAttributes_Output");
+            if (!output.isMissingNode()) {
+                int status = output.path("Status").asInt(0);
+                if (status != 0) {
+                    String errorDesc = output.path("Error").path("Exception").path("Description")
+                            .asText("Unknown error");
+                    log.error("iBPS API error: Status={}, Description={}", status, errorDesc);
+                    return createErrorResponse("iBPS error: " + errorDesc);
+                }
+            }
+
+            log.debug("WMFetchWorkItemAttributes response OK");
+            return result;
+
+        } catch (HttpServerErrorException e) {
+            // iBPS returns HTTP 500 with JSON or XML error body - parse it
+            String responseBody = e.getResponseBodyAsString();
+            log.warn("iBPS returned HTTP 500, parsing error body: {}",
+                    responseBody.substring(0, Math.min(300, responseBody.length())));
+            try {
+                JsonNode errorJson;
+
+                // Check if response is JSON array (starts with [)
+                if (responseBody.trim().startsWith("[")) {
+                    errorJson = jsonMapper.readTree(responseBody).get(0);
+                } else if (responseBody.trim().startsWith("{")) {
+                    errorJson = jsonMapper.readTree(responseBody);
+                } else {
+                    // XML response - parse it (parseXmlToJson handles <?xml...)
+                    errorJson = parseXmlToJson(responseBody);
+                }
+
+                log.debug("Parsed error response: {}", errorJson);
+
+                // Try to extract error from WMFetchWorkItemAttributes_Output
+                JsonNode output = errorJson.path("WMFetchWorkItemAttributes_Output");
+                if (output.isMissingNode()) {
+                    // Try root level if not wrapped
+                    output = errorJson;
+                }
+
+                int status = output.path("Status").asInt(-1);
+                JsonNode errorNode = output.path("Error").path("Exception");
+                String errorDesc = errorNode.path("Description").asText("");
+                if (errorDesc.isEmpty()) {
+                    errorDesc = errorNode.path("Subject").asText("Unknown iBPS error");
+                }
+
+                log.error("iBPS API error: Status={}, Description={}", status, errorDesc);
+                return createNotFoundResponse("iBPS error (Status " + status + "): " + errorDesc);
+            } catch (Exception parseEx) {
+                log.error("Failed to parse iBPS error response: {}", parseEx.getMessage());
+                return createNotFoundResponse("Error fetching work item: " + e.getStatusCode());
+            }
+        } catch (Exception e) {
+            log.error("Error fetching work item attributes: {}", e.getMessage(), e);
+            return createErrorResponse("Error fetching attributes", e.getMessage());
+        }
+    }
+
+    /**
+     * Builds XML payload for WMFetchWorkItemAttributes API.
+     */
+    private String buildFetchAttributesPayload(String engineName, String processInstanceId, int workitemId,
+            long sessionId) {
+        return String.format(
+                "<?xml version=\"1.0\"?>" +
+                        "<WMFetchWorkItemAttributes_Input>" +
+                        "<Option>WMFetchWorkItemAttributes</Option>" +
+                        "<EngineName>%s</EngineName>" +
+                        "<SessionId>%d</SessionId>" +
+                        "<ProcessInstanceId>%s</ProcessInstanceId>" +
+                        "<WorkItemId>%d</WorkItemId>" +
+                        "</WMFetchWorkItemAttributes_Input>",
+                engineName, sessionId, processInstanceId, workitemId);
+    }
+
+    /**
+     * Creates a "not found" response (success but work item not found).
+     */
+    private JsonNode createNotFoundResponse(String message) {
+        ObjectNode response = jsonMapper.createObjectNode();
+        response.put("success", true);
+        response.put("found", false);
+        response.put("message", message);
+        return response;
+    }
+}
@@ -0,0 +1,265 @@
+package com.balmerlawrie.balmerrestservice.service;
+
+import com.balmerlawrie.balmerrestservice.model.WorkItemAttributes;
+import com.balmerlawrie.balmerrestservice.util.BoundedExecutors;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Aggregates everything the mobile work item screen needs into one response:
+ * notesheet, comments, supporting documents and the notesheet's annotation
+ * groups.
+ *
+ * The work item attributes are fetched once up front; the section services
+ * read them from the shared {@link WorkItemAttributesService} cache instead of
+ * fetching them again. Sections that call OmniDocs (documents, annotations)
+ * run concurrently on a bounded pool while the attribute-only sections are
+ * built on the request thread. Every section reports its own status, so one
+ * failing backend call does not fail the whole screen.
+ */
+@Service
+public class WorkItemDetailService {
+
+    private static final Logger log = LoggerFactory.getLogger(WorkItemDetailService.class);
+
+    /**
+     * Section names in response order; valid values for the sections parameter.
+     */
+    public static final List<String> SECTIONS = Collections.unmodifiableList(
+            Arrays.asList("notesheet", "comments", "documents", "annotations"));
+
+    @Value("${workitem.detail.parallelism:8}")
+    private int parallelism;
+
+    @Value("${workitem.detail.timeout.ms:20000}")
+    private long timeoutMillis;
+
+    @Autowired
+    private WorkItemAttributesService workItemAttributesService;
+
+    @Autowired
+    private NoteSheetService noteSheetService;
+
+    @Autowired
+    private SupportingDocsService supportingDocsService;
+
+    private final ObjectMapper jsonMapper = new ObjectMapper();
+
+    /**
+     * Pool running the backend-bound sections. When it is saturated the
+     * request thread builds the section itself.
+     */
+    private ExecutorService detailExecutor;
+
+    @PostConstruct
+    void initExecutor() {
+        detailExecutor = BoundedExecutors.newFixedPool("workitem-detail", parallelism, 100,
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @PreDestroy
+    void shutdownExecutor() {
+        detailExecutor.shutdownNow();
+    }
+
+    /**
+     * Builds the composite detail response of a work item.
+     *
+     * @param processInstanceId Process instance ID
+     * @param workitemId        Work item ID
+     * @param sessionId         Session ID for authentication
+     * @param sections          Sections to include, from {@link #SECTIONS}
+     * @return JSON response with one object per section, each with a "status"
+     *         of ok, not_found, error, timeout or skipped
+     */
+    public JsonNode getDetail(String processInstanceId, String workitemId, long sessionId, Set<String> sections) {
+        long start = System.currentTimeMillis();
+        log.info("Getting work item detail for processInstanceId: {}, workitemId: {}, sections: {}",
+                processInstanceId, workitemId, sections);
+
+        // Fetch the attributes once; every section below reads them from the cache
+        WorkItemAttributes attributes = workItemAttributesService.getAttributes(
+                processInstanceId, workitemId, sessionId);
+        if (attributes.getError() != null) {
+            ObjectNode error = jsonMapper.createObjectNode();
+            error.put("success", false);
+            error.put("error", "Failed to fetch work item attributes");
+            error.put("details", attributes.getError());
+            return error;
+        }
+        if (!attributes.isSuccessful()) {
+            ObjectNode notFound = jsonMapper.createObjectNode();
+            notFound.put("success", true);
+            notFound.put("found", false);
+            notFound.put("message", attributes.getMessage());
+            return notFound;
+        }
+
+        // Start the backend-bound sections first
+        CompletableFuture<JsonNode> documents = sections.contains("documents")
+                ? submit(() -> supportingDocsService.getSupportingDocuments(processInstanceId, workitemId, sessionId))
+                : null;
+
+        JsonNode notesheet = sections.contains("notesheet") || sections.contains("annotations")
+                ? noteSheetService.getNotesheet(processInstanceId, workitemId, sessionId)
+                : null;
+
+        CompletableFuture<JsonNode> annotations = null;
+        String notesheetIndex = notesheet != null && notesheet.path("found").asBoolean(false)
+                ? notesheet.path("documentIndex").asText("")
+                : "";
+        if (sections.contains("annotations") && !notesheetIndex.isEmpty()) {
+            annotations = submit(() -> noteSheetService.getAnnotations(notesheetIndex, sessionId));
+        }
+
+        // Attribute-only sections while the others are in flight
+        JsonNode comments = sections.contains("comments")
+                ? noteSheetService.getComments(processInstanceId, workitemId, sessionId)
+                : null;
+
+        long deadline = start + timeoutMillis;
+        ObjectNode result = jsonMapper.createObjectNode();
+        result.put("success", true);
+        result.put("found", true);
+        result.put("processInstanceId", processInstanceId);
+        result.put("workitemId", workitemId);
+
+        if (sections.contains("notesheet")) {
+            result.set("notesheet", toSection(notesheet));
+        }
+        if (comments != null) {
+            result.set("comments", toSection(comments));
+        }
+        if (documents != null) {
+            result.set("documents", await(documents, deadline, "documents"));
+        }
+        if (sections.contains("annotations")) {
+            result.set("annotations", annotations != null
+                    ? await(annotations, deadline, "annotations")
+                    : skipped("No notesheet document to read annotations from"));
+        }
+
+        boolean complete = true;
+        for (String section : SECTIONS) {
+            String status = result.path(section).path("status").asText("ok");
+            complete &= "ok".equals(status) || "not_found".equals(status) || "skipped".equals(status);
+        }
+        result.put("complete", complete);
+        result.put("elapsedMs", System.currentTimeMillis() - start);
+
+        log.info("Work item detail for {} built in {} ms (complete={})", workitemId,
+                System.currentTimeMillis() - start, complete);
+        return result;
+    }
+
+    /**
+     * Parses the sections parameter.
+     *
+     * @param sections Comma-separated section names, or null/empty for all
+     * @return The sections, or null if a name is unknown
+     */
+    public static Set<String> parseSections(String sections) {
+        if (sections == null || sections.trim().isEmpty()) {
+            return new LinkedHashSet<>(SECTIONS);
+        }
+        Set<String> parsed = new LinkedHashSet<>();
+        for (String section : sections.split(",")) {
+            String name = section.trim().toLowerCase();
+            if (!SECTIONS.contains(name)) {
+                return null;
+            }
+            parsed.add(name);
+        }
+        return parsed;
+    }
+
+    // --- Helper Methods ---
+
+    private CompletableFuture<JsonNode> submit(Supplier<JsonNode> section) {
+        return CompletableFuture.supplyAsync(section, detailExecutor);
+    }
+
+    private JsonNode await(CompletableFuture<JsonNode> section, long deadline, String name) {
+        try {
+            long remaining = Math.max(0, deadline - System.currentTimeMillis());
+            return toSection(section.get(remaining, TimeUnit.MILLISECONDS));
+        } catch (TimeoutException e) {
+            log.warn("Work item detail section '{}' timed out", name);
+            ObjectNode timeout = jsonMapper.createObjectNode();
+            timeout.put("status", "timeout");
+            timeout.put("error", "Section did not complete within " + timeoutMillis + " ms");
+            return timeout;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            ObjectNode interrupted = jsonMapper.createObjectNode();
+            interrupted.put("status", "error");
+            interrupted.put("error", "Interrupted");
+            return interrupted;
+        } catch (ExecutionException e) {
+            log.error("Work item detail section '{}' failed: {}", name, e.getCause().getMessage(), e.getCause());
+            ObjectNode error = jsonMapper.createObjectNode();
+            error.put("status", "error");
+            error.put("error", e.getCause().getMessage());
+            return error;
+        }
+    }
+
+    /**
+     * Turns a section service response into a section: its status followed by
+     * the response fields, without the envelope and local file paths.
+     */
+    private ObjectNode toSection(JsonNode response) {
+        ObjectNode section = jsonMapper.createObjectNode();
+        String status;
+        if (!response.path("success").asBoolean(false)) {
+            status = "error";
+        } else if (!response.path("found").asBoolean(true)) {
+            status = "not_found";
+        } else {
+            status = "ok";
+        }
+        section.put("status", status);
+
+        response.fields().forEachRemaining(field -> {
+            switch (field.getKey()) {
+                case "success":
+                case "found":
+                case "processInstanceId":
+                case "workitemId":
+                case "filePath":
+                    break;
+                default:
+                    section.set(field.getKey(), field.getValue());
+            }
+        });
+        return section;
+    }
+
+    private ObjectNode skipped(String message) {
+        ObjectNode section = jsonMapper.createObjectNode();
+        section.put("status", "skipped");
+        section.put("message", message);
+        return section;
+    }
+}
@@ -0,0 +1,139 @@
+package com.balmerlawrie.balmerrestservice.service;
+
+import com.balmerlawrie.balmerrestservice.model.WorkItem;
+import com.balmerlawrie.balmerrestservice.util.BoundedExecutors;
+import com.balmerlawrie.balmerrestservice.util.TtlCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Opt-in prefetch of the work items a user is most likely to open next.
+ *
+ * After a My Queue list has been sent, the attributes (and with them the
+ * comments), attachment folder and folder listing of the first few unlocked
+ * items are loaded into the service caches, so opening one of them is served
+ * from cache. Prefetching runs on a single minimum-priority thread with a
+ * short queue; work that does not fit is dropped rather than queued, so it
+ * never competes with interactive requests. Items prefetched recently, or
+ * still queued or being prefetched, are skipped, which keeps polling clients
+ * from refetching the same items; an item whose prefetch was dropped or
+ * failed is tried again with the next list.
+ */
+@Service
+public class WorkItemPrefetchService {
+
+    private static final Logger log = LoggerFactory.getLogger(WorkItemPrefetchService.class);
+
+    @Value("${queue.prefetch.enabled:false}")
+    private boolean enabled;
+
+    @Value("${queue.prefetch.items:3}")
+    private int prefetchItems;
+
+    @Value("${queue.prefetch.threads:1}")
+    private int threads;
+
+    @Value("${queue.prefetch.queue.capacity:10}")
+    private int queueCapacity;
+
+    @Value("${queue.prefetch.cooldown.ms:30000}")
+    private long cooldownMillis;
+
+    @Autowired
+    private WorkItemAttributesService workItemAttributesService;
+
+    @Autowired
+    private SupportingDocsService supportingDocsService;
+
+    /**
+     * Work items (per session) prefetched successfully within the cooldown.
+     */
+    private TtlCache<String, Boolean> recentlyPrefetched;
+
+    /**
+     * Work items (per session) queued or being prefetched.
+     */
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+
+    private ExecutorService prefetchExecutor;
+
+    @PostConstruct
+    void initExecutor() {
+        recentlyPrefetched = new TtlCache<>(cooldownMillis, 1000);
+        prefetchExecutor = BoundedExecutors.newFixedPool("workitem-prefetch", threads, queueCapacity,
+                new ThreadPoolExecutor.AbortPolicy(), Thread.MIN_PRIORITY);
+    }
+
+    @PreDestroy
+    void shutdownExecutor() {
+        prefetchExecutor.shutdownNow();
+    }
+
+    /**
+     * Queues prefetching of the first unlocked items of a list, in list
+     * order. Returns immediately; does nothing unless queue.prefetch.enabled.
+     *
+     * @param workItems The items as sent to the client
+     * @param sessionId The user's session ID
+     */
+    public void prefetch(List<WorkItem> workItems, long sessionId) {
+        if (!enabled) {
+            return;
+        }
+
+        int selected = 0;
+        for (WorkItem item : workItems) {
+            if (selected >= prefetchItems) {
+                break;
+            }
+            if (item.isLocked()) {
+                continue;
+            }
+            selected++;
+
+            String key = item.key() + "|" + sessionId;
+            if (recentlyPrefetched.getIfPresent(key) != null || !inFlight.add(key)) {
+                continue;
+            }
+            try {
+                prefetchExecutor.execute(() -> warm(item, sessionId, key));
+            } catch (RejectedExecutionException e) {
+                // Queue full: drop the work, the item is tried again with the next list
+                inFlight.remove(key);
+            }
+        }
+    }
+
+    private void warm(WorkItem item, long sessionId, String key) {
+        String processInstanceId = item.getProcessInstanceId();
+        String workitemId = item.getWorkitemId();
+        try {
+            long start = System.currentTimeMillis();
+            if (!workItemAttributesService.prefetch(processInstanceId, workitemId, sessionId)) {
+                log.debug("Prefetch of work item {} / {} got no attributes", processInstanceId, workitemId);
+                return;
+            }
+            // Resolves and caches the attachment folder and its listing
+            supportingDocsService.getDocuments(processInstanceId, workitemId, sessionId);
+            recentlyPrefetched.put(key, Boolean.TRUE);
+            log.debug("Prefetched work item {} / {} in {} ms", processInstanceId, workitemId,
+                    System.currentTimeMillis() - start);
+        } catch (RuntimeException e) {
+            log.debug("Prefetch of work item {} / {} failed: {}", processInstanceId, workitemId, e.getMessage());
+        } finally {
+            inFlight.remove(key);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.balmerlawrie.balmerrestservice.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Factory for the fixed-size, bounded-queue thread pools used by services for
+ * background and fan-out work.
+ *
+ * Pools are owned by the service that creates them (and shut down with it)
+ * rather than exposed as beans, so Spring Boot keeps its own auto-configured
+ * task executor for MVC async requests.
+ */
+public final class BoundedExecutors {
+
+    private BoundedExecutors() {
+    }
+
+    /**
+     * Creates a fixed-size pool with a bounded work queue and daemon threads.
+     *
+     * @param name          Thread name prefix
+     * @param threads       Number of worker threads
+     * @param queueCapacity Maximum number of queued tasks
+     * @param rejection     What to do when the queue is full
+     * @return The configured executor
+     */
+    public static ThreadPoolExecutor newFixedPool(String name, int threads, int queueCapacity,
+            RejectedExecutionHandler rejection) {
+        return newFixedPool(name, threads, queueCapacity, rejection, Thread.NORM_PRIORITY);
+    }
+
+    /**
+     * Creates a fixed-size pool with a bounded work queue, daemon threads and
+     * the given thread priority.
+     *
+     * @param name          Thread name prefix
+     * @param threads       Number of worker threads
+     * @param queueCapacity Maximum number of queued tasks
+     * @param rejection     What to do when the queue is full
+     * @param priority      Thread priority for the workers
+     * @return The configured executor
+     */
+    public static ThreadPoolExecutor newFixedPool(String name, int threads, int queueCapacity,
+            RejectedExecutionHandler rejection, int priority) {
+        int size = Math.max(1, threads);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(size, size, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), namedThreadFactory(name, priority), rejection);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static ThreadFactory namedThreadFactory(String name, int priority) {
+        AtomicInteger counter = new AtomicInteger(1);
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + counter.getAndIncrement());
+            thread.setDaemon(true);
+            thread.setPriority(priority);
+            return thread;
+        };
+    }
+}
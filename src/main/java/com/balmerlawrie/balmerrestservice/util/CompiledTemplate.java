@@ -0,0 +1,121 @@
+package com.balmerlawrie.balmerrestservice.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * HTML template with {{NAME}} placeholders, parsed once into literal and
+ * placeholder segments.
+ *
+ * Rendering appends the literals and placeholder values straight into the
+ * caller's buffer, so a section with hundreds of rows is written into one
+ * buffer without building (and copying) a string per row or per placeholder.
+ * Values are inserted as given; escaping is up to the caller. Placeholders the
+ * caller does not supply are written back unchanged.
+ *
+ * Instances are immutable and safe to share between threads.
+ */
+public final class CompiledTemplate {
+
+    private static final String OPEN = "{{";
+    private static final String CLOSE = "}}";
+
+    /**
+     * Supplies placeholder values while a template is rendered.
+     */
+    @FunctionalInterface
+    public interface Values {
+
+        /**
+         * Appends the value of a placeholder.
+         *
+         * @param name The placeholder name, without braces
+         * @param out  The buffer being rendered into
+         * @return false if the placeholder is unknown (it is then kept as is)
+         */
+        boolean write(String name, StringBuilder out);
+    }
+
+    private final String source;
+    private final String[] literals;
+    private final String[] placeholders;
+
+    private CompiledTemplate(String source, String[] literals, String[] placeholders) {
+        this.source = source;
+        this.literals = literals;
+        this.placeholders = placeholders;
+    }
+
+    /**
+     * Parses a template.
+     *
+     * @param source The template text
+     * @return The compiled template
+     */
+    public static CompiledTemplate compile(String source) {
+        List<String> literals = new ArrayList<>();
+        List<String> placeholders = new ArrayList<>();
+
+        int pos = 0;
+        while (true) {
+            int open = source.indexOf(OPEN, pos);
+            int close = open < 0 ? -1 : source.indexOf(CLOSE, open + OPEN.length());
+            if (close < 0) {
+                break;
+            }
+            literals.add(source.substring(pos, open));
+            placeholders.add(source.substring(open + OPEN.length(), close).trim());
+            pos = close + CLOSE.length();
+        }
+        literals.add(source.substring(pos));
+
+        return new CompiledTemplate(source, literals.toArray(new String[0]),
+                placeholders.toArray(new String[0]));
+    }
+
+    /**
+     * Renders the template into a buffer.
+     *
+     * @param out    The buffer to append to
+     * @param values Supplies the placeholder values
+     */
+    public void render(StringBuilder out, Values values) {
+        for (int i = 0; i < placeholders.length; i++) {
+            out.append(literals[i]);
+            String name = placeholders[i];
+            int mark = out.length();
+            if (!values.write(name, out)) {
+                out.setLength(mark);
+                out.append(OPEN).append(name).append(CLOSE);
+            }
+        }
+        out.append(literals[placeholders.length]);
+    }
+
+    /**
+     * Length of the template text without placeholders, for sizing buffers.
+     */
+    public int literalLength() {
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        return length;
+    }
+
+    /**
+     * The placeholder names in template order (with repeats).
+     */
+    public List<String> getPlaceholders() {
+        return Collections.unmodifiableList(Arrays.asList(placeholders));
+    }
+
+    /**
+     * The original template text.
+     */
+    public String getSource() {
+        return source;
+    }
+}
@@ -0,0 +1,127 @@
+package com.balmerlawrie.balmerrestservice.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Strong ETags computed from response content, and If-None-Match matching.
+ *
+ * The hash is fed with the canonical values that make up a response body
+ * (not the serialized bytes), so a response can be validated before it is
+ * serialized and a 304 costs no serialization at all.
+ */
+public final class ETags {
+
+    private ETags() {
+    }
+
+    /**
+     * Starts a new content hash.
+     *
+     * @return An empty builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Checks an If-None-Match header against the current ETag.
+     * Handles lists, "*" and weak validators (weak comparison, as GET requires).
+     *
+     * @param ifNoneMatch The If-None-Match header value, may be null
+     * @param etag        The current quoted ETag
+     * @return true if the client's copy is current (respond 304)
+     */
+    public static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || ifNoneMatch.isEmpty() || etag == null) {
+            return false;
+        }
+        String current = stripWeak(etag);
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if ("*".equals(tag) || stripWeak(tag).equals(current)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String stripWeak(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+
+    /**
+     * Accumulates values into a SHA-256 hash. Every value is terminated by a
+     * separator, so ("ab", "c") and ("a", "bc") hash differently.
+     */
+    public static final class Builder {
+        private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+        private final MessageDigest digest;
+
+        private Builder() {
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 not available", e);
+            }
+        }
+
+        public Builder add(String value) {
+            if (value != null) {
+                digest.update(value.getBytes(StandardCharsets.UTF_8));
+            }
+            digest.update((byte) 0);
+            return this;
+        }
+
+        public Builder add(long value) {
+            return add(Long.toString(value));
+        }
+
+        /**
+         * Adds a JSON tree: field names and values in document order.
+         */
+        public Builder add(JsonNode node) {
+            if (node.isObject()) {
+                digest.update((byte) '{');
+                Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+                while (fields.hasNext()) {
+                    Map.Entry<String, JsonNode> field = fields.next();
+                    add(field.getKey());
+                    add(field.getValue());
+                }
+                digest.update((byte) '}');
+            } else if (node.isArray()) {
+                digest.update((byte) '[');
+                for (JsonNode element : node) {
+                    add(element);
+                }
+                digest.update((byte) ']');
+            } else {
+                digest.update((byte) node.getNodeType().ordinal());
+                add(node.asText());
+            }
+            return this;
+        }
+
+        /**
+         * Finishes the hash.
+         *
+         * @return A quoted strong ETag (first 128 bits of the hash)
+         */
+        public String build() {
+            byte[] hash = digest.digest();
+            StringBuilder etag = new StringBuilder(34).append('"');
+            for (int i = 0; i < 16; i++) {
+                etag.append(HEX[(hash[i] >> 4) & 0xF]).append(HEX[hash[i] & 0xF]);
+            }
+            return etag.append('"').toString();
+        }
+    }
+}
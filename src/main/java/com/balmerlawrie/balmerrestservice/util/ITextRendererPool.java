@@ -0,0 +1,160 @@
+package com.balmerlawrie.balmerrestservice.util;
+
+import com.lowagie.text.pdf.BaseFont;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xhtmlrenderer.pdf.ITextRenderer;
+import org.xhtmlrenderer.pdf.ITextUserAgent;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reusable Flying Saucer renderers.
+ *
+ * Creating an ITextRenderer loads and resolves its fonts, and a fresh renderer
+ * starts with empty stylesheet and image caches. A renderer from this pool
+ * keeps those warm between PDFs: it is confined to one thread while a task
+ * runs, reset afterwards (its last document and layout are dropped) and kept
+ * for the next task. Up to maxIdle renderers are kept; tasks beyond that get a
+ * new renderer, so rendering never waits for the pool. A renderer whose task
+ * failed is discarded.
+ *
+ * Fonts found in the optional font directory are listed once and registered
+ * with each renderer when it is created.
+ *
+ * Tasks hand the renderer a DOM built by {@link XhtmlNormalizer}, so no XHTML
+ * is parsed here and no DTD or entity resolver is needed.
+ */
+public final class ITextRendererPool {
+
+    private static final Logger log = LoggerFactory.getLogger(ITextRendererPool.class);
+
+    /**
+     * Work done with a borrowed renderer.
+     *
+     * @param <T> Result type
+     */
+    @FunctionalInterface
+    public interface RendererTask<T> {
+        T run(ITextRenderer renderer) throws Exception;
+    }
+
+    private final int maxIdle;
+    private final BlockingQueue<ITextRenderer> idle;
+    private final List<String> fontFiles;
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+
+    /**
+     * @param maxIdle       Renderers kept between tasks; 0 creates one per task
+     * @param fontDirectory Directory of .ttf/.otf fonts to register, or null/empty for none
+     */
+    public ITextRendererPool(int maxIdle, String fontDirectory) {
+        this.maxIdle = maxIdle;
+        this.idle = new ArrayBlockingQueue<>(Math.max(1, maxIdle));
+        this.fontFiles = listFonts(fontDirectory);
+    }
+
+    /**
+     * Runs a task with a renderer from the pool.
+     *
+     * @param task Renders with the renderer; must not keep it after returning
+     * @return The task result
+     * @throws Exception Whatever the task throws
+     */
+    public <T> T render(RendererTask<T> task) throws Exception {
+        ITextRenderer renderer = idle.poll();
+        if (renderer != null) {
+            reused.incrementAndGet();
+        } else {
+            renderer = create();
+        }
+
+        boolean healthy = false;
+        try {
+            T result = task.run(renderer);
+            healthy = true;
+            return result;
+        } finally {
+            if (healthy) {
+                release(renderer);
+            }
+        }
+    }
+
+    /**
+     * Renderers created since startup.
+     */
+    public long getCreatedCount() {
+        return created.get();
+    }
+
+    /**
+     * Tasks served by a renderer from the pool.
+     */
+    public long getReusedCount() {
+        return reused.get();
+    }
+
+    // --- Helper Methods ---
+
+    private ITextRenderer create() {
+        ITextRenderer renderer = new ITextRenderer();
+        for (String font : fontFiles) {
+            try {
+                renderer.getFontResolver().addFont(font, BaseFont.IDENTITY_H, BaseFont.EMBEDDED);
+            } catch (Exception e) {
+                log.warn("Could not register font {}: {}", font, e.getMessage());
+            }
+        }
+        long count = created.incrementAndGet();
+        log.debug("Created PDF renderer #{}", count);
+        return renderer;
+    }
+
+    /**
+     * Drops the renderer's last document and layout and keeps it for reuse.
+     */
+    private void release(ITextRenderer renderer) {
+        if (maxIdle <= 0) {
+            return;
+        }
+        try {
+            renderer.setDocument(XhtmlNormalizer.toDocument("", null), null);
+            renderer.layout();
+            ((ITextUserAgent) renderer.getSharedContext().getUserAgentCallback()).shrinkImageCache();
+        } catch (RuntimeException e) {
+            log.debug("Discarding PDF renderer that failed to reset: {}", e.getMessage());
+            return;
+        }
+        idle.offer(renderer);
+    }
+
+    private static List<String> listFonts(String fontDirectory) {
+        if (fontDirectory == null || fontDirectory.trim().isEmpty()) {
+            return Collections.emptyList();
+        }
+        File[] files = new File(fontDirectory.trim()).listFiles();
+        if (files == null) {
+            log.warn("Font directory not found: {}", fontDirectory);
+            return Collections.emptyList();
+        }
+        List<String> fonts = new ArrayList<>();
+        for (File file : files) {
+            String name = file.getName().toLowerCase(Locale.ROOT);
+            if (file.isFile() && (name.endsWith(".ttf") || name.endsWith(".otf"))) {
+                fonts.add(file.getAbsolutePath());
+            }
+        }
+        Collections.sort(fonts);
+        log.info("Registered {} PDF fonts from {}", fonts.size(), fontDirectory);
+        return Collections.unmodifiableList(fonts);
+    }
+}
@@ -0,0 +1,198 @@
+package com.balmerlawrie.balmerrestservice.util;
+
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Output stream that keeps its content in memory until it grows past a
+ * threshold, then moves it to a temp file and keeps writing there.
+ *
+ * Used for generated content (e.g. a rendered notesheet PDF) that is uploaded
+ * right after it is written: small content never touches the disk, large
+ * content does not have to fit in the heap. The content is read back with
+ * {@link #toResource(String)}; {@link #discard()} removes the temp file, if
+ * one was created.
+ */
+public final class ThresholdOutputStream extends OutputStream {
+
+    private final int threshold;
+    private final Path spillDirectory;
+    private final String spillPrefix;
+
+    private Buffer memory = new Buffer();
+    private Path file;
+    private OutputStream fileOut;
+    private long size;
+    private boolean closed;
+
+    /**
+     * @param threshold      Bytes kept in memory; content beyond that goes to a temp file
+     * @param spillDirectory Directory for the temp file, created on demand
+     * @param spillPrefix    Temp file name prefix
+     */
+    public ThresholdOutputStream(int threshold, Path spillDirectory, String spillPrefix) {
+        this.threshold = threshold;
+        this.spillDirectory = spillDirectory;
+        this.spillPrefix = spillPrefix;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureCapacity(1);
+        current().write(b);
+        size++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureCapacity(len);
+        current().write(b, off, len);
+        size += len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (fileOut != null) {
+            fileOut.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        if (fileOut != null) {
+            fileOut.close();
+        }
+    }
+
+    /**
+     * Bytes written so far.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * True while the content has not been moved to a temp file.
+     */
+    public boolean isInMemory() {
+        return file == null;
+    }
+
+    /**
+     * The temp file holding the content, or null while it is in memory.
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * The content as a resource for upload or reading, without copying it.
+     * The stream must be closed first.
+     *
+     * @param filename Name reported for the resource (multipart file parts need one)
+     */
+    public Resource toResource(String filename) {
+        if (!closed) {
+            throw new IllegalStateException("Stream must be closed before its content is read");
+        }
+        if (file != null) {
+            return new FileSystemResource(file) {
+                @Override
+                public String getFilename() {
+                    return filename;
+                }
+            };
+        }
+        return new BufferResource(memory, filename);
+    }
+
+    /**
+     * Copies the content to the given file, e.g. to keep a debug artifact.
+     */
+    public void copyTo(Path target) throws IOException {
+        Files.createDirectories(target.toAbsolutePath().getParent());
+        try (InputStream in = toResource(target.getFileName().toString()).getInputStream()) {
+            Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Releases the content: drops the buffer or deletes the temp file.
+     */
+    public void discard() throws IOException {
+        close();
+        memory = null;
+        if (file != null) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private OutputStream current() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        return fileOut != null ? fileOut : memory;
+    }
+
+    private void ensureCapacity(int len) throws IOException {
+        if (fileOut != null || size + len <= threshold) {
+            return;
+        }
+        Files.createDirectories(spillDirectory);
+        file = Files.createTempFile(spillDirectory, spillPrefix, ".tmp");
+        fileOut = new FileOutputStream(file.toFile());
+        memory.writeTo(fileOut);
+        memory = new Buffer();
+    }
+
+    /**
+     * ByteArrayOutputStream whose array can be read without a copy.
+     */
+    private static final class Buffer extends ByteArrayOutputStream {
+        InputStream open() {
+            return new ByteArrayInputStream(buf, 0, count);
+        }
+    }
+
+    private static final class BufferResource extends AbstractResource {
+        private final Buffer buffer;
+        private final String filename;
+
+        BufferResource(Buffer buffer, String filename) {
+            this.buffer = buffer;
+            this.filename = filename;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return buffer.open();
+        }
+
+        @Override
+        public long contentLength() {
+            return buffer.size();
+        }
+
+        @Override
+        public String getFilename() {
+            return filename;
+        }
+
+        @Override
+        public String getDescription() {
+            return "in-memory content [" + filename + ", " + buffer.size() + " bytes]";
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.balmerlawrie.balmerrestservice.util;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Small in-memory cache whose entries expire a fixed time after they were loaded.
+ *
+ * Loading is single-flight: concurrent callers asking for the same missing key
+ * wait for one load instead of each calling the backend. Values rejected by
+ * the cacheable predicate (e.g. error responses) and loader exceptions are
+ * handed to the callers already waiting but are not kept, so the next call
+ * retries. Expired entries are dropped on access and whenever the cache grows
+ * past its size limit.
+ *
+ * @param <K> Key type
+ * @param <V> Value type
+ */
+public final class TtlCache<K, V> {
+
+    private final long ttlMillis;
+    private final int maxEntries;
+    private final Map<K, Entry<V>> entries = new ConcurrentHashMap<>();
+
+    /**
+     * @param ttlMillis  How long a loaded value stays valid; 0 or less disables caching
+     * @param maxEntries Size at which expired entries are purged, and beyond which new values are not kept
+     */
+    public TtlCache(long ttlMillis, int maxEntries) {
+        this.ttlMillis = ttlMillis;
+        this.maxEntries = Math.max(1, maxEntries);
+    }
+
+    /**
+     * Gets the cached value for the key, loading it if missing or expired.
+     *
+     * @param key       The cache key
+     * @param loader    Loads the value on a miss
+     * @param cacheable Whether a loaded value may be kept
+     * @return The cached or freshly loaded value
+     */
+    public V get(K key, Function<? super K, ? extends V> loader, Predicate<? super V> cacheable) {
+        if (ttlMillis <= 0) {
+            return loader.apply(key);
+        }
+
+        long now = System.currentTimeMillis();
+        Entry<V> entry = entries.get(key);
+        if (entry != null && entry.isExpired(now)) {
+            entries.remove(key, entry);
+            entry = null;
+        }
+
+        if (entry == null) {
+            if (entries.size() >= maxEntries) {
+                purgeExpired(now);
+            }
+            Entry<V> created = new Entry<>(now + ttlMillis);
+            entry = entries.putIfAbsent(key, created);
+            if (entry == null) {
+                return load(key, created, loader, cacheable);
+            }
+        }
+
+        return await(entry.future);
+    }
+
+    /**
+     * Gets the cached value for the key without loading it.
+     *
+     * @param key The cache key
+     * @return The value, or null if missing, expired or still loading
+     */
+    public V getIfPresent(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null || !entry.future.isDone() || entry.future.isCompletedExceptionally()) {
+            return null;
+        }
+        if (entry.isExpired(System.currentTimeMillis())) {
+            entries.remove(key, entry);
+            return null;
+        }
+        return entry.future.getNow(null);
+    }
+
+    /**
+     * Stores a value for the key, replacing any existing entry.
+     *
+     * @param key   The cache key
+     * @param value The value to keep for the TTL
+     */
+    public void put(K key, V value) {
+        if (ttlMillis <= 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (entries.size() >= maxEntries) {
+            purgeExpired(now);
+            if (entries.size() >= maxEntries) {
+                return;
+            }
+        }
+        Entry<V> entry = new Entry<>(now + ttlMillis);
+        entry.future.complete(value);
+        entries.put(key, entry);
+    }
+
+    /**
+     * Removes the entry for a key.
+     */
+    public void invalidate(K key) {
+        entries.remove(key);
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    /**
+     * Gets the number of entries, including expired ones not yet purged.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    private V load(K key, Entry<V> entry, Function<? super K, ? extends V> loader,
+            Predicate<? super V> cacheable) {
+        V value;
+        try {
+            value = loader.apply(key);
+        } catch (RuntimeException | Error e) {
+            entries.remove(key, entry);
+            entry.future.completeExceptionally(e);
+            throw e;
+        }
+
+        if (!cacheable.test(value) || entries.size() > maxEntries) {
+            entries.remove(key, entry);
+        }
+        entry.future.complete(value);
+        return value;
+    }
+
+    private void purgeExpired(long now) {
+        entries.entrySet().removeIf(e -> e.getValue().isExpired(now));
+    }
+
+    private static <V> V await(CompletableFuture<V> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for cache load", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new CompletionException(cause);
+        }
+    }
+
+    private static final class Entry<V> {
+        final CompletableFuture<V> future = new CompletableFuture<>();
+        final long expiresAt;
+
+        Entry(long expiresAt) {
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired(long now) {
+            // A load still in flight is never expired, so waiters keep sharing it
+            return future.isDone() && now >= expiresAt;
+        }
+    }
+}
@@ -0,0 +1,580 @@
+package com.balmerlawrie.balmerrestservice.util;
+
+import org.w3c.dom.DOMException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Turns loosely written HTML (notesheet content as saved by the editor, plus
+ * the rendered sections) into a well-formed XHTML DOM in a single scan.
+ *
+ * The DOM is built directly with the XHTML namespace, so it can be handed to
+ * the PDF renderer without serializing and re-parsing it. While scanning:
+ * <ul>
+ * <li>named and numeric character references are decoded (text is escaped by
+ * the DOM, so &amp;nbsp; and friends need no XML entity declarations);</li>
+ * <li>void elements (br, hr, img, ...) are never left open, and unclosed
+ * p, li, td, th and tr elements are closed where HTML implies it;</li>
+ * <li>stray end tags are ignored and open elements are closed at the end;</li>
+ * <li>comments, CDATA sections, processing instructions, doctypes, script,
+ * title and prefixed (Office) tags are dropped; style elements move to the
+ * head;</li>
+ * <li>html, head and body tags in the content are ignored, their content is
+ * kept in the body;</li>
+ * <li>characters not allowed in XML are dropped, and a '&lt;' that does not
+ * start a tag is kept as text.</li>
+ * </ul>
+ *
+ * The class is stateless; every call builds its own document.
+ */
+public final class XhtmlNormalizer {
+
+    public static final String XHTML_NS = "http://www.w3.org/1999/xhtml";
+
+    private static final Set<String> VOID_ELEMENTS = set(
+            "area", "br", "col", "embed", "hr", "img", "input", "param", "source", "track", "wbr");
+
+    /**
+     * Tags ignored (content kept) or dropped (void, no content).
+     */
+    private static final Set<String> IGNORED_TAGS = set("html", "head", "body", "meta", "link", "base");
+
+    /**
+     * Elements whose raw content is dropped along with them.
+     */
+    private static final Set<String> DROPPED_ELEMENTS = set("script", "title", "noscript", "template");
+
+    private static final Set<String> CELLS = set("td", "th");
+    private static final Set<String> ROWS = set("tr", "td", "th");
+    private static final Set<String> TABLE_SECTIONS = set("thead", "tbody", "tfoot", "tr", "td", "th");
+    private static final Set<String> TABLE_SCOPE = set("table");
+    private static final Set<String> ROW_SCOPE = set("tr", "table");
+    private static final Set<String> LIST_SCOPE = set("ul", "ol");
+    private static final Set<String> DEFINITION_SCOPE = set("dl");
+    private static final Set<String> LIST_ITEMS = set("li");
+    private static final Set<String> DEFINITION_ITEMS = set("dt", "dd");
+    private static final Set<String> OPTIONS = set("option");
+    private static final Set<String> SELECT_SCOPE = set("select");
+
+    /**
+     * Elements that close an open paragraph.
+     */
+    private static final Set<String> CLOSES_PARAGRAPH = set("p", "div", "table", "ul", "ol", "dl", "pre",
+            "blockquote", "h1", "h2", "h3", "h4", "h5", "h6", "hr", "form", "address", "fieldset");
+
+    private static final Map<String, Integer> ENTITIES = new HashMap<>();
+
+    static {
+        String[] names = { "amp", "lt", "gt", "quot", "apos", "nbsp", "copy", "reg", "trade", "deg", "plusmn",
+                "times", "divide", "ndash", "mdash", "lsquo", "rsquo", "sbquo", "ldquo", "rdquo", "bdquo", "hellip",
+                "bull", "middot", "laquo", "raquo", "euro", "pound", "cent", "yen", "sect", "para", "frac12",
+                "frac14", "frac34", "sup2", "sup3", "micro", "iexcl", "iquest", "shy", "ensp", "emsp", "thinsp",
+                "larr", "rarr", "uarr", "darr", "check" };
+        int[] codePoints = { '&', '<', '>', '"', '\'', 0xA0, 0xA9, 0xAE, 0x2122, 0xB0, 0xB1,
+                0xD7, 0xF7, 0x2013, 0x2014, 0x2018, 0x2019, 0x201A, 0x201C, 0x201D, 0x201E, 0x2026,
+                0x2022, 0xB7, 0xAB, 0xBB, 0x20AC, 0xA3, 0xA2, 0xA5, 0xA7, 0xB6, 0xBD,
+                0xBC, 0xBE, 0xB2, 0xB3, 0xB5, 0xA1, 0xBF, 0xAD, 0x2002, 0x2003, 0x2009,
+                0x2190, 0x2192, 0x2191, 0x2193, 0x2713 };
+        for (int i = 0; i < names.length; i++) {
+            ENTITIES.put(names[i], codePoints[i]);
+        }
+    }
+
+    private static final DocumentBuilderFactory FACTORY = DocumentBuilderFactory.newInstance();
+
+    static {
+        FACTORY.setNamespaceAware(true);
+    }
+
+    private final CharSequence html;
+    private final int length;
+    private final Document document;
+    private final Element head;
+    private final Element body;
+    private final Deque<Element> open = new ArrayDeque<>();
+    private final StringBuilder text = new StringBuilder();
+
+    private XhtmlNormalizer(CharSequence html, Document document) {
+        this.html = html;
+        this.length = html.length();
+        this.document = document;
+        this.head = document.createElementNS(XHTML_NS, "head");
+        this.body = document.createElementNS(XHTML_NS, "body");
+        document.getDocumentElement().appendChild(head);
+        document.getDocumentElement().appendChild(body);
+        open.push(body);
+    }
+
+    /**
+     * Builds an XHTML document with the given content as its body.
+     *
+     * @param bodyHtml HTML content (fragments or a whole page)
+     * @param css      Style sheet for the head, or null
+     * @return A well-formed XHTML document in the XHTML namespace
+     */
+    public static Document toDocument(CharSequence bodyHtml, String css) {
+        XhtmlNormalizer normalizer = new XhtmlNormalizer(bodyHtml, newDocument());
+
+        Element meta = normalizer.document.createElementNS(XHTML_NS, "meta");
+        meta.setAttribute("http-equiv", "Content-Type");
+        meta.setAttribute("content", "text/html; charset=UTF-8");
+        normalizer.head.appendChild(meta);
+        if (css != null) {
+            normalizer.addStyle(css);
+        }
+
+        normalizer.parse();
+        return normalizer.document;
+    }
+
+    private static Document newDocument() {
+        try {
+            synchronized (FACTORY) {
+                return FACTORY.newDocumentBuilder().getDOMImplementation().createDocument(XHTML_NS, "html", null);
+            }
+        } catch (ParserConfigurationException e) {
+            throw new IllegalStateException("No XML document builder available", e);
+        }
+    }
+
+    // --- Scanning ---
+
+    private void parse() {
+        int i = 0;
+        while (i < length) {
+            char c = html.charAt(i);
+            if (c == '<') {
+                int next = markup(i);
+                if (next >= 0) {
+                    i = next;
+                    continue;
+                }
+            } else if (c == '&') {
+                i = reference(i, length, text);
+                continue;
+            }
+            appendChar(text, c);
+            i++;
+        }
+        flushText();
+    }
+
+    /**
+     * Handles the markup starting at '&lt;'.
+     *
+     * @return Index after the markup, or -1 if the '&lt;' is text
+     */
+    private int markup(int start) {
+        if (startsWith(start, "<!--")) {
+            return skipPast(start + 4, "-->");
+        }
+        if (startsWith(start, "<![CDATA[")) {
+            return skipPast(start + 9, "]]>");
+        }
+        if (startsWith(start, "<!") || startsWith(start, "<?")) {
+            return skipPast(start + 2, ">");
+        }
+        if (startsWith(start, "</")) {
+            int nameEnd = nameEnd(start + 2);
+            if (nameEnd == start + 2) {
+                return -1;
+            }
+            int gt = indexOf(">", nameEnd);
+            if (gt < 0) {
+                return -1;
+            }
+            endTag(lowerName(start + 2, nameEnd));
+            return gt + 1;
+        }
+        return startTag(start);
+    }
+
+    private int startTag(int start) {
+        int nameEnd = nameEnd(start + 1);
+        if (nameEnd == start + 1 || !Character.isLetter(html.charAt(start + 1))) {
+            return -1;
+        }
+        String name = lowerName(start + 1, nameEnd);
+
+        // Attributes, up to '>' or '/>'
+        Map<String, String> attributes = null;
+        boolean selfClosing = false;
+        int i = nameEnd;
+        while (true) {
+            i = skipWhitespace(i);
+            if (i >= length) {
+                return -1;
+            }
+            char c = html.charAt(i);
+            if (c == '>') {
+                i++;
+                break;
+            }
+            if (c == '/') {
+                i++;
+                if (i < length && html.charAt(i) == '>') {
+                    selfClosing = true;
+                    i++;
+                    break;
+                }
+                continue;
+            }
+
+            int attrStart = i;
+            while (i < length && !isWhitespace(html.charAt(i)) && "=>/".indexOf(html.charAt(i)) < 0) {
+                i++;
+            }
+            if (i == attrStart) {
+                i++; // stray '='
+                continue;
+            }
+            String attrName = html.subSequence(attrStart, i).toString().toLowerCase();
+
+            String value = attrName;
+            int afterName = skipWhitespace(i);
+            if (afterName < length && html.charAt(afterName) == '=') {
+                i = skipWhitespace(afterName + 1);
+                StringBuilder decoded = new StringBuilder();
+                if (i < length && (html.charAt(i) == '"' || html.charAt(i) == '\'')) {
+                    char quote = html.charAt(i++);
+                    int close = indexOf(String.valueOf(quote), i);
+                    if (close < 0) {
+                        return -1;
+                    }
+                    decode(i, close, decoded);
+                    i = close + 1;
+                } else {
+                    int valueStart = i;
+                    while (i < length && !isWhitespace(html.charAt(i)) && html.charAt(i) != '>') {
+                        i++;
+                    }
+                    decode(valueStart, i, decoded);
+                }
+                value = decoded.toString();
+            }
+
+            if (isValidAttributeName(attrName)) {
+                if (attributes == null) {
+                    attributes = new LinkedHashMap<>();
+                }
+                attributes.putIfAbsent(attrName, value);
+            }
+        }
+
+        if (DROPPED_ELEMENTS.contains(name)) {
+            return selfClosing ? i : skipRawText(i, name, null);
+        }
+        if ("style".equals(name)) {
+            if (selfClosing) {
+                return i;
+            }
+            StringBuilder css = new StringBuilder();
+            int next = skipRawText(i, name, css);
+            addStyle(css.toString());
+            return next;
+        }
+        if (IGNORED_TAGS.contains(name) || name.indexOf(':') >= 0) {
+            return i;
+        }
+
+        Element element;
+        try {
+            element = document.createElementNS(XHTML_NS, name);
+            if (attributes != null) {
+                attributes.forEach(element::setAttribute);
+            }
+        } catch (DOMException e) {
+            return -1; // not a name XML accepts; keep the markup as text
+        }
+
+        flushText();
+        closeImplied(name);
+        open.peek().appendChild(element);
+        if (!selfClosing && !VOID_ELEMENTS.contains(name)) {
+            open.push(element);
+        }
+        return i;
+    }
+
+    private void endTag(String name) {
+        if (IGNORED_TAGS.contains(name) || VOID_ELEMENTS.contains(name) || name.indexOf(':') >= 0) {
+            return;
+        }
+        for (Element element : open) {
+            if (element == body) {
+                return; // stray end tag
+            }
+            if (element.getLocalName().equals(name)) {
+                flushText();
+                while (open.pop() != element) {
+                    // close elements left open inside it
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Closes the elements HTML closes implicitly when the given element starts.
+     */
+    private void closeImplied(String name) {
+        switch (name) {
+            case "td":
+            case "th":
+                closeOpen(CELLS, ROW_SCOPE);
+                break;
+            case "tr":
+                closeOpen(ROWS, TABLE_SCOPE);
+                break;
+            case "thead":
+            case "tbody":
+            case "tfoot":
+                closeOpen(TABLE_SECTIONS, TABLE_SCOPE);
+                break;
+            case "li":
+                closeOpen(LIST_ITEMS, LIST_SCOPE);
+                break;
+            case "dt":
+            case "dd":
+                closeOpen(DEFINITION_ITEMS, DEFINITION_SCOPE);
+                break;
+            case "option":
+                closeOpen(OPTIONS, SELECT_SCOPE);
+                break;
+            default:
+                break;
+        }
+        if (CLOSES_PARAGRAPH.contains(name) && "p".equals(open.peek().getLocalName())) {
+            open.pop();
+        }
+    }
+
+    /**
+     * Closes the outermost open element named in targets (and everything
+     * inside it) that lies within the nearest element named in scope.
+     */
+    private void closeOpen(Set<String> targets, Set<String> scope) {
+        Element outermost = null;
+        for (Element element : open) {
+            String name = element.getLocalName();
+            if (element == body || scope.contains(name)) {
+                break;
+            }
+            if (targets.contains(name)) {
+                outermost = element;
+            }
+        }
+        if (outermost != null) {
+            while (open.pop() != outermost) {
+                // close elements left open inside it
+            }
+        }
+    }
+
+    private void flushText() {
+        if (text.length() > 0) {
+            open.peek().appendChild(document.createTextNode(text.toString()));
+            text.setLength(0);
+        }
+    }
+
+    private void addStyle(String css) {
+        Element style = document.createElementNS(XHTML_NS, "style");
+        style.setAttribute("type", "text/css");
+        style.appendChild(document.createTextNode(css));
+        head.appendChild(style);
+    }
+
+    // --- Character data ---
+
+    /**
+     * Decodes the character reference at '&amp;' into out, looking no further
+     * than limit.
+     *
+     * @return Index after the reference (after the '&amp;' if it is not one)
+     */
+    private int reference(int start, int limit, StringBuilder out) {
+        int semicolon = -1;
+        for (int i = start + 1; i < limit && i < start + 12; i++) {
+            char c = html.charAt(i);
+            if (c == ';') {
+                semicolon = i;
+                break;
+            }
+            if (!Character.isLetterOrDigit(c) && c != '#') {
+                break;
+            }
+        }
+        if (semicolon > start + 1) {
+            int codePoint = -1;
+            if (html.charAt(start + 1) == '#') {
+                try {
+                    boolean hex = semicolon > start + 2
+                            && (html.charAt(start + 2) == 'x' || html.charAt(start + 2) == 'X');
+                    String digits = html.subSequence(start + (hex ? 3 : 2), semicolon).toString();
+                    codePoint = Integer.parseInt(digits, hex ? 16 : 10);
+                } catch (NumberFormatException e) {
+                    codePoint = -1;
+                }
+            } else {
+                Integer named = ENTITIES.get(html.subSequence(start + 1, semicolon).toString());
+                if (named != null) {
+                    codePoint = named;
+                }
+            }
+            if (codePoint >= 0) {
+                if (isXmlChar(codePoint)) {
+                    out.appendCodePoint(codePoint);
+                }
+                return semicolon + 1;
+            }
+        }
+        out.append('&');
+        return start + 1;
+    }
+
+    private void decode(int from, int to, StringBuilder out) {
+        int i = from;
+        while (i < to) {
+            char c = html.charAt(i);
+            if (c == '&') {
+                i = reference(i, to, out);
+                continue;
+            }
+            appendChar(out, c);
+            i++;
+        }
+    }
+
+    private static void appendChar(StringBuilder out, char c) {
+        if (c >= 0x20 || c == '\t' || c == '\n' || c == '\r') {
+            if (c != 0xFFFE && c != 0xFFFF) {
+                out.append(c);
+            }
+        }
+    }
+
+    private static boolean isXmlChar(int codePoint) {
+        return codePoint == 0x9 || codePoint == 0xA || codePoint == 0xD
+                || (codePoint >= 0x20 && codePoint <= 0xD7FF)
+                || (codePoint >= 0xE000 && codePoint <= 0xFFFD)
+                || (codePoint >= 0x10000 && codePoint <= 0x10FFFF);
+    }
+
+    // --- Helper Methods ---
+
+    /**
+     * Skips the content of a raw-text element up to and including its end tag,
+     * optionally collecting the content.
+     */
+    private int skipRawText(int from, String name, StringBuilder content) {
+        int end = indexOfIgnoreCase("</" + name, from);
+        if (end < 0) {
+            end = length;
+        }
+        if (content != null) {
+            content.append(html, from, end);
+        }
+        int gt = end < length ? indexOf(">", end) : -1;
+        return gt < 0 ? length : gt + 1;
+    }
+
+    private int skipPast(int from, String terminator) {
+        int end = indexOf(terminator, from);
+        return end < 0 ? length : end + terminator.length();
+    }
+
+    private int nameEnd(int from) {
+        int i = from;
+        while (i < length) {
+            char c = html.charAt(i);
+            if (!Character.isLetterOrDigit(c) && c != '-' && c != '_' && c != ':' && c != '.') {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    private String lowerName(int from, int to) {
+        return html.subSequence(from, to).toString().toLowerCase();
+    }
+
+    private int skipWhitespace(int from) {
+        int i = from;
+        while (i < length && isWhitespace(html.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private boolean startsWith(int from, String prefix) {
+        if (from + prefix.length() > length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (html.charAt(from + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int indexOf(String target, int from) {
+        for (int i = from; i <= length - target.length(); i++) {
+            if (startsWith(i, target)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int indexOfIgnoreCase(String target, int from) {
+        outer:
+        for (int i = from; i <= length - target.length(); i++) {
+            for (int j = 0; j < target.length(); j++) {
+                if (Character.toLowerCase(html.charAt(i + j)) != target.charAt(j)) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+    }
+
+    /**
+     * Attribute names kept in the output: XML names without a prefix.
+     */
+    private static boolean isValidAttributeName(String name) {
+        if (name.isEmpty() || !(Character.isLetter(name.charAt(0)) || name.charAt(0) == '_')
+                || name.startsWith("xmlns")) {
+            return false;
+        }
+        for (int i = 1; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (!Character.isLetterOrDigit(c) && c != '-' && c != '_' && c != '.') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Set<String> set(String... values) {
+        return new HashSet<>(Arrays.asList(values));
+    }
+}
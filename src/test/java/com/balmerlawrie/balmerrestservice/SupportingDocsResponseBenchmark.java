@@ -0,0 +1,169 @@
+package com.balmerlawrie.balmerrestservice;
+
+import com.balmerlawrie.balmerrestservice.model.SupportingDocument;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Standalone benchmark comparing the former /supportingdocs/list response
+ * (an ObjectNode per document, a field-name string built per document and
+ * the whole OmniDocs output embedded as rawResponse) with the lean profile
+ * (typed SupportingDocument serialized from POJO nodes, no rawResponse),
+ * for parse + serialize of one folder listing. Log I/O is not included;
+ * the former profile additionally wrote the full response at INFO.
+ * Run with: mvn exec:java -Dexec.mainClass="com.balmerlawrie.balmerrestservice.SupportingDocsResponseBenchmark" -Dexec.classpathScope=test
+ */
+public class SupportingDocsResponseBenchmark {
+
+    private static final int DOCUMENTS = 1_000;
+    private static final int WARMUP_ROUNDS = 200;
+    private static final int MEASURED_ROUNDS = 500;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final String[] EXTENSIONS = { "pdf", "docx", "xlsx", "jpg", "msg" };
+
+    public static void main(String[] args) throws Exception {
+        int documents = args.length > 0 ? Integer.parseInt(args[0]) : DOCUMENTS;
+        JsonNode output = generateOutput(documents, new Random(42));
+
+        System.out.println("=".repeat(70));
+        System.out.println("SUPPORTING DOCS RESPONSE BENCHMARK (" + documents + " documents)");
+        System.out.println("=".repeat(70));
+
+        byte[] before = serializeNodes(output);
+        byte[] after = serializeTyped(output);
+        verifySameDocuments(before, after);
+        System.out.printf("Response size: %d bytes (with rawResponse) vs %d bytes (lean)%n%n",
+                before.length, after.length);
+
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            sink(serializeNodes(output));
+            sink(serializeTyped(output));
+        }
+
+        report("ObjectNode + rawResponse", () -> serializeNodes(output));
+        report("SupportingDocument (lean)", () -> serializeTyped(output));
+    }
+
+    private static byte[] serializeNodes(JsonNode output) {
+        ObjectNode result = MAPPER.createObjectNode();
+        result.put("success", true);
+        result.put("folderId", "1234");
+        ArrayNode documents = result.putArray("documents");
+        for (JsonNode doc : output.path("Documents").path("Document")) {
+            StringBuilder fields = new StringBuilder();
+            doc.fieldNames().forEachRemaining(f -> fields.append(f).append(", "));
+            sink(fields.toString());
+
+            SupportingDocument parsed = SupportingDocument.from(doc);
+            ObjectNode docInfo = MAPPER.createObjectNode();
+            for (String field : SupportingDocument.FIELDS) {
+                docInfo.put(field, parsed.get(field));
+            }
+            documents.add(docInfo);
+        }
+        result.put("count", documents.size());
+        result.put("rawResponse", output.toString());
+        return write(result);
+    }
+
+    private static byte[] serializeTyped(JsonNode output) {
+        List<SupportingDocument> parsed = new ArrayList<>();
+        for (JsonNode doc : output.path("Documents").path("Document")) {
+            parsed.add(SupportingDocument.from(doc));
+        }
+
+        ObjectNode result = MAPPER.createObjectNode();
+        result.put("success", true);
+        result.put("folderId", "1234");
+        ArrayNode documents = result.putArray("documents");
+        for (SupportingDocument doc : parsed) {
+            documents.addPOJO(doc);
+        }
+        result.put("count", parsed.size());
+        return write(result);
+    }
+
+    private static byte[] write(JsonNode result) {
+        try {
+            return MAPPER.writeValueAsBytes(result);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void verifySameDocuments(byte[] before, byte[] after) throws Exception {
+        JsonNode a = MAPPER.readTree(before).path("documents");
+        JsonNode b = MAPPER.readTree(after).path("documents");
+        if (!a.equals(b)) {
+            throw new IllegalStateException("Document lists differ");
+        }
+        System.out.println("Document lists identical for both profiles");
+    }
+
+    private static void report(String label, Supplier<byte[]> task) {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            sink(task.get());
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        System.out.printf("%-28s avg %8.3f ms   alloc %10d bytes/op%n",
+                label, elapsed / 1_000_000.0 / MEASURED_ROUNDS, allocated / MEASURED_ROUNDS);
+    }
+
+    /**
+     * Builds an NGOGetDocumentListExt output as the XML mapper produces it.
+     */
+    private static JsonNode generateOutput(int count, Random random) {
+        ObjectNode output = MAPPER.createObjectNode();
+        output.put("Status", "0");
+        output.put("TotalNoOfRecords", String.valueOf(count));
+        ArrayNode docs = output.putObject("Documents").putArray("Document");
+        for (int i = 0; i < count; i++) {
+            String ext = EXTENSIONS[random.nextInt(EXTENSIONS.length)];
+            ObjectNode doc = docs.addObject();
+            doc.put("DocumentIndex", String.valueOf(10_000 + i));
+            doc.put("DocumentName", "Supporting_" + i + "." + ext);
+            doc.put("CreatedByAppName", ext);
+            doc.put("DocumentSize", String.valueOf(10_000 + random.nextInt(5_000_000)));
+            doc.put("CreatedDateTime", String.format("2025-%02d-%02d 10:%02d:00",
+                    1 + random.nextInt(12), 1 + random.nextInt(28), random.nextInt(60)));
+            doc.put("RevisedDateTime", "2025-06-01 09:00:00");
+            doc.put("AccessedDateTime", "2025-06-02 09:00:00");
+            doc.put("VersionNo", "1.0");
+            doc.put("Owner", "user" + random.nextInt(20));
+            doc.put("OwnerIndex", String.valueOf(random.nextInt(100)));
+            doc.put("Comment", random.nextBoolean() ? "" : "Uploaded from mobile");
+            doc.put("ParentFolderIndex", "1234");
+            doc.put("ISIndex", (20_000 + i) + "#1#");
+            doc.put("NoOfPages", String.valueOf(1 + random.nextInt(40)));
+            doc.put("DocumentLock", "N");
+            doc.put("CheckoutStatus", "N");
+            doc.put("FTSDocumentIndex", "0");
+            doc.put("DocumentType", "N");
+        }
+        return output;
+    }
+
+    private static int sinkHash;
+
+    private static void sink(Object value) {
+        sinkHash ^= System.identityHashCode(value);
+    }
+}
@@ -0,0 +1,146 @@
+package com.balmerlawrie.balmerrestservice;
+
+import com.balmerlawrie.balmerrestservice.model.WorkItem;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Standalone benchmark comparing the former ObjectNode work item list
+ * (toLowerCase()/compareToIgnoreCase comparator) with the typed WorkItem
+ * and its precomputed sort keys, for build + sort of a 10k item queue.
+ * Run with: mvn exec:java -Dexec.mainClass="com.balmerlawrie.balmerrestservice.WorkItemSortBenchmark" -Dexec.classpathScope=test
+ */
+public class WorkItemSortBenchmark {
+
+    private static final int ITEMS = 10_000;
+    private static final int WARMUP_ROUNDS = 50;
+    private static final int MEASURED_ROUNDS = 200;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final String[] PROCESS_NAMES = {
+            "Capex Approval", "capex approval", "Vendor Onboarding", "Note Sheet", "note sheet",
+            "Purchase Order", "Travel Claim", "Contract Review", "Budget Revision", "Asset Disposal"
+    };
+    private static final String[] QUEUE_NAMES = {
+            "admin_MyQueue", "Finance Queue", "Legal Queue", "Procurement Queue"
+    };
+
+    public static void main(String[] args) {
+        int items = args.length > 0 ? Integer.parseInt(args[0]) : ITEMS;
+        String[][] rows = generateRows(items, new Random(42));
+
+        System.out.println("=".repeat(70));
+        System.out.println("WORK ITEM SORT BENCHMARK (" + items + " items)");
+        System.out.println("=".repeat(70));
+
+        verifySameOrder(rows);
+
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            sink(buildAndSortNodes(rows));
+            sink(buildAndSortWorkItems(rows));
+        }
+
+        report("ObjectNode + comparator", () -> buildAndSortNodes(rows));
+        report("WorkItem + DISPLAY_ORDER", () -> buildAndSortWorkItems(rows));
+    }
+
+    private static List<JsonNode> buildAndSortNodes(String[][] rows) {
+        List<JsonNode> list = new ArrayList<>(rows.length);
+        for (String[] row : rows) {
+            ObjectNode node = MAPPER.createObjectNode();
+            node.put("urn", row[0]);
+            node.put("activityName", row[1]);
+            node.put("entryDateTime", row[2]);
+            node.put("queueName", row[3]);
+            node.put("status", row[4]);
+            node.put("lockedBy", row[5]);
+            node.put("workitemId", row[6]);
+            node.put("processName", row[7]);
+            node.put("processInstanceId", row[8]);
+            list.add(node);
+        }
+        list.sort((a, b) -> {
+            boolean aIsMyQueue = a.path("queueName").asText("").toLowerCase().contains("myqueue");
+            boolean bIsMyQueue = b.path("queueName").asText("").toLowerCase().contains("myqueue");
+            if (aIsMyQueue && !bIsMyQueue) {
+                return -1;
+            }
+            if (!aIsMyQueue && bIsMyQueue) {
+                return 1;
+            }
+            return a.path("processName").asText("").compareToIgnoreCase(b.path("processName").asText(""));
+        });
+        return list;
+    }
+
+    private static List<WorkItem> buildAndSortWorkItems(String[][] rows) {
+        List<WorkItem> list = new ArrayList<>(rows.length);
+        for (String[] row : rows) {
+            list.add(new WorkItem(row[0], row[1], row[2], row[3], row[4], row[5], row[6], row[7], row[8]));
+        }
+        list.sort(WorkItem.DISPLAY_ORDER);
+        return list;
+    }
+
+    private static void verifySameOrder(String[][] rows) {
+        List<JsonNode> nodes = buildAndSortNodes(rows);
+        List<WorkItem> items = buildAndSortWorkItems(rows);
+        for (int i = 0; i < nodes.size(); i++) {
+            if (!nodes.get(i).path("urn").asText().equals(items.get(i).getUrn())) {
+                throw new IllegalStateException("Sort order differs at index " + i);
+            }
+        }
+        System.out.println("Sort order identical for both implementations");
+        System.out.println();
+    }
+
+    private static void report(String label, Runnable task) {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            task.run();
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        System.out.printf("%-28s avg %8.3f ms   alloc %10d bytes/op%n",
+                label, elapsed / 1_000_000.0 / MEASURED_ROUNDS, allocated / MEASURED_ROUNDS);
+    }
+
+    private static String[][] generateRows(int count, Random random) {
+        String[][] rows = new String[count][];
+        for (int i = 0; i < count; i++) {
+            String pid = "NoteSheet-" + String.format("%07d", i) + "-process";
+            rows[i] = new String[] {
+                    "URN/" + (100000 + random.nextInt(900000)),
+                    "Approver_" + random.nextInt(8),
+                    String.format("2024-%02d-%02d 10:%02d:00", 1 + random.nextInt(12), 1 + random.nextInt(28),
+                            random.nextInt(60)),
+                    QUEUE_NAMES[random.nextInt(QUEUE_NAMES.length)],
+                    String.valueOf(random.nextInt(3)),
+                    random.nextBoolean() ? "" : "user" + random.nextInt(20),
+                    "1",
+                    PROCESS_NAMES[random.nextInt(PROCESS_NAMES.length)],
+                    pid
+            };
+        }
+        return rows;
+    }
+
+    private static int sinkHash;
+
+    private static void sink(List<?> list) {
+        sinkHash ^= System.identityHashCode(list.get(list.size() - 1));
+    }
+}
@@ -0,0 +1,104 @@
+package com.balmerlawrie.balmerrestservice.dto;
+
+import com.balmerlawrie.balmerrestservice.model.WorkItem;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WorkItemQueryTest {
+
+    private static final List<WorkItem> ITEMS = Arrays.asList(
+            item("BLR/2024/001", "Approver", "2024-01-05 09:30:00", "supervisor", "NoteSheet"),
+            item("BLR/2024/002", "Initiator", "2024-01-31 18:00:00", "", "NoteSheet"),
+            item("blr/2024/010", "approver", "2024-02-01 00:00:00", "", "Purchase"),
+            item("MUM/2024/001", "Approver", "", "clerk", "NoteSheet"));
+
+    private static WorkItem item(String urn, String activity, String entry, String lockedBy, String process) {
+        return new WorkItem(urn, activity, entry, "Queue", "2", lockedBy, "1", process, urn + "-process");
+    }
+
+    private static List<String> urns(WorkItemQuery query) {
+        Predicate<WorkItem> filter = query.toFilter();
+        return ITEMS.stream().filter(filter).map(WorkItem::getUrn).collect(Collectors.toList());
+    }
+
+    @Test
+    void urnIsCaseInsensitivePrefix() {
+        WorkItemQuery query = new WorkItemQuery();
+        query.setUrn(" blr/2024/0 ");
+        assertEquals(Arrays.asList("BLR/2024/001", "BLR/2024/002", "blr/2024/010"), urns(query));
+
+        query.setUrn("BLR/2024/01");
+        assertEquals(Arrays.asList("blr/2024/010"), urns(query));
+    }
+
+    @Test
+    void dateOnlyUpperBoundCoversTheWholeDay() {
+        WorkItemQuery query = new WorkItemQuery();
+        query.setEntryTo("2024-01-31");
+        assertEquals(Arrays.asList("BLR/2024/001", "BLR/2024/002"), urns(query));
+    }
+
+    @Test
+    void rangeIsInclusiveAndSkipsItemsWithoutEntryDate() {
+        WorkItemQuery query = new WorkItemQuery();
+        query.setEntryFrom("2024-01-31 18:00:00");
+        query.setEntryTo("2024-02-01");
+        assertEquals(Arrays.asList("BLR/2024/002", "blr/2024/010"), urns(query));
+
+        WorkItemQuery openEnded = new WorkItemQuery();
+        openEnded.setEntryFrom("2024-01-01");
+        assertEquals(3, urns(openEnded).size());
+    }
+
+    @Test
+    void exactFieldsMatchAnyValueIgnoringCaseAndCombineWithAnd() {
+        WorkItemQuery query = new WorkItemQuery();
+        query.setActivityName("APPROVER, Initiator");
+        query.setProcessName("notesheet");
+        assertEquals(Arrays.asList("BLR/2024/001", "BLR/2024/002", "MUM/2024/001"), urns(query));
+
+        query.setLocked(false);
+        assertEquals(Arrays.asList("BLR/2024/002"), urns(query));
+    }
+
+    @Test
+    void lockedFilters() {
+        WorkItemQuery query = new WorkItemQuery();
+        query.setLockedBy("Clerk");
+        assertEquals(Arrays.asList("MUM/2024/001"), urns(query));
+
+        WorkItemQuery locked = new WorkItemQuery();
+        locked.setLocked(true);
+        assertEquals(Arrays.asList("BLR/2024/001", "MUM/2024/001"), urns(locked));
+    }
+
+    @Test
+    void emptyQueryMatchesEverything() {
+        WorkItemQuery query = new WorkItemQuery();
+        assertFalse(query.hasFilters());
+        assertTrue(query.isEmpty());
+        assertEquals(ITEMS.size(), urns(query).size());
+    }
+
+    @Test
+    void validatesSortAndProjectionFields() {
+        WorkItemQuery query = new WorkItemQuery();
+        query.setSort("-entryDateTime");
+        query.setFields("urn,lockedBy");
+        assertNull(query.validate());
+        assertNotNull(query.getComparator());
+
+        query.setSort("bogus");
+        assertNotNull(query.validate());
+    }
+}
@@ -0,0 +1,109 @@
+package com.balmerlawrie.balmerrestservice.model;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WorkItemAttributesTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private WorkItemAttributes parse(String json) throws Exception {
+        JsonNode response = mapper.readTree(json);
+        return WorkItemAttributes.from(response);
+    }
+
+    @Test
+    void singleCommentWithTextFieldsIsOneRow() throws Exception {
+        WorkItemAttributes attributes = parse("{\"WMFetchWorkItemAttributes_Output\":{\"Attributes\":{"
+                + "\"Q_Eoffice_Commentshistory\":{\"username\":\"supervisor\",\"comments\":\"Approved\","
+                + "\"datetime\":\"2025-12-12 14:46:03.0\"}}}}");
+
+        List<Map<String, String>> rows = attributes.getRows("q_eoffice_commentshistory");
+        assertEquals(1, rows.size());
+        assertEquals("supervisor", rows.get(0).get("UserName"));
+        assertEquals("Approved", rows.get(0).get("comments"));
+        assertTrue(attributes.isObject("Q_Eoffice_Commentshistory"));
+    }
+
+    @Test
+    void arrayOfCommentsIsOneRowEach() throws Exception {
+        WorkItemAttributes attributes = parse("{\"Attributes\":{\"Q_Eoffice_Commentshistory\":["
+                + "{\"username\":\"a\",\"comments\":\"first\"},{\"username\":\"b\",\"comments\":\"second\"}]}}");
+
+        List<Map<String, String>> rows = attributes.getRows("Q_Eoffice_Commentshistory");
+        assertEquals(2, rows.size());
+        assertEquals("second", rows.get(1).get("comments"));
+        assertFalse(attributes.isObject("Q_Eoffice_Commentshistory"));
+        assertNull(attributes.get("Q_Eoffice_Commentshistory"));
+    }
+
+    @Test
+    void nestedObjectIsOneRowWithoutSimpleValue() throws Exception {
+        WorkItemAttributes attributes = parse("{\"Attributes\":{\"Q_Eoffice_Commentshistory\":"
+                + "{\"username\":{\"\":\"a\"},\"comments\":{\"\":\"only\"}}}}");
+
+        assertEquals("only", attributes.getRows("Q_Eoffice_Commentshistory").get(0).get("comments"));
+        assertNull(attributes.get("Q_Eoffice_Commentshistory"));
+    }
+
+    @Test
+    void simpleValuesIgnoreCaseAndReadElementText() throws Exception {
+        WorkItemAttributes attributes = parse("{\"Attributes\":{\"NOTESHEET\":\"12#34\","
+                + "\"notesheet_original\":{\"type\":\"string\",\"\":\"1#1.0#99\"},\"empty\":\"\"}}");
+
+        assertEquals("12#34", attributes.get("notesheet"));
+        assertEquals("1#1.0#99", attributes.get("Notesheet_Original"));
+        assertNull(attributes.get("empty"));
+        assertEquals("12#34", attributes.getFirst("missing", "Notesheet"));
+    }
+
+    @Test
+    void nameValueArrayFormat() throws Exception {
+        WorkItemAttributes attributes = parse("{\"Attributes\":[{\"Name\":\"notesheet\",\"Value\":\"5#6\"},"
+                + "{\"Name\":\"other\",\"Value\":{\"content\":\"x\"}}]}");
+
+        assertEquals("5#6", attributes.get("notesheet"));
+        assertEquals("x", attributes.get("other"));
+    }
+
+    @Test
+    void errorResponse() throws Exception {
+        WorkItemAttributes attributes = parse("{\"success\":false,\"error\":\"Invalid session\"}");
+
+        assertEquals("Invalid session", attributes.getError());
+        assertFalse(attributes.isSuccessful());
+        assertTrue(attributes.isEmpty());
+        assertNull(attributes.get("success"));
+        assertNull(attributes.get("error"));
+    }
+
+    @Test
+    void notFoundResponse() throws Exception {
+        WorkItemAttributes attributes = parse("{\"success\":true,\"found\":false,"
+                + "\"message\":\"iBPS error (Status 18): Work item not found\"}");
+
+        assertFalse(attributes.isSuccessful());
+        assertNull(attributes.getError());
+        assertEquals("iBPS error (Status 18): Work item not found", attributes.getMessage());
+        assertTrue(attributes.isEmpty());
+        assertNull(attributes.get("found"));
+        assertNull(attributes.get("message"));
+    }
+
+    @Test
+    void unwrappedOutputWithoutAttributesNode() throws Exception {
+        WorkItemAttributes attributes = parse("{\"Status\":\"0\",\"notesheet\":\"12#34\"}");
+
+        assertTrue(attributes.isSuccessful());
+        assertEquals("12#34", attributes.get("notesheet"));
+    }
+}
@@ -0,0 +1,117 @@
+package com.balmerlawrie.balmerrestservice.service;
+
+import com.balmerlawrie.balmerrestservice.model.WorkItemAttributes;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class NoteSheetServiceCommentsTest {
+
+    private static final String PID = "e-Notes-000000000008-process";
+    private static final String WID = "1";
+    private static final long SESSION = 42L;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final WorkItemAttributesService attributesService = mock(WorkItemAttributesService.class);
+    private final NoteSheetService service = new NoteSheetService();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(service, "workItemAttributesService", attributesService);
+        ReflectionTestUtils.setField(service, "commentsCacheTtlMillis", 60_000L);
+        ReflectionTestUtils.setField(service, "commentsCacheMaxEntries", 10);
+        service.initCommentsCache();
+    }
+
+    private void respond(String json) throws Exception {
+        when(attributesService.getAttributes(PID, WID, SESSION))
+                .thenReturn(WorkItemAttributes.from(mapper.readTree(json)));
+    }
+
+    private JsonNode getComments(String since) {
+        return service.getComments(PID, WID, SESSION, since, null, 0);
+    }
+
+    @Test
+    void errorResponseIsAnErrorAndNotCached() throws Exception {
+        respond("{\"success\":false,\"error\":\"Error fetching attributes\",\"details\":\"Read timed out\"}");
+
+        JsonNode result = getComments(null);
+        assertFalse(result.path("success").asBoolean());
+        assertEquals("No attributes found", result.path("error").asText());
+
+        getComments(null);
+        verify(attributesService, times(2)).getAttributes(PID, WID, SESSION);
+    }
+
+    @Test
+    void notFoundResponseIsAnErrorAndNotCached() throws Exception {
+        respond("{\"success\":true,\"found\":false,\"message\":\"iBPS error (Status 18): Work item not found\"}");
+
+        JsonNode result = getComments("2025-12-12");
+        assertFalse(result.path("success").asBoolean());
+        assertEquals("No attributes found", result.path("error").asText());
+
+        getComments(null);
+        verify(attributesService, times(2)).getAttributes(PID, WID, SESSION);
+    }
+
+    @Test
+    void workItemWithoutCommentsIsAnEmptyHistory() throws Exception {
+        respond("{\"WMFetchWorkItemAttributes_Output\":{\"Status\":\"0\",\"Attributes\":{\"notesheet\":\"1#2\"}}}");
+
+        JsonNode result = getComments(null);
+        assertTrue(result.path("success").asBoolean());
+        assertEquals(0, result.path("count").asInt());
+    }
+
+    @Test
+    void statusOnlyForASingleObjectHistory() throws Exception {
+        respond("{\"Attributes\":{\"Q_Eoffice_Commentshistory\":{\"username\":\"a\",\"comments\":\"only\","
+                + "\"datetime\":\"2025-12-12 14:46:03.0\",\"email\":\"Approved\"}}}");
+        assertEquals("Approved", getComments(null).path("comments").get(0).path("status").asText());
+
+        service.invalidateComments(PID, WID, SESSION);
+        respond("{\"Attributes\":{\"Q_Eoffice_Commentshistory\":[{\"username\":\"a\",\"comments\":\"only\","
+                + "\"datetime\":\"2025-12-12 14:46:03.0\",\"email\":\"Approved\"}]}}");
+        assertFalse(getComments(null).path("comments").get(0).has("status"));
+    }
+
+    @Test
+    void sinceComparesAtFullPrecision() throws Exception {
+        respond("{\"Attributes\":{\"Q_Eoffice_Commentshistory\":["
+                + "{\"comments\":\"first\",\"datetime\":\"2025-12-12 14:46:03.0\"},"
+                + "{\"comments\":\"same second\",\"datetime\":\"2025-12-12 14:46:03.25\"},"
+                + "{\"comments\":\"next day\",\"datetime\":\"2025-12-13 09:00:00.0\"}]}}");
+
+        JsonNode all = getComments(null);
+        assertEquals("2025-12-13 09:00:00.0", all.path("latestDateTime").asText());
+
+        JsonNode afterFirst = getComments("2025-12-12 14:46:03.0");
+        assertEquals(2, afterFirst.path("total").asInt());
+        assertEquals("same second", afterFirst.path("comments").get(0).path("comments").asText());
+
+        assertEquals(2, getComments("2025-12-12T14:46:03").path("total").asInt());
+        assertEquals(1, getComments("2025-12-12 14:46:03.3").path("total").asInt());
+        assertEquals(1, getComments("2025-12-12 14:47").path("total").asInt());
+        assertEquals(3, getComments("2025-12-12").path("total").asInt());
+    }
+
+    @Test
+    void normalizesDateTimesToNanosecondPrecision() {
+        assertEquals("2025-12-12 14:46:03.250000000", NoteSheetService.normalizeCommentDateTime("2025-12-12 14:46:03.25"));
+        assertEquals("2025-12-12 14:46:00.000000000", NoteSheetService.normalizeCommentDateTime("2025-12-12T14:46"));
+        assertEquals("2025-12-12 00:00:00.000000000", NoteSheetService.normalizeCommentDateTime(" 2025-12-12 "));
+        assertEquals("", NoteSheetService.normalizeCommentDateTime(""));
+    }
+}
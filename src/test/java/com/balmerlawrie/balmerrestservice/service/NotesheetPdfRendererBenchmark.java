@@ -0,0 +1,179 @@
+package com.balmerlawrie.balmerrestservice.service;
+
+import com.balmerlawrie.balmerrestservice.util.XhtmlNormalizer;
+import org.w3c.dom.Document;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Standalone benchmark comparing the {@link NotesheetPdfRenderer} backends on
+ * notesheet samples: average render latency, peak heap while rendering,
+ * allocation per render and PDF size. Flying Saucer runs twice, with a pooled
+ * renderer (as in production) and with a new renderer per PDF, and the very
+ * first render of the JVM, which also pays for class loading, is reported
+ * separately. Pages are styled with {@link NoteSheetService#NOTESHEET_CSS}.
+ *
+ * Without arguments it renders generated notesheets (editor-style content
+ * plus the documents and comments sections) with 10, 100 and 500 comments.
+ * Pass a directory to render its *.html files instead, e.g. original
+ * notesheets saved by getoriginal under notesheet.temp.directory.
+ * Run with: mvn exec:java -Dexec.mainClass="com.balmerlawrie.balmerrestservice.service.NotesheetPdfRendererBenchmark" -Dexec.classpathScope=test [-Dexec.args=dir]
+ */
+public class NotesheetPdfRendererBenchmark {
+
+    private static final int WARMUP_ROUNDS = 10;
+    private static final int MEASURED_ROUNDS = 20;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> samples = args.length > 0 ? loadSamples(new File(args[0])) : generateSamples();
+
+        Map<String, NotesheetPdfRenderer> renderers = new LinkedHashMap<>();
+        renderers.put("flyingsaucer", new FlyingSaucerNotesheetPdfRenderer(1, null));
+        renderers.put("fs-cold", new FlyingSaucerNotesheetPdfRenderer(0, null));
+        OpenHtmlToPdfNotesheetPdfRenderer openHtmlToPdf = new OpenHtmlToPdfNotesheetPdfRenderer();
+        openHtmlToPdf.loadFonts();
+        renderers.put("openhtmltopdf", openHtmlToPdf);
+
+        System.out.println("=".repeat(90));
+        System.out.println("NOTESHEET PDF RENDERER BENCHMARK (" + samples.size() + " samples)");
+        System.out.println("=".repeat(90));
+
+        String first = samples.values().iterator().next();
+        long start = System.nanoTime();
+        int size = render(renderers.get("fs-cold"), first);
+        System.out.printf("First render in JVM: %.1f ms (%d bytes)%n%n", (System.nanoTime() - start) / 1e6, size);
+
+        System.out.printf("%-22s %-14s %12s %14s %16s %12s%n",
+                "sample", "backend", "avg ms", "peak heap MB", "alloc MB/op", "pdf bytes");
+        for (Map.Entry<String, String> sample : samples.entrySet()) {
+            for (Map.Entry<String, NotesheetPdfRenderer> renderer : renderers.entrySet()) {
+                run(sample.getKey(), sample.getValue(), renderer.getKey(), renderer.getValue());
+            }
+        }
+    }
+
+    private static void run(String name, String html, String backend, NotesheetPdfRenderer renderer)
+            throws Exception {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            render(renderer, html);
+        }
+
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        System.gc();
+        resetPeakHeap();
+        long baseline = usedHeap();
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        int size = 0;
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            size = render(renderer, html);
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        long peak = Math.max(0, peakHeap() - baseline);
+
+        System.out.printf("%-22s %-14s %12.1f %14.1f %16.1f %12d%n", name, backend,
+                elapsed / 1e6 / MEASURED_ROUNDS, peak / 1048576.0, allocated / 1048576.0 / MEASURED_ROUNDS, size);
+    }
+
+    private static int render(NotesheetPdfRenderer renderer, String html) throws Exception {
+        Document xhtml = XhtmlNormalizer.toDocument(html, NoteSheetService.NOTESHEET_CSS);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        renderer.render(xhtml, out);
+        return out.size();
+    }
+
+    private static void resetPeakHeap() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    /**
+     * Sum of the heap pools' peak usage since the last reset.
+     */
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    private static long usedHeap() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static Map<String, String> loadSamples(File directory) throws Exception {
+        Map<String, String> samples = new LinkedHashMap<>();
+        File[] files = directory.listFiles((dir, name) -> name.toLowerCase().endsWith(".html"));
+        if (files == null || files.length == 0) {
+            throw new IllegalArgumentException("No .html samples in " + directory);
+        }
+        for (File file : files) {
+            samples.put(file.getName(), new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+        }
+        return samples;
+    }
+
+    private static Map<String, String> generateSamples() {
+        Map<String, String> samples = new LinkedHashMap<>();
+        for (int comments : new int[] { 10, 100, 500 }) {
+            samples.put("generated-" + comments, generateNotesheet(comments, new Random(42)));
+        }
+        return samples;
+    }
+
+    /**
+     * Builds notesheet content in the editor's style followed by the
+     * documents and comments sections as the templates render them.
+     */
+    private static String generateNotesheet(int comments, Random random) {
+        StringBuilder body = new StringBuilder();
+        body.append("<p style=\"text-align: center;\"><b><u>NOTE SHEET</u></b></p>");
+        for (int i = 0; i < 15; i++) {
+            body.append("<p style=\"text-align: justify;\">").append(i + 1)
+                    .append(".&nbsp;The proposal for procurement of equipment for the R&amp;D unit has been ")
+                    .append("examined. The estimated cost is Rs. <b>").append(random.nextInt(1_000_000))
+                    .append("</b> and budget provision exists.<br>Submitted for approval.</p>");
+        }
+
+        body.append("<div style=\"margin-top: 30px\"><table border=\"1\" cellpadding=\"8\" cellspacing=\"0\">")
+                .append("<tr><td colspan=\"3\" style=\"background: #e0e0e0\">Supporting Documents</td></tr>");
+        for (int i = 0; i < 8; i++) {
+            body.append("<tr><td>").append(i + 1).append("</td><td><a href=\"http://host/docs/").append(i)
+                    .append("\">Quotation_").append(i).append(".pdf</a></td><td></td></tr>");
+        }
+        body.append("</table></div>");
+
+        body.append("<div style=\"margin-top: 30px\"><table border=\"1\" cellpadding=\"8\" cellspacing=\"0\">")
+                .append("<tr><td colspan=\"3\" style=\"background: #e0e0e0\">Notesheet Comments</td></tr>");
+        for (int i = 0; i < comments; i++) {
+            body.append("<tr style=\"background: #f9f9f9\"><td><b>SNo:</b> ").append(i + 1)
+                    .append("</td><td><b>User:</b> user").append(random.nextInt(20))
+                    .append("</td><td><b>Date:</b> 2025-06-01 10:00:00.0</td></tr>")
+                    .append("<tr><td colspan=\"3\" style=\"white-space: pre-wrap;\">")
+                    .append("Reviewed and recommended for approval. Please proceed as discussed.</td></tr>")
+                    .append("<tr><td><b>Stage:</b> Reviewer</td><td><b>Status:</b> </td><td></td></tr>");
+        }
+        body.append("</table></div>");
+        return body.toString();
+    }
+
+}
@@ -0,0 +1,45 @@
+package com.balmerlawrie.balmerrestservice.service;
+
+import com.balmerlawrie.balmerrestservice.service.SupportingDocsService.PageCursor;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class PageCursorTest {
+
+    private static String token(String raw) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void decodesTheTokenItEncoded() {
+        String token = new PageCursor(150, "98765").encode("4321");
+        PageCursor cursor = PageCursor.decode(token, "4321");
+        assertNotNull(cursor);
+        assertEquals(150, cursor.startPos);
+        assertEquals("98765", cursor.previousRefIndex);
+    }
+
+    @Test
+    void rejectsTokensForAnotherFolder() {
+        assertNull(PageCursor.decode(new PageCursor(50, "1").encode("4321"), "1234"));
+    }
+
+    @Test
+    void rejectsMalformedTokens() {
+        assertNull(PageCursor.decode("not base64!", "4321"));
+        assertNull(PageCursor.decode(token("4321:50"), "4321"));
+        assertNull(PageCursor.decode(token("4321:50:1:2"), "4321"));
+        assertNull(PageCursor.decode(token("4321:fifty:1"), "4321"));
+        assertNull(PageCursor.decode(token("4321:99999999999:1"), "4321"));
+        assertNull(PageCursor.decode(token("4321:-1:1"), "4321"));
+        assertNull(PageCursor.decode(token("4321:50:abc"), "4321"));
+        assertNull(PageCursor.decode(token("4321:50:"), "4321"));
+        assertNull(PageCursor.decode("", "4321"));
+    }
+}
@@ -0,0 +1,108 @@
+package com.balmerlawrie.balmerrestservice.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+class CompiledTemplateTest {
+
+    private static String render(CompiledTemplate template, Map<String, String> values) {
+        StringBuilder out = new StringBuilder();
+        template.render(out, (name, buf) -> {
+            String value = values.get(name);
+            if (value == null) {
+                return false;
+            }
+            buf.append(value);
+            return true;
+        });
+        return out.toString();
+    }
+
+    @Test
+    void replacesPlaceholdersInOrderWithRepeats() {
+        CompiledTemplate template = CompiledTemplate.compile("<td>{{A}}</td><td>{{ B }}</td><td>{{A}}</td>");
+        Map<String, String> values = new HashMap<>();
+        values.put("A", "1");
+        values.put("B", "<b>2</b>");
+
+        assertEquals("<td>1</td><td><b>2</b></td><td>1</td>", render(template, values));
+        assertEquals(Arrays.asList("A", "B", "A"), template.getPlaceholders());
+        assertEquals("<td></td><td></td><td></td>".length(), template.literalLength());
+    }
+
+    @Test
+    void keepsUnknownPlaceholdersAndDiscardsTheirPartialOutput() {
+        CompiledTemplate template = CompiledTemplate.compile("x{{KNOWN}}y{{UNKNOWN}}z");
+        StringBuilder out = new StringBuilder("prefix:");
+        template.render(out, (name, buf) -> {
+            buf.append("partial");
+            return "KNOWN".equals(name);
+        });
+        assertEquals("prefix:xpartialy{{UNKNOWN}}z", out.toString());
+    }
+
+    @Test
+    void treatsUnclosedAndEmptyTemplatesAsLiterals() {
+        assertEquals("a {{OPEN b", render(CompiledTemplate.compile("a {{OPEN b"), Collections.emptyMap()));
+        assertEquals("}} {", render(CompiledTemplate.compile("}} {"), Collections.emptyMap()));
+        CompiledTemplate empty = CompiledTemplate.compile("");
+        assertEquals("", render(empty, Collections.emptyMap()));
+        assertEquals(0, empty.literalLength());
+        assertEquals(Collections.emptyList(), empty.getPlaceholders());
+    }
+
+    @Test
+    void rendersNestedTemplatesIntoOneBuffer() {
+        CompiledTemplate section = CompiledTemplate.compile("<table>{{ROWS}}</table>");
+        CompiledTemplate row = CompiledTemplate.compile("<tr><td>{{SNO}}</td></tr>");
+        StringBuilder out = new StringBuilder();
+        section.render(out, (name, body) -> {
+            for (int sno = 1; sno <= 3; sno++) {
+                int rowNo = sno;
+                row.render(body, (field, buf) -> {
+                    buf.append(rowNo);
+                    return true;
+                });
+            }
+            return true;
+        });
+        assertEquals("<table><tr><td>1</td></tr><tr><td>2</td></tr><tr><td>3</td></tr></table>", out.toString());
+    }
+
+    @Test
+    void matchesStringReplaceOnTheCommentRowTemplate() {
+        String source = load("templates/comment_row_template.html");
+        Map<String, String> values = new HashMap<>();
+        values.put("SNO", "7");
+        values.put("USER", "supervisor");
+        values.put("DATE", "2024-01-05 09:30");
+        values.put("COMMENT_TEXT", "Approved &amp; forwarded");
+        values.put("STAGE", "HOD");
+        values.put("STATUS", "Approved");
+
+        String expected = source;
+        for (Map.Entry<String, String> value : values.entrySet()) {
+            expected = expected.replace("{{" + value.getKey() + "}}", value.getValue());
+        }
+        assertEquals(expected, render(CompiledTemplate.compile(source), values));
+    }
+
+    private static String load(String path) {
+        try (InputStream is = CompiledTemplateTest.class.getClassLoader().getResourceAsStream(path)) {
+            assertNotNull(is, "Template not on classpath: " + path);
+            return new String(is.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
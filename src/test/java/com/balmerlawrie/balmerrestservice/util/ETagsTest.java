@@ -0,0 +1,61 @@
+package com.balmerlawrie.balmerrestservice.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ETagsTest {
+
+    private static final String ETAG = "\"0123456789abcdef0123456789abcdef\"";
+
+    @Test
+    void matchesExactAndWeakValidators() {
+        assertTrue(ETags.matches(ETAG, ETAG));
+        assertTrue(ETags.matches("W/" + ETAG, ETAG));
+        assertTrue(ETags.matches(ETAG, "W/" + ETAG));
+    }
+
+    @Test
+    void matchesAnyEntryOfAListAndTheWildcard() {
+        assertTrue(ETags.matches("\"other\", W/\"stale\" ,  " + ETAG, ETAG));
+        assertTrue(ETags.matches("*", ETAG));
+        assertTrue(ETags.matches("\"other\", *", ETAG));
+    }
+
+    @Test
+    void doesNotMatchMissingOrDifferentTags() {
+        assertFalse(ETags.matches(null, ETAG));
+        assertFalse(ETags.matches("", ETAG));
+        assertFalse(ETags.matches(ETAG, null));
+        assertFalse(ETags.matches("\"other\", W/\"stale\"", ETAG));
+        assertFalse(ETags.matches(ETAG.substring(1, ETAG.length() - 1), ETAG));
+    }
+
+    @Test
+    void buildsQuotedStableTags() {
+        String etag = ETags.builder().add("a").add(42).build();
+        assertEquals(34, etag.length());
+        assertTrue(etag.startsWith("\"") && etag.endsWith("\""));
+        assertEquals(etag, ETags.builder().add("a").add(42).build());
+        assertTrue(ETags.matches(etag, ETags.builder().add("a").add(42).build()));
+    }
+
+    @Test
+    void separatesValues() {
+        assertNotEquals(ETags.builder().add("ab").add("c").build(), ETags.builder().add("a").add("bc").build());
+        assertNotEquals(ETags.builder().add((String) null).build(), ETags.builder().add("").add("").build());
+    }
+
+    @Test
+    void hashesJsonByStructureAndType() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        String tag = ETags.builder().add(mapper.readTree("{\"a\":[1,\"x\"],\"b\":{}}")).build();
+        assertEquals(tag, ETags.builder().add(mapper.readTree("{ \"a\": [1, \"x\"], \"b\": {} }")).build());
+        assertNotEquals(tag, ETags.builder().add(mapper.readTree("{\"a\":[\"1\",\"x\"],\"b\":{}}")).build());
+        assertNotEquals(tag, ETags.builder().add(mapper.readTree("{\"a\":[1,\"x\"],\"b\":[]}")).build());
+    }
+}
@@ -0,0 +1,125 @@
+package com.balmerlawrie.balmerrestservice.util;
+
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class XhtmlNormalizerTest {
+
+    /**
+     * Normalizes the content and writes the body back out as compact markup
+     * (attributes as the DOM orders them, text unescaped).
+     */
+    private static String body(String html) {
+        Document document = XhtmlNormalizer.toDocument(html, null);
+        StringBuilder out = new StringBuilder();
+        writeChildren(body(document), out);
+        return out.toString();
+    }
+
+    private static Element body(Document document) {
+        return (Element) document.getElementsByTagNameNS(XhtmlNormalizer.XHTML_NS, "body").item(0);
+    }
+
+    private static void writeChildren(Node parent, StringBuilder out) {
+        NodeList children = parent.getChildNodes();
+        for (int i = 0; i < children.getLength(); i++) {
+            Node child = children.item(i);
+            if (child.getNodeType() == Node.TEXT_NODE) {
+                out.append(child.getNodeValue());
+                continue;
+            }
+            out.append('<').append(child.getLocalName());
+            NamedNodeMap attributes = child.getAttributes();
+            for (int j = 0; j < attributes.getLength(); j++) {
+                Node attribute = attributes.item(j);
+                out.append(' ').append(attribute.getNodeName()).append("=\"").append(attribute.getNodeValue())
+                        .append('"');
+            }
+            out.append('>');
+            writeChildren(child, out);
+            out.append("</").append(child.getLocalName()).append('>');
+        }
+    }
+
+    @Test
+    void closesImpliedParagraphsListItemsAndCells() {
+        assertEquals("<p>one</p><p>two</p>", body("<p>one<p>two"));
+        assertEquals("<p>text</p><div>block</div>", body("<p>text<div>block</div>"));
+        assertEquals("<ul><li>a</li><li>b<ul><li>c</li></ul></li></ul>", body("<ul><li>a<li>b<ul><li>c</ul></ul>"));
+        assertEquals("<table><tr><td>1</td><td>2</td></tr><tr><td>3</td></tr></table>",
+                body("<table><tr><td>1<td>2<tr><td>3</table>"));
+    }
+
+    @Test
+    void closesVoidElementsAndElementsLeftOpen() {
+        assertEquals("a<br></br>b<img src=\"x.png\"></img><b><i>c</i></b>",
+                body("a<br>b<img src=\"x.png\"><b><i>c"));
+        assertEquals("<hr></hr>", body("<hr/></hr>"));
+    }
+
+    @Test
+    void ignoresStrayEndTags() {
+        assertEquals("<b>bold</b> plain", body("</p><b>bold</i></b> plain</div>"));
+        assertEquals("<div><span>x</span></div>y", body("<div><span>x</div>y"));
+    }
+
+    @Test
+    void keepsLessThanThatDoesNotStartATagAsText() {
+        assertEquals("1 < 2 and a<b", body("1 < 2 and a<b"));
+        assertEquals("x <3 y", body("x <3 y"));
+        assertEquals("<p>before</p><a href=\"x>after", body("<p>before</p><a href=\"x>after"));
+        assertEquals("tail </", body("tail </"));
+    }
+
+    @Test
+    void decodesNamedAndNumericReferences() {
+        assertEquals("a & b  €– <x>", body("a &amp; b &nbsp;&euro;&ndash; &lt;x&gt;"));
+        assertEquals("AB😀", body("&#65;&#x42;&#x1F600;"));
+        assertEquals("&unknown; & &#xZZ;", body("&unknown; & &#xZZ;"));
+        assertEquals("<a href=\"?a=1&b=2\" title=\"Q&A\"></a>", body("<a title='Q&amp;A' href=?a=1&b=2></a>"));
+    }
+
+    @Test
+    void dropsCharactersNotAllowedInXml() {
+        assertEquals("ab", body("a&#0;&#x1;&#xFFFE;&#xD800;b"));
+        assertEquals("a\tb\nc", body("a\u0001\t\u0008b\n\u001Fc"));
+    }
+
+    @Test
+    void hoistsStyleElementsIntoTheHead() {
+        Document document = XhtmlNormalizer.toDocument("<p>x</p><style>p { color: red; }</style>", "body {}");
+        NodeList styles = document.getElementsByTagNameNS(XhtmlNormalizer.XHTML_NS, "style");
+        assertEquals(2, styles.getLength());
+        assertEquals("body {}", styles.item(0).getTextContent());
+        assertEquals("p { color: red; }", styles.item(1).getTextContent());
+        assertEquals("head", styles.item(1).getParentNode().getLocalName());
+
+        StringBuilder out = new StringBuilder();
+        writeChildren(body(document), out);
+        assertEquals("<p>x</p>", out.toString());
+    }
+
+    @Test
+    void dropsScriptsCommentsCdataAndOfficeTags() {
+        assertEquals("ab", body("a<script>if (x < y) { document.write('<p>'); }</SCRIPT>b"));
+        assertEquals("ab", body("a<!-- <p>hidden</p> -->b<![CDATA[ <p> ]]>"));
+        assertEquals("<p>text</p>", body("<?xml version=\"1.0\"?><!DOCTYPE html><p><o:p></o:p>text</p>"));
+        assertEquals("<p>kept</p>", body("<html><head><title>t</title></head><body><p>kept</p></body></html>"));
+        assertEquals("<p>x</p>", body("<p xmlns:o=\"urn:office\" o:attr=\"1\">x</p>"));
+    }
+
+    @Test
+    void buildsTheDocumentInTheXhtmlNamespace() {
+        Document document = XhtmlNormalizer.toDocument("<p>x</p>", null);
+        Element root = document.getDocumentElement();
+        assertEquals("html", root.getLocalName());
+        assertEquals(XhtmlNormalizer.XHTML_NS, root.getNamespaceURI());
+        assertEquals(XhtmlNormalizer.XHTML_NS, body(document).getFirstChild().getNamespaceURI());
+    }
+}